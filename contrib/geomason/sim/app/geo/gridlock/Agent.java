@@ -143,9 +143,8 @@ public final class Agent implements Steppable
             return; // just a check
         }
         // find the appropriate A* path between them
-        AStar pathfinder = new AStar();
         ArrayList<GeomPlanarGraphDirectedEdge> path =
-            pathfinder.astarPath(currentJunction, destinationJunction);
+            geoTest.router.astarPath(currentJunction, destinationJunction);
 
         // if the path works, lay it in
         if (path != null && path.size() > 0)
@@ -30,6 +30,7 @@ import sim.field.geo.GeomVectorField;
 import sim.io.geo.ShapeFileImporter;
 import sim.util.geo.GeomPlanarGraph;
 import sim.util.geo.GeomPlanarGraphEdge;
+import sim.util.geo.GeomPlanarGraphRouter;
 import sim.util.geo.MasonGeometry;
 
 
@@ -66,6 +67,8 @@ public class Gridlock extends SimState
     public GeomVectorField censusTracts = new GeomVectorField();
     // traversable network
     public GeomPlanarGraph network = new GeomPlanarGraph();
+    // shortest routes over the network, shared by all the agents
+    GeomPlanarGraphRouter router;
     public GeomVectorField junctions = new GeomVectorField();
     // mapping between unique edge IDs and edge structures themselves
     HashMap<Integer, GeomPlanarGraphEdge> idsToEdges =
@@ -221,6 +224,10 @@ public class Gridlock extends SimState
         }
 
         addIntersectionNodes(network.nodeIterator(), junctions);
+
+        // weighted by the distance between each road's end junctions, as
+        // gridlock's routes always have been
+        router = new GeomPlanarGraphRouter(network, false);
     }
 
 
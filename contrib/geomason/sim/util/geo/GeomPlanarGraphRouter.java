@@ -0,0 +1,250 @@
+/*
+ * Copyright 2011 by Mark Coletti, Keith Sullivan, Sean Luke, and
+ * George Mason University Mason University Licensed under the Academic
+ * Free License version 3.0
+ *
+ * See the file "LICENSE" for more information
+ *
+ * $Id$
+ */
+
+package sim.util.geo;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.planargraph.DirectedEdge;
+import com.vividsolutions.jts.planargraph.Node;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import sim.field.network.CompactNetwork;
+import sim.field.network.analytics.Heuristic;
+import sim.field.network.analytics.Router;
+
+
+/** Shortest routes over a GeomPlanarGraph
+ *
+ * Numbers the graph's nodes, copies its directed edges into a CompactNetwork
+ * weighted by the lengths of their lines (or, if you ask, by the straight-line
+ * distances between their nodes), and finds routes with a
+ * sim.field.network.analytics.Router guided by the straight-line distance to
+ * the goal (and optionally by landmarks).  Make one when the graph has been
+ * built and share it among all the agents, which may ask for routes from
+ * several threads at once.  Changes to the graph afterwards aren't seen.
+ *
+ * This replaces the per-model AStar classes, which allocated a wrapper for
+ * every node they touched and searched lists for the open and closed sets.
+ *
+ */
+public class GeomPlanarGraphRouter
+{
+
+    private Node[] nodes;
+    private HashMap<Node, Integer> indices = new HashMap<Node, Integer>();
+    // the directed edge for each of the CompactNetwork's arcs
+    private DirectedEdge[] arcs;
+    private Router router;
+    private boolean useLineLengths;
+
+
+    public GeomPlanarGraphRouter(GeomPlanarGraph graph)
+    {
+        this(graph, true, 0, 0);
+    }
+
+
+    /**
+     * @param graph to route over
+     * @param useLineLengths whether edges are weighted by the lengths of their
+     * lines, or else by the straight-line distances between their nodes
+     */
+    public GeomPlanarGraphRouter(GeomPlanarGraph graph, boolean useLineLengths)
+    {
+        this(graph, useLineLengths, 0, 0);
+    }
+
+
+    /**
+     * @param graph to route over
+     * @param landmarks number of landmarks to compute, or 0; see Router.setLandmarks()
+     * @param cacheSize number of routes to remember, or 0; see Router.setCacheSize()
+     */
+    public GeomPlanarGraphRouter(GeomPlanarGraph graph, int landmarks, int cacheSize)
+    {
+        this(graph, true, landmarks, cacheSize);
+    }
+
+
+    /**
+     * @param graph to route over
+     * @param useLineLengths whether edges are weighted by the lengths of their
+     * lines, or else by the straight-line distances between their nodes
+     * @param landmarks number of landmarks to compute, or 0; see Router.setLandmarks()
+     * @param cacheSize number of routes to remember, or 0; see Router.setCacheSize()
+     */
+    public GeomPlanarGraphRouter(GeomPlanarGraph graph, boolean useLineLengths, int landmarks, int cacheSize)
+    {
+        this.useLineLengths = useLineLengths;
+        ArrayList<Node> nodeList = new ArrayList<Node>();
+        for (Iterator it = graph.nodeIterator(); it.hasNext();)
+        {
+            Node node = (Node) it.next();
+            indices.put(node, nodeList.size());
+            nodeList.add(node);
+        }
+        nodes = nodeList.toArray(new Node[nodeList.size()]);
+
+        // Collect the directed edges grouped by from node, in node order.
+        // CompactNetwork keeps the arcs of each node in the order given, so
+        // arc k is then the k-th directed edge collected here.
+        ArrayList<DirectedEdge> edgeList = new ArrayList<DirectedEdge>();
+        for (int i = 0; i < nodes.length; i++)
+        {
+            for (Object o : nodes[i].getOutEdges().getEdges())
+            {
+                DirectedEdge edge = (DirectedEdge) o;
+                if (indices.containsKey(edge.getToNode()))
+                {
+                    edgeList.add(edge);
+                }
+            }
+        }
+        arcs = edgeList.toArray(new DirectedEdge[edgeList.size()]);
+
+        int[] from = new int[arcs.length];
+        int[] to = new int[arcs.length];
+        double[] weights = new double[arcs.length];
+        for (int k = 0; k < arcs.length; k++)
+        {
+            from[k] = indices.get(arcs[k].getFromNode());
+            to[k] = indices.get(arcs[k].getToNode());
+            weights[k] = getLength(arcs[k]);
+        }
+
+        router = new Router(new CompactNetwork(nodes.length, from, to, weights, arcs.length, true));
+        Coordinate[] coordinates = new Coordinate[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+        {
+            coordinates[i] = nodes[i].getCoordinate();
+        }
+        router.setHeuristic(new StraightLine(coordinates));
+        if (landmarks > 0)
+        {
+            router.setLandmarks(landmarks);
+        }
+        router.setCacheSize(cacheSize);
+    }
+
+
+    /**
+     * The straight-line distance between two nodes.  It keeps just the nodes'
+     * coordinates, so that it can be serialized along with the Router.
+     */
+    static class StraightLine implements Heuristic
+    {
+        private static final long serialVersionUID = 1L;
+
+        private Coordinate[] coordinates;
+
+
+        StraightLine(Coordinate[] coordinates)
+        {
+            this.coordinates = coordinates;
+        }
+
+
+        public double estimate(int node, int destination)
+        {
+            return coordinates[node].distance(coordinates[destination]);
+        }
+    }
+
+
+    /**
+     * @return the length of the edge's line, or if it has none (or lines
+     * aren't used) the distance between its nodes.  Never less than the
+     * distance between its nodes, as the straight-line heuristic requires.
+     */
+    double getLength(DirectedEdge edge)
+    {
+        Coordinate a = edge.getFromNode().getCoordinate();
+        Coordinate b = edge.getToNode().getCoordinate();
+        double straight = a.distance(b);
+        if (useLineLengths && edge.getEdge() instanceof GeomPlanarGraphEdge)
+        {
+            return Math.max(straight, ((GeomPlanarGraphEdge) edge.getEdge()).getLine().getLength());
+        }
+        return straight;
+    }
+
+
+    /** @return the Router, whose node numbers are those of getNode() */
+    public Router getRouter()
+    {
+        return router;
+    }
+
+
+    /** @return whether edges are weighted by the lengths of their lines */
+    public boolean getUseLineLengths()
+    {
+        return useLineLengths;
+    }
+
+
+    public Node getNode(int index)
+    {
+        return nodes[index];
+    }
+
+
+    /** @return the node's number, or -1 if it is not in the graph */
+    public int getNodeIndex(Node node)
+    {
+        Integer index = indices.get(node);
+        return index == null ? -1 : index.intValue();
+    }
+
+
+    /**
+     * Finds a shortest path between two nodes.
+     *
+     * @return the directed edges leading from start to goal, which is empty if
+     * there is no path, or if start is goal
+     * @throws IllegalArgumentException if either node is not in the graph
+     */
+    public ArrayList<GeomPlanarGraphDirectedEdge> astarPath(Node start, Node goal)
+    {
+        int s = getNodeIndex(start);
+        int g = getNodeIndex(goal);
+        if (s < 0 || g < 0)
+        {
+            throw new IllegalArgumentException("Node not in the graph: " + (s < 0 ? start : goal));
+        }
+
+        int[] route = router.route(s, g);
+        ArrayList<GeomPlanarGraphDirectedEdge> result = new ArrayList<GeomPlanarGraphDirectedEdge>();
+        if (route != null)
+        {
+            for (int i = 0; i < route.length; i++)
+            {
+                result.add((GeomPlanarGraphDirectedEdge) arcs[route[i]]);
+            }
+        }
+        return result;
+    }
+
+
+    /** @return the length of a shortest path between two nodes, or infinity if there is none */
+    public double getDistance(Node start, Node goal)
+    {
+        int s = getNodeIndex(start);
+        int g = getNodeIndex(goal);
+        if (s < 0 || g < 0)
+        {
+            throw new IllegalArgumentException("Node not in the graph: " + (s < 0 ? start : goal));
+        }
+        int[] route = router.route(s, g);
+        return route == null ? Double.POSITIVE_INFINITY : router.getLength(route);
+    }
+
+}
@@ -314,9 +314,9 @@ public strictfp class MersenneTwisterFast implements Serializable, Cloneable
         // doing our own Gaussian variable.
         __haveNextNextGaussian = false;
 
-        mt = new int[N];
+        if (mt == null) mt = new int[N];  // reseeding reuses the arrays
         
-        mag01 = new int[2];
+        if (mag01 == null) mag01 = new int[2];
         mag01[0] = 0x0;
         mag01[1] = MATRIX_A;
 
@@ -0,0 +1,185 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+   Writes checkpoints in the background.  A normal checkpoint stops the simulation until the SimState has been
+   serialized, compressed, and written to disk.  BackgroundCheckpoint instead takes a <i>snapshot</i> between steps,
+   by serializing the SimState (uncompressed) into memory, and then lets the simulation carry on while a separate
+   thread compresses the snapshot and writes it out.  Serializing is usually a small part of the cost of a
+   checkpoint, so the simulation stalls for much less time.  preCheckpoint() and postCheckpoint() are called
+   around the snapshot only, so AsynchronousSteppables are paused only while it is taken.
+
+   <p>Checkpoints are written as FastCheckpoints, or, if you provide a DeltaCheckpoint, as full checkpoints and deltas.
+   Each file is first written under a temporary name (the file name plus ".tmp") and renamed when done, so an
+   interrupted write never leaves a partial checkpoint behind.  Only one checkpoint is written at a time: if you
+   ask for a new checkpoint while the last one is still being written, write(...) first waits for it to finish.
+   Thus at most one snapshot is held in memory at a time.
+
+   <p>Errors in the background are reported by the next call to write(...) or waitFor().  Be sure to call waitFor()
+   before your program exits, or the last checkpoint may be lost.  In doLoop, use -asynccheckpoint together with -docheckpoint.
+*/
+
+public class BackgroundCheckpoint
+    {
+    DeltaCheckpoint delta;
+    Thread writer = null;
+    Throwable failure = null;
+    final Object lock = new Object();
+
+    /** Writes FastCheckpoints in the background. */
+    public BackgroundCheckpoint() { }
+
+    /** Writes full checkpoints and deltas, using the given DeltaCheckpoint, in the background. */
+    public BackgroundCheckpoint(DeltaCheckpoint delta) { this.delta = delta; }
+
+    /** Returns the DeltaCheckpoint in use, or null if FastCheckpoints are being written. */
+    public DeltaCheckpoint getDeltaCheckpoint() { return delta; }
+
+    /** Takes a snapshot of the SimState and writes it in the background to the given file, as a FastCheckpoint,
+        or as a delta if there is a DeltaCheckpoint.  Returns once the snapshot has been taken. */
+    public void write(SimState state, File file) throws IOException
+        {
+        write(state, file, false);
+        }
+
+    /** Takes a snapshot of the SimState and writes it in the background to the given file as a full checkpoint,
+        which becomes the base of later deltas.  If there is no DeltaCheckpoint, this is the same as write(...). */
+    public void writeFull(SimState state, File file) throws IOException
+        {
+        write(state, file, true);
+        }
+
+    void write(SimState state, final File file, final boolean full) throws IOException
+        {
+        waitFor();
+        final Snapshot snapshot = new Snapshot(state, delta != null);
+        Thread t = new Thread(new Runnable()
+            {
+            public void run()
+                {
+                try
+                    {
+                    File temp = new File(file.getPath() + ".tmp");
+                    if (delta == null) FastCheckpoint.write(snapshot, temp);
+                    else if (full) delta.writeFull(snapshot, temp, file);
+                    else delta.writeDelta(snapshot, temp, file);
+                    if (file.exists() && !file.delete())
+                        throw new IOException("Could not replace " + file);
+                    if (!temp.renameTo(file))
+                        throw new IOException("Could not rename " + temp + " to " + file);
+                    }
+                catch (Throwable e)
+                    {
+                    synchronized(lock) { failure = e; }
+                    }
+                }
+            });
+        t.setName("MASON Checkpoint " + file.getName());
+        synchronized(lock) { writer = t; }
+        t.start();
+        }
+
+    /** Returns true if a checkpoint is presently being written in the background. */
+    public boolean isWriting()
+        {
+        synchronized(lock) { return writer != null && writer.isAlive(); }
+        }
+
+    /** Waits until the checkpoint being written in the background, if any, is done.  If writing it failed,
+        throws an IOException describing the failure. */
+    public void waitFor() throws IOException
+        {
+        Thread t;
+        synchronized(lock) { t = writer; }
+        if (t != null)
+            {
+            boolean interrupted = false;
+            while(true)
+                {
+                try { t.join(); break; }
+                catch (InterruptedException e) { interrupted = true; }
+                }
+            if (interrupted) Thread.currentThread().interrupt();
+            }
+
+        Throwable e;
+        synchronized(lock)
+            {
+            writer = null;
+            e = failure;
+            failure = null;
+            }
+        if (e instanceof IOException) throw (IOException) e;
+        if (e != null)
+            {
+            IOException ex = new IOException("Background checkpoint failed: " + e);
+            ex.initCause(e);
+            throw ex;
+            }
+        }
+
+    /** The serialized SimState, held in memory in blocks. */
+    static class Snapshot extends OutputStream
+        {
+        ArrayList blocks = new ArrayList();  // full blocks
+        byte[] block = new byte[FastCheckpoint.DEFAULT_BLOCK_SIZE];
+        int length;
+
+        /** Serializes the SimState, calling preCheckpoint() before and postCheckpoint() afterwards.  If forDelta
+            is true, the SimState is serialized as DeltaCheckpoint does. */
+        Snapshot(SimState state, boolean forDelta) throws IOException
+            {
+            state.preCheckpoint();
+            try
+                {
+                ObjectOutputStream s = (forDelta ? DeltaCheckpoint.newObjectOutputStream(this) : new ObjectOutputStream(this));
+                s.writeObject(state);
+                s.close();
+                }
+            finally
+                {
+                state.postCheckpoint();
+                }
+            }
+
+        public void write(int b)
+            {
+            if (length == block.length) { blocks.add(block); block = new byte[block.length]; length = 0; }
+            block[length++] = (byte) b;
+            }
+
+        public void write(byte[] b, int off, int len)
+            {
+            while(len > 0)
+                {
+                if (length == block.length) { blocks.add(block); block = new byte[block.length]; length = 0; }
+                int n = Math.min(len, block.length - length);
+                System.arraycopy(b, off, block, length, n);
+                length += n;
+                off += n;
+                len -= n;
+                }
+            }
+
+        /** Returns the number of bytes in the snapshot. */
+        long size() { return blocks.size() * (long) block.length + length; }
+
+        /** Writes the snapshot to the given stream. */
+        void writeTo(OutputStream out) throws IOException
+            {
+            for(int i = 0; i < blocks.size(); i++)
+                {
+                byte[] b = (byte[])(blocks.get(i));
+                out.write(b, 0, b.length);
+                }
+            out.write(block, 0, length);
+            }
+        }
+    }
@@ -0,0 +1,538 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.*;
+import sim.util.*;
+
+/**
+   BatchRunner runs a simulation many times over a <i>parameter space</i>, spreading the runs (<i>jobs</i>) over
+   a bounded number of threads.  Rather than dividing the jobs up among the threads in advance (as SimState.doLoop's
+   -parallel option does), each thread grabs the next unfinished job whenever it completes its previous one, so
+   jobs which finish early don't leave CPUs idle.
+
+   <p>The parameter space is a list of <i>points</i>, each of which assigns a value to every parameter.  A parameter
+   is a read/write property of your SimState (a getFoo()/setFoo(...) pair, as used by the inspectors).  You build the
+   space with addParameter(name, values), which crosses the existing points with the given values, and with
+   addPoints(csvFile), which crosses the existing points with the rows of a CSV file whose first row names the parameters.
+   Each point is run getRepeat() times.  Job numbers go 0, 1, 2, ... through the points and repeats
+   (job = point * repeat + rep), and the seed of each job is the base seed plus the job number, so a job's result
+   does not depend on the number of threads.
+
+   <p>For each job, BatchRunner creates the SimState with the MakesSimState, sets its parameters, calls start(),
+   steps it until the Schedule is exhausted or the limits set with setSteps(...) and setUntil(...) are reached,
+   hands it to the Sink, and calls finish().  The default sink, CSVSink, writes one line per job to a file,
+   holding the job number, seed, parameter values, steps, time, and the values of the output properties.
+
+   <p>If you provide a <i>manifest</i> file, BatchRunner appends each job number to it as the job completes,
+   after the Sink has recorded the job's results.  If the run is interrupted, running again with the same manifest
+   skips the jobs already listed in it.  A job which was interrupted after its results were recorded but before it
+   was listed is run again: if the Sink is a RestartableSink (as CSVSink is), it's first told to drop the results of
+   any jobs not in the manifest, and otherwise such a job's results may appear twice.  Results carry the job number,
+   so duplicates can be removed afterwards.
+
+   <p>BatchRunner can be run from the command line via SimState.doLoop by including the <tt>-batch</tt> argument.
+   Run with <tt>-batch -help</tt> for the options.
+*/
+
+public class BatchRunner
+    {
+    /** Receives the results of each job as it completes.  Calls to a Sink are synchronized by the BatchRunner. */
+    public interface Sink
+        {
+        /** Called when a job has completed, before its SimState is finish()ed. */
+        public void jobFinished(Job job, SimState state) throws IOException;
+        /** Called when all jobs have completed. */
+        public void close() throws IOException;
+        }
+
+    /** A Sink which can drop the results of jobs recorded by an earlier, interrupted run. */
+    public interface RestartableSink extends Sink
+        {
+        /** Called before any jobs are run, when restarting with a manifest, with the job numbers (Longs) listed in it.
+            Removes any results recorded for jobs not listed, and any second results for the same job. */
+        public void retainJobs(Set jobs) throws IOException;
+        }
+
+    /** A single run of the simulation at a given point in the parameter space. */
+    public static class Job
+        {
+        /** The job number. */
+        public long job;
+        /** The point in the parameter space. */
+        public int point;
+        /** Which repeat of the point this is. */
+        public int repeat;
+        /** The random number seed. */
+        public long seed;
+        /** The parameter names. */
+        public String[] names;
+        /** The parameter values. */
+        public String[] values;
+
+        public String toString() { return "Job " + job + " (point " + point + " repeat " + repeat + " seed " + seed + ")"; }
+        }
+
+    /** A Sink which writes one comma-separated line per job to a stream.  The columns are the job number, seed,
+        parameter values, steps, time, and the output properties.  Output properties are read from the SimState by
+        name; if none are given, all of the SimState's non-composite properties are written.  When writing to a file,
+        each line is forced to the disk before the job is added to the manifest, and on restart lines for jobs not in
+        the manifest are removed from the file. */
+    public static class CSVSink implements RestartableSink
+        {
+        PrintWriter out;
+        String[] outputs;
+        boolean needsHeader;
+        File file;                  // null if we're writing to a Writer
+        FileOutputStream stream;    // the file's stream, for syncing
+
+        /** Writes to the given file, appending if append is true.  A header line is written unless we're appending to a non-empty file. */
+        public CSVSink(File file, boolean append, String[] outputs) throws IOException
+            {
+            this(new FileOutputStream(file, append), !(append && file.length() > 0), outputs);
+            this.file = file;
+            }
+
+        CSVSink(FileOutputStream stream, boolean header, String[] outputs)
+            {
+            this(new OutputStreamWriter(stream), header, outputs);
+            this.stream = stream;
+            }
+
+        /** Writes to the given writer, writing a header line first if header is true. */
+        public CSVSink(Writer writer, boolean header, String[] outputs)
+            {
+            out = new PrintWriter(new BufferedWriter(writer));
+            needsHeader = header;
+            this.outputs = outputs;
+            }
+
+        public void jobFinished(Job job, SimState state) throws IOException
+            {
+            Properties properties = Properties.getProperties(state);
+
+            // figure out which properties to write
+            int[] indexes;
+            if (outputs == null)
+                {
+                IntBag bag = new IntBag();
+                for(int i = 0; i < properties.numProperties(); i++)
+                    if (!properties.isComposite(i) && !properties.isHidden(i))
+                        bag.add(i);
+                indexes = bag.toArray();
+                }
+            else
+                {
+                indexes = new int[outputs.length];
+                for(int i = 0; i < outputs.length; i++)
+                    indexes[i] = propertyIndex(properties, outputs[i]);
+                }
+
+            if (needsHeader)
+                {
+                StringBuffer b = new StringBuffer("job,seed");
+                for(int i = 0; i < job.names.length; i++)
+                    b.append(",").append(job.names[i]);
+                b.append(",steps,time");
+                for(int i = 0; i < indexes.length; i++)
+                    b.append(",").append(outputs == null ? properties.getName(indexes[i]) : outputs[i]);
+                out.println(b);
+                needsHeader = false;
+                }
+
+            StringBuffer b = new StringBuffer();
+            b.append(job.job).append(",").append(job.seed);
+            for(int i = 0; i < job.values.length; i++)
+                b.append(",").append(job.values[i]);
+            b.append(",").append(state.schedule.getSteps()).append(",").append(state.schedule.getTime());
+            for(int i = 0; i < indexes.length; i++)
+                b.append(",").append(indexes[i] < 0 ? "" : String.valueOf(properties.getValue(indexes[i])));
+            out.println(b);
+            out.flush();
+            if (stream != null) stream.getFD().sync();  // before the job goes into the manifest
+            }
+
+        /** Rewrites the file, keeping the header and the first line for each of the given jobs.  Does nothing if
+            we're writing to a Writer rather than a file. */
+        public void retainJobs(Set jobs) throws IOException
+            {
+            if (file == null) return;
+            out.close();
+
+            File temp = new File(file.getPath() + ".tmp");
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(temp)));
+            HashSet kept = new HashSet();
+            try
+                {
+                String line;
+                boolean first = true;
+                while((line = reader.readLine()) != null)
+                    {
+                    if (first && line.startsWith("job,")) writer.println(line);
+                    else
+                        {
+                        int comma = line.indexOf(',');
+                        Long job = null;
+                        try { job = Long.valueOf(comma < 0 ? line : line.substring(0, comma)); }
+                        catch (NumberFormatException e) { }  // a partly written line: drop it
+                        if (job != null && jobs.contains(job) && kept.add(job))
+                            writer.println(line);
+                        }
+                    first = false;
+                    }
+                }
+            finally
+                {
+                reader.close();
+                writer.close();
+                }
+            if (!file.delete() || !temp.renameTo(file))
+                throw new IOException("Could not replace " + file + " with " + temp);
+
+            stream = new FileOutputStream(file, true);
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream)));
+            needsHeader = (file.length() == 0);
+            }
+
+        public void close() throws IOException
+            {
+            out.close();
+            }
+        }
+
+    MakesSimState generator;
+    String[] args = new String[0];
+
+    // the parameter space
+    String[] names = new String[0];
+    ArrayList points = new ArrayList();  // each a String[] of values
+
+    int repeat = 1;
+    long seed = 1;
+    long steps = -1;
+    double until = Schedule.AFTER_SIMULATION;
+    int threads = ParallelSequence.availableProcessors;
+    Sink sink = null;
+    File manifest = null;
+    boolean quiet = false;
+
+    /** Creates a BatchRunner for simulations built by the given MakesSimState.  The parameter space initially consists
+        of a single point with no parameters. */
+    public BatchRunner(MakesSimState generator)
+        {
+        this.generator = generator;
+        points.add(new String[0]);
+        }
+
+    /** Sets the arguments passed to MakesSimState.newInstance(...). */
+    public void setArgs(String[] val) { args = val; }
+    /** Sets the number of times each point is run.  The default is 1. */
+    public void setRepeat(int val) { if (val <= 0) throw new IllegalArgumentException("Repeat must be > 0: " + val); repeat = val; }
+    public int getRepeat() { return repeat; }
+    /** Sets the base seed: job <i>j</i> is seeded with seed + <i>j</i>.  The default is 1. */
+    public void setSeed(long val) { seed = val; }
+    public long getSeed() { return seed; }
+    /** Sets the maximum number of steps each job is run, or -1 (the default) for no limit. */
+    public void setSteps(long val) { steps = val; }
+    public long getSteps() { return steps; }
+    /** Sets the simulation time at which each job is stopped.  The default is AFTER_SIMULATION (no limit). */
+    public void setUntil(double val) { until = val; }
+    public double getUntil() { return until; }
+    /** Sets the number of threads running jobs.  The default is the number of CPUs or cores. */
+    public void setThreads(int val) { if (val <= 0) throw new IllegalArgumentException("Threads must be > 0: " + val); threads = val; }
+    public int getThreads() { return threads; }
+    /** Sets the Sink which receives the results.  If null (the default), results are not recorded. */
+    public void setSink(Sink val) { sink = val; }
+    public Sink getSink() { return sink; }
+    /** Sets the manifest file which records completed jobs, or null (the default) for none. */
+    public void setManifest(File val) { manifest = val; }
+    public File getManifest() { return manifest; }
+    /** Sets whether progress messages are suppressed. */
+    public void setQuiet(boolean val) { quiet = val; }
+
+    /** Returns the parameter names. */
+    public String[] getParameterNames() { return (String[])(names.clone()); }
+    /** Returns the number of points in the parameter space. */
+    public int getNumPoints() { return points.size(); }
+    /** Returns the values of the given point. */
+    public String[] getPoint(int point) { return (String[])(((String[])(points.get(point))).clone()); }
+    /** Returns the total number of jobs: the number of points times the repeat. */
+    public long getNumJobs() { return points.size() * (long) repeat; }
+
+    /** Crosses the parameter space with the given values of a new parameter: every existing point is replaced by one
+        point per value. */
+    public void addParameter(String name, String[] values)
+        {
+        String[][] rows = new String[values.length][];
+        for(int i = 0; i < values.length; i++)
+            rows[i] = new String[] { values[i] };
+        cross(new String[] { name }, rows);
+        }
+
+    /** Crosses the parameter space with the points in a CSV file.  The first line of the file names the parameters;
+        each following non-blank line gives one point.  Values are separated by commas and trimmed; quoting is not supported. */
+    public void addPoints(File csv) throws IOException
+        {
+        BufferedReader reader = new BufferedReader(new FileReader(csv));
+        try
+            {
+            String line = reader.readLine();
+            if (line == null) throw new IOException("Empty parameter file " + csv);
+            String[] header = split(line);
+            ArrayList rows = new ArrayList();
+            int lineNumber = 1;
+            while((line = reader.readLine()) != null)
+                {
+                lineNumber++;
+                if (line.trim().length() == 0) continue;
+                String[] row = split(line);
+                if (row.length != header.length)
+                    throw new IOException("Line " + lineNumber + " of " + csv + " has " + row.length + " values but there are " + header.length + " parameters");
+                rows.add(row);
+                }
+            cross(header, (String[][])(rows.toArray(new String[rows.size()][])));
+            }
+        finally
+            {
+            reader.close();
+            }
+        }
+
+    static String[] split(String line)
+        {
+        String[] s = line.split(",", -1);
+        for(int i = 0; i < s.length; i++)
+            s[i] = s[i].trim();
+        return s;
+        }
+
+    // replaces each point with one point per row, appending the row's values
+    void cross(String[] newNames, String[][] rows)
+        {
+        String[] n = new String[names.length + newNames.length];
+        System.arraycopy(names, 0, n, 0, names.length);
+        System.arraycopy(newNames, 0, n, names.length, newNames.length);
+
+        ArrayList p = new ArrayList();
+        for(int i = 0; i < points.size(); i++)
+            {
+            String[] point = (String[])(points.get(i));
+            for(int j = 0; j < rows.length; j++)
+                {
+                String[] newPoint = new String[n.length];
+                System.arraycopy(point, 0, newPoint, 0, point.length);
+                System.arraycopy(rows[j], 0, newPoint, point.length, rows[j].length);
+                p.add(newPoint);
+                }
+            }
+        names = n;
+        points = p;
+        }
+
+    // returns the index of the named property, or -1
+    static int propertyIndex(Properties properties, String name)
+        {
+        for(int i = 0; i < properties.numProperties(); i++)
+            if (properties.getName(i).equalsIgnoreCase(name))
+                return i;
+        return -1;
+        }
+
+    /** Returns the job with the given job number. */
+    public Job getJob(long job)
+        {
+        Job j = new Job();
+        j.job = job;
+        j.point = (int)(job / repeat);
+        j.repeat = (int)(job % repeat);
+        j.seed = seed + job;
+        j.names = names;
+        j.values = (String[])(points.get(j.point));
+        return j;
+        }
+
+    /** Reads the job numbers listed in the manifest, if there is one. */
+    HashSet readManifest() throws IOException
+        {
+        HashSet done = new HashSet();
+        if (manifest == null || !manifest.exists()) return done;
+        BufferedReader reader = new BufferedReader(new FileReader(manifest));
+        try
+            {
+            String line;
+            while((line = reader.readLine()) != null)
+                {
+                line = line.trim();
+                if (line.length() > 0)
+                    done.add(Long.valueOf(line));
+                }
+            }
+        finally
+            {
+            reader.close();
+            }
+        return done;
+        }
+
+    /** Creates, runs, and finishes the SimState for the given job, handing it to the Sink before finishing it. */
+    protected void runJob(Job job) throws IOException
+        {
+        SimState state = generator.newInstance(job.seed, args);
+        state.job = job.job;
+        state.seed = job.seed;
+
+        Properties properties = Properties.getProperties(state);
+        for(int i = 0; i < job.names.length; i++)
+            {
+            int index = propertyIndex(properties, job.names[i]);
+            if (index < 0 || !properties.isReadWrite(index))
+                throw new RuntimeException("The simulation " + state.getClass() + " has no read/write property named " + job.names[i]);
+            if (properties.setValue(index, job.values[i]) == null)
+                throw new RuntimeException("Could not set " + job.names[i] + " to " + job.values[i] + " in " + state.getClass());
+            }
+
+        state.start();
+        Schedule schedule = state.schedule;
+        while((steps < 0 || schedule.getSteps() < steps) && schedule.getTime() <= until)
+            if (!schedule.step(state)) break;
+
+        if (sink != null)
+            synchronized(sink) { sink.jobFinished(job, state); }
+        state.finish();
+        }
+
+    /** Runs all the jobs not already listed in the manifest, then closes the Sink.  Returns the number of jobs
+        which failed (threw an exception).  Failed jobs are not added to the manifest and so will be run again on restart. */
+    public int run() throws IOException
+        {
+        final HashSet done = readManifest();
+        if (manifest != null && sink instanceof RestartableSink)
+            ((RestartableSink) sink).retainJobs(done);
+        final PrintWriter manifestOut = (manifest == null ? null : new PrintWriter(new FileWriter(manifest, true)));
+        final long numJobs = getNumJobs();
+        final AtomicLong next = new AtomicLong(0);
+        final AtomicInteger failures = new AtomicInteger(0);
+
+        if (!quiet) SimState.printlnSynchronized("Batch: " + points.size() + " points, " + numJobs + " jobs, " + done.size() + " already done, " + threads + " threads");
+
+        Thread[] t = new Thread[threads];
+        for(int i = 0; i < threads; i++)
+            {
+            t[i] = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    while(true)
+                        {
+                        long j = next.getAndIncrement();  // grab the next job
+                        if (j >= numJobs) return;
+                        if (done.contains(Long.valueOf(j))) continue;
+                        Job job = getJob(j);
+                        try
+                            {
+                            runJob(job);
+                            if (manifestOut != null)
+                                synchronized(manifestOut) { manifestOut.println(j); manifestOut.flush(); }
+                            if (!quiet) SimState.printlnSynchronized("Batch: finished " + job);
+                            }
+                        catch (Exception e)
+                            {
+                            failures.incrementAndGet();
+                            SimState.printlnSynchronized("Batch: " + job + " failed: " + e);
+                            e.printStackTrace();
+                            }
+                        }
+                    }
+                });
+            t[i].setName("MASON Batch " + i);
+            t[i].start();
+            }
+        for(int i = 0; i < threads; i++)
+            {
+            try { t[i].join(); } catch (InterruptedException ex) { }  // do nothing
+            }
+
+        if (manifestOut != null) manifestOut.close();
+        if (sink != null) sink.close();
+        return failures.get();
+        }
+
+    /** Builds a BatchRunner from the command line and runs it.  Called by SimState.doLoop when it sees the -batch argument. */
+    public static void doLoop(final MakesSimState generator, final String[] args)
+        {
+        if (SimState.keyExists("-help", args))
+            {
+            System.err.println(
+                "Format:           java " + generator.simulationClass().getName() + " -batch \\\n" +
+                "                       [-help] [-params P] [-param NAME=V1,V2,...]... \\\n" +
+                "                       [-repeat R] [-seed S] [-threads T] [-for F] [-until U] \\\n" +
+                "                       [-out O] [-outputs NAME,NAME,...] [-manifest M] [-quiet]\n\n" +
+                "-params P         String: a CSV file whose first line names parameters of the\n" +
+                "                  simulation and whose remaining lines each give one point in the\n" +
+                "                  parameter space.\n\n" +
+                "-param NAME=V,... Crosses the parameter space with the given values of the\n" +
+                "                  parameter NAME.  May be given multiple times.\n\n" +
+                "-repeat R         Integer > 0: the number of jobs run for each point.  Default: 1\n\n" +
+                "-seed S           Long value: job J is seeded with S + J.  Default: 1\n\n" +
+                "-threads T        Integer > 0: the number of jobs run at once.\n" +
+                "                  Default: the number of CPUs or cores.\n\n" +
+                "-for F            Long value >= 0: each job stops after F steps.  Default: no limit\n\n" +
+                "-until U          Double value >= 0: each job stops when the simulation time U\n" +
+                "                  has been reached or exceeded.  Default: no limit\n\n" +
+                "-out O            String: the CSV file the results are written (appended) to.\n" +
+                "                  Default: results are not written.\n\n" +
+                "-outputs N,...    The properties of the simulation written for each job.\n" +
+                "                  Default: all of its non-composite properties.\n\n" +
+                "-manifest M       String: the file listing completed jobs.  Jobs listed in it\n" +
+                "                  are skipped, so an interrupted batch can be restarted.\n" +
+                "                  Default: none.\n\n" +
+                "-quiet            Does not print messages except for errors and warnings.\n");
+            System.exit(0);
+            }
+
+        BatchRunner runner = new BatchRunner(generator);
+        runner.setArgs(args);
+        try
+            {
+            String s;
+            if ((s = SimState.argumentForKey("-params", args)) != null) runner.addPoints(new File(s));
+            for(int x = 0; x < args.length - 1; x++)
+                if (args[x].equalsIgnoreCase("-param"))
+                    {
+                    int eq = args[x + 1].indexOf('=');
+                    if (eq <= 0) throw new RuntimeException("Invalid -param value: " + args[x + 1] + ", must be of the form NAME=V1,V2,...");
+                    runner.addParameter(args[x + 1].substring(0, eq).trim(), split(args[x + 1].substring(eq + 1)));
+                    }
+            if ((s = SimState.argumentForKey("-repeat", args)) != null) runner.setRepeat(Integer.parseInt(s));
+            if ((s = SimState.argumentForKey("-seed", args)) != null) runner.setSeed(Long.parseLong(s));
+            if ((s = SimState.argumentForKey("-threads", args)) != null) runner.setThreads(Integer.parseInt(s));
+            if ((s = SimState.argumentForKey("-for", args)) != null) runner.setSteps(Long.parseLong(s));
+            if ((s = SimState.argumentForKey("-until", args)) != null) runner.setUntil(Double.parseDouble(s));
+            if ((s = SimState.argumentForKey("-manifest", args)) != null) runner.setManifest(new File(s));
+            String[] outputs = null;
+            if ((s = SimState.argumentForKey("-outputs", args)) != null) outputs = split(s);
+            if ((s = SimState.argumentForKey("-out", args)) != null) runner.setSink(new CSVSink(new File(s), true, outputs));
+            runner.setQuiet(SimState.keyExists("-quiet", args));
+            int failures = runner.run();
+            if (failures > 0)
+                {
+                System.err.println("Batch: " + failures + " jobs failed");
+                System.exit(1);
+                }
+            }
+        catch (IOException e)
+            {
+            e.printStackTrace();
+            System.exit(1);
+            }
+        System.exit(0);
+        }
+    }
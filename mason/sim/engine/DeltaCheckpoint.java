@@ -0,0 +1,518 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+   Incremental checkpoints.  A DeltaCheckpoint writes a <i>full</i> checkpoint now and then, and in between writes
+   <i>deltas</i> which hold only the parts of the simulation which have changed since the last full checkpoint.
+
+   <p>Both kinds of checkpoint are built by serializing the SimState as usual and cutting the resulting stream into
+   <i>content-defined chunks</i>: chunk boundaries are placed wherever a rolling hash of the last several bytes
+   hits a certain pattern, so they depend on the bytes themselves rather than on their position in the stream.
+   Each chunk is identified by its SHA-1 digest.  A full checkpoint stores every chunk, compressed.  A delta stores
+   only the chunks whose digests don't appear in its full checkpoint, and refers to the full checkpoint for the rest.
+   Because the boundaries are content-defined, a change in one part of the simulation (say a few grid cells,
+   or an agent added to a sparse field) only produces new chunks around the change, rather than shifting
+   every chunk after it.  Large grids and fields which change slowly thus cost very little in a delta.
+
+   <p>Deltas are always against the last full checkpoint, never against other deltas, so restoring a checkpoint
+   takes only the delta and its full checkpoint, which must still exist.  The delta records the full checkpoint's
+   file name, relative to the delta's directory if they're in the same directory.  SimState.readFromCheckpoint(File)
+   reads full checkpoints and deltas transparently, and main(...) turns a delta back into a standalone checkpoint.
+
+   <p>How much a delta saves depends on how Java serialization lays the simulation out.  Primitive arrays are written
+   byte for byte, so only changed regions differ.  However Java serialization numbers objects in the order it meets
+   them, so adding or removing objects early in the graph can change back-references later in the stream as well.
+   In particular each column of a 2D array refers back to the column class, which would make every column of a
+   DoubleGrid2D or IntGrid2D differ.  So in a DeltaCheckpoint's stream (and only there) int and double arrays of two
+   or three dimensions are written as their raw numbers instead.  One consequence is that such an array's columns are
+   restored as new arrays: if something else in the simulation refers to a column itself (rather than to the whole
+   array), after restoring it will refer to a copy.
+
+   <p>In doLoop, use -deltacheckpoint K together with -docheckpoint D: every Kth checkpoint is full, and the rest are deltas.
+*/
+
+public class DeltaCheckpoint
+    {
+    /** The first eight bytes of every DeltaCheckpoint file ("MASONDCK"). */
+    public static final long MAGIC = 0x4D41534F4E44434BL;
+    /** The format version. */
+    public static final int VERSION = 1;
+
+    /** The smallest chunk size, except for the final chunk. */
+    public static final int MIN_CHUNK = 4 * 1024;
+    /** The largest chunk size. */
+    public static final int MAX_CHUNK = 64 * 1024;
+    // A boundary is placed when the low 13 bits of the rolling hash are zero, so chunks average about MIN_CHUNK + 8K bytes
+    static final long MASK = 0x1FFFL;
+
+    static final byte END = 0;
+    static final byte LITERAL = 1;
+    static final byte REFERENCE = 2;
+    static final int DIGEST_LENGTH = 20;
+
+    // Random values for the rolling ("gear") hash.  These must never change, or old checkpoints would chunk differently.
+    static final long[] GEAR = new long[256];
+    static
+        {
+        long x = 0x2545F4914F6CDD1DL;
+        for(int i = 0; i < GEAR.length; i++)  // splitmix64
+            {
+            long z = (x += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+            }
+        }
+
+    File base = null;
+    HashMap index = null;  // maps ByteBuffer digests to Chunks in the base
+
+    /** The most recent full checkpoint written, or null if there is none yet. */
+    public File getBase() { return base; }
+
+    /** Writes a full checkpoint of the SimState to the given file, which becomes the base of future deltas.
+        Calls preCheckpoint() before and postCheckpoint() afterwards. */
+    public void writeFull(SimState state, File file) throws IOException
+        {
+        write(state, null, file, file, null, null);
+        setBase(file, file);
+        }
+
+    /** Writes a delta of the SimState, against the last full checkpoint, to the given file.  If there is no
+        full checkpoint yet, writes a full one instead.  Calls preCheckpoint() before and postCheckpoint() afterwards. */
+    public void writeDelta(SimState state, File file) throws IOException
+        {
+        if (base == null) writeFull(state, file);
+        else write(state, null, file, file, base, index);
+        }
+
+    /* Write a snapshot taken by BackgroundCheckpoint to the file, which will later be renamed to target. */
+    void writeFull(BackgroundCheckpoint.Snapshot snapshot, File file, File target) throws IOException
+        {
+        write(null, snapshot, file, target, null, null);
+        setBase(file, target);
+        }
+
+    void writeDelta(BackgroundCheckpoint.Snapshot snapshot, File file, File target) throws IOException
+        {
+        if (base == null) writeFull(snapshot, file, target);
+        else write(null, snapshot, file, target, base, index);
+        }
+
+    // indexes the chunks of the full checkpoint in file, which will be known as target
+    void setBase(File file, File target) throws IOException
+        {
+        HashMap index = new HashMap();
+        ArrayList chunks = scan(file, null);
+        for(int i = 0; i < chunks.size(); i++)
+            {
+            Chunk c = (Chunk)(chunks.get(i));
+            index.put(ByteBuffer.wrap(c.digest), c);
+            }
+        this.index = index;
+        base = target;
+        }
+
+    // Writes either the state or, if it's not null, the snapshot.  The file will be known as target.
+    static void write(SimState state, BackgroundCheckpoint.Snapshot snapshot, File file, File target, File base, HashMap index) throws IOException
+        {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try
+            {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(base == null ? "" : baseName(base, target));
+            ChunkOutputStream c = new ChunkOutputStream(out, index);
+            if (snapshot != null)
+                {
+                snapshot.writeTo(c);
+                c.close();
+                }
+            else
+                {
+                state.preCheckpoint();
+                ObjectOutputStream s = newObjectOutputStream(c);
+                s.writeObject(state);
+                s.close();  // finishes the chunk stream, but doesn't close out
+                state.postCheckpoint();
+                }
+            }
+        finally
+            {
+            out.close();
+            }
+        }
+
+    // how the delta refers to its base
+    static String baseName(File base, File delta)
+        {
+        File b = base.getAbsoluteFile();
+        File d = delta.getAbsoluteFile();
+        if (b.getParentFile() != null && b.getParentFile().equals(d.getParentFile()))
+            return b.getName();
+        return b.getPath();
+        }
+
+    /** Returns true if the first bytes of the given file are the DeltaCheckpoint MAGIC number. */
+    public static boolean isDeltaCheckpoint(File file) throws IOException
+        {
+        DataInputStream s = new DataInputStream(new FileInputStream(file));
+        try { return file.length() >= 8 && s.readLong() == MAGIC; }
+        finally { s.close(); }
+        }
+
+    /** Returns the full checkpoint which the given delta refers to, or null if the file is itself a full checkpoint. */
+    public static File getBase(File file) throws IOException
+        {
+        DataInputStream s = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+            {
+            FastCheckpoint.checkHeader(s.readLong(), s.readInt(), MAGIC, VERSION, "DeltaCheckpoint");
+            String name = s.readUTF();
+            if (name.length() == 0) return null;
+            File b = new File(name);
+            if (!b.isAbsolute()) b = new File(file.getAbsoluteFile().getParentFile(), name);
+            return b;
+            }
+        finally
+            {
+            s.close();
+            }
+        }
+
+    /** Reads a SimState from a full checkpoint or a delta (and its full checkpoint), and calls awakeFromCheckpoint(). */
+    public static SimState read(File file) throws IOException, ClassNotFoundException
+        {
+        File baseFile = getBase(file);
+        RandomAccessFile d = new RandomAccessFile(file, "r");
+        RandomAccessFile b = (baseFile == null ? null : new RandomAccessFile(baseFile, "r"));
+        try
+            {
+            ObjectInputStream s = new ObjectInputStream(new ChunkInputStream(d, b));
+            SimState state = (SimState)(s.readObject());
+            state.awakeFromCheckpoint();
+            return state;
+            }
+        finally
+            {
+            d.close();
+            if (b != null) b.close();
+            }
+        }
+
+    /* Returns an ObjectOutputStream which writes multidimensional int and double arrays as RawArrays. */
+    static ObjectOutputStream newObjectOutputStream(OutputStream out) throws IOException
+        {
+        return new ObjectOutputStream(out)
+            {
+                {
+                enableReplaceObject(true);
+                }
+
+            protected Object replaceObject(Object obj)
+                {
+                if (obj instanceof int[][] || obj instanceof double[][] || obj instanceof int[][][] || obj instanceof double[][][])
+                    return new RawArray(obj);
+                return obj;
+                }
+            };
+        }
+
+    /* Stands in for an int or double array of two or three dimensions, written as raw numbers, and is replaced by the
+       array again when read.  The stream maps each array to a single RawArray, so references to the whole array are
+       still shared after reading. */
+    static class RawArray implements Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        transient Object array;
+
+        RawArray(Object array) { this.array = array; }
+
+        private void writeObject(ObjectOutputStream out) throws IOException
+            {
+            boolean ints = (array instanceof int[][] || array instanceof int[][][]);
+            int dimensions = (array instanceof int[][][] || array instanceof double[][][] ? 3 : 2);
+            out.writeBoolean(ints);
+            out.writeByte(dimensions);
+            write(out, array, ints, dimensions);
+            }
+
+        static void write(ObjectOutputStream out, Object array, boolean ints, int dimensions) throws IOException
+            {
+            if (array == null) { out.writeInt(-1); return; }
+            if (dimensions == 1)
+                {
+                int length = (ints ? ((int[]) array).length : ((double[]) array).length);
+                out.writeInt(length);
+                byte[] buf = new byte[length * (ints ? 4 : 8)];
+                if (ints) ByteBuffer.wrap(buf).asIntBuffer().put((int[]) array);
+                else ByteBuffer.wrap(buf).asDoubleBuffer().put((double[]) array);
+                out.write(buf);
+                return;
+                }
+            Object[] arrays = (Object[]) array;
+            out.writeInt(arrays.length);
+            for(int i = 0; i < arrays.length; i++)
+                write(out, arrays[i], ints, dimensions - 1);
+            }
+
+        private void readObject(ObjectInputStream in) throws IOException
+            {
+            boolean ints = in.readBoolean();
+            int dimensions = in.readByte();
+            if (dimensions != 2 && dimensions != 3)
+                throw new InvalidObjectException("Invalid array dimensions " + dimensions);
+            array = read(in, ints, dimensions);
+            }
+
+        static Object read(ObjectInputStream in, boolean ints, int dimensions) throws IOException
+            {
+            int length = in.readInt();
+            if (length < 0) return null;
+            if (dimensions == 1)
+                {
+                byte[] buf = new byte[length * (ints ? 4 : 8)];
+                in.readFully(buf);
+                if (ints) { int[] a = new int[length]; ByteBuffer.wrap(buf).asIntBuffer().get(a); return a; }
+                else { double[] a = new double[length]; ByteBuffer.wrap(buf).asDoubleBuffer().get(a); return a; }
+                }
+            Object[] arrays;
+            if (dimensions == 3) arrays = (ints ? (Object[])(new int[length][][]) : (Object[])(new double[length][][]));
+            else arrays = (ints ? (Object[])(new int[length][]) : (Object[])(new double[length][]));
+            for(int i = 0; i < length; i++)
+                arrays[i] = read(in, ints, dimensions - 1);
+            return arrays;
+            }
+
+        Object readResolve() { return array; }
+        }
+
+    /** A stored chunk: its digest, and where its compressed bytes lie in a file. */
+    static class Chunk
+        {
+        byte[] digest;
+        FileChannel channel;
+        long offset;
+        int length;
+        int compressed;
+        }
+
+    /** Returns the chunks of the given file, in order.  References are resolved against the given index, if any. */
+    static ArrayList scan(File file, HashMap index) throws IOException
+        {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        try
+            {
+            return scan(f, index);
+            }
+        finally
+            {
+            f.close();
+            }
+        }
+
+    static ArrayList scan(RandomAccessFile f, HashMap index) throws IOException
+        {
+        f.seek(0);
+        FastCheckpoint.checkHeader(f.readLong(), f.readInt(), MAGIC, VERSION, "DeltaCheckpoint");
+        f.readUTF();
+        ArrayList chunks = new ArrayList();
+        while(true)
+            {
+            byte type = f.readByte();
+            if (type == END) return chunks;
+            byte[] digest = new byte[DIGEST_LENGTH];
+            f.readFully(digest);
+            if (type == LITERAL)
+                {
+                Chunk c = new Chunk();
+                c.digest = digest;
+                c.channel = f.getChannel();
+                c.length = f.readInt();
+                c.compressed = f.readInt();
+                c.offset = f.getFilePointer();
+                f.seek(c.offset + c.compressed);
+                chunks.add(c);
+                }
+            else if (type == REFERENCE)
+                {
+                Chunk c = (index == null ? null : (Chunk)(index.get(ByteBuffer.wrap(digest))));
+                if (c == null) throw new IOException("DeltaCheckpoint refers to a chunk missing from its full checkpoint");
+                chunks.add(c);
+                }
+            else throw new IOException("Corrupt DeltaCheckpoint");
+            }
+        }
+
+    /** Cuts the stream into content-defined chunks, writing each as a literal or, if it's in the index, as a reference. */
+    static class ChunkOutputStream extends OutputStream
+        {
+        DataOutputStream out;
+        HashMap index;
+        MessageDigest sha;
+        byte[] chunk = new byte[MAX_CHUNK];
+        int length;
+        long hash;
+        LinkedList pending = new LinkedList();  // Object[] { digest, Future or null for references }, in order
+        boolean closed;
+
+        ChunkOutputStream(DataOutputStream out, HashMap index) throws IOException
+            {
+            this.out = out;
+            this.index = index;
+            try { sha = MessageDigest.getInstance("SHA-1"); }
+            catch (NoSuchAlgorithmException e) { throw new IOException("SHA-1 is not available"); }
+            }
+
+        public void write(int b) throws IOException
+            {
+            chunk[length++] = (byte) b;
+            hash = (hash << 1) + GEAR[b & 0xFF];
+            if (length == MAX_CHUNK || (length >= MIN_CHUNK && (hash & MASK) == 0)) emit();
+            }
+
+        public void write(byte[] b, int off, int len) throws IOException
+            {
+            // make local
+            byte[] chunk = this.chunk;
+            long hash = this.hash;
+            int length = this.length;
+
+            int end = off + len;
+            for(int i = off; i < end; i++)
+                {
+                byte v = b[i];
+                chunk[length++] = v;
+                hash = (hash << 1) + GEAR[v & 0xFF];
+                if (length == MAX_CHUNK || (length >= MIN_CHUNK && (hash & MASK) == 0))
+                    {
+                    this.length = length;
+                    emit();
+                    length = 0;
+                    hash = 0;
+                    }
+                }
+
+            // put back
+            this.length = length;
+            this.hash = hash;
+            }
+
+        void emit() throws IOException
+            {
+            if (length == 0) return;
+            sha.update(chunk, 0, length);
+            byte[] digest = sha.digest();
+            if (index != null && index.containsKey(ByteBuffer.wrap(digest)))
+                pending.addLast(new Object[] { digest, null });
+            else
+                {
+                byte[] data = new byte[length];
+                System.arraycopy(chunk, 0, data, 0, length);
+                pending.addLast(new Object[] { digest, ForkJoinStrategy.getSharedPool().submit(new FastCheckpoint.Compress(data, length, FastCheckpoint.DEFAULT_LEVEL)) });
+                }
+            length = 0;
+            hash = 0;
+            while(pending.size() >= FastCheckpoint.blocksInFlight())
+                writeRecord((Object[])(pending.removeFirst()));
+            }
+
+        void writeRecord(Object[] record) throws IOException
+            {
+            Future future = (Future)(record[1]);
+            out.writeByte(future == null ? REFERENCE : LITERAL);
+            out.write((byte[])(record[0]));
+            if (future != null)
+                {
+                ByteBuffer buf = (ByteBuffer)(FastCheckpoint.get(future));  // begins with the length and compressed length
+                out.write(buf.array(), 0, buf.limit());
+                }
+            }
+
+        public void flush() { }
+
+        /** Writes out the remaining chunks and the end marker, but does not close the underlying stream. */
+        public void close() throws IOException
+            {
+            if (closed) return;
+            closed = true;
+            emit();
+            while(!pending.isEmpty())
+                writeRecord((Object[])(pending.removeFirst()));
+            out.writeByte(END);
+            out.flush();
+            }
+        }
+
+    /** Reassembles the serialized stream from the chunks of a delta and its full checkpoint, decompressing ahead in parallel. */
+    static class ChunkInputStream extends FastCheckpoint.BlockInputStream
+        {
+        ArrayList chunks;
+        int next = 0;
+        LinkedList pending = new LinkedList();  // Futures, in order
+
+        ChunkInputStream(RandomAccessFile delta, RandomAccessFile base) throws IOException
+            {
+            HashMap index = null;
+            if (base != null)
+                {
+                index = new HashMap();
+                ArrayList b = scan(base, null);
+                for(int i = 0; i < b.size(); i++)
+                    {
+                    Chunk c = (Chunk)(b.get(i));
+                    index.put(ByteBuffer.wrap(c.digest), c);
+                    }
+                }
+            chunks = scan(delta, index);
+            }
+
+        byte[] nextBlock() throws IOException
+            {
+            while(pending.size() < FastCheckpoint.blocksInFlight() && next < chunks.size())
+                {
+                Chunk c = (Chunk)(chunks.get(next++));
+                ByteBuffer data = c.channel.map(FileChannel.MapMode.READ_ONLY, c.offset, c.compressed);
+                pending.addLast(ForkJoinStrategy.getSharedPool().submit(new FastCheckpoint.Decompress(data, c.length)));
+                }
+            if (pending.isEmpty()) return null;
+            return (byte[])(FastCheckpoint.get((Future)(pending.removeFirst())));
+            }
+        }
+
+    /** Replays a delta against its full checkpoint and writes the result as a standalone checkpoint.
+        <p>Usage: java sim.engine.DeltaCheckpoint DELTA OUTPUT [-fast] */
+    public static void main(String[] args) throws Exception
+        {
+        if (args.length < 2)
+            {
+            System.err.println("Usage: java sim.engine.DeltaCheckpoint DELTA OUTPUT [-fast]\n\n" +
+                "Reads DELTA, a delta written by DeltaCheckpoint (along with the full\n" +
+                "checkpoint it refers to) or any other checkpoint, and writes the simulation to OUTPUT as a\n" +
+                "standard checkpoint, or as a FastCheckpoint if -fast is given.");
+            System.exit(1);
+            }
+        File delta = new File(args[0]);
+        if (isDeltaCheckpoint(delta) && getBase(delta) != null)
+            System.err.println("Replaying " + delta + " against " + getBase(delta));
+        SimState state = SimState.readFromCheckpoint(delta);
+        if (state == null || state.writeToCheckpoint(new File(args[1]), args.length > 2 && args[2].equalsIgnoreCase("-fast")) == null)
+            System.exit(1);
+        System.exit(0);
+        }
+    }
@@ -0,0 +1,451 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+   A faster checkpoint format.  The standard checkpoint (SimState.writeToCheckpoint(File)) pushes the serialized
+   SimState through a single GZIPOutputStream, so for large models checkpointing is bound by a single CPU compressing
+   at the default compression level.  FastCheckpoint instead chops the serialized stream into large blocks which are
+   compressed at high speed, in parallel, on ForkJoinStrategy's shared pool, and written straight to a FileChannel
+   in order.  When reading from a file, FastCheckpoint memory-maps the file and decompresses several blocks ahead
+   in parallel.
+
+   <p>The objects themselves are still written with Java serialization, so anything you can checkpoint normally can be
+   checkpointed with FastCheckpoint, and preCheckpoint(), postCheckpoint(), and awakeFromCheckpoint() are called as usual.
+   Primitive arrays, such as those inside DoubleGrid2D, IntGrid2D, and the Bags and maps of the sparse fields and
+   Network, are written by Java serialization in bulk, so the remaining cost is mostly the compression, which is now parallel.
+
+   <p>SimState.readFromCheckpoint(...) recognizes both formats, so you only need to choose at write time:
+   call SimState.writeToCheckpoint(file, true), or pass -fastcheckpoint to doLoop.
+
+   <p>The format is: the 8-byte MAGIC number, an int version, and an int block size, followed by a sequence of blocks,
+   each an int uncompressed length, an int compressed length, and the deflated bytes.  A block with an uncompressed
+   length of 0 ends the stream.  All numbers are big-endian.
+*/
+
+public class FastCheckpoint
+    {
+    /** The first eight bytes of every FastCheckpoint file ("MASONFCK"). */
+    public static final long MAGIC = 0x4D41534F4E46434BL;
+    /** The format version. */
+    public static final int VERSION = 1;
+    /** The default size of an uncompressed block: 4MB. */
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+    /** The default compression level: Deflater.BEST_SPEED. */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    static final int HEADER_LENGTH = 16;
+    static final int BLOCK_HEADER_LENGTH = 8;
+
+    // the number of blocks we compress or decompress ahead of the one we're writing or reading
+    static int blocksInFlight() { return Math.max(2, ParallelSequence.availableProcessors * 2); }
+
+    /** Returns true if the first bytes of the given file are the FastCheckpoint MAGIC number. */
+    public static boolean isFastCheckpoint(File file) throws IOException
+        {
+        DataInputStream s = new DataInputStream(new FileInputStream(file));
+        try { return file.length() >= HEADER_LENGTH && s.readLong() == MAGIC; }
+        finally { s.close(); }
+        }
+
+    /** Writes the SimState to the given file, calling preCheckpoint() before and postCheckpoint() afterwards. */
+    public static void write(SimState state, File file) throws IOException
+        {
+        write(state, file, DEFAULT_BLOCK_SIZE, DEFAULT_LEVEL);
+        }
+
+    /** Writes the SimState to the given file with the given uncompressed block size and Deflater compression level,
+        calling preCheckpoint() before and postCheckpoint() afterwards. */
+    public static void write(SimState state, File file, int blockSize, int level) throws IOException
+        {
+        FileOutputStream f = new FileOutputStream(file);
+        try
+            {
+            state.preCheckpoint();
+            BlockOutputStream b = new BlockOutputStream(f.getChannel(), blockSize, level);
+            ObjectOutputStream s = new ObjectOutputStream(b);
+            s.writeObject(state);
+            s.close();  // finishes the block stream
+            state.postCheckpoint();
+            }
+        finally
+            {
+            f.close();
+            }
+        }
+
+    /* Writes a snapshot taken by BackgroundCheckpoint to the given file. */
+    static void write(BackgroundCheckpoint.Snapshot snapshot, File file) throws IOException
+        {
+        FileOutputStream f = new FileOutputStream(file);
+        try
+            {
+            BlockOutputStream b = new BlockOutputStream(f.getChannel(), DEFAULT_BLOCK_SIZE, DEFAULT_LEVEL);
+            snapshot.writeTo(b);
+            b.close();
+            }
+        finally
+            {
+            f.close();
+            }
+        }
+
+    /** Reads a SimState from the given file, memory-mapping it, and calls awakeFromCheckpoint(). */
+    public static SimState read(File file) throws IOException, ClassNotFoundException
+        {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        try
+            {
+            ObjectInputStream s = new ObjectInputStream(new MappedBlockInputStream(f.getChannel()));
+            SimState state = (SimState)(s.readObject());
+            state.awakeFromCheckpoint();
+            return state;
+            }
+        finally
+            {
+            f.close();
+            }
+        }
+
+    /** Reads a SimState from a stream positioned at the start of a FastCheckpoint (including the MAGIC number),
+        and calls awakeFromCheckpoint().  Does not close the stream. */
+    public static SimState read(InputStream stream) throws IOException, ClassNotFoundException
+        {
+        ObjectInputStream s = new ObjectInputStream(new StreamBlockInputStream(stream));
+        SimState state = (SimState)(s.readObject());
+        state.awakeFromCheckpoint();
+        return state;
+        }
+
+    static void checkHeader(long magic, int version) throws IOException
+        {
+        checkHeader(magic, version, MAGIC, VERSION, "FastCheckpoint");
+        }
+
+    static void checkHeader(long magic, int version, long expectedMagic, int expectedVersion, String format) throws IOException
+        {
+        if (magic != expectedMagic) throw new IOException("Not a " + format);
+        if (version != expectedVersion) throw new IOException("Unknown " + format + " version " + version);
+        }
+
+    // Compresses a block into a ByteBuffer holding its block header and deflated bytes
+    static class Compress implements Callable
+        {
+        byte[] data;
+        int length;
+        int level;
+
+        Compress(byte[] data, int length, int level) { this.data = data; this.length = length; this.level = level; }
+
+        public Object call()
+            {
+            Deflater deflater = new Deflater(level);
+            try
+                {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                byte[] out = new byte[BLOCK_HEADER_LENGTH + length + length / 1000 + 64];
+                int pos = BLOCK_HEADER_LENGTH;
+                while(!deflater.finished())
+                    {
+                    if (pos == out.length)
+                        {
+                        byte[] temp = new byte[out.length * 2];
+                        System.arraycopy(out, 0, temp, 0, pos);
+                        out = temp;
+                        }
+                    pos += deflater.deflate(out, pos, out.length - pos);
+                    }
+                ByteBuffer buf = ByteBuffer.wrap(out, 0, pos);
+                buf.putInt(0, length);
+                buf.putInt(4, pos - BLOCK_HEADER_LENGTH);
+                return buf;
+                }
+            finally
+                {
+                deflater.end();
+                }
+            }
+        }
+
+    // Decompresses a block of known uncompressed length
+    static class Decompress implements Callable
+        {
+        ByteBuffer in;
+        int length;
+
+        Decompress(ByteBuffer in, int length) { this.in = in; this.length = length; }
+
+        public Object call() throws IOException
+            {
+            byte[] data;
+            int offset;
+            int len = in.remaining();
+            if (in.hasArray())
+                {
+                data = in.array();
+                offset = in.arrayOffset() + in.position();
+                }
+            else
+                {
+                data = new byte[len];
+                in.get(data);
+                offset = 0;
+                }
+            Inflater inflater = new Inflater();
+            try
+                {
+                inflater.setInput(data, offset, len);
+                byte[] out = new byte[length];
+                int pos = 0;
+                while(pos < length)
+                    {
+                    int n = inflater.inflate(out, pos, length - pos);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                        throw new IOException("Corrupt FastCheckpoint block");
+                    pos += n;
+                    }
+                return out;
+                }
+            catch (DataFormatException e)
+                {
+                throw new IOException("Corrupt FastCheckpoint block: " + e.getMessage());
+                }
+            finally
+                {
+                inflater.end();
+                }
+            }
+        }
+
+    static Object get(Future future) throws IOException
+        {
+        try
+            {
+            return future.get();
+            }
+        catch (InterruptedException e)
+            {
+            throw new InterruptedIOException();
+            }
+        catch (ExecutionException e)
+            {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) throw (IOException) t;
+            if (t instanceof RuntimeException) throw (RuntimeException) t;
+            if (t instanceof Error) throw (Error) t;
+            throw new IOException(t.toString());
+            }
+        }
+
+    /** An OutputStream which compresses blocks in parallel and writes them, in order, to a channel. */
+    static class BlockOutputStream extends OutputStream
+        {
+        WritableByteChannel channel;
+        int level;
+        byte[] block;
+        int length;
+        LinkedList pending = new LinkedList();  // Futures, in order
+        boolean closed;
+
+        BlockOutputStream(WritableByteChannel channel, int blockSize, int level) throws IOException
+            {
+            if (blockSize <= 0) throw new IllegalArgumentException("Block size must be > 0: " + blockSize);
+            this.channel = channel;
+            this.level = level;
+            block = new byte[blockSize];
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putLong(MAGIC).putInt(VERSION).putInt(blockSize);
+            header.flip();
+            writeFully(header);
+            }
+
+        void writeFully(ByteBuffer buf) throws IOException
+            {
+            while(buf.hasRemaining())
+                channel.write(buf);
+            }
+
+        public void write(int b) throws IOException
+            {
+            if (length == block.length) submit();
+            block[length++] = (byte) b;
+            }
+
+        public void write(byte[] b, int off, int len) throws IOException
+            {
+            while(len > 0)
+                {
+                if (length == block.length) submit();
+                int n = Math.min(len, block.length - length);
+                System.arraycopy(b, off, block, length, n);
+                length += n;
+                off += n;
+                len -= n;
+                }
+            }
+
+        // hands off the current block to be compressed and writes out finished blocks
+        void submit() throws IOException
+            {
+            if (length == 0) return;
+            pending.addLast(ForkJoinStrategy.getSharedPool().submit(new Compress(block, length, level)));
+            block = new byte[block.length];
+            length = 0;
+            while(pending.size() >= blocksInFlight())
+                writeFully((ByteBuffer)(get((Future)(pending.removeFirst()))));
+            }
+
+        /** Blocks are only written when full, so that flushing (as ObjectOutputStream does often) doesn't produce tiny blocks. */
+        public void flush() { }
+
+        public void close() throws IOException
+            {
+            if (closed) return;
+            closed = true;
+            submit();
+            while(!pending.isEmpty())
+                writeFully((ByteBuffer)(get((Future)(pending.removeFirst()))));
+            ByteBuffer end = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);  // zero-length block
+            writeFully(end);
+            }
+        }
+
+    /** An InputStream over a sequence of decompressed blocks. */
+    static abstract class BlockInputStream extends InputStream
+        {
+        byte[] block = new byte[0];
+        int pos;
+        boolean done;
+
+        /** Returns the next decompressed block, or null if there are no more. */
+        abstract byte[] nextBlock() throws IOException;
+
+        boolean fill() throws IOException
+            {
+            while(!done && pos == block.length)
+                {
+                byte[] b = nextBlock();
+                if (b == null) { done = true; block = new byte[0]; }
+                else block = b;
+                pos = 0;
+                }
+            return pos < block.length;
+            }
+
+        public int read() throws IOException
+            {
+            if (!fill()) return -1;
+            return block[pos++] & 0xFF;
+            }
+
+        public int read(byte[] b, int off, int len) throws IOException
+            {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, block.length - pos);
+            System.arraycopy(block, pos, b, off, n);
+            pos += n;
+            return n;
+            }
+
+        public int available() { return block.length - pos; }
+        }
+
+    /** Reads blocks from a memory-mapped file, decompressing several ahead in parallel.  Each block is mapped
+        together with the header of the block after it, so there is one mapping per block. */
+    static class MappedBlockInputStream extends BlockInputStream
+        {
+        FileChannel channel;
+        long size;
+        long position;      // where the next block's header begins
+        boolean ended;
+        boolean haveHeader; // whether we've read the next block's header
+        int nextLength;
+        int nextCompressed;
+        LinkedList pending = new LinkedList();  // Futures, in order
+
+        MappedBlockInputStream(FileChannel channel) throws IOException
+            {
+            this.channel = channel;
+            size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_LENGTH + BLOCK_HEADER_LENGTH));
+            if (header.remaining() < HEADER_LENGTH) throw new EOFException("Truncated FastCheckpoint");
+            checkHeader(header.getLong(), header.getInt());
+            header.position(HEADER_LENGTH);
+            position = HEADER_LENGTH;
+            readHeader(header);
+            }
+
+        // reads the next block's header from the end of the buffer, if it's all there
+        void readHeader(ByteBuffer buffer)
+            {
+            haveHeader = (buffer.remaining() >= BLOCK_HEADER_LENGTH);
+            if (haveHeader)
+                {
+                nextLength = buffer.getInt();
+                nextCompressed = buffer.getInt();
+                }
+            }
+
+        // maps and submits the next block for decompression, returning false if there are none
+        boolean submit() throws IOException
+            {
+            if (ended) return false;
+            if (!haveHeader) throw new EOFException("Truncated FastCheckpoint");
+            int length = nextLength;
+            int compressed = nextCompressed;
+            if (length == 0) { ended = true; return false; }
+            long start = position + BLOCK_HEADER_LENGTH;
+            if (start + compressed > size) throw new EOFException("Truncated FastCheckpoint");
+            ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min((long) compressed + BLOCK_HEADER_LENGTH, size - start));
+            region.position(compressed);
+            readHeader(region);
+            region.position(0);
+            region.limit(compressed);
+            position = start + compressed;
+            pending.addLast(ForkJoinStrategy.getSharedPool().submit(new Decompress(region.slice(), length)));
+            return true;
+            }
+
+        byte[] nextBlock() throws IOException
+            {
+            while(pending.size() < blocksInFlight() && submit()) { }
+            if (pending.isEmpty()) return null;
+            return (byte[])(get((Future)(pending.removeFirst())));
+            }
+        }
+
+    /** Reads blocks sequentially from a stream. */
+    static class StreamBlockInputStream extends BlockInputStream
+        {
+        DataInputStream in;
+
+        StreamBlockInputStream(InputStream stream) throws IOException
+            {
+            in = new DataInputStream(stream);
+            checkHeader(in.readLong(), in.readInt());
+            in.readInt();  // block size
+            }
+
+        byte[] nextBlock() throws IOException
+            {
+            int length = in.readInt();
+            int compressed = in.readInt();
+            if (length == 0) return null;
+            byte[] data = new byte[compressed];
+            in.readFully(data);
+            return (byte[])(new Decompress(ByteBuffer.wrap(data), length).call());
+            }
+        }
+    }
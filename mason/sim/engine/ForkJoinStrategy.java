@@ -0,0 +1,156 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.util.concurrent.*;
+
+/**
+   A ParallelStrategy which steps Steppables in a single ForkJoinPool shared by all ForkJoinStrategies.
+   The Steppables are recursively divided into tasks, and idle threads steal tasks from busy ones, so
+   Steppables which take uneven amounts of time do not leave CPUs idle as fixed contiguous blocks would.
+
+   <p>By default the strategy is <i>adaptive</i>: each time it is stepped it measures how long each Steppable
+   took on average, and the next time divides the Steppables into tasks of about getTargetNanos() nanoseconds each.
+   Tasks much smaller than this spend too long being scheduled; tasks much larger don't balance well.  If you'd
+   prefer a fixed number of Steppables per task, call setGrain(...).
+
+   <p>Because the pool is shared, cleanup() does nothing.  The pool's threads are daemon threads and
+   go away on their own when idle.
+*/
+
+public class ForkJoinStrategy implements ParallelStrategy
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The default target time, in nanoseconds, of a task in adaptive mode. */
+    public static final long DEFAULT_TARGET_NANOS = 100000;  // 100 microseconds
+    
+    static ForkJoinPool sharedPool = null;
+    
+    /** Returns the ForkJoinPool shared by all ForkJoinStrategies, with one thread per CPU or core. */
+    public static synchronized ForkJoinPool getSharedPool()
+        {
+        if (sharedPool == null)
+            sharedPool = new ForkJoinPool(ParallelSequence.availableProcessors);
+        return sharedPool;
+        }
+
+    int grain = 0;  // 0 means adaptive
+    long targetNanos = DEFAULT_TARGET_NANOS;
+    double nanosPerSteppable = -1;  // the running estimate, or -1 if we haven't measured yet
+    
+    /** Creates an adaptive ForkJoinStrategy. */
+    public ForkJoinStrategy() { }
+    
+    /** Creates a ForkJoinStrategy which places <i>grain</i> Steppables in each task, or if grain is 0, is adaptive. */
+    public ForkJoinStrategy(int grain)
+        {
+        setGrain(grain);
+        }
+    
+    /** Returns the number of Steppables placed in each task, or 0 if the strategy is adaptive. */
+    public synchronized int getGrain() { return grain; }
+    
+    /** Sets the number of Steppables placed in each task, or if 0, makes the strategy adaptive. */
+    public synchronized void setGrain(int val)
+        {
+        if (val < 0) throw new IllegalArgumentException("Grain must be >= 0: " + val);
+        grain = val;
+        }
+    
+    /** Returns the time, in nanoseconds, an adaptive strategy tries to make each task take. */
+    public synchronized long getTargetNanos() { return targetNanos; }
+    
+    /** Sets the time, in nanoseconds, an adaptive strategy tries to make each task take. */
+    public synchronized void setTargetNanos(long val)
+        {
+        if (val <= 0) throw new IllegalArgumentException("Target nanoseconds must be > 0: " + val);
+        targetNanos = val;
+        }
+    
+    /** Returns the present estimate of the CPU time, in nanoseconds, taken by a single Steppable, or -1 if
+        the strategy hasn't measured any yet. */
+    public synchronized double getNanosPerSteppable() { return nanosPerSteppable; }
+
+    // figures the number of Steppables per task
+    synchronized int figureGrain(int size, int threads)
+        {
+        if (threads < 1) threads = 1;
+        int max = Math.max(1, size / threads);  // make sure everyone gets something to do
+        if (grain > 0) return Math.min(grain, max);
+        if (nanosPerSteppable < 0)  // first time: be generous with the number of tasks
+            return Math.max(1, size / (threads * 8));
+        long g = (long)(targetNanos / Math.max(nanosPerSteppable, 1.0));
+        if (g < 1) g = 1;
+        if (g > max) g = max;
+        return (int) g;
+        }
+    
+    public void step(final SimState state, final Steppable[] steps, final int size, final int threads)
+        {
+        if (size == 0) return;
+        
+        ForkJoinPool pool = getSharedPool();
+        int g = figureGrain(size, threads);
+        long start = System.nanoTime();
+        pool.invoke(new Task(state, steps, 0, size, g));
+        long elapsed = System.nanoTime() - start;
+        
+        // the pool's threads were all (roughly) busy for the elapsed time, so we estimate
+        // the CPU time per steppable as elapsed * parallelism / size.  Then average with the past.
+        double estimate = (elapsed * (double) Math.min(pool.getParallelism(), (size + g - 1) / g)) / size;
+        synchronized(this)
+            {
+            if (nanosPerSteppable < 0) nanosPerSteppable = estimate;
+            else nanosPerSteppable = (nanosPerSteppable + estimate) / 2.0;
+            }
+        }
+    
+    public void cleanup() { }
+    
+    /** Steps steps[start] through steps[end-1], dividing in half until there are at most grain Steppables. */
+    static class Task extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        SimState state;
+        Steppable[] steps;
+        int start;
+        int end;
+        int grain;
+        
+        Task(SimState state, Steppable[] steps, int start, int end, int grain)
+            {
+            this.state = state;
+            this.steps = steps;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+            }
+        
+        protected void compute()
+            {
+            if (end - start <= grain)
+                {
+                Steppable[] steps = this.steps;
+                Profile profile = state.schedule.profile;
+                for(int s = start; s < end; s++)
+                    {
+                    Steppable step = steps[s];
+                    assert sim.util.LocationLog.set(step);
+                    if (profile == null) step.step(state);
+                    else profile.step(step, state);
+                    assert sim.util.LocationLog.clear();
+                    }
+                }
+            else
+                {
+                int mid = (start + end) >>> 1;
+                invokeAll(new Task(state, steps, start, mid, grain), new Task(state, steps, mid, end, grain));
+                }
+            }
+        }
+    }
@@ -0,0 +1,94 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.util.concurrent.*;
+
+/**
+   Work on a range of items (grid columns, network nodes, and so on) divided into blocks of a fixed size, which run()
+   performs either in the calling thread or in ForkJoinStrategy's shared pool.  Override items(...) to do the work for
+   a block.  Each block must be independent of the others.
+
+   <p>The blocks depend only on the number of items and the items per block, never on the number of threads, so that
+   results computed block by block (such as partial sums) and then combined in block order come out the same however
+   many threads there are.
+*/
+
+public abstract class ParallelBlocks
+    {
+    /** The number of items. */
+    protected final int items;
+    /** The number of items in each block, except perhaps the last. */
+    protected final int itemsPerBlock;
+    /** The number of blocks. */
+    protected final int blocks;
+
+    /** Divides items 0 through items-1 into blocks of itemsPerBlock items each, the last of which may be smaller. */
+    public ParallelBlocks(int items, int itemsPerBlock)
+        {
+        if (items < 0) throw new IllegalArgumentException("Items must be >= 0: " + items);
+        if (itemsPerBlock < 1) throw new IllegalArgumentException("Items per block must be >= 1: " + itemsPerBlock);
+        this.items = items;
+        this.itemsPerBlock = itemsPerBlock;
+        blocks = (int)(((long) items + itemsPerBlock - 1) / itemsPerBlock);
+        }
+
+    /** Returns the number of blocks. */
+    public int getBlocks() { return blocks; }
+
+    /** Does the work for items from through to-1, which make up block blk. */
+    protected abstract void items(int from, int to, int blk);
+
+    void block(int blk)
+        {
+        int from = blk * itemsPerBlock;
+        items(from, (int) Math.min(items, (long) from + itemsPerBlock), blk);
+        }
+
+    /** Does the work for every block, in the shared pool, or in the calling thread if the pool has only one thread
+        or there is only one block.  Returns when all the blocks are done. */
+    public void run()
+        {
+        ForkJoinPool pool = ForkJoinStrategy.getSharedPool();
+        if (pool.getParallelism() <= 1 || blocks <= 1)
+            for(int i = 0; i < blocks; i++)
+                block(i);
+        else pool.invoke(new Task(this, 0, blocks));
+        }
+
+    /** Returns the number of threads the shared pool will use. */
+    public static int threads()
+        {
+        return Math.max(1, ForkJoinStrategy.getSharedPool().getParallelism());
+        }
+
+    /** Runs blocks start through end-1, dividing in half until there is a single block. */
+    static class Task extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        ParallelBlocks work;
+        int start;
+        int end;
+
+        Task(ParallelBlocks work, int start, int end)
+            {
+            this.work = work;
+            this.start = start;
+            this.end = end;
+            }
+
+        protected void compute()
+            {
+            if (end - start == 1) work.block(start);
+            else
+                {
+                int mid = (start + end) >>> 1;
+                invokeAll(new Task(work, start, mid), new Task(work, mid, end));
+                }
+            }
+        }
+    }
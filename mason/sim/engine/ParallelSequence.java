@@ -18,7 +18,9 @@ import sim.util.*;
     <p>For example, keep in mind that the random number generator is unsynchronized.
     If you access the random number generator from within a ParallelSequence, or
     indeed from multiple threads you've spawned in other situations, you need
-    to remember to lock on the random number generator itself.
+    to remember to lock on the random number generator itself.  Better still, give each
+    of your Steppables its own generator via SimState.newRandomStream(...), which avoids the lock
+    and makes your results independent of the number of threads.
     
     <p>In the same vein, if you use a RandomSequence within a ParallelSequence, you need
     to let the RandomSequence know this so that it will lock on the random number generator
@@ -50,6 +52,14 @@ import sim.util.*;
     at the end of the run to call cleanup() on it.  It's not a bad idea for a ParallelSequence which
     is one-shot rather than repeating.
     
+    <p><b>Strategies</b>
+    By default a ParallelSequence divides its Steppables into one contiguous block per thread and runs the blocks
+    in its own thread pool.  If some Steppables take much longer than others, this can leave threads idle.  You can
+    instead provide a ParallelStrategy via setStrategy(...), which will be handed the Steppables to step.  ForkJoinStrategy
+    uses a shared work-stealing pool and adapts its task sizes to how long the Steppables take; VirtualThreadStrategy
+    steps each Steppable in its own thread, which is appropriate for Steppables which block on I/O.  The number of
+    threads (including CPUS and STEPPABLES) is passed to the strategy, which may treat it as a hint.
+    
     <p>Be sure to read the class documentation on sim.engine.Sequence</b>
 */
 
@@ -61,6 +71,7 @@ public class ParallelSequence extends Sequence
     boolean operating = false;  // checking for circularity
     boolean destroysThreads = false;
     int numThreads = 0;
+    ParallelStrategy strategy = null;
     
     /** Indicates that MASON should determine how many threads to use based on the number of CPUs. */ 
     public static final int CPUS = -1;
@@ -69,6 +80,29 @@ public class ParallelSequence extends Sequence
         
     public boolean getDestroysThreads() { return destroysThreads; }
     public void setDestroysThreads(boolean val) { destroysThreads = val; }
+    
+    /** Returns the ParallelStrategy used to step the Steppables, or null if the ParallelSequence uses its own thread pool (the default). */
+    public ParallelStrategy getStrategy() 
+        {
+        synchronized(operatingLock)
+            {
+            return strategy;
+            }
+        }
+    
+    /** Sets the ParallelStrategy used to step the Steppables, or null to use the ParallelSequence's own thread pool (the default). 
+        The previous strategy, if any, is cleaned up. */
+    public void setStrategy(ParallelStrategy val)
+        {
+        synchronized(operatingLock)
+            {
+            if (operating)
+                throw new RuntimeException("ParallelSequence's strategy may not be changed while it is being stepped.");
+            if (strategy != null && strategy != val)
+                strategy.cleanup();
+            strategy = val;
+            }
+        }
         
     /// Threads are not serializable, so we must manually rebuild here
     private void writeObject(java.io.ObjectOutputStream p)
@@ -77,6 +111,7 @@ public class ParallelSequence extends Sequence
         p.writeBoolean(pleaseDie);
         p.writeBoolean(destroysThreads);
         p.writeInt(numThreads);
+        p.writeObject(strategy);
         // don't write operating
         // dont' write threads
         }
@@ -88,6 +123,8 @@ public class ParallelSequence extends Sequence
         pleaseDie = p.readBoolean();
         destroysThreads = p.readBoolean();
         numThreads = p.readInt();
+        try { strategy = (ParallelStrategy)(p.readObject()); }
+        catch (java.io.OptionalDataException e) { strategy = null; }  // written before we had strategies
         // don't write operating
         // dont' write threads
         // rebuild locks
@@ -112,6 +149,8 @@ public class ParallelSequence extends Sequence
             threads.killThreads();
         pleaseDie = false;
         threads = null;
+        if (strategy != null)
+            strategy.cleanup();
         }
 
     protected void finalize() throws Throwable
@@ -169,9 +208,6 @@ public class ParallelSequence extends Sequence
             loadSteps();
             }
 
-        if (threads == null)  // rebuild threads
-            threads = new ThreadPool();
-
         // How many threads?
         int size = this.size;
         int n = numThreads;
@@ -182,6 +218,26 @@ public class ParallelSequence extends Sequence
         if (n > size)
             n = size;
         
+        ParallelStrategy strategy = this.strategy;
+        if (strategy != null)
+            {
+            try
+                {
+                strategy.step(state, steps, size, n);
+                }
+            finally
+                {
+                if (destroysThreads)
+                    strategy.cleanup();
+                // don't need to synchronize to turn operating off
+                operating = false;
+                }
+            return;
+            }
+
+        if (threads == null)  // rebuild threads
+            threads = new ThreadPool();
+        
         int jump = size / n;
         int extra = size % n;
         int current = 0;
@@ -363,12 +419,14 @@ public class ParallelSequence extends Sequence
             {
             Steppable[] steps = ParallelSequence.this.steps;
             int modulo = this.modulo;
+            Profile profile = state.schedule.profile;
             for(int s = start; s < end; s += modulo)
                 {
                 if (pleaseDie) break;
                 Steppable step = steps[s];
                 assert sim.util.LocationLog.set(step);
-                steps[s].step(state);
+                if (profile == null) step.step(state);
+                else profile.step(step, state);
                 assert sim.util.LocationLog.clear();
                 }
             }
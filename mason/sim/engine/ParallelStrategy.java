@@ -0,0 +1,30 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+
+/**
+   A ParallelStrategy decides how a ParallelSequence distributes its Steppables over threads.
+   By default a ParallelSequence has no strategy, and divides its Steppables into one contiguous
+   block per thread, running them in its own private thread pool.  If you give it a ParallelStrategy
+   via setStrategy(...), the ParallelSequence instead hands its Steppables to the strategy to step.
+
+   <p>MASON provides two strategies.  ForkJoinStrategy steps the Steppables in a shared work-stealing
+   ForkJoinPool, adapting the size of its tasks to the measured cost of each Steppable.  VirtualThreadStrategy
+   steps each Steppable in its own (virtual, if the JVM supports them) thread, which is appropriate for
+   Steppables which spend most of their time waiting on I/O.
+*/
+
+public interface ParallelStrategy extends java.io.Serializable
+    {
+    /** Steps steps[0] through steps[size-1] in parallel, and returns only when all of them have been stepped.
+        <i>threads</i> is the number of threads the ParallelSequence would like to be used, as determined from
+        its CPUS or STEPPABLES setting or its explicit thread count.  Strategies may treat this as a hint. */
+    public void step(SimState state, Steppable[] steps, int size, int threads);
+    
+    /** Releases any threads or other resources held by the strategy.  Called by ParallelSequence.cleanup(). */
+    public void cleanup();
+    }
@@ -0,0 +1,308 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import sim.util.*;
+
+/**
+   A Heap specialized for the Schedule.  Rather than holding an array of Comparable Schedule.Key objects,
+   PrimitiveHeap stores the time and ordering of each event in parallel double[] and int[] arrays, and
+   compares them directly rather than through compareTo(...).  This means that the Schedule need not
+   allocate a Key every time it schedules an event, and extracting events doesn't go through virtual calls.
+
+   <p>PrimitiveHeap performs exactly the same heap operations, in exactly the same order, as sim.util.Heap.
+   Thus Steppables scheduled for the same time and ordering come out of a PrimitiveHeap in the same order
+   as they would have come out of a Heap, and so (after shuffling with the same random number generator)
+   the simulation produces identical results.
+
+   <p>The Comparable-based methods inherited from Heap still work: getKeys() and getMinKey() build
+   Schedule.Key objects on the fly, and add(Object, Comparable) requires that the key be a Schedule.Key.
+   You can turn on a PrimitiveHeap in the Schedule by calling Schedule.setPrimitiveHeap(true).
+*/
+
+public class PrimitiveHeap extends Heap
+    {
+    private static final long serialVersionUID = 1;
+
+    // the times of the keys
+    double[] times;
+
+    // the orderings of the keys
+    int[] orderings;
+
+    // the information associated with the keys
+    Object[] objs;
+
+    int numObjs;
+
+    /** Constructs an empty heap. */
+    public PrimitiveHeap()
+        {
+        this(new double[0], new int[0], new Object[0]);
+        }
+
+    /** Constructs a heap holding the given times, orderings, and objects.  The arrays are used directly. */
+    public PrimitiveHeap(double[] times, int[] orderings, Object[] objects)
+        {
+        if (times.length != objects.length || orderings.length != objects.length)
+            throw new IllegalArgumentException("times, orderings, and objects must be of the same length");
+        this.times = times;
+        this.orderings = orderings;
+        this.objs = objects;
+        this.numObjs = objects.length;
+        buildPrimitiveHeap();
+        }
+
+    // builds the heap
+    void buildPrimitiveHeap()
+        {
+        for( int i = numObjs/2 ; i >= 1 ; i-- )
+            heapify( i, numObjs );
+        }
+
+    void heapify( int i, int heapsize )
+        {
+        // make local
+        Object[] objs = this.objs;
+        double[] times = this.times;
+        int[] orderings = this.orderings;
+
+        while( true )
+            {
+            int l = 2*i;
+            int r = 2*i+1;
+            int smallest;
+            if( l <= heapsize && (times[l-1] < times[i-1] || (times[l-1] == times[i-1] && orderings[l-1] < orderings[i-1])))
+                smallest = l;
+            else
+                smallest = i;
+            if( r <= heapsize && (times[r-1] < times[smallest-1] || (times[r-1] == times[smallest-1] && orderings[r-1] < orderings[smallest-1])))
+                smallest = r;
+            if( smallest != i )
+                {
+                // swap keys
+                double temptime = times[i-1];
+                times[i-1] = times[smallest-1];
+                times[smallest-1] = temptime;
+                int tempordering = orderings[i-1];
+                orderings[i-1] = orderings[smallest-1];
+                orderings[smallest-1] = tempordering;
+                // swap info
+                Object temp = objs[i-1];
+                objs[i-1] = objs[smallest-1];
+                objs[smallest-1] = temp;
+                i = smallest;
+                }
+            else
+                return;
+            }
+        }
+
+    /** Returns new Schedule.Key objects representing the keys presently in the heap, in heap order. */
+    public Comparable[] getKeys()
+        {
+        Comparable[] k = new Comparable[numObjs];
+        for(int x = 0; x < numObjs; x++)
+            k[x] = new Schedule.Key(times[x], orderings[x]);
+        return k;
+        }
+
+    public Object[] getObjects()
+        {
+        Object[] o = new Object[numObjs];
+        System.arraycopy(objs,0,o,0,numObjs);
+        return o;
+        }
+
+    /** Returns a new Schedule.Key representing the current min key.  Returns null if there is no such element.
+        Does not extract the element.  Prefer getMinTime() and getMinOrdering(), which do not allocate. */
+    public Comparable getMinKey()
+        {
+        if (numObjs == 0) return null;
+        return new Schedule.Key(times[1-1], orderings[1-1]);
+        }
+
+    /** Returns the time of the current min element.  Returns Schedule.AFTER_SIMULATION if there is no such element. */
+    public double getMinTime()
+        {
+        if (numObjs == 0) return Schedule.AFTER_SIMULATION;
+        return times[1-1];
+        }
+
+    /** Returns the ordering of the current min element.  Returns 0 if there is no such element. */
+    public int getMinOrdering()
+        {
+        if (numObjs == 0) return 0;
+        return orderings[1-1];
+        }
+
+    /** Returns the current min element.  Returns null if there is no such element.  Does not extract the element. */
+    public Object getMin()
+        {
+        if (numObjs == 0) return null;
+        return objs[1-1];
+        }
+
+    /** Removes all key-equal minimum elements and adds them to a Bag, which is then is returned.
+        You may provide a Bag -- putInHere -- to be filled in. */
+    public Bag extractMin(Bag putInHere)
+        {
+        if (numObjs == 0)
+            {
+            if (putInHere == null) return new Bag(0);
+            else return putInHere;
+            }
+
+        if (putInHere==null) putInHere = new Bag();
+        double time = times[1-1];
+        int ordering = orderings[1-1];
+        putInHere.add(extractMin());
+        while(numObjs > 0 && times[1-1] == time && orderings[1-1] == ordering)
+            putInHere.add(extractMin());
+        return putInHere;
+        }
+
+    /** Removes the first minimum element and its key from the heap, and returns the minimum element.  Will return null if the heap is empty */
+    public Object extractMin()
+        {
+        // make local
+        int numObjs = this.numObjs;
+        Object[] objs = this.objs;
+
+        if( numObjs == 0 )
+            return null;
+        // remove the key
+        times[1-1] = times[numObjs-1];
+        orderings[1-1] = orderings[numObjs-1];
+        // remove the info
+        Object result = objs[1-1];
+        objs[1-1] = objs[numObjs-1];
+        objs[numObjs-1] = null;
+        numObjs--;
+        // rebuild heap
+        if (numObjs > 1) heapify( 1, numObjs );    // no need to heapify if there's only zero or one element!
+
+        // put back
+        this.numObjs = numObjs;
+        return result;
+        }
+
+    /** Adds an element to the heap with the given key, which must be a Schedule.Key. */
+    public void add( Object elem, Comparable key )
+        {
+        Schedule.Key k = (Schedule.Key) key;
+        add(elem, k.time, k.ordering);
+        }
+
+    /** Adds an element to the heap with the given time and ordering. */
+    public void add( Object elem, double time, int ordering )
+        {
+        // make local
+        int numObjs = this.numObjs;
+        Object[] objs = this.objs;
+        double[] times = this.times;
+        int[] orderings = this.orderings;
+
+        numObjs++;
+        if( (numObjs-1) >= objs.length )
+            {
+            Object[] temp = new Object[ objs.length * 2 + 1];
+            System.arraycopy( objs, 0, temp, 0, objs.length );
+            objs = temp;
+            double[] temptimes = new double[ times.length * 2 + 1];
+            System.arraycopy( times, 0, temptimes, 0, times.length );
+            times = temptimes;
+            int[] temporderings = new int[ orderings.length * 2 + 1];
+            System.arraycopy( orderings, 0, temporderings, 0, orderings.length );
+            orderings = temporderings;
+
+            // arrays may have changed
+            this.objs = objs;
+            this.times = times;
+            this.orderings = orderings;
+            }
+        int i = numObjs;
+
+        if (i > 1)  // no need to bubble up if there's only zero or one element!
+            {
+            while ( i > 1 && (time < times[i/2-1] || (time == times[i/2-1] && ordering < orderings[i/2-1])))
+                {
+                objs[i-1] = objs[i/2-1];
+                times[i-1] = times[i/2-1];
+                orderings[i-1] = orderings[i/2-1];
+                i = i/2;
+                }
+            }
+        times[i-1] = time;
+        orderings[i-1] = ordering;
+        objs[i-1] = elem;
+
+        // put back
+        this.numObjs = numObjs;
+        }
+
+    public int size()
+        {
+        return numObjs;
+        }
+
+    public boolean isEmpty()
+        {
+        return (numObjs==0);
+        }
+
+    public void clear()
+        {
+        int len = numObjs;
+
+        // let go of the objects so they GC
+        Object[] objs = this.objs;
+        for(int x=0;x<len;x++)
+            objs[x] = null;
+
+        numObjs = 0;
+        }
+
+    /**
+       Produces a new PrimitiveHeap which is the union of this heap with the other.  The other heap
+       may be a plain Heap so long as its keys are Schedule.Keys.
+       The original heaps are not modified.  The new heap is returned.
+    */
+    public Heap merge(Heap other)
+        {
+        int otherNum = other.size();
+        int n = this.numObjs + otherNum;
+        double[] combinedTimes = new double[n];
+        int[] combinedOrderings = new int[n];
+        Object[] combinedObjects = new Object[n];
+
+        System.arraycopy(times, 0, combinedTimes, 0, this.numObjs);
+        System.arraycopy(orderings, 0, combinedOrderings, 0, this.numObjs);
+        System.arraycopy(objs, 0, combinedObjects, 0, this.numObjs);
+
+        if (other instanceof PrimitiveHeap)
+            {
+            PrimitiveHeap o = (PrimitiveHeap) other;
+            System.arraycopy(o.times, 0, combinedTimes, this.numObjs, otherNum);
+            System.arraycopy(o.orderings, 0, combinedOrderings, this.numObjs, otherNum);
+            System.arraycopy(o.objs, 0, combinedObjects, this.numObjs, otherNum);
+            }
+        else
+            {
+            Comparable[] otherKeys = other.getKeys();
+            Object[] otherObjects = other.getObjects();
+            for(int x = 0; x < otherNum; x++)
+                {
+                Schedule.Key k = (Schedule.Key)(otherKeys[x]);
+                combinedTimes[this.numObjs + x] = k.time;
+                combinedOrderings[this.numObjs + x] = k.ordering;
+                combinedObjects[this.numObjs + x] = otherObjects[x];
+                }
+            }
+
+        return new PrimitiveHeap(combinedTimes, combinedOrderings, combinedObjects);
+        }
+    }
@@ -0,0 +1,270 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.lang.management.*;
+import java.util.*;
+
+/**
+   Records how much time, and memory, the Steppables of a simulation take.  To profile a simulation, call
+   schedule.setProfile(new Profile()) after start(), or pass -profile to doLoop, which prints a report when each job ends.
+
+   <p>While a Profile is installed, the Schedule, Sequence, RandomSequence, and ParallelSequence time every call they
+   make to step(...).  For each class of Steppable, the Profile records the number of calls, the total and maximum
+   nanoseconds per call, and the number of bytes allocated during the calls (if the JVM can measure this: see
+   isTrackingAllocation()).  Steppables which were scheduled repeating, or wrapped in TentativeSteps, are recorded under
+   the class of the Steppable they wrap.  The time of a Sequence includes the time of the Steppables in it, which are
+   also recorded under their own classes.
+
+   <p>The Profile also records, for each ordering in the Schedule, how many Steppables were stepped in it, the total
+   and maximum nanoseconds it took per timestep, and the bytes allocated.  If the Schedule is stepping orderings in
+   parallel (see Schedule.setParallelOrderings(...)), the time is the wall-clock time of the ordering, and the bytes
+   allocated are recorded only under the Steppables' classes, not under the ordering.
+
+   <p>When no Profile is installed, the only cost is a check of a single field per ordering or per Sequence.
+   Profiling itself costs on the order of a hundred nanoseconds per call, part of it in measuring allocation, which you
+   can turn off with setTrackingAllocation(false).  A Profile is not saved in checkpoints.
+*/
+
+public class Profile
+    {
+    /** The statistics gathered for one class of Steppable, or for one ordering. */
+    public static class Entry
+        {
+        String name;
+        long calls;
+        long totalNanos;
+        long maxNanos;
+        long allocatedBytes;
+
+        Entry(String name) { this.name = name; }
+
+        synchronized void add(long calls, long nanos, long bytes)
+            {
+            this.calls += calls;
+            totalNanos += nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+            if (bytes > 0) allocatedBytes += bytes;
+            }
+
+        /** The class name, or "Ordering N". */
+        public String getName() { return name; }
+        /** The number of calls to step(...).  For an ordering, the number of Steppables stepped in it. */
+        public synchronized long getCalls() { return calls; }
+        /** The total nanoseconds spent. */
+        public synchronized long getTotalNanos() { return totalNanos; }
+        /** The largest number of nanoseconds spent in a single call, or for an ordering, in a single timestep. */
+        public synchronized long getMaxNanos() { return maxNanos; }
+        /** The bytes allocated, or 0 if allocation is not being tracked. */
+        public synchronized long getAllocatedBytes() { return allocatedBytes; }
+        public String toString() { return name; }
+        }
+
+    /* Measures allocation through com.sun.management.ThreadMXBean, which HotSpot-derived JVMs provide.  It's in its
+       own class so that Profile still loads on JVMs which don't have it: see canTrackAllocation(). */
+    static class Allocation
+        {
+        static com.sun.management.ThreadMXBean bean;
+        static
+            {
+            java.lang.management.ThreadMXBean b = ManagementFactory.getThreadMXBean();
+            if (b instanceof com.sun.management.ThreadMXBean)
+                {
+                com.sun.management.ThreadMXBean c = (com.sun.management.ThreadMXBean) b;
+                if (c.isThreadAllocatedMemorySupported())
+                    {
+                    c.setThreadAllocatedMemoryEnabled(true);
+                    bean = c;
+                    }
+                }
+            }
+        static long bytes() { return bean.getThreadAllocatedBytes(Thread.currentThread().getId()); }
+        }
+    
+    static boolean canTrackAllocation;
+    static
+        {
+        try { canTrackAllocation = (Allocation.bean != null); }
+        catch (Throwable e) { canTrackAllocation = false; }  // not a HotSpot-like JVM, or not permitted
+        }
+
+    HashMap classes = new HashMap();    // Class -> Entry
+    HashMap orderings = new HashMap();  // Integer -> Entry
+    boolean trackingAllocation = canTrackAllocation;
+    long allocationOverhead = 0;  // the bytes which measuring allocation itself allocates
+
+    public Profile()
+        {
+        if (trackingAllocation)
+            {
+            long b0 = allocatedBytes();
+            long b1 = allocatedBytes();
+            allocationOverhead = b1 - b0;
+            }
+        }
+
+    /** Returns true if allocation can be measured on this JVM. */
+    public static boolean canTrackAllocation() { return canTrackAllocation; }
+
+    /** Returns true if allocation is being measured. */
+    public boolean isTrackingAllocation() { return trackingAllocation; }
+
+    /** Turns measuring allocation on or off.  It cannot be turned on if canTrackAllocation() is false. */
+    public void setTrackingAllocation(boolean val) { trackingAllocation = val && canTrackAllocation(); }
+
+    // returns the bytes allocated so far by the current thread, or 0
+    long allocatedBytes()
+        {
+        if (!trackingAllocation) return 0;
+        return Allocation.bytes();
+        }
+
+    // returns the class under which a Steppable is recorded, looking inside the Schedule's wrappers
+    static Class classOf(Steppable step)
+        {
+        while(true)
+            {
+            Steppable inner = null;
+            if (step instanceof IterativeRepeat) inner = ((IterativeRepeat)step).step;
+            else if (step instanceof TentativeStep) inner = ((TentativeStep)step).step;
+            if (inner == null) return step.getClass();
+            step = inner;
+            }
+        }
+
+    Entry classEntry(Class c)
+        {
+        synchronized(classes)
+            {
+            Entry e = (Entry)(classes.get(c));
+            if (e == null) { e = new Entry(c.getName()); classes.put(c, e); }
+            return e;
+            }
+        }
+
+    Entry orderingEntry(int ordering)
+        {
+        synchronized(orderings)
+            {
+            Integer key = Integer.valueOf(ordering);
+            Entry e = (Entry)(orderings.get(key));
+            if (e == null) { e = new Entry("Ordering " + ordering); orderings.put(key, e); }
+            return e;
+            }
+        }
+
+    /** Steps the Steppable, recording the time and memory it took. */
+    public void step(Steppable step, SimState state)
+        {
+        Entry entry = classEntry(classOf(step));  // look up before we start timing
+        long bytes = allocatedBytes();
+        long time = System.nanoTime();
+        try
+            {
+            step.step(state);
+            }
+        finally
+            {
+            time = System.nanoTime() - time;
+            if (trackingAllocation) bytes = allocatedBytes() - bytes - allocationOverhead;
+            entry.add(1, time, bytes);
+            }
+        }
+
+    /** Records that an ordering stepped the given number of Steppables, taking the given time and memory. */
+    void addOrdering(int ordering, long calls, long nanos, long bytes)
+        {
+        orderingEntry(ordering).add(calls, nanos, bytes);
+        }
+
+    /** Returns the statistics for each class of Steppable, from the most total time to the least. */
+    public Entry[] getClassEntries()
+        {
+        Entry[] e;
+        synchronized(classes) { e = (Entry[])(classes.values().toArray(new Entry[classes.size()])); }
+        Arrays.sort(e, new Comparator()
+            {
+            public int compare(Object o1, Object o2)
+                {
+                long t1 = ((Entry)o1).getTotalNanos();
+                long t2 = ((Entry)o2).getTotalNanos();
+                return (t1 > t2 ? -1 : (t1 < t2 ? 1 : 0));
+                }
+            });
+        return e;
+        }
+
+    /** Returns the statistics for each ordering, from the lowest ordering to the highest. */
+    public Entry[] getOrderingEntries()
+        {
+        Integer[] keys;
+        synchronized(orderings) { keys = (Integer[])(orderings.keySet().toArray(new Integer[orderings.size()])); }
+        Arrays.sort(keys);
+        Entry[] e = new Entry[keys.length];
+        synchronized(orderings)
+            {
+            for(int i = 0; i < keys.length; i++)
+                e[i] = (Entry)(orderings.get(keys[i]));
+            }
+        return e;
+        }
+
+    /** Clears all the statistics gathered so far. */
+    public void reset()
+        {
+        synchronized(classes) { classes.clear(); }
+        synchronized(orderings) { orderings.clear(); }
+        }
+
+    /** Returns a report of the statistics, one line per class and one per ordering. */
+    public String report()
+        {
+        StringBuffer b = new StringBuffer();
+        b.append(header("Steppable"));
+        Entry[] e = getClassEntries();
+        for(int i = 0; i < e.length; i++)
+            b.append(line(e[i]));
+        b.append("\n").append(header("Ordering"));
+        e = getOrderingEntries();
+        for(int i = 0; i < e.length; i++)
+            b.append(line(e[i]));
+        return b.toString();
+        }
+
+    String header(String name)
+        {
+        return pad(name, 40) + pad("Calls", -14) + pad("Total ms", -14) + pad("Mean us", -12) + pad("Max us", -12) +
+            (trackingAllocation ? pad("Bytes/call", -12) : "") + "\n";
+        }
+
+    String line(Entry e)
+        {
+        long calls = e.getCalls();
+        return pad(e.getName(), 40) +
+            pad("" + calls, -14) +
+            pad(format(e.getTotalNanos() / 1000000.0), -14) +
+            pad(format(calls == 0 ? 0 : e.getTotalNanos() / 1000.0 / calls), -12) +
+            pad(format(e.getMaxNanos() / 1000.0), -12) +
+            (trackingAllocation ? pad("" + (calls == 0 ? 0 : e.getAllocatedBytes() / calls), -12) : "") + "\n";
+        }
+
+    static String format(double d)
+        {
+        return "" + Math.round(d * 100) / 100.0;
+        }
+
+    // pads to the given width, on the right if width > 0, else on the left
+    static String pad(String s, int width)
+        {
+        int w = Math.abs(width);
+        if (s.length() >= w) return s + " ";
+        StringBuffer b = new StringBuffer();
+        if (width < 0) for(int i = s.length(); i < w; i++) b.append(' ');
+        b.append(s);
+        if (width > 0) for(int i = s.length(); i < w; i++) b.append(' ');
+        return b.toString();
+        }
+    }
@@ -82,12 +82,14 @@ public class RandomSequence extends Sequence
             }
             
         // finally execute
+        Profile profile = state.schedule.profile;
         for(int x=0;x<size;x++)
             {
             if (steps[x]!=null) 
                 {
                 assert sim.util.LocationLog.set(steps[x]);
-                steps[x].step(state);
+                if (profile == null) steps[x].step(state);
+                else profile.step(steps[x], state);
                 assert sim.util.LocationLog.clear();
                 }
             }
@@ -6,6 +6,7 @@
 
 package sim.engine;
 import java.io.Serializable;
+import java.util.concurrent.*;
 
 import sim.util.*;
 import ec.util.*;
@@ -80,6 +81,13 @@ import ec.util.*;
    (like AsynchronousSteppable or ParallelSequence), they can turn around and submit step-requests to the Schedule even while it's still
    in its step() method.
    
+   <p>The time, steps, and sealed flag are volatile, so getTime(), getSteps(), and isSealed() do not need to lock at all.
+   If you call setConcurrentScheduling(true), then while step() is stepping its Steppables, threads other than the one calling step()
+   (such as ParallelSequence threads) don't lock either when they schedule events.  Instead each such thread places its events in its own
+   staging buffer, and step() adds all the buffered events to the queue just before it returns.  Because the time cannot change while
+   the Steppables are being stepped, the events are scheduled for exactly the same times and orderings as they would have been had they been
+   placed directly in the queue.  Threads which schedule events in between calls to step() still lock as usual.
+   
    <p>One downside to this flexibility is that it's very inefficient to check, at each step of a Steppable, whether the Schedule
    has been reset or not.  Thus now if you call reset() or [better] SimState.kill(), the Schedule will continue to step Steppables
    until it has exhausted ones scheduled for the current timestep.  Only at that point will it cease.
@@ -88,6 +96,22 @@ import ec.util.*;
    but it could be made more efficient with a Calendar Queue designed for the purposes of your simulation.  We settled on a Heap because
    we do not know what the expected scheduling pattern will be for any given simulation, and so had to go for the most general case.  If you'd
    care to customize your queue, you can do so by overriding the createHeap() method in a custom Schedule.  We imagine this would be rare.
+   
+   <p>If you schedule very large numbers of events, you can call setPrimitiveHeap(true) to have the Schedule use a PrimitiveHeap
+   instead.  A PrimitiveHeap stores times and orderings in primitive arrays rather than as Key objects, so scheduling an event
+   no longer allocates a Key and the heap no longer compares keys through compareTo(...).  PrimitiveHeap performs the very same
+   heap operations as Heap, so your simulation results will not change.
+   
+   <p><b>Parallel Orderings</b>.  If you call setParallelOrderings(<i>threads</i>), then each ordering at a given timestep becomes
+   a parallel phase.  The Steppables in the ordering are divided into a fixed number of chunks (see setParallelChunks(...)), and
+   the chunks are stepped in parallel by a work-stealing pool of the given number of threads.  The Schedule waits for all the chunks
+   of an ordering to complete before it moves on to the next ordering.  As with ParallelSequence, you should only do this if the
+   Steppables in each ordering can be stepped independently of one another without race conditions.
+   
+   <p>Each chunk is given its own random number generator, seeded from the SimState's generator, and Steppables should get it by
+   calling getRandom(state) rather than using state.random directly.  Events scheduled by Steppables while they are being stepped in
+   a chunk are held aside and added to the queue, in chunk order, once the ordering has completed.  Thus so long as you don't change
+   the number of chunks, your results will be the same no matter how many threads you use.
 */
     
 
@@ -109,25 +133,70 @@ public class Schedule implements java.io.Serializable
     // should we shuffle individuals with the same timestep and ordering?
     boolean shuffling = true;  // by default, we WANT to shuffle
 
+    // should we use a PrimitiveHeap rather than a Heap?
+    boolean primitiveHeap = false;
+
     /** The Schedule's queue. */
     protected Heap queue = createHeap();
     
     /** Returns a Heap to be used by the Schedule.  By default, returns a
-        binary heap.  Override this to provide your own
+        binary heap, or a PrimitiveHeap if setPrimitiveHeap(true) has been called.  Override this to provide your own
         subclass of Heap tuned for your particular problem. */
-    protected Heap createHeap() { return new Heap(); }
+    protected Heap createHeap() { return primitiveHeap ? new PrimitiveHeap() : new Heap(); }
+    
+    /** Sets the Schedule to use a PrimitiveHeap (if true) or an ordinary Heap (if false, the default) as its queue.
+        Any events presently in the queue are moved to the new queue.  This has no effect if you have
+        overridden createHeap().  */
+    public void setPrimitiveHeap(boolean val)
+        {
+        synchronized(lock)
+            {
+            if (primitiveHeap == val) return;
+            primitiveHeap = val;
+            Heap old = queue;
+            queue = createHeap();
+            if (!old.isEmpty()) queue = queue.merge(old);
+            }
+        }
+    
+    /** Returns true if the Schedule uses a PrimitiveHeap as its queue (see setPrimitiveHeap(...)). */
+    public boolean isPrimitiveHeap()
+        {
+        synchronized(lock)
+            {
+            return primitiveHeap;
+            }
+        }
+    
+    // Returns the time of the minimum key in the queue, which must not be empty.
+    // You must synchronize on this.lock before calling this method.
+    double minTime()
+        {
+        Heap queue = this.queue;  // locals are faster
+        if (queue instanceof PrimitiveHeap)
+            return ((PrimitiveHeap)queue).getMinTime();
+        return ((Key)(queue.getMinKey())).time;
+        }
+    
+    int minOrdering()
+        {
+        Heap queue = this.queue;  // locals are faster
+        if (queue instanceof PrimitiveHeap)
+            return ((PrimitiveHeap)queue).getMinOrdering();
+        return ((Key)(queue.getMinKey())).ordering;
+        }
     
     /** The current time, as returned by getTime().  
         If you modify this in a subclass, be sure to synchronize on Schedule.lock first. */
-    protected double time;
+    protected volatile double time;
     
     /** The current steps, as returned by getSteps().  
         If you modify this in a subclass, be sure to synchronize on Schedule.lock first. */
-    protected long steps;
+    protected volatile long steps;
         
     /** Whether the schedule is sealed, as returned by isSealed().  
         If you modify this in a subclass, be sure to synchronize on Schedule.lock first. */
-    protected boolean sealed = false;
+    protected volatile boolean sealed = false;
                 
     /** The schedule lock.  Many methods synchronize on this lock before modifying internal variables. */
     protected Object lock = new boolean[1];  // an array is a unique, serializable object
@@ -170,12 +239,12 @@ public class Schedule implements java.io.Serializable
     public double time() { return getTime(); }
 
     /** Returns the current timestep */
-    public double getTime() { synchronized(lock) { return time; } }
+    public double getTime() { return time; }
     
     /** Returns whether or not the schedule is sealed (nothing more can be scheduled, even 
         if the schedule isn't at AFTER_SIMULATION yet).   Calling reset() will unseal
         a Schedule, and calling seal() will seal it.  */
-    public boolean isSealed() { synchronized(lock) { return sealed; } }
+    public boolean isSealed() { return sealed; }
         
     /** Returns the current time in string format. If the time is BEFORE_SIMULATION, then beforeSimulationString is
         returned.  If the time is AFTER_SIMULATION, then afterSimulationString is returned.  Otherwise a numerical
@@ -198,7 +267,7 @@ public class Schedule implements java.io.Serializable
         }
 
     /** Returns the number of steps the Schedule has pulsed so far. */
-    public long getSteps() { synchronized(lock) { return steps; } }
+    public long getSteps() { return steps; }
 
     // pushes the time to AFTER_SIMULATION and attempts to kill all
     // remaining scheduled items
@@ -209,6 +278,7 @@ public class Schedule implements java.io.Serializable
             {
             time = AFTER_SIMULATION;
             queue = createHeap();  // let 'em GC  -- must be inside the lock so scheduleOnce doesn't try to add more
+            discardStaged();
             }
         }
 
@@ -221,6 +291,7 @@ public class Schedule implements java.io.Serializable
         synchronized(lock)
             {
             queue = createHeap();  // let 'em GC  -- must be inside the lock so scheduleOnce doesn't try to add more
+            discardStaged();
             }
         }
 
@@ -244,6 +315,7 @@ public class Schedule implements java.io.Serializable
             time = BEFORE_SIMULATION;
             steps = 0;
             queue = createHeap();  // let 'em GC  -- must be inside the lock so scheduleOnce doesn't try to add more
+            discardStaged();
             sealed = false;
             }
         }
@@ -253,10 +325,160 @@ public class Schedule implements java.io.Serializable
         {
         synchronized(lock)
             {
-            return queue.isEmpty();
+            return queue.isEmpty() && !hasStaged();
             }
         }
     
+    // should threads other than the stepping thread stage their events rather than locking?
+    boolean concurrentScheduling = false;
+    // raised while step() is stepping its Steppables, during which the time cannot change
+    transient volatile boolean executing = false;
+    // the thread presently in step()
+    transient volatile Thread stepThread;
+    // each thread's Staging, and all of them.  Built lazily
+    transient ThreadLocal staging;
+    transient java.util.ArrayList stagings;
+
+    /** Sets whether threads other than the one calling step() should, while step() is stepping its Steppables,
+        place the events they schedule in per-thread staging buffers rather than locking on the Schedule.  The buffered
+        events are added to the queue at the end of step().  This reduces lock contention when many threads (for
+        example in a ParallelSequence) schedule events at once.  The default is false.  */
+    public void setConcurrentScheduling(boolean val)
+        {
+        synchronized(lock)
+            {
+            concurrentScheduling = val;
+            }
+        }
+
+    /** Returns whether threads other than the one calling step() stage their events rather than locking
+        (see setConcurrentScheduling(...)). */
+    public boolean isConcurrentScheduling()
+        {
+        synchronized(lock)
+            {
+            return concurrentScheduling;
+            }
+        }
+
+    // Returns the current thread's Staging, creating and registering it if necessary
+    Staging currentStaging()
+        {
+        ThreadLocal local;
+        synchronized(lock)
+            {
+            if (staging == null)
+                {
+                staging = new ThreadLocal();
+                stagings = new java.util.ArrayList();
+                }
+            local = staging;
+            }
+        Staging s = (Staging)(local.get());
+        if (s == null)
+            {
+            s = new Staging(Thread.currentThread());
+            local.set(s);
+            synchronized(lock) { stagings.add(s); }
+            }
+        return s;
+        }
+
+    // Adds all staged events to the queue, in the order the threads first staged events.
+    void mergeStaged()
+        {
+        synchronized(lock)
+            {
+            java.util.ArrayList stagings = this.stagings;
+            if (stagings == null) return;
+            for(int i = 0; i < stagings.size(); i++)
+                {
+                Staging s = (Staging)(stagings.get(i));
+                synchronized(s)
+                    {
+                    s.dumpTo(this);
+                    }
+                if (!s.owner.isAlive())  // the thread has gone away, no need to hold onto it
+                    stagings.remove(i--);
+                }
+            }
+        }
+
+    // Throws away all staged events.  You must synchronize on this.lock before calling this method.
+    void discardStaged()
+        {
+        if (stagings == null) return;
+        for(int i = 0; i < stagings.size(); i++)
+            {
+            Staging s = (Staging)(stagings.get(i));
+            synchronized(s) { s.clear(); }
+            }
+        }
+
+    // Returns true if any events are staged.  You must synchronize on this.lock before calling this method.
+    boolean hasStaged()
+        {
+        if (stagings == null) return false;
+        for(int i = 0; i < stagings.size(); i++)
+            {
+            Staging s = (Staging)(stagings.get(i));
+            synchronized(s) { if (s.events.numObjs > 0) return true; }
+            }
+        return false;
+        }
+
+    /** Events which have been checked but not yet added to the queue. */
+    static class Pending
+        {
+        Bag events = new Bag(0);
+        double[] times = new double[0];
+        int[] orderings = new int[0];
+
+        // holds an event until it can be added to the queue
+        void add(Steppable event, double time, int ordering)
+            {
+            int n = events.numObjs;
+            if (n >= times.length)
+                {
+                double[] newTimes = new double[times.length * 2 + 1];
+                System.arraycopy(times, 0, newTimes, 0, n);
+                times = newTimes;
+                int[] newOrderings = new int[orderings.length * 2 + 1];
+                System.arraycopy(orderings, 0, newOrderings, 0, n);
+                orderings = newOrderings;
+                }
+            times[n] = time;
+            orderings[n] = ordering;
+            events.add(event);
+            }
+
+        // adds the held events to the schedule's queue, in the order they were held.
+        // You must synchronize on schedule.lock before calling this method.
+        void dumpTo(Schedule schedule)
+            {
+            if (!schedule.sealed)  // if someone killed the simulation in the meantime, throw them away
+                {
+                Object[] objs = events.objs;
+                int n = events.numObjs;
+                for(int i = 0; i < n; i++)
+                    schedule._add((Steppable)(objs[i]), times[i], orderings[i], null);
+                }
+            clear();
+            }
+
+        void clear()
+            {
+            events.clear();
+            }
+        }
+
+    /** A thread's staging buffer for concurrent scheduling.  Synchronize on the Staging to access it. */
+    static class Staging extends Pending
+        {
+        Thread owner;
+        Staging(Thread owner) { this.owner = owner; }
+        }
+
     /**
        Merge a given schedule into this one.  The other schedule is not modified, but the queue of the
        original schedule is changed.  NOTE: this method is not threadsafe and should be only performed 
@@ -309,7 +531,106 @@ public class Schedule implements java.io.Serializable
     
     Bag currentSteps = new Bag();
     Bag substeps = new Bag();
+    IntBag orderingStarts = new IntBag();  // where each ordering begins in currentSteps when stepping parallel orderings or profiling
+    transient IntBag orderingValues;  // the ordering of each entry in orderingStarts when profiling
     boolean inStep = false;  // prevents reentrancy
+
+    /** The default number of chunks into which an ordering is divided when stepping parallel orderings. */
+    public static final int DEFAULT_PARALLEL_CHUNKS = 64;
+
+    // number of threads for parallel orderings, or 0 if we're stepping serially
+    int parallelThreads = 0;
+    // number of chunks each parallel ordering is divided into
+    int parallelChunks = DEFAULT_PARALLEL_CHUNKS;
+    // the work-stealing pool which steps the chunks.  Built lazily
+    transient ForkJoinPool pool;
+    // one generator per chunk, reseeded for each ordering.  Built lazily
+    transient MersenneTwisterFast[] chunkRandoms;
+    transient int[] chunkSeed;
+
+    // records the time taken by the Steppables, or null if we're not profiling
+    transient volatile Profile profile = null;
+
+    /** Installs a Profile which records the time and memory taken by each class of Steppable and each ordering,
+        or removes it if null.  Sequences and ParallelSequences stepped by the Schedule record into the same Profile.
+        This should only be called between steps.  The Profile is not saved in checkpoints. */
+    public void setProfile(Profile profile) { this.profile = profile; }
+
+    /** Returns the Profile recording the Steppables, or null if there is none. */
+    public Profile getProfile() { return profile; }
+
+    /** Sets the Schedule to step each ordering in parallel with the given number of threads, or if threads==ParallelSequence.CPUS,
+        then with one thread per CPU or core on the system.  If threads is 0 (the default), the Schedule steps all Steppables serially
+        in a single thread.  */
+    public void setParallelOrderings(int threads)
+        {
+        if (threads < 0 && threads != ParallelSequence.CPUS)
+            throw new IllegalArgumentException("Invalid number of threads for parallel orderings: " + threads);
+        synchronized(lock)
+            {
+            if (threads == ParallelSequence.CPUS)
+                threads = ParallelSequence.availableProcessors;
+            if (threads != parallelThreads && pool != null)
+                {
+                pool.shutdown();
+                pool = null;
+                }
+            parallelThreads = threads;
+            }
+        }
+
+    /** Returns the number of threads used to step each ordering in parallel, or 0 if the Schedule steps serially. */
+    public int getParallelOrderings()
+        {
+        synchronized(lock)
+            {
+            return parallelThreads;
+            }
+        }
+
+    /** Sets the number of chunks into which each ordering is divided when stepping parallel orderings.  Each chunk
+        is stepped by a single thread with its own random number generator, so for a given seed, results depend on
+        the number of chunks but not on the number of threads.  The default is DEFAULT_PARALLEL_CHUNKS. */
+    public void setParallelChunks(int chunks)
+        {
+        if (chunks <= 0)
+            throw new IllegalArgumentException("Number of parallel chunks must be > 0: " + chunks);
+        synchronized(lock)
+            {
+            parallelChunks = chunks;
+            }
+        }
+
+    /** Returns the number of chunks into which each ordering is divided when stepping parallel orderings. */
+    public int getParallelChunks()
+        {
+        synchronized(lock)
+            {
+            return parallelChunks;
+            }
+        }
+
+    /** Returns the random number generator which the calling Steppable should use.  If the Steppable is presently being
+        stepped in a parallel ordering, this is the generator belonging to its chunk.  Otherwise it's state.random. */
+    public MersenneTwisterFast getRandom(SimState state)
+        {
+        Chunk chunk = currentChunk();
+        if (chunk == null) return state.random;
+        return chunk.random;
+        }
+
+    // Returns the chunk the current thread is stepping for this Schedule, or null if none
+    Chunk currentChunk()
+        {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker)
+            {
+            Worker worker = (Worker) thread;
+            if (worker.schedule == this) return worker.chunk;
+            }
+        return null;
+        }
+
     /** Steps the schedule, gathering and ordering all the items to step on the next time step (skipping
         blank time steps), and then stepping all of them in the decided order.  
         Returns FALSE if nothing was stepped -- the schedule is exhausted or time has run out. */
@@ -321,8 +642,11 @@ public class Schedule implements java.io.Serializable
             }
             
         inStep = true;
+        stepThread = Thread.currentThread();
         Bag currentSteps = this.currentSteps;  // locals are faster
         final MersenneTwisterFast random = state.random; // locals are faster
+        final Profile profile = this.profile;  // fixed for the whole step
+        boolean parallel = false;
         
         int topSubstep = 0;  // we set this as a hack to avoid having to clear all the substeps each time until the very end
 
@@ -333,9 +657,12 @@ public class Schedule implements java.io.Serializable
                 { time = AFTER_SIMULATION; inStep = false; return false; }  // bump the time for the queue.isEmpty() bit
             
             // now change the time
-            time = ((Key)(queue.getMinKey())).time;  // key shouldn't be able to be null; time should always be one bigger
+            time = minTime();  // key shouldn't be able to be null; time should always be one bigger
 
             final boolean shuffling = this.shuffling; // locals are faster.  This one needs to be synchronized inside lock
+            parallel = (parallelThreads > 0);
+            if (orderingStarts == null) orderingStarts = new IntBag();  // in case we were read from an older checkpoint
+            if (profile != null && orderingValues == null) orderingValues = new IntBag();
 
             // grab all of the steppables in the right order.  To do this, we employ two Bags:
             // 1. Each iteration of the while-loop, we grab all the steppables of the next ordering, put into the substeps Bag
@@ -346,6 +673,7 @@ public class Schedule implements java.io.Serializable
             while(true)
                 {
                 // Suck out the contents of the next ordering
+                if (profile != null) orderingValues.add(minOrdering());
                 queue.extractMin(substeps);  // come out in reverse order
 
                 // shuffle
@@ -357,12 +685,13 @@ public class Schedule implements java.io.Serializable
                                                                 
                 // dump
                 if (topSubstep < substeps.numObjs) topSubstep = substeps.numObjs;  // remember index of largest substep since we're violating clear()
+                if (parallel || profile != null)
+                    orderingStarts.add(currentSteps.numObjs);
                 currentSteps.addAll(substeps);
                 substeps.numObjs = 0;  // temporarily clear
                 
                 // check next key and break if we don't need to go on
-                Key currentKey = (Key)(queue.getMinKey());
-                if (currentKey == null || currentKey.time != time) break;  // looks like no more substeps at this timestamp
+                if (queue.isEmpty() || minTime() != time) break;  // looks like no more substeps at this timestamp
                 }
             }
             
@@ -380,9 +709,45 @@ public class Schedule implements java.io.Serializable
 			((Steppable)(beforeSteps.get(x))).step(state);
 			}
             	
+        executing = true;
         try
             {
-            for(int x=0;x<len;x++)  // if we're not being killed...
+            if (parallel)  // parallel orderings
+                {
+                int numOrderings = orderingStarts.numObjs;
+                for(int i = 0; i < numOrderings; i++)
+                    {
+                    int start = orderingStarts.objs[i];
+                    int end = (i + 1 < numOrderings ? orderingStarts.objs[i + 1] : len);
+                    if (profile == null) stepOrdering(state, start, end);
+                    else
+                        {
+                        long nanos = System.nanoTime();
+                        stepOrdering(state, start, end);
+                        profile.addOrdering(orderingValues.objs[i], end - start, System.nanoTime() - nanos, 0);  // allocation is in other threads
+                        }
+                    }
+                }
+            else if (profile != null)
+                {
+                int numOrderings = orderingStarts.numObjs;
+                for(int i = 0; i < numOrderings; i++)
+                    {
+                    int start = orderingStarts.objs[i];
+                    int end = (i + 1 < numOrderings ? orderingStarts.objs[i + 1] : len);
+                    long nanos = System.nanoTime();
+                    long bytes = profile.allocatedBytes();
+                    for(int x = start; x < end; x++)
+                        {
+                        assert sim.util.LocationLog.set(((Steppable)(objs[x])));
+                        profile.step((Steppable)(objs[x]), state);
+                        assert sim.util.LocationLog.clear();
+                        objs[x] = null;  // let gc even if being killed
+                        }
+                    profile.addOrdering(orderingValues.objs[i], end - start, System.nanoTime() - nanos, profile.allocatedBytes() - bytes);
+                    }
+                }
+            else for(int x=0;x<len;x++)  // if we're not being killed...
                 {
                 assert sim.util.LocationLog.set(((Steppable)(objs[x])));
                 ((Steppable)(objs[x])).step(state);
@@ -395,6 +760,12 @@ public class Schedule implements java.io.Serializable
             {
             // reuse currentSteps -- all objects should have been released to gc already, no need to call clear()
             currentSteps.numObjs = 0;
+            orderingStarts.numObjs = 0;
+            if (orderingValues != null) orderingValues.numObjs = 0;
+            
+            // from here on nobody may stage, so we can safely add everything which was staged
+            executing = false;
+            mergeStaged();
                 
             synchronized(lock) { steps++; }
             inStep = false;
@@ -409,6 +780,147 @@ public class Schedule implements java.io.Serializable
         return true;
         }
         
+    /** Steps currentSteps from start to end (one ordering) in parallel, divided into chunks, then adds
+        the events which the chunks scheduled into the queue. */
+    void stepOrdering(final SimState state, int start, int end)
+        {
+        int size = end - start;
+        int n;
+        int threads;
+        synchronized(lock)
+            {
+            n = parallelChunks;
+            threads = parallelThreads;
+            }
+        if (n <= 0)  // a Schedule checkpointed before parallelChunks existed
+            n = DEFAULT_PARALLEL_CHUNKS;
+        if (threads <= 0)  // someone turned parallel orderings off in the middle of a step
+            threads = 1;
+        if (n > size)
+            n = size;
+        
+        int jump = size / n;
+        int extra = size % n;
+        int current = start;
+
+        // divide the ordering up like ParallelSequence does, giving each chunk its own generator.
+        // The generators must be seeded here, in order, in the main thread.  They're reused from
+        // ordering to ordering, and reseeded just as new ones would be.
+        if (chunkRandoms == null || chunkRandoms.length < n)
+            {
+            MersenneTwisterFast[] r = new MersenneTwisterFast[n];
+            for(int i = 0; i < n; i++)
+                r[i] = (chunkRandoms != null && i < chunkRandoms.length ? chunkRandoms[i] : new MersenneTwisterFast(0));
+            chunkRandoms = r;
+            chunkSeed = new int[4];
+            }
+        final Chunk[] chunks = new Chunk[n];
+        for(int i = 0; i < n; i++)
+            {
+            int next = current + jump + (extra > 0 ? 1 : 0);
+            if (extra > 0) extra--;
+            for(int j = 0; j < chunkSeed.length; j++)
+                chunkSeed[j] = state.random.nextInt();
+            chunkRandoms[i].setSeed(chunkSeed);
+            chunks[i] = new Chunk(state, current, next, chunkRandoms[i]);
+            current = next;
+            }
+
+        ForkJoinPool pool = this.pool;
+        if (pool == null)
+            {
+            final Schedule schedule = this;
+            pool = this.pool = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+                {
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) { return new Worker(pool, schedule); }
+                }, null, false);
+            }
+
+        try
+            {
+            pool.invoke(new RecursiveAction()
+                {
+                protected void compute() { invokeAll(chunks); }
+                });
+            }
+        finally
+            {
+            // add the scheduled events in chunk order so the heap is built the same way regardless of threads
+            synchronized(lock)
+                {
+                for(int i = 0; i < n; i++)
+                    chunks[i].dump();
+                }
+            }
+        }
+    
+    /** A thread in the pool which steps parallel orderings.  Remembers which chunk, if any, it's stepping. */
+    static class Worker extends ForkJoinWorkerThread
+        {
+        Schedule schedule;
+        Chunk chunk;
+        
+        Worker(ForkJoinPool pool, Schedule schedule)
+            {
+            super(pool);
+            this.schedule = schedule;
+            setName("Schedule " + getPoolIndex());
+            }
+        }
+    
+    /** A portion of an ordering stepped in parallel.  Holds the chunk's random number generator and the
+        events scheduled while the chunk was being stepped. */
+    class Chunk extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+
+        SimState state;
+        int start;
+        int end;
+        MersenneTwisterFast random;
+        
+        // events scheduled by this chunk
+        Pending pending = new Pending();
+        
+        Chunk(SimState state, int start, int end, MersenneTwisterFast random)
+            {
+            this.state = state;
+            this.start = start;
+            this.end = end;
+            this.random = random;
+            }
+        
+        protected void compute()
+            {
+            Worker worker = (Worker)(Thread.currentThread());
+            Chunk previous = worker.chunk;  // we might have been stolen while the thread was waiting on another chunk
+            worker.chunk = this;
+            try
+                {
+                Object[] objs = currentSteps.objs;
+                Profile profile = Schedule.this.profile;
+                for(int x = start; x < end; x++)
+                    {
+                    assert sim.util.LocationLog.set(((Steppable)(objs[x])));
+                    if (profile == null) ((Steppable)(objs[x])).step(state);
+                    else profile.step((Steppable)(objs[x]), state);
+                    assert sim.util.LocationLog.clear();
+                    objs[x] = null;  // let gc even if being killed
+                    }
+                }
+            finally
+                {
+                worker.chunk = previous;
+                }
+            }
+        
+        // adds the held events to the queue.  You must synchronize on lock before calling this method.
+        void dump()
+            {
+            pending.dumpTo(Schedule.this);
+            }
+        }
+    
     /** Schedules the event to occur at getTime() + 1.0, 0 ordering. If this is a valid time
         and event, schedules the event and returns TRUE.
         This method at present returns FALSE if the schedule cannot
@@ -416,13 +928,9 @@ public class Schedule implements java.io.Serializable
         event is being scheduled for AFTER_SIMULATION.  The method 
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnce(final Steppable event)
         {
-        synchronized(lock)
-            {
-            return _scheduleOnce(new Key(/*must lock for:*/time +1.0,0),event);
-            }
+        return _schedule(1.0, true, 0, null, event);
         }
     
     /** Schedules the event to occur at getTime() + delta, 0 ordering. If this is a valid time
@@ -432,13 +940,9 @@ public class Schedule implements java.io.Serializable
         event is being scheduled for AFTER_SIMULATION.  The method 
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnceIn(final double delta, final Steppable event)
         {
-        synchronized(lock)
-            {
-            return _scheduleOnce(new Key(/*must lock for:*/ time + delta, 0), event);
-            }
+        return _schedule(delta, true, 0, null, event);
         }
         
     /** Schedules the event to occur at getTime() + 1.0, and in the ordering provided. If this is a valid time
@@ -448,13 +952,9 @@ public class Schedule implements java.io.Serializable
         event is being scheduled for AFTER_SIMULATION.  The method 
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnce(final Steppable event, final int ordering)
         {
-        synchronized(lock)
-            {
-            return _scheduleOnce(new Key(/*must lock for:*/time +1.0,ordering),event);
-            }
+        return _schedule(1.0, true, ordering, null, event);
         }
 
     /** Schedules the event to occur at getTime() + delta, and in the ordering provided. If this is a valid time
@@ -464,13 +964,9 @@ public class Schedule implements java.io.Serializable
         event is being scheduled for AFTER_SIMULATION.  The method 
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnceIn(final double delta, final Steppable event, final int ordering)
         {
-        synchronized(lock)
-            {
-            return _scheduleOnce(new Key(/*must lock for:*/ time + delta, ordering), event);
-            }
+        return _schedule(delta, true, ordering, null, event);
         }
 
     /** Schedules the event to occur at the provided time, 0 ordering.  If the getTime() == the provided
@@ -484,10 +980,7 @@ public class Schedule implements java.io.Serializable
     
     public boolean scheduleOnce(double time, final Steppable event)
         {
-        synchronized(lock)
-            {
-            return _scheduleOnce(new Key(time,0),event);
-            }
+        return _schedule(time, false, 0, null, event);
         }
         
     /** Schedules the event to occur at the provided time, and in the ordering provided.  If the getTime() == the provided
@@ -501,10 +994,7 @@ public class Schedule implements java.io.Serializable
     */
     public boolean scheduleOnce(double time, final int ordering, final Steppable event)
         {
-        synchronized(lock)
-            {
-            return _scheduleOnce(new Key(time,ordering),event);
-            }
+        return _schedule(time, false, ordering, null, event);
         }
     
     /** Schedules an item. 
@@ -514,12 +1004,51 @@ public class Schedule implements java.io.Serializable
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     protected boolean scheduleOnce(Key key, final Steppable event)
         {
+        return _schedule(key.time, false, key.ordering, key, event);
+        }
+
+    /** Schedules an item at time t (or at the current time plus t, if relative is true) and the given ordering.
+        If the item is being scheduled by a chunk of a parallel ordering, or by a staging thread (see setConcurrentScheduling(...)),
+        it is held aside without locking.  Otherwise this method locks and adds it to the queue.  If a key is provided,
+        its time is updated to the time the item was actually scheduled for, and it may be placed in the queue. */
+    boolean _schedule(double t, boolean relative, int ordering, Key key, final Steppable event)
+        {
+        // Chunks and staging threads only stage events while the Steppables of the current timestep are being
+        // stepped, and during that period the time cannot change.  So they don't need to lock to read it.
+        Chunk chunk = currentChunk();
+        if (chunk != null)
+            return _stage(chunk.pending, t, relative, ordering, key, event);
+            
+        if (executing && concurrentScheduling && Thread.currentThread() != stepThread)
+            {
+            Staging staging = currentStaging();
+            synchronized(staging)
+                {
+                if (executing)  // check again: step() may have just merged the stagings and moved on
+                    return _stage(staging, t, relative, ordering, key, event);
+                }
+            }
+            
         synchronized(lock)
             {
+            if (relative) t += time;   // must lock for this
+            if (key == null) return _scheduleOnce(t, ordering, event);
+            key.time = t;
             return _scheduleOnce(key, event);
             }
         }
 
+    // Checks the item and holds it aside in the given Pending rather than adding it to the queue.
+    boolean _stage(Pending pending, double t, boolean relative, int ordering, Key key, final Steppable event)
+        {
+        if (relative) t += time;
+        t = _checkTime(t, event);
+        if (t == AFTER_SIMULATION) return false;
+        if (key != null) key.time = t;
+        pending.add(event, t, ordering);
+        return true;
+        }
+
     
     /** Schedules an item.  You must synchronize on this.lock before calling this method.   This allows us to avoid synchronizing twice,
         and incurring any overhead (not sure if that's an issue really).  This method at present returns FALSE if the schedule cannot
@@ -527,19 +1056,51 @@ public class Schedule implements java.io.Serializable
         event is being scheduled for AFTER_SIMULATION.  The method 
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     boolean _scheduleOnce(Key key, final Steppable event)
+        {
+        double t = _checkTime(key.time, event);
+        if (t == AFTER_SIMULATION) return false;
+        key.time = t;
+        _add(event, t, key.ordering, key);
+        return true;
+        }
+
+    /** Schedules an item at the given time and ordering, without allocating a Key if the queue is a PrimitiveHeap.  
+        You must synchronize on this.lock before calling this method. */
+    boolean _scheduleOnce(double t, int ordering, final Steppable event)
+        {
+        t = _checkTime(t, event);
+        if (t == AFTER_SIMULATION) return false;
+        _add(event, t, ordering, null);
+        return true;
+        }
+
+    /** Adds an already-checked event to the queue.  The key may be null, in which case
+        one is created if necessary.  You must synchronize on this.lock before calling this method. */
+    void _add(final Steppable event, double t, int ordering, Key key)
+        {
+        Heap queue = this.queue;  // locals are faster
+        if (queue instanceof PrimitiveHeap)
+            ((PrimitiveHeap)queue).add(event, t, ordering);
+        else queue.add(event, (key == null ? new Key(t, ordering) : key));
+        }
+
+    /** Checks that the event may be scheduled at time t, and returns the time it should actually be
+        scheduled at (bumped by epsilon if t is the current time), or AFTER_SIMULATION if it cannot
+        be scheduled at all.  Throws an IllegalArgumentException if the time or event is invalid.
+        You must synchronize on this.lock before calling this method. */
+    double _checkTime(double t, final Steppable event)
         {
         // locals are a teeny bit faster
         double time = this.time;
-        double t = key.time;
 
         // check to see if we're scheduling for the same exact time -- even if of different orderings, that doesn't matter
         if (t == time && t != AFTER_SIMULATION)
             // bump up time to the next possible item, unless we're at infinity already (AFTER_SIMULATION)
-            t = key.time = Double.longBitsToDouble(Double.doubleToRawLongBits(t)+1L);
+            t = Double.longBitsToDouble(Double.doubleToRawLongBits(t)+1L);
 
         if (sealed || t >= AFTER_SIMULATION)             // situations where no further events can be added
             {
-            return false;
+            return AFTER_SIMULATION;
             }
         else if (t < EPOCH)
             throw new IllegalArgumentException("For the Steppable...\n\n"+event+
@@ -553,8 +1114,7 @@ public class Schedule implements java.io.Serializable
         else if (event == null)
             throw new IllegalArgumentException("The provided Steppable is null");
         
-        queue.add(event, key);
-        return true;
+        return t;
         }
 
 
@@ -572,13 +1132,9 @@ public class Schedule implements java.io.Serializable
         forget (lose the pointer to) the Steppable scheduled here.  This is particularly useful
         if you need to make the Schedule NOT serialize certain Steppable objects. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleRepeating function call
     public Stoppable scheduleRepeating(final Steppable event)
         {
-        synchronized(lock)
-            {
-            return scheduleRepeating(/*must lock for:*/time +1.0,0,event,1.0);
-            }
+        return _scheduleRepeating(1.0, true, 0, event, 1.0);
         }
 
     /** Schedules the event to recur at the specified interval starting at getTime() + interval, and at 0 ordering.
@@ -596,13 +1152,9 @@ public class Schedule implements java.io.Serializable
         forget (lose the pointer to) the Steppable scheduled here.  This is particularly useful
         if you need to make the Schedule NOT serialize certain Steppable objects. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleRepeating function call
     public Stoppable scheduleRepeating(final Steppable event, final double interval)
         {
-        synchronized(lock)
-            {
-            return scheduleRepeating(/*must lock for:*/time +interval,0,event,interval);
-            }
+        return _scheduleRepeating(interval, true, 0, event, interval);
         }
 
     /** Schedules the event to recur at the specified interval starting at getTime() + interval, and at the provided ordering.
@@ -620,13 +1172,9 @@ public class Schedule implements java.io.Serializable
         forget (lose the pointer to) the Steppable scheduled here.  This is particularly useful
         if you need to make the Schedule NOT serialize certain Steppable objects. */
     
-    // synchronized so getting the time can be atomic with the subsidiary scheduleRepeating function call
     public Stoppable scheduleRepeating(final Steppable event, final int ordering, final double interval)
         {
-        synchronized(lock)
-            {
-            return scheduleRepeating(/*must lock for:*/time +interval,ordering,event,interval);
-            }
+        return _scheduleRepeating(interval, true, ordering, event, interval);
         }
 
     /** Schedules the event to recur at the specified interval starting at the provided time, and at 0 ordering.
@@ -716,16 +1264,19 @@ public class Schedule implements java.io.Serializable
         if you need to make the Schedule NOT serialize certain Steppable objects. */
 
     public Stoppable scheduleRepeating(final double time, final int ordering, final Steppable event, final double interval)
+        {
+        return _scheduleRepeating(time, false, ordering, event, interval);
+        }
+
+    // Schedules a repeating item at time t (or at the current time plus t, if relative is true)
+    Stoppable _scheduleRepeating(final double t, boolean relative, final int ordering, final Steppable event, final double interval)
         {
         if (interval <= 0) throw new IllegalArgumentException("The steppable " +  event + " was scheduled repeating with an impossible interval ("+interval+")");
-        Schedule.Key k = new Schedule.Key(time,ordering);
+        Schedule.Key k = new Schedule.Key(t,ordering);
         IterativeRepeat r = new IterativeRepeat(event,interval,k);
 
-        synchronized(lock)
-            {
-            if (_scheduleOnce(k,r)) return r; 
-            else return null;
-            }
+        if (_schedule(t, relative, ordering, k, r)) return r;
+        else return null;
         }
 
     /** Timestamps stored as keys in the heap.  Comps are comparable by their time first, and their ordering second. */
@@ -347,12 +347,14 @@ public class Sequence implements Steppable
 
         int stepsSize = this.size;
         Steppable[] steps = this.steps;
+        Profile profile = state.schedule.profile;
         
         for(int x=0;x<stepsSize;x++)
             {
             if (steps[x]!=null) 
                 {
-                steps[x].step(state);
+                if (profile == null) steps[x].step(state);
+                else profile.step(steps[x], state);
                 }
             }
         }
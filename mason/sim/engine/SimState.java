@@ -19,6 +19,12 @@ import java.text.*;
 
     <p>SimStates are serializable; if you wish to be able to checkpoint your simulation and read from checkpoints, you should endeavor to make all objects in the simulation serializable as well.  Prior to serializing to a checkpoint, preCheckpoint() is called.  Then after serialization, postCheckpoint() is called.  When a SimState is loaded from a checkpoint, awakeFromCheckpoint() is called to give you a chance to make any adjustments.  SimState also implements several methods which call these methods and then serialize the SimState to files and to streams.
 
+    <p>The random number generator is not threadsafe.  Rather than having parallel code lock on it, you can give each
+    agent, or each fixed portion of your parallel work, its own generator via newRandomStream(...).  Each such generator
+    is seeded from the SimState's seed and a stream number you provide, so the numbers it produces depend only on the seed and the stream
+    number, and not on which thread uses it or in what order the generators were created.  Thus your parallel runs can be reproduced
+    exactly regardless of the number of threads.
+
     <p>SimState also maintains a private registry of AsynchronousSteppable objects, and handles pausing and resuming
     them during the checkpointing process, and killing them during finish() in case they had not completed yet.
 
@@ -103,6 +109,35 @@ public class SimState implements java.io.Serializable
         return generator;
         }
 
+    // distinguishes substream seeds from anything a user would likely provide
+    static final int RANDOM_STREAM_SALT = 0x5EED5EED;
+
+    /** Returns a new random number generator for the given substream.  The generator is seeded from both
+        the SimState's seed (see seed()) and the stream number, using MersenneTwisterFast's array seeding, which
+        thoroughly mixes the two.  Generators for different stream numbers produce independent sequences, and
+        two generators for the same seed and stream number produce identical sequences.  Thus if you give each agent
+        a generator from its own stream number (its index, say), the agent's random numbers are the same no matter
+        how many threads step it, or in what order.  Stream numbers need not be consecutive.  The SimState's own
+        generator is not touched.
+        
+        <p>If you constructed the SimState with one of the constructors which do not take a seed, its seed is a bogus
+        value (0) and you should call setSeed(...) before using this method. */
+    public MersenneTwisterFast newRandomStream(long stream)
+        {
+        return new MersenneTwisterFast(new int[] { (int) seed, (int) stream, (int)(stream >>> 32), RANDOM_STREAM_SALT });
+        }
+        
+    /** Returns n new random number generators for substreams 0 through n-1 (see newRandomStream(...)).  This is
+        convenient for code which divides its work into a fixed number of portions: so long as you don't change n, the 
+        results are the same no matter how many threads actually do the work. */
+    public MersenneTwisterFast[] newRandomStreams(int n)
+        {
+        MersenneTwisterFast[] streams = new MersenneTwisterFast[n];
+        for(int i = 0; i < n; i++)
+            streams[i] = newRandomStream(i);
+        return streams;
+        }
+
     /** Called immediately prior to starting the simulation, or in-between
         simulation runs.  This gives you a chance to set up initially,
         or reset from the last simulation run. The default version simply
@@ -267,6 +302,23 @@ public class SimState implements java.io.Serializable
         If an exception is raised, it is printed and null is returned. */
     public SimState writeToCheckpoint(File file)
         {
+        return writeToCheckpoint(file, false);
+        }
+    
+    /** Writes the state to a checkpoint and returns the state.  If fast is true, the checkpoint is
+        written in the FastCheckpoint format, which compresses in parallel, rather than through a GZIPOutputStream.
+        If an exception is raised, it is printed and null is returned. */
+    public SimState writeToCheckpoint(File file, boolean fast)
+        {
+        if (fast)
+            {
+            try {
+                FastCheckpoint.write(this, file);
+                return this;
+                }
+            catch(Exception e) { e.printStackTrace(); return null; }
+            }
+            
         FileOutputStream f = null;
         try {
             f = new FileOutputStream(file);
@@ -282,10 +334,15 @@ public class SimState implements java.io.Serializable
             }
         }
     
-    /** Creates a SimState from checkpoint.  If an exception is raised, it is printed and null is returned. */
+    /** Creates a SimState from checkpoint, which may be a standard checkpoint, a FastCheckpoint, or a
+        DeltaCheckpoint.  If an exception is raised, it is printed and null is returned. */
     public static SimState readFromCheckpoint(File file)
         {
         try {
+            if (FastCheckpoint.isFastCheckpoint(file))
+                return FastCheckpoint.read(file);
+            if (DeltaCheckpoint.isDeltaCheckpoint(file))
+                return DeltaCheckpoint.read(file);
             FileInputStream f = new FileInputStream(file);
             SimState state = readFromCheckpoint(f);
             f.close();
@@ -298,14 +355,25 @@ public class SimState implements java.io.Serializable
         Throws an IOException if the stream becomes invalid (prematurely closes etc.).  Throws a ClassNotFoundException
         if a serialized object is not found in the CLASSPATH and thus cannot be created.  Throws an OptionalDataException
         if the stream is corrupted.  Throws a ClassCastException if the top-level object is not actually a SimState.
+        The stream may hold either a standard checkpoint or a FastCheckpoint.
         Does not close or flush the stream. */
     public static SimState readFromCheckpoint(InputStream stream)
         throws IOException, ClassNotFoundException, OptionalDataException, ClassCastException
         {
+        BufferedInputStream b = new BufferedInputStream(stream);
+        b.mark(8);
+        DataInputStream d = new DataInputStream(b);
+        long magic = 0;
+        try { magic = d.readLong(); } catch (EOFException e) { }  // too short to be a FastCheckpoint
+        b.reset();
+        if (magic == FastCheckpoint.MAGIC)
+            return FastCheckpoint.read(b);
+        if (magic == DeltaCheckpoint.MAGIC)
+            throw new IOException("A DeltaCheckpoint must be read from its file, so that its full checkpoint can be found");
+            
         ObjectInputStream s = 
             new ObjectInputStream(
-                new GZIPInputStream (
-                    new BufferedInputStream(stream)));
+                new GZIPInputStream (b));
         SimState state = (SimState) (s.readObject());
         state.awakeFromCheckpoint();
         return state;
@@ -375,10 +443,18 @@ public class SimState implements java.io.Serializable
         list in args.  This loop is capable of:
         <ul>
         <li> Repeating a job multiple times
+        <li> Running a parameter sweep with BatchRunner (the -batch option)
         </ul>
     */
     public static void doLoop(final MakesSimState generator, final String[] args)
         {
+        // run a parameter sweep instead?
+        if (keyExists("-batch", args))
+            {
+            BatchRunner.doLoop(generator, args);
+            return;
+            }
+
         // print help?
         if (keyExists("-help", args))
             {
@@ -386,7 +462,9 @@ public class SimState implements java.io.Serializable
                 "Format:           java " + generator.simulationClass().getName() + " \\\n" +
                 "                       [-help] [-repeat R] [-parallel P] [-seed S] \\\n" +
                 "                       [-until U] [-for F] [-time T] [-docheckpoint D] \\\n" +
-                "                       [-checkpointname N] [-checkpoint C] [-quiet] \n\n" +
+                "                       [-fastcheckpoint] [-deltacheckpoint K] \\\n" +
+                "                       [-asynccheckpoint] [-checkpointname N] \\\n" +
+                "                       [-checkpoint C] [-profile] [-quiet] \n\n" +
                 "-help             Shows this message and exits.\n\n" +
                 "-repeat R         Long value > 0: Runs R jobs.  Unless overridden by a\n" +
                 "                  checkpoint recovery (see -checkpoint), the random seed for\n" +
@@ -422,6 +500,21 @@ public class SimState implements java.io.Serializable
                 "                  Default: never.\n" +
                 "                  Checkpoint files named       <steps>.<job#>.NAME.checkpoint\n" +
                 "                  where NAME is specified in -checkpointname\n\n" +
+                "-deltacheckpoint K Long value > 0: writes every Kth checkpoint (see\n" +
+                "                  -docheckpoint) in full and the others as deltas holding only\n" +
+                "                  what has changed since the last full one.  A delta is loaded\n" +
+                "                  with -checkpoint like any other checkpoint, but its full\n" +
+                "                  checkpoint must still exist.\n" +
+                "                  Default: all checkpoints are full.\n\n" +
+                "-asynccheckpoint  Writes checkpoints (see -docheckpoint) in the background\n" +
+                "                  while the simulation continues, after taking a snapshot of\n" +
+                "                  it in memory.  Checkpoints are written in the FastCheckpoint\n" +
+                "                  format, or as deltas if -deltacheckpoint is given.\n" +
+                "                  Default: the simulation waits for each checkpoint.\n\n" +
+                "-fastcheckpoint   Writes checkpoints (see -docheckpoint) in the FastCheckpoint\n" +
+                "                  format, which compresses in parallel.  Either format can be\n" +
+                "                  loaded with -checkpoint.\n" +
+                "                  Default: checkpoints are gzipped.\n\n" +
                 "-checkpointname N String: id for the checkpoint filename (see -docheckpoint)\n" +
                 "                  Default: " + 
                 generator.simulationClass().getName().substring(generator.simulationClass().getName().lastIndexOf(".") + 1) + 
@@ -437,9 +530,16 @@ public class SimState implements java.io.Serializable
                 "                  from the recovered job and seed.\n" +
                 "                  Default: starts a new simulation rather than loading one, at\n" +
                 "                  job 0 and with the seed given in -seed.\n\n" + 
+                "-profile          Records the time and memory taken by each class of Steppable\n" +
+                "                  and by each ordering, and prints a report at the end of each\n" +
+                "                  job.  See sim.engine.Profile.\n" +
+                "                  Default: no profiling.\n\n" +
                 "-quiet            Does not print messages except for errors and warnings.\n" + 
                 "                  This option implies -time 0.\n" +
-                "                  Default: prints all messages.\n"
+                "                  Default: prints all messages.\n\n" +
+                "-batch            Runs a sweep over a space of parameter settings instead,\n" +
+                "                  spreading the jobs over all CPUs.  For its options, see\n" +
+                "                  -batch -help\n"
                 );
             System.exit(0);
             }
@@ -508,6 +608,23 @@ public class SimState implements java.io.Serializable
         final long time_init = _time;  //blah
         
         final String checkpointName = argumentForKey("-checkpointname", args);
+        final boolean fastCheckpoint = keyExists("-fastcheckpoint", args);
+        final boolean asyncCheckpoint = keyExists("-asynccheckpoint", args);
+        final boolean profile = keyExists("-profile", args);
+
+        long _dmod = 0;
+        String dmod_s = argumentForKey("-deltacheckpoint", args);
+        if (dmod_s != null)
+            try
+                {
+                _dmod = Long.parseLong(dmod_s);
+                if (_dmod <= 0) throw new Exception();
+                }
+            catch (Exception e)
+                {
+                throw new RuntimeException("Invalid delta checkpoint modulo: " + dmod_s + ", must be a positive integer");
+                }
+        final long dmod = _dmod;
 
         long _cmod = 0;
         String cmod_s = argumentForKey("-docheckpoint", args);
@@ -615,6 +732,8 @@ public class SimState implements java.io.Serializable
                             state.start();
                             }
                         
+                        if (profile) state.schedule.setProfile(new Profile());
+                        
                         NumberFormat rateFormat = NumberFormat.getInstance();
                         rateFormat.setMaximumFractionDigits(5);
                         rateFormat.setMinimumIntegerDigits(1);
@@ -626,6 +745,9 @@ public class SimState implements java.io.Serializable
                         long oldClock = System.currentTimeMillis();
                         Schedule schedule = state.schedule;
                         long firstSteps = schedule.getSteps();
+                        DeltaCheckpoint delta = (dmod > 0 ? new DeltaCheckpoint() : null);
+                        BackgroundCheckpoint background = (asyncCheckpoint ? new BackgroundCheckpoint(delta) : null);
+                        long checkpoints = 0;
                         
                         while((_for == -1 || steps < _for) && schedule.getTime() <= until)
                             {
@@ -656,10 +778,38 @@ public class SimState implements java.io.Serializable
                                 	id = state.getClass().getName().substring(state.getClass().getName().lastIndexOf(".") + 1);
                                 String s = "" + steps + "." + state.job() +  "." + id  + ".checkpoint";
                                 if (!quiet) printlnSynchronized("Job " + job + ": " + "Checkpointing to file: " + s);
-                                state.writeToCheckpoint(new File(s));
+                                if (background != null)
+                                    {
+                                    try
+                                        {
+                                        if (delta != null && checkpoints % dmod == 0) background.writeFull(state, new File(s));
+                                        else background.write(state, new File(s));
+                                        }
+                                    catch (IOException e) { e.printStackTrace(); }
+                                    checkpoints++;
+                                    }
+                                else if (delta != null)
+                                    {
+                                    try
+                                        {
+                                        if (checkpoints % dmod == 0) delta.writeFull(state, new File(s));
+                                        else delta.writeDelta(state, new File(s));
+                                        }
+                                    catch (IOException e) { e.printStackTrace(); }
+                                    checkpoints++;
+                                    }
+                                else state.writeToCheckpoint(new File(s), fastCheckpoint);
                                 }
                             }
                                 
+                        if (background != null)
+                            {
+                            try { background.waitFor(); }
+                            catch (IOException e) { e.printStackTrace(); }
+                            }
+                        
+                        if (profile) printlnSynchronized("Job " + job + ": Profile\n" + state.schedule.getProfile().report());
+                            
                         state.finish();
                         
                         if (retval) 
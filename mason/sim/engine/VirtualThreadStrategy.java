@@ -0,0 +1,107 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.util.concurrent.*;
+
+/**
+   A ParallelStrategy which steps each Steppable in its own thread.  This only makes sense for Steppables which
+   spend most of their time blocked, for example waiting on a database, a socket, or an external process: for
+   ordinary CPU-bound Steppables use ForkJoinStrategy or the ParallelSequence's default thread pool instead.
+
+   <p>If the JVM supports virtual threads (Java 21 and later), each Steppable is stepped in a new virtual
+   thread, which is cheap enough to do for many thousands of Steppables at a time.  Otherwise the strategy
+   falls back to a cached pool of ordinary daemon threads.  You can find out which with usesVirtualThreads().
+
+   <p>The strategy's executor is built lazily and released when you call cleanup(), which ParallelSequence.cleanup() does.
+*/
+
+public class VirtualThreadStrategy implements ParallelStrategy
+    {
+    private static final long serialVersionUID = 1;
+
+    transient ExecutorService executor = null;
+    transient boolean virtual = false;
+    
+    synchronized ExecutorService getExecutor()
+        {
+        if (executor == null)
+            {
+            try
+                {
+                // we're built for older JVMs, so we must go through reflection here
+                executor = (ExecutorService)(Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class[0]).invoke(null, new Object[0]));
+                virtual = true;
+                }
+            catch (Exception e)  // no virtual threads
+                {
+                executor = Executors.newCachedThreadPool(new ThreadFactory()
+                    {
+                    int count = 0;
+                    public Thread newThread(Runnable r)
+                        {
+                        Thread thread = new Thread(r);
+                        thread.setDaemon(true);
+                        thread.setName("VirtualThreadStrategy " + (count++));
+                        return thread;
+                        }
+                    });
+                virtual = false;
+                }
+            }
+        return executor;
+        }
+    
+    /** Returns true if the strategy steps its Steppables in virtual threads, false if it uses ordinary threads. */
+    public boolean usesVirtualThreads()
+        {
+        getExecutor();
+        synchronized(this) { return virtual; }
+        }
+    
+    public void step(final SimState state, final Steppable[] steps, final int size, final int threads)
+        {
+        ExecutorService executor = getExecutor();
+        Future[] futures = new Future[size];
+        for(int s = 0; s < size; s++)
+            {
+            final Steppable step = steps[s];
+            futures[s] = executor.submit(new Runnable()
+                {
+                public void run()
+                    {
+                    assert sim.util.LocationLog.set(step);
+                    Profile profile = state.schedule.profile;
+                    if (profile == null) step.step(state);
+                    else profile.step(step, state);
+                    assert sim.util.LocationLog.clear();
+                    }
+                });
+            }
+        
+        // wait for everyone, then report the first problem if there was one
+        Throwable problem = null;
+        for(int s = 0; s < size; s++)
+            {
+            while(true)
+                {
+                try { futures[s].get(); break; }
+                catch (InterruptedException e) { } // ignore
+                catch (ExecutionException e) { if (problem == null) problem = e.getCause(); break; }
+                }
+            }
+        if (problem instanceof RuntimeException) throw (RuntimeException) problem;
+        if (problem instanceof Error) throw (Error) problem;
+        if (problem != null) throw new RuntimeException(problem);
+        }
+    
+    public synchronized void cleanup()
+        {
+        if (executor != null)
+            executor.shutdown();
+        executor = null;
+        }
+    }
@@ -110,10 +110,10 @@ public abstract class SparseField implements java.io.Serializable
 
     /** LocationAndIndex objects (locations and indexes into the allObjects array) hashed by Object.  Ideally you would
         store only immutable or hash-by-pointer objects, el se they'll get lost in the HashMap. */
-    public Map locationAndIndexHash = buildMap(ANY_SIZE);
+    public Map locationAndIndexHash = buildObjectMap(ANY_SIZE);
 
     /** Bags of objects hashed by location.  Do not rely on these bags always being the same objects. */
-    public Map objectHash = buildMap(ANY_SIZE);
+    public Map objectHash = buildLocationMap(ANY_SIZE);
 
     /** All the objects in the sparse field.  For fast scans.  Do not rely on this bag always being the same object. */
     public Bag allObjects = new Bag();
@@ -129,14 +129,48 @@ public abstract class SparseField implements java.io.Serializable
         else return new HashMap(size);
         }
 
+    /** Returns true if this field's class, or any superclass below SparseField, overrides either buildMap(...) method.
+        Subclasses which override buildObjectMap(...) or buildLocationMap(...) to use faster Maps should defer to buildMap(...)
+        when this is true, so that an overridden buildMap(...) still decides the maps the field uses. */
+    protected boolean isBuildMapOverridden() { return ((Boolean)(buildMapOverridden.get(getClass()))).booleanValue(); }
+
+    // whether each class overrides buildMap(...), looked up once per class
+    static final ClassValue buildMapOverridden = new ClassValue()
+        {
+        protected Object computeValue(Class c)
+            {
+            try
+                {
+                return Boolean.valueOf(c.getMethod("buildMap", new Class[] { Integer.TYPE }).getDeclaringClass() != SparseField.class ||
+                    c.getMethod("buildMap", new Class[] { Map.class }).getDeclaringClass() != SparseField.class);
+                }
+            catch (NoSuchMethodException e) { return Boolean.FALSE; }  // can't happen, they're public
+            }
+        };
+
+    /** Creates the Map used for locationAndIndexHash, as a copy of another.  By default, buildMap(other) is used.
+        Subclasses may override this to use a Map which suits their objects better, such as an OpenHashMap, but
+        should still use buildMap(other) if isBuildMapOverridden(). */
+    protected Map buildObjectMap(Map other) { return buildMap(other); }
+    /** Creates the Map used for locationAndIndexHash, of the provided size (or any size it likes if ANY_SIZE is passed in).
+        By default, buildMap(size) is used.  This is called during construction, so it must not rely on the subclass's instance variables. */
+    protected Map buildObjectMap(int size) { return buildMap(size); }
+    /** Creates the Map used for objectHash, as a copy of another.  By default, buildMap(other) is used.
+        Subclasses may override this to use a Map which suits their locations better, such as an Int2DMap, but
+        should still use buildMap(other) if isBuildMapOverridden(). */
+    protected Map buildLocationMap(Map other) { return buildMap(other); }
+    /** Creates the Map used for objectHash, of the provided size (or any size it likes if ANY_SIZE is passed in).
+        By default, buildMap(size) is used.  This is called during construction, so it must not rely on the subclass's instance variables. */
+    protected Map buildLocationMap(int size) { return buildMap(size); }
+
     protected SparseField() { }
         
     protected SparseField(SparseField other)
         {
         removeEmptyBags = other.removeEmptyBags;
         replaceLargeBags = other.replaceLargeBags;
-        locationAndIndexHash = buildMap(other.locationAndIndexHash);
-        objectHash = buildMap(other.objectHash);
+        locationAndIndexHash = buildObjectMap(other.locationAndIndexHash);
+        objectHash = buildLocationMap(other.objectHash);
         allObjects = new Bag(other.allObjects);
         }
         
@@ -260,8 +294,8 @@ public abstract class SparseField implements java.io.Serializable
         just make a brand new Sparse Field and let the garbage collector do its magic. */
     public Bag clear()
         {
-        locationAndIndexHash = buildMap(ANY_SIZE);
-        objectHash = buildMap(ANY_SIZE);
+        locationAndIndexHash = buildObjectMap(ANY_SIZE);
+        objectHash = buildLocationMap(ANY_SIZE);
         Bag retval = allObjects;
         allObjects = new Bag();
         return retval;
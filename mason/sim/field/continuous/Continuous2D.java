@@ -82,14 +82,50 @@ import java.util.*;
    Otherwise, width and height are not used.  If your space is bounded, you should set the width and height to
    those bounds.  If it's unbounded, then you should set the width and height to the bounds you would like
    displayed on-screen.
+
+   <p>If your space is bounded and densely populated, you may instead create the Continuous2D with a <b>cell array</b>
+   (see the constructor Continuous2D(discretization, width, height, cellArray)).  The buckets within the bounds are then
+   also held in a flat array, so neighborhood lookups needn't hash each bucket, and object locations are stored in an
+   array indexed by the objects' positions in allObjects rather than in doubleLocationHash (which stays empty).
+   Moving an object within its bucket then costs a single hash lookup and no allocation; an object is only re-bucketed
+   when it moves into a different bucket.  Objects may still be placed outside the bounds: their buckets are stored in
+   the hash table only.  The cell array costs one pointer per bucket, so choose your discretization accordingly.
+
+   <p>If your objects are unevenly spread, gathering in dense clusters with large empty areas between them, no single
+   discretization may suit the whole field.  In this case you can give the Continuous2D a <b>spatial index</b>, such as a
+   QuadTree, with setSpatialIndex(...).  getNeighborsWithinDistance(...) and getNearestNeighbors(...), and the
+   methods built on them, then consult the index rather than the buckets.  The buckets are still kept, for methods
+   such as getObjectsAtLocation(...), so with a spatial index you may want a large discretization, which makes
+   moving objects cheaper.
 */
 
 public /*strictfp*/ class Continuous2D extends SparseField implements SparseField2D
     {
     private static final long serialVersionUID = 1;
 
-    /** Where we store the Double2D values hashed by object */
-    public Map doubleLocationHash = buildMap(ANY_SIZE);
+    /** Where we store the Double2D values hashed by object.  Not used if there is a cell array. */
+    public Map doubleLocationHash = buildObjectMap(ANY_SIZE);
+
+    /** Returns an OpenHashMap, for locationAndIndexHash and doubleLocationHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new OpenHashMap(other); }
+    /** Returns an OpenHashMap, for locationAndIndexHash and doubleLocationHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new OpenHashMap(size); }
+    /** Returns an Int2DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new Int2DMap(other); }
+    /** Returns an Int2DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new Int2DMap(size); }
+    
+    /* The cell array, or null if we don't have one.  cells[x * cellsHigh + y] holds the objectHash bag for the
+       bucket <x, y>, or null if there is no such bag. */
+    Bag[] cells;
+    int cellsWide;
+    int cellsHigh;
+    /* The number of objects whose buckets lie outside the cell array. */
+    int outside;
+    /* The object locations, indexed by the objects' indexes in allObjects, if we have a cell array. */
+    Double2D[] locations;
+    /* The spatial index, or null if we're using the buckets. */
+    SpatialIndex2D spatialIndex;
     
     public double width;
     public double height;
@@ -104,23 +140,78 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         this.height = height;
         }
 
+    /** Provide expected bounds on the SparseContinuous2D.  If cellArray is true, the buckets within the bounds
+        are also stored in a flat array, which makes setObjectLocation(...) and neighborhood lookups faster in bounded,
+        densely populated fields.  */
+    public Continuous2D(final double discretization, double width, double height, boolean cellArray)
+        {
+        this(discretization, width, height);
+        if (cellArray)
+            {
+            cellsWide = (int)(StrictMath.ceil(width / discretization));
+            cellsHigh = (int)(StrictMath.ceil(height / discretization));
+            if (cellsWide <= 0 || cellsHigh <= 0 || (long)cellsWide * (long)cellsHigh > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Cannot make a cell array of " + cellsWide + " by " + cellsHigh + " buckets");
+            cells = new Bag[cellsWide * cellsHigh];
+            locations = new Double2D[INITIAL_BAG_SIZE];
+            }
+        }
+
     public Continuous2D(Continuous2D other)
         {
         super(other);
         discretization = other.discretization;
         width = other.width;
         height = other.height;
+        if (other.cells != null)
+            {
+            cells = (Bag[])(other.cells.clone());
+            cellsWide = other.cellsWide;
+            cellsHigh = other.cellsHigh;
+            outside = other.outside;
+            locations = (Double2D[])(other.locations.clone());
+            }
+        else doubleLocationHash = buildObjectMap(other.doubleLocationHash);
+        if (other.spatialIndex != null)
+            setSpatialIndex(other.spatialIndex.newIndex());
+        }
+
+    /** Sets the spatial index which answers getNeighborsWithinDistance(...) and getNearestNeighbors(...), or
+        null to use the buckets instead.  The index is cleared and all the objects in the field are added to it. */
+    public void setSpatialIndex(SpatialIndex2D index)
+        {
+        spatialIndex = index;
+        if (index != null)
+            {
+            index.clear();
+            for(int i = 0; i < allObjects.numObjs; i++)
+                {
+                Double2D loc = getObjectLocation(allObjects.objs[i]);
+                index.setObjectLocation(allObjects.objs[i], loc.x, loc.y);
+                }
+            }
         }
 
+    /** Returns the spatial index, or null if the buckets are used instead. */
+    public SpatialIndex2D getSpatialIndex() { return spatialIndex; }
+
+    /** Returns true if the Continuous2D stores its buckets in a cell array. */
+    public boolean hasCellArray() { return cells != null; }
+
     public final Double2D getObjectLocation(Object obj)
         {
+        if (cells != null)
+            {
+            final int index = getObjectIndex(obj);
+            return (index < 0 ? null : locations[index]);
+            }
         return (Double2D) doubleLocationHash.get(obj);
         }
     
     /** Synonymous with getObjectLocation, which you should generally use instead. */
     public final Double2D getObjectLocationAsDouble2D(Object obj)
         {
-        return (Double2D) doubleLocationHash.get(obj);
+        return getObjectLocation(obj);
         }
         
     public final Double2D getDimensions() { return new Double2D(width, height); }
@@ -141,19 +232,111 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
     
     public final boolean setObjectLocation(Object obj, final Double2D location)
         {
-        boolean result = super.setObjectLocation(obj, discretize(location));
-        if (result) doubleLocationHash.put(obj,location);
+        boolean result;
+        if (cells != null) result = setObjectLocationInCells(obj, location);
+        else
+            {
+            // if the object stays in its bucket, don't bother making a new Int2D for it
+            final int x = (int)(location.x / discretization);
+            final int y = (int)(location.y / discretization);
+            LocationAndIndex lai = (obj == null ? null : (LocationAndIndex)(locationAndIndexHash.get(obj)));
+            Object loc = (lai == null ? null : lai.getLocation());
+            if (loc instanceof Int2D && ((Int2D)loc).x == x && ((Int2D)loc).y == y)
+                result = true;
+            else result = super.setObjectLocation(obj, new Int2D(x, y));
+            if (result) doubleLocationHash.put(obj,location);
+            }
+        if (result && spatialIndex != null) spatialIndex.setObjectLocation(obj, location.x, location.y);
         return result;
         }
         
+    boolean setObjectLocationInCells(final Object obj, final Double2D location)
+        {
+        if (obj == null || location == null) return false;
+        final double discretization = this.discretization;
+        final int x = (int)(location.x / discretization);
+        final int y = (int)(location.y / discretization);
+        
+        int index = getObjectIndex(obj);                                        // HASH
+        if (index >= 0)
+            {
+            final Double2D old = locations[index];
+            final int oldX = (int)(old.x / discretization);
+            final int oldY = (int)(old.y / discretization);
+            locations[index] = location;
+            if (oldX == x && oldY == y) return true;  // same bucket, we're done
+            
+            // re-bucket
+            super.setObjectLocation(obj, new Int2D(x, y));
+            refreshBucket(oldX, oldY, -1);
+            }
+        else
+            {
+            super.setObjectLocation(obj, new Int2D(x, y));
+            index = allObjects.numObjs - 1;
+            if (index >= locations.length)
+                {
+                Double2D[] newLocations = new Double2D[locations.length * 2 + 1];
+                System.arraycopy(locations, 0, newLocations, 0, locations.length);
+                locations = newLocations;
+                }
+            locations[index] = location;
+            }
+        refreshBucket(x, y, 1);
+        return true;
+        }
+        
+    // reloads a bucket in the cell array from objectHash, and counts an object moving into (1) or out of (-1) it
+    void refreshBucket(final int x, final int y, final int change)
+        {
+        if (x >= 0 && y >= 0 && x < cellsWide && y < cellsHigh)
+            cells[x * cellsHigh + y] = (Bag)(objectHash instanceof Int2DMap ?
+                ((Int2DMap)objectHash).get(x, y) : objectHash.get(new Int2D(x, y)));
+        else outside += change;
+        }
+        
+    // returns the bag of objects in the bucket at the given discretized location, using the cell array if we have one
+    final Bag getBucket(final MutableInt2D location)
+        {
+        if (cells != null)
+            {
+            final int x = location.x;
+            final int y = location.y;
+            if (x >= 0 && y >= 0 && x < cellsWide && y < cellsHigh) return cells[x * cellsHigh + y];
+            if (outside == 0) return null;
+            }
+        return getRawObjectsAtLocation(location);
+        }
+        
     public final Bag clear()
         {
-        doubleLocationHash = buildMap(ANY_SIZE);
+        doubleLocationHash = buildObjectMap(ANY_SIZE);
+        if (spatialIndex != null) spatialIndex.clear();
+        if (cells != null)
+            {
+            Arrays.fill(cells, null);
+            outside = 0;
+            locations = new Double2D[INITIAL_BAG_SIZE];
+            }
         return super.clear();
         }
         
     public final Object remove(final Object obj)
         {
+        if (spatialIndex != null) spatialIndex.remove(obj);
+        if (cells != null)
+            {
+            final int index = getObjectIndex(obj);
+            if (index < 0) return null;
+            Object result = super.remove(obj);
+            // SparseField moved the last object into the removed object's slot
+            final Double2D old = locations[index];
+            final int last = allObjects.numObjs;
+            locations[index] = locations[last];
+            locations[last] = null;
+            refreshBucket((int)(old.x / discretization), (int)(old.y / discretization), -1);
+            return result;
+            }
         Object result = super.remove(obj);
         doubleLocationHash.remove(obj);
         return result;
@@ -296,6 +479,20 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         if (toroidal) throw new InternalError("Toroidal not presently supported in getNearestNeighbors");
         if (result == null) result = new Bag(atLeastThisMany);
         else result.clear();
+        
+        if (spatialIndex != null)
+            {
+            spatialIndex.getNearestNeighbors(position.x, position.y, atLeastThisMany, result);
+            if ((nonPointObjects || !radial) && result.numObjs > 0)
+                {
+                // grab everything in the square around the farthest of them, which might also overlap
+                double distance = position.distance(getObjectLocation(result.objs[result.numObjs - 1]));
+                if (nonPointObjects) distance += discretization;
+                result.clear();
+                spatialIndex.getObjectsWithin(position.x - distance, position.y - distance, position.x + distance, position.y + distance, result);
+                }
+            return result;
+            }
         int maxSearches = allObjects.numObjs / NEAREST_NEIGHBOR_GAIN;
 
         if (atLeastThisMany >= allObjects.numObjs)  { result.clear(); result.addAll(allObjects); return result; }
@@ -314,7 +511,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         if (searches >= maxSearches) { result.clear(); result.addAll(allObjects); return result; }
         searches++;
         speedyMutableInt2D.x = x1; speedyMutableInt2D.y = y1;
-        Bag temp = getRawObjectsAtLocation(speedyMutableInt2D);
+        Bag temp = getBucket(speedyMutableInt2D);
         if (temp!= null) result.addAll(temp);
         
         boolean nonPointOneMoreTime = false;
@@ -336,7 +533,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                 if (searches >= maxSearches) { result.clear(); result.addAll(allObjects); return result; }
                 searches++;
                 speedyMutableInt2D.x = x;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
                 }
 
@@ -347,7 +544,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                 if (searches >= maxSearches) { result.clear(); result.addAll(allObjects); return result; }
                 searches++;
                 speedyMutableInt2D.x = x;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
                 }
                 
@@ -358,7 +555,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                 if (searches >= maxSearches) { result.clear(); result.addAll(allObjects); return result; }
                 searches++;
                 speedyMutableInt2D.y = y;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
                 }
 
@@ -369,7 +566,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                 if (searches >= maxSearches) { result.clear(); result.addAll(allObjects); return result; }
                 searches++;
                 speedyMutableInt2D.y = y;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
                 }
             }
@@ -407,25 +604,25 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                 // top
                 speedyMutableInt2D.x = x1 + x ;
                 speedyMutableInt2D.y = y1 - e - 1 ;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
 
                 // bottom
                 speedyMutableInt2D.x = x1 + x ;
                 speedyMutableInt2D.y = y2 + e + 1 ;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
 
                 // left
                 speedyMutableInt2D.x = x1 - e - 1 ;
                 speedyMutableInt2D.y = y1 + x;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
 
                 // right
                 speedyMutableInt2D.x = x2 + e + 1 ;
                 speedyMutableInt2D.y = y1 + x;
-                temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                temp = getBucket(speedyMutableInt2D);
                 if (temp!=null) result.addAll(temp);
                 }
             }
@@ -561,6 +758,58 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         return result;
         }
 
+    /** Answers a batch of queries at once, returning for each position all the objects whose locations lie within the given
+        distance (inclusive) of it, as getNeighborsExactlyWithinDistance(position, distance, toroidal, true, true, null) would.
+        The answers are returned in a compact Neighborhoods object rather than one Bag per position.  The queries are
+        sorted by location and answered in parallel, so a batch is much faster than the same queries made one at a time.
+        Assumes point objects.
+        
+        <p> Note: if the field is toroidal, locations and positions outside the boundaries are wrapped to within the
+        boundaries before computation.
+    */
+    public Neighborhoods getNeighborsExactlyWithinDistance(final Double2D[] positions, final double distance, final boolean toroidal)
+        {
+        return batchQuery(positions, distance, 0, toroidal);
+        }
+
+    /** Answers a batch of queries at once, returning for each position the k objects nearest to it (or all the objects, if
+        there are fewer than k), nearest first.  Unlike getNearestNeighbors(position, ...), this returns exactly the
+        nearest objects, not a superset of them, and it also works in toroidal fields.  The answers are returned in a
+        compact Neighborhoods object rather than one Bag per position.  The queries are sorted by location and answered
+        in parallel.  Assumes point objects.
+        
+        <p> Note: if the field is toroidal, locations and positions outside the boundaries are wrapped to within the
+        boundaries before computation.
+    */
+    public Neighborhoods getNearestNeighbors(final Double2D[] positions, final int k, final boolean toroidal)
+        {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1: " + k);
+        return batchQuery(positions, 0, k, toroidal);
+        }
+
+    Neighborhoods batchQuery(final Double2D[] positions, final double distance, final int k, final boolean toroidal)
+        {
+        final int n = allObjects.numObjs;
+        Object[] objects = new Object[n];
+        System.arraycopy(allObjects.objs, 0, objects, 0, n);
+        double[] px = new double[n];
+        double[] py = new double[n];
+        for(int i = 0; i < n; i++)
+            {
+            Double2D loc = (cells != null ? locations[i] : getObjectLocation(objects[i]));
+            px[i] = (toroidal ? tx(loc.x) : loc.x);
+            py[i] = (toroidal ? ty(loc.y) : loc.y);
+            }
+        double[] qx = new double[positions.length];
+        double[] qy = new double[positions.length];
+        for(int q = 0; q < positions.length; q++)
+            {
+            qx[q] = (toroidal ? tx(positions[q].x) : positions[q].x);
+            qy[q] = (toroidal ? ty(positions[q].y) : positions[q].y);
+            }
+        return Neighborhoods.query(objects, px, py, qx, qy, distance, k, toroidal, width, height);
+        }
+
     /** Returns a bag containing AT LEAST those objects within the bounding box surrounding the
         specified distance of the specified position.  The bag could include other objects than this.
         In this case we include the object if
@@ -736,6 +985,23 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         else result = new Bag(expectedBagSize);
         Bag temp;
     
+        if (spatialIndex != null)
+            {
+            double d = (nonPointObjects ? distance + discretization : distance);
+            if (!toroidal)
+                spatialIndex.getObjectsWithin(position.x - d, position.y - d, position.x + d, position.y + d, result);
+            else
+                {
+                // break the square into as many as four pieces which don't wrap around
+                double[] xs = toroidalIntervals(position.x, d, width);
+                double[] ys = toroidalIntervals(position.y, d, height);
+                for(int i = 0; i < xs.length; i += 2)
+                    for(int j = 0; j < ys.length; j += 2)
+                        spatialIndex.getObjectsWithin(xs[i], ys[j], xs[i + 1], ys[j + 1], result);
+                }
+            return result;
+            }
+
         MutableInt2D speedyMutableInt2D = new MutableInt2D();
 
             
@@ -784,7 +1050,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                     // grab location
                     speedyMutableInt2D.x=x;
                     speedyMutableInt2D.y=y;
-                    temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                    temp = getBucket(speedyMutableInt2D);
                     if( temp != null && !temp.isEmpty())
                         {
                         // a little efficiency: add if we're 1, addAll if we're > 1, 
@@ -833,7 +1099,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
                     // grab location
                     speedyMutableInt2D.x=x;
                     speedyMutableInt2D.y=y;
-                    temp = getRawObjectsAtLocation(speedyMutableInt2D);
+                    temp = getBucket(speedyMutableInt2D);
                     if( temp != null && !temp.isEmpty())
                         {
                         // a little efficiency: add if we're 1, addAll if we're > 1, 
@@ -848,6 +1114,18 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         return result;
         }
         
+    // used internally in getNeighborsWithinDistance.  Returns the intervals, as {min, max, min, max, ...}, which cover
+    // from x - distance to x + distance, wrapped around to within 0 ... width
+    static double[] toroidalIntervals(final double x, final double distance, final double width)
+        {
+        final double min = x - distance;
+        final double max = x + distance;
+        if (distance + distance >= width) return new double[] { 0, width };
+        if (min < 0) return new double[] { min + width, width, 0, max };
+        if (max >= width) return new double[] { min, width, 0, max - width };
+        return new double[] { min, max };
+        }
+        
     // used internally in getNeighborsWithinDistance.  Note similarity to
     // AbstractGrid2D's tx method
     final int toroidal(final int x, final int width) 
@@ -933,6 +1211,21 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         else return numObjectsAtLocation(location);
         }
 
+    /** Removes objects at the given discretized location, and returns a bag of them, or null of no objects are at that location.
+        The Bag may be empty, or null, if there were no objects at that location.  You can freely modify this bag. */
+    public Bag removeObjectsAtLocation(final Object location)
+        {
+        // SparseField's version wouldn't remove the objects' continuous locations
+        Bag bag = getRawObjectsAtLocation(location);
+        if (bag != null)
+            {
+            bag = new Bag(bag);                 // copy so it won't be reduced as I remove objects
+            for(int i = 0; i < bag.numObjs; i++)
+                remove(bag.objs[i]);
+            }
+        return bag;
+        }
+
     /** Removes objects at exactly the given location, and returns a bag of them, or null of no objects are at that location.
         The Bag may be empty, or null, if there were no objects at that location.  You can freely modify this bag. */
     public Bag removeObjectsAtLocation(final Double2D location)
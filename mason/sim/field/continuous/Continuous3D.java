@@ -71,14 +71,45 @@ import java.util.*;
    <p>Continuous3D objects have a width and a height, but this is <b>only used</b> in computing toroidal
    (wrap-around) situations.  If you don't care about toroidal features, then you can completely disregard
    the width and height.
+
+   <p>If your space is bounded and densely populated, you may instead create the Continuous3D with a <b>cell array</b>
+   (see the constructor Continuous3D(discretization, width, height, length, cellArray)).  This works just as it does
+   in Continuous2D: the buckets within the bounds are also held in a flat array, object locations are stored in an
+   array rather than in doubleLocationHash, and an object is only re-bucketed when it moves into a different bucket.
+
+   <p>If your objects are unevenly spread, you can also give the Continuous3D a <b>spatial index</b>, such as an Octree,
+   with setSpatialIndex(...).  As in Continuous2D, getNeighborsWithinDistance(...) and the methods built on it then
+   consult the index rather than the buckets.
 */
 
 public /*strictfp*/ class Continuous3D extends SparseField implements SparseField3D
     {
     private static final long serialVersionUID = 1;
 
-    /** Where we store the Double3D values hashed by object */
-    public Map doubleLocationHash = buildMap(ANY_SIZE);
+    /** Where we store the Double3D values hashed by object.  Not used if there is a cell array. */
+    public Map doubleLocationHash = buildObjectMap(ANY_SIZE);
+
+    /** Returns an OpenHashMap, for locationAndIndexHash and doubleLocationHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new OpenHashMap(other); }
+    /** Returns an OpenHashMap, for locationAndIndexHash and doubleLocationHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new OpenHashMap(size); }
+    /** Returns an Int3DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new Int3DMap(other); }
+    /** Returns an Int3DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new Int3DMap(size); }
+    
+    /* The cell array, or null if we don't have one.  cells[(x * cellsHigh + y) * cellsLong + z] holds the objectHash
+       bag for the bucket <x, y, z>, or null if there is no such bag. */
+    Bag[] cells;
+    int cellsWide;
+    int cellsHigh;
+    int cellsLong;
+    /* The number of objects whose buckets lie outside the cell array. */
+    int outside;
+    /* The object locations, indexed by the objects' indexes in allObjects, if we have a cell array. */
+    Double3D[] locations;
+    /* The spatial index, or null if we're using the buckets. */
+    SpatialIndex3D spatialIndex;
     
     public double width;
     public double height;
@@ -93,6 +124,25 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
         this.width = width; this.height = height; this.length = length;
         }
 
+    /** Provide expected bounds on the SparseContinuous3D.  If cellArray is true, the buckets within the bounds
+        are also stored in a flat array, which makes setObjectLocation(...) and neighborhood lookups faster in bounded,
+        densely populated fields.  */
+    public Continuous3D(double discretization, double width, double height, double length, boolean cellArray)
+        {
+        this(discretization, width, height, length);
+        if (cellArray)
+            {
+            cellsWide = (int)(StrictMath.ceil(width / discretization));
+            cellsHigh = (int)(StrictMath.ceil(height / discretization));
+            cellsLong = (int)(StrictMath.ceil(length / discretization));
+            if (cellsWide <= 0 || cellsHigh <= 0 || cellsLong <= 0 ||
+                (double)cellsWide * (double)cellsHigh * (double)cellsLong > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Cannot make a cell array of " + cellsWide + " by " + cellsHigh + " by " + cellsLong + " buckets");
+            cells = new Bag[cellsWide * cellsHigh * cellsLong];
+            locations = new Double3D[INITIAL_BAG_SIZE];
+            }
+        }
+
     public Continuous3D(Continuous3D other)
         {
         super(other);
@@ -100,10 +150,49 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
         width = other.width;
         height = other.height;
         length = other.length;
+        if (other.cells != null)
+            {
+            cells = (Bag[])(other.cells.clone());
+            cellsWide = other.cellsWide;
+            cellsHigh = other.cellsHigh;
+            cellsLong = other.cellsLong;
+            outside = other.outside;
+            locations = (Double3D[])(other.locations.clone());
+            }
+        else doubleLocationHash = buildObjectMap(other.doubleLocationHash);
+        if (other.spatialIndex != null)
+            setSpatialIndex(other.spatialIndex.newIndex());
+        }
+
+    /** Sets the spatial index which answers getNeighborsWithinDistance(...), or null to use the buckets instead.
+        The index is cleared and all the objects in the field are added to it. */
+    public void setSpatialIndex(SpatialIndex3D index)
+        {
+        spatialIndex = index;
+        if (index != null)
+            {
+            index.clear();
+            for(int i = 0; i < allObjects.numObjs; i++)
+                {
+                Double3D loc = getObjectLocation(allObjects.objs[i]);
+                index.setObjectLocation(allObjects.objs[i], loc.x, loc.y, loc.z);
+                }
+            }
         }
 
+    /** Returns the spatial index, or null if the buckets are used instead. */
+    public SpatialIndex3D getSpatialIndex() { return spatialIndex; }
+
+    /** Returns true if the Continuous3D stores its buckets in a cell array. */
+    public boolean hasCellArray() { return cells != null; }
+
     public final Double3D getObjectLocation(Object obj)
         {
+        if (cells != null)
+            {
+            final int index = getObjectIndex(obj);
+            return (index < 0 ? null : locations[index]);
+            }
         return (Double3D) doubleLocationHash.get(obj);
         }
     
@@ -128,19 +217,116 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
     
     public final boolean setObjectLocation(Object obj, final Double3D location)
         {
-        boolean result = super.setObjectLocation(obj, discretize(location));
-        if (result) doubleLocationHash.put(obj,location);
+        boolean result;
+        if (cells != null) result = setObjectLocationInCells(obj, location);
+        else
+            {
+            // if the object stays in its bucket, don't bother making a new Int3D for it
+            final int x = (int)(location.x / discretization);
+            final int y = (int)(location.y / discretization);
+            final int z = (int)(location.z / discretization);
+            LocationAndIndex lai = (obj == null ? null : (LocationAndIndex)(locationAndIndexHash.get(obj)));
+            Object loc = (lai == null ? null : lai.getLocation());
+            if (loc instanceof Int3D && ((Int3D)loc).x == x && ((Int3D)loc).y == y && ((Int3D)loc).z == z)
+                result = true;
+            else result = super.setObjectLocation(obj, new Int3D(x, y, z));
+            if (result) doubleLocationHash.put(obj,location);
+            }
+        if (result && spatialIndex != null) spatialIndex.setObjectLocation(obj, location.x, location.y, location.z);
         return result;
         }
         
+    boolean setObjectLocationInCells(final Object obj, final Double3D location)
+        {
+        if (obj == null || location == null) return false;
+        final double discretization = this.discretization;
+        final int x = (int)(location.x / discretization);
+        final int y = (int)(location.y / discretization);
+        final int z = (int)(location.z / discretization);
+        
+        int index = getObjectIndex(obj);                                        // HASH
+        if (index >= 0)
+            {
+            final Double3D old = locations[index];
+            final int oldX = (int)(old.x / discretization);
+            final int oldY = (int)(old.y / discretization);
+            final int oldZ = (int)(old.z / discretization);
+            locations[index] = location;
+            if (oldX == x && oldY == y && oldZ == z) return true;  // same bucket, we're done
+            
+            // re-bucket
+            super.setObjectLocation(obj, new Int3D(x, y, z));
+            refreshBucket(oldX, oldY, oldZ, -1);
+            }
+        else
+            {
+            super.setObjectLocation(obj, new Int3D(x, y, z));
+            index = allObjects.numObjs - 1;
+            if (index >= locations.length)
+                {
+                Double3D[] newLocations = new Double3D[locations.length * 2 + 1];
+                System.arraycopy(locations, 0, newLocations, 0, locations.length);
+                locations = newLocations;
+                }
+            locations[index] = location;
+            }
+        refreshBucket(x, y, z, 1);
+        return true;
+        }
+        
+    // reloads a bucket in the cell array from objectHash, and counts an object moving into (1) or out of (-1) it
+    void refreshBucket(final int x, final int y, final int z, final int change)
+        {
+        if (x >= 0 && y >= 0 && z >= 0 && x < cellsWide && y < cellsHigh && z < cellsLong)
+            cells[(x * cellsHigh + y) * cellsLong + z] = (Bag)(objectHash instanceof Int3DMap ?
+                ((Int3DMap)objectHash).get(x, y, z) : objectHash.get(new Int3D(x, y, z)));
+        else outside += change;
+        }
+        
+    // returns the bag of objects in the bucket at the given discretized location, using the cell array if we have one
+    final Bag getBucket(final MutableInt3D location)
+        {
+        if (cells != null)
+            {
+            final int x = location.x;
+            final int y = location.y;
+            final int z = location.z;
+            if (x >= 0 && y >= 0 && z >= 0 && x < cellsWide && y < cellsHigh && z < cellsLong)
+                return cells[(x * cellsHigh + y) * cellsLong + z];
+            if (outside == 0) return null;
+            }
+        return getRawObjectsAtLocation(location);
+        }
+        
     public final Bag clear()
         {
-        doubleLocationHash = buildMap(ANY_SIZE);
+        doubleLocationHash = buildObjectMap(ANY_SIZE);
+        if (spatialIndex != null) spatialIndex.clear();
+        if (cells != null)
+            {
+            Arrays.fill(cells, null);
+            outside = 0;
+            locations = new Double3D[INITIAL_BAG_SIZE];
+            }
         return super.clear();
         }
         
     public final Object remove(final Object obj)
         {
+        if (spatialIndex != null) spatialIndex.remove(obj);
+        if (cells != null)
+            {
+            final int index = getObjectIndex(obj);
+            if (index < 0) return null;
+            Object result = super.remove(obj);
+            // SparseField moved the last object into the removed object's slot
+            final Double3D old = locations[index];
+            final int last = allObjects.numObjs;
+            locations[index] = locations[last];
+            locations[last] = null;
+            refreshBucket((int)(old.x / discretization), (int)(old.y / discretization), (int)(old.z / discretization), -1);
+            return result;
+            }
         Object result = super.remove(obj);
         doubleLocationHash.remove(obj);
         return result;
@@ -628,6 +814,25 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
         else result = new Bag(expectedBagSize);
         Bag temp;
     
+        if (spatialIndex != null)
+            {
+            double d = (nonPointObjects ? distance + discretization : distance);
+            if (!toroidal)
+                spatialIndex.getObjectsWithin(position.x - d, position.y - d, position.z - d, position.x + d, position.y + d, position.z + d, result);
+            else
+                {
+                // break the cube into as many as eight pieces which don't wrap around
+                double[] xs = Continuous2D.toroidalIntervals(position.x, d, width);
+                double[] ys = Continuous2D.toroidalIntervals(position.y, d, height);
+                double[] zs = Continuous2D.toroidalIntervals(position.z, d, length);
+                for(int i = 0; i < xs.length; i += 2)
+                    for(int j = 0; j < ys.length; j += 2)
+                        for(int k = 0; k < zs.length; k += 2)
+                            spatialIndex.getObjectsWithin(xs[i], ys[j], zs[k], xs[i + 1], ys[j + 1], zs[k + 1], result);
+                }
+            return result;
+            }
+
         MutableInt3D speedyMutableInt3D = new MutableInt3D();  // a little faster (local)
 
 
@@ -688,7 +893,7 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
                         {
                         // grab location
                         speedyMutableInt3D.x=x; speedyMutableInt3D.y=y; speedyMutableInt3D.z=z;
-                        temp =  getRawObjectsAtLocation(speedyMutableInt3D);
+                        temp =  getBucket(speedyMutableInt3D);
                         if( temp != null && !temp.isEmpty())
                             {
                             // a little efficiency: add if we're 1, addAll if we're > 1, 
@@ -749,7 +954,7 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
                         {
                         // grab location
                         speedyMutableInt3D.x=x; speedyMutableInt3D.y=y; speedyMutableInt3D.z=z;
-                        temp =  getRawObjectsAtLocation(speedyMutableInt3D);
+                        temp =  getBucket(speedyMutableInt3D);
                         if( temp != null && !temp.isEmpty())
                             {
                             // a little efficiency: add if we're 1, addAll if we're > 1, 
@@ -850,6 +1055,21 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
         else return numObjectsAtLocation(location);
         }
 
+    /** Removes objects at the given discretized location, and returns a bag of them, or null of no objects are at that location.
+        The Bag may be empty, or null, if there were no objects at that location.  You can freely modify this bag. */
+    public Bag removeObjectsAtLocation(final Object location)
+        {
+        // SparseField's version wouldn't remove the objects' continuous locations
+        Bag bag = getRawObjectsAtLocation(location);
+        if (bag != null)
+            {
+            bag = new Bag(bag);                 // copy so it won't be reduced as I remove objects
+            for(int i = 0; i < bag.numObjs; i++)
+                remove(bag.objs[i]);
+            }
+        return bag;
+        }
+
     /** Removes objects at exactly the given location, and returns a bag of them, or null of no objects are at that location.
         The Bag may be empty, or null, if there were no objects at that location.  You can freely modify this bag. */
     public Bag removeObjectsAtLocation(final Double3D location)
@@ -0,0 +1,529 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.continuous;
+import sim.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   The answers to a batch of neighborhood queries on a Continuous2D, made with
+   Continuous2D.getNeighborsExactlyWithinDistance(Double2D[], ...) or Continuous2D.getNearestNeighbors(Double2D[], ...).
+
+   <p>The answers are stored compactly, in the style of a sparse matrix: the neighbors of query <i>q</i> are
+   <tt>objects[indices[j]]</tt> for <i>j</i> from <tt>offsets[q]</tt> up to (but not including) <tt>offsets[q+1]</tt>, and
+   <tt>distancesSq[j]</tt> is the squared distance from the query position to that neighbor.  <tt>objects</tt> is a copy of
+   the field's allObjects bag at the time of the query, so <tt>indices</tt> are also the objects' indexes in allObjects
+   so long as the field has not changed since.  Nearest neighbors are sorted from nearest to farthest; neighbors within a
+   distance are in no particular order.  As with the single-position methods, an object at the query position is
+   its own neighbor.
+
+   <p>To answer a batch, the field's objects are first copied into a temporary grid of cells sized for the query, the
+   queries are sorted by cell so that nearby queries are answered together, and the queries are then divided among the
+   threads of sim.engine.ForkJoinStrategy's shared pool.  Small batches are answered in the calling thread.  The
+   field must not be modified while a batch is being answered.
+*/
+
+public class Neighborhoods
+    {
+    /** Batches smaller than this are answered in the calling thread. */
+    public static final int MIN_PARALLEL_QUERIES = 1024;
+
+    /** The number of queries answered by a single task. */
+    static final int QUERIES_PER_TASK = 256;
+
+    /** Where the neighbors of each query begin in indices and distancesSq.  There is one more offset than queries. */
+    public final int[] offsets;
+    /** The indexes, in objects, of the neighbors of all the queries. */
+    public final int[] indices;
+    /** The squared distances from the query positions to their neighbors. */
+    public final double[] distancesSq;
+    /** The objects in the field at the time of the query. */
+    public final Object[] objects;
+
+    Neighborhoods(int[] offsets, int[] indices, double[] distancesSq, Object[] objects)
+        {
+        this.offsets = offsets;
+        this.indices = indices;
+        this.distancesSq = distancesSq;
+        this.objects = objects;
+        }
+
+    /** Returns the number of queries. */
+    public int numQueries() { return offsets.length - 1; }
+
+    /** Returns the number of neighbors found for the given query. */
+    public int numNeighbors(int query) { return offsets[query + 1] - offsets[query]; }
+
+    /** Returns the given neighbor of the given query.  For nearest-neighbor queries, neighbor 0 is the nearest. */
+    public Object getNeighbor(int query, int neighbor) { return objects[indices[offsets[query] + neighbor]]; }
+
+    /** Returns the squared distance to the given neighbor of the given query. */
+    public double getDistanceSq(int query, int neighbor) { return distancesSq[offsets[query] + neighbor]; }
+
+    /** Places the neighbors of the given query into the result Bag (clearing it first), or into a new Bag if result
+        is null, and returns it. */
+    public Bag getNeighbors(int query, Bag result)
+        {
+        if (result == null) result = new Bag();
+        else result.clear();
+        int end = offsets[query + 1];
+        for(int j = offsets[query]; j < end; j++)
+            result.add(objects[indices[j]]);
+        return result;
+        }
+
+
+    /** The field's objects, sorted into a grid of cells.  The objects in cell c are cellStart[c] ... cellStart[c+1]-1,
+        in order, x, and y. */
+    static class Cells
+        {
+        final boolean toroidal;
+        final double width;
+        final double height;
+        double originX;
+        double originY;
+        double cellWidth;
+        double cellHeight;
+        int cellsWide;
+        int cellsHigh;
+        int[] cellStart;
+        int[] order;
+        double[] x;
+        double[] y;
+
+        /** Sorts the positions into cells at least the given size, but no more cells than about twice the positions. */
+        Cells(double[] px, double[] py, double size, boolean toroidal, double width, double height)
+            {
+            this.toroidal = toroidal;
+            this.width = width;
+            this.height = height;
+            int n = px.length;
+            double spanX, spanY;
+            if (toroidal)
+                {
+                originX = 0;
+                originY = 0;
+                spanX = width;
+                spanY = height;
+                }
+            else
+                {
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for(int i = 0; i < n; i++)
+                    {
+                    if (px[i] < minX) minX = px[i];
+                    if (px[i] > maxX) maxX = px[i];
+                    if (py[i] < minY) minY = py[i];
+                    if (py[i] > maxY) maxY = py[i];
+                    }
+                if (n == 0) { minX = maxX = minY = maxY = 0; }
+                originX = minX;
+                originY = minY;
+                spanX = maxX - minX;
+                spanY = maxY - minY;
+                }
+
+            if (!(size > 0) || size == Double.POSITIVE_INFINITY) size = Math.max(Math.max(spanX, spanY), 1);
+            while(true)
+                {
+                double w = Math.floor(spanX / size) + 1;
+                double h = Math.floor(spanY / size) + 1;
+                if (w * h <= 2.0 * n + 16 || size == Double.POSITIVE_INFINITY) break;
+                size *= 1.5;
+                }
+
+            if (toroidal)
+                {
+                cellsWide = Math.max(1, (int)(spanX / size));
+                cellsHigh = Math.max(1, (int)(spanY / size));
+                cellWidth = spanX / cellsWide;
+                cellHeight = spanY / cellsHigh;
+                }
+            else
+                {
+                cellsWide = (int)(spanX / size) + 1;
+                cellsHigh = (int)(spanY / size) + 1;
+                cellWidth = size;
+                cellHeight = size;
+                }
+
+            // counting sort
+            int numCells = cellsWide * cellsHigh;
+            cellStart = new int[numCells + 1];
+            int[] cell = new int[n];
+            for(int i = 0; i < n; i++)
+                {
+                cell[i] = cellOf(px[i], py[i]);
+                cellStart[cell[i] + 1]++;
+                }
+            for(int c = 0; c < numCells; c++)
+                cellStart[c + 1] += cellStart[c];
+            int[] next = new int[numCells];
+            System.arraycopy(cellStart, 0, next, 0, numCells);
+            order = new int[n];
+            x = new double[n];
+            y = new double[n];
+            for(int i = 0; i < n; i++)
+                {
+                int j = next[cell[i]]++;
+                order[j] = i;
+                x[j] = px[i];
+                y[j] = py[i];
+                }
+            }
+
+        int column(double px)
+            {
+            int c = (int)((px - originX) / cellWidth);
+            if (c < 0 || px != px) return 0;
+            if (c >= cellsWide) return cellsWide - 1;
+            return c;
+            }
+
+        int row(double py)
+            {
+            int c = (int)((py - originY) / cellHeight);
+            if (c < 0 || py != py) return 0;
+            if (c >= cellsHigh) return cellsHigh - 1;
+            return c;
+            }
+
+        int cellOf(double px, double py) { return column(px) * cellsHigh + row(py); }
+
+        double distanceSq(double x1, double y1, double x2, double y2)
+            {
+            double dx = x1 - x2;
+            double dy = y1 - y2;
+            if (toroidal)
+                {
+                if (dx < 0) dx = -dx;
+                if (dy < 0) dy = -dy;
+                if (dx + dx > width) dx = width - dx;
+                if (dy + dy > height) dy = height - dy;
+                }
+            return dx * dx + dy * dy;
+            }
+
+        // the smallest and largest canonical offsets from a cell when the grid wraps around, so each cell is visited once
+        static int minOffset(int cells) { return -((cells - 1) / 2); }
+        static int maxOffset(int cells) { return cells / 2; }
+
+        /** Adds to the buffer the objects within the given distance of the position. */
+        void within(double qx, double qy, double distance, Buffer buffer)
+            {
+            final double distSq = distance * distance;
+            final int cx = column(qx);
+            final int cy = row(qy);
+            int minX, maxX, minY, maxY;
+            if (toroidal)
+                {
+                int rx = (int)Math.ceil(distance / cellWidth);
+                int ry = (int)Math.ceil(distance / cellHeight);
+                minX = Math.max(-rx, minOffset(cellsWide));
+                maxX = Math.min(rx, maxOffset(cellsWide));
+                minY = Math.max(-ry, minOffset(cellsHigh));
+                maxY = Math.min(ry, maxOffset(cellsHigh));
+                }
+            else
+                {
+                minX = column(qx - distance) - cx;
+                maxX = column(qx + distance) - cx;
+                minY = row(qy - distance) - cy;
+                maxY = row(qy + distance) - cy;
+                }
+
+            for(int ox = minX; ox <= maxX; ox++)
+                {
+                int c = cx + ox;
+                if (toroidal) { if (c < 0) c += cellsWide; else if (c >= cellsWide) c -= cellsWide; }
+                for(int oy = minY; oy <= maxY; oy++)
+                    {
+                    int r = cy + oy;
+                    if (toroidal) { if (r < 0) r += cellsHigh; else if (r >= cellsHigh) r -= cellsHigh; }
+                    int cell = c * cellsHigh + r;
+                    int end = cellStart[cell + 1];
+                    for(int j = cellStart[cell]; j < end; j++)
+                        {
+                        double d = distanceSq(qx, qy, x[j], y[j]);
+                        if (d <= distSq) buffer.add(order[j], d);
+                        }
+                    }
+                }
+            }
+
+        /** Adds to the buffer the k objects nearest the position, nearest first. */
+        void nearest(double qx, double qy, int k, Buffer buffer)
+            {
+            final int cx = column(qx);
+            final int cy = row(qy);
+            final double minCell = Math.min(cellWidth, cellHeight);
+            int last;  // the largest ring
+            if (toroidal) last = Math.max(Math.max(-minOffset(cellsWide), maxOffset(cellsWide)), Math.max(-minOffset(cellsHigh), maxOffset(cellsHigh)));
+            else last = Math.max(Math.max(cx, cellsWide - 1 - cx), Math.max(cy, cellsHigh - 1 - cy));
+
+            buffer.heapClear(k);
+            for(int ring = 0; ring <= last; ring++)
+                {
+                // we can stop if no object in this ring or beyond could be nearer than the kth nearest so far
+                if (buffer.heapSize == k && ring > 0)
+                    {
+                    double bound = (ring - 1) * minCell;
+                    if (bound * bound > buffer.heapTop()) break;
+                    }
+                for(int ox = -ring; ox <= ring; ox++)
+                    {
+                    int c = cx + ox;
+                    if (toroidal)
+                        {
+                        if (ox < minOffset(cellsWide) || ox > maxOffset(cellsWide)) continue;
+                        if (c < 0) c += cellsWide; else if (c >= cellsWide) c -= cellsWide;
+                        }
+                    else if (c < 0 || c >= cellsWide) continue;
+
+                    // only the top and bottom of the ring, unless we're on its left or right side
+                    int step = (ox == -ring || ox == ring) ? 1 : Math.max(1, 2 * ring);
+                    for(int oy = -ring; oy <= ring; oy += step)
+                        {
+                        int r = cy + oy;
+                        if (toroidal)
+                            {
+                            if (oy < minOffset(cellsHigh) || oy > maxOffset(cellsHigh)) continue;
+                            if (r < 0) r += cellsHigh; else if (r >= cellsHigh) r -= cellsHigh;
+                            }
+                        else if (r < 0 || r >= cellsHigh) continue;
+                        int cell = c * cellsHigh + r;
+                        int end = cellStart[cell + 1];
+                        for(int j = cellStart[cell]; j < end; j++)
+                            buffer.heapOffer(order[j], distanceSq(qx, qy, x[j], y[j]));
+                        }
+                    }
+                }
+            buffer.heapDrain();
+            }
+        }
+
+
+    /** A growable list of neighbors and distances, with a bounded max-heap for nearest-neighbor queries. */
+    static class Buffer
+        {
+        int[] indices = new int[256];
+        double[] distances = new double[256];
+        int size;
+
+        int[] heapIndices = new int[0];
+        double[] heapDistances = new double[0];
+        int heapSize;
+        int heapCapacity;
+
+        void add(int index, double distance)
+            {
+            if (size == indices.length)
+                {
+                int[] i = new int[size * 2];
+                System.arraycopy(indices, 0, i, 0, size);
+                indices = i;
+                double[] d = new double[size * 2];
+                System.arraycopy(distances, 0, d, 0, size);
+                distances = d;
+                }
+            indices[size] = index;
+            distances[size] = distance;
+            size++;
+            }
+
+        void heapClear(int k)
+            {
+            heapSize = 0;
+            heapCapacity = k;
+            if (heapIndices.length < k)
+                {
+                heapIndices = new int[k];
+                heapDistances = new double[k];
+                }
+            }
+
+        double heapTop() { return heapDistances[0]; }
+
+        void heapOffer(int index, double distance)
+            {
+            if (!(distance == distance)) return;  // NaN
+            if (heapSize < heapCapacity)
+                {
+                // sift up
+                int i = heapSize++;
+                while(i > 0)
+                    {
+                    int parent = (i - 1) / 2;
+                    if (heapDistances[parent] >= distance) break;
+                    heapDistances[i] = heapDistances[parent];
+                    heapIndices[i] = heapIndices[parent];
+                    i = parent;
+                    }
+                heapDistances[i] = distance;
+                heapIndices[i] = index;
+                }
+            else if (heapCapacity > 0 && distance < heapDistances[0])
+                {
+                siftDown(index, distance, heapSize);
+                }
+            }
+
+        // places the given element at the top of the heap of the given size and sifts it down
+        void siftDown(int index, double distance, int n)
+            {
+            int i = 0;
+            while(true)
+                {
+                int child = 2 * i + 1;
+                if (child >= n) break;
+                if (child + 1 < n && heapDistances[child + 1] > heapDistances[child]) child++;
+                if (heapDistances[child] <= distance) break;
+                heapDistances[i] = heapDistances[child];
+                heapIndices[i] = heapIndices[child];
+                i = child;
+                }
+            heapDistances[i] = distance;
+            heapIndices[i] = index;
+            }
+
+        /** Moves the heap into the list, nearest first. */
+        void heapDrain()
+            {
+            int n = heapSize;
+            int start = size;
+            for(int i = 0; i < n; i++) add(0, 0);
+            for(int i = n - 1; i >= 0; i--)
+                {
+                indices[start + i] = heapIndices[0];
+                distances[start + i] = heapDistances[0];
+                siftDown(heapIndices[i], heapDistances[i], i);
+                }
+            heapSize = 0;
+            }
+        }
+
+
+    /** Answers a batch of queries.  If k > 0, finds the k nearest neighbors, else the neighbors within distance. */
+    static Neighborhoods query(Object[] objects, double[] px, double[] py, final double[] qx, final double[] qy,
+        final double distance, final int k, boolean toroidal, double width, double height)
+        {
+        final int numQueries = qx.length;
+
+        // size the cells: for distance queries, one distance on a side; for nearest neighbors, about k objects per cell
+        double size;
+        if (k > 0)
+            {
+            double area;
+            if (toroidal) area = width * height;
+            else
+                {
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for(int i = 0; i < px.length; i++)
+                    {
+                    if (px[i] < minX) minX = px[i];
+                    if (px[i] > maxX) maxX = px[i];
+                    if (py[i] < minY) minY = py[i];
+                    if (py[i] > maxY) maxY = py[i];
+                    }
+                area = (maxX - minX) * (maxY - minY);
+                }
+            size = Math.sqrt(area * k / Math.max(px.length, 1));
+            }
+        else size = distance;
+        final Cells cells = new Cells(px, py, size, toroidal, width, height);
+
+        // sort the queries by cell so that neighboring queries are answered together
+        final int[] sorted = new int[numQueries];
+        int numCells = cells.cellsWide * cells.cellsHigh;
+        int[] start = new int[numCells + 1];
+        int[] queryCell = new int[numQueries];
+        for(int q = 0; q < numQueries; q++)
+            {
+            queryCell[q] = cells.cellOf(qx[q], qy[q]);
+            start[queryCell[q] + 1]++;
+            }
+        for(int c = 0; c < numCells; c++) start[c + 1] += start[c];
+        for(int q = 0; q < numQueries; q++)
+            sorted[start[queryCell[q]]++] = q;
+
+        // answer them in tasks of QUERIES_PER_TASK sorted queries.  Each task fills its own buffer and notes where
+        // in that buffer each of its queries' answers begins.
+        final int numTasks = (numQueries + QUERIES_PER_TASK - 1) / QUERIES_PER_TASK;
+        final Buffer[] buffers = new Buffer[numTasks];
+        final int[] begin = new int[numQueries];
+        final int[] count = new int[numQueries];
+        final int[] task = new int[numQueries];
+
+        ArrayList tasks = new ArrayList();
+        for(int t = 0; t < numTasks; t++)
+            {
+            final int tt = t;
+            tasks.add(new Callable()
+                {
+                public Object call()
+                    {
+                    Buffer buffer = new Buffer();
+                    int end = Math.min(numQueries, (tt + 1) * QUERIES_PER_TASK);
+                    for(int s = tt * QUERIES_PER_TASK; s < end; s++)
+                        {
+                        int q = sorted[s];
+                        begin[q] = buffer.size;
+                        if (k > 0) cells.nearest(qx[q], qy[q], k, buffer);
+                        else cells.within(qx[q], qy[q], distance, buffer);
+                        count[q] = buffer.size - begin[q];
+                        task[q] = tt;
+                        }
+                    buffers[tt] = buffer;
+                    return null;
+                    }
+                });
+            }
+
+        if (numQueries < MIN_PARALLEL_QUERIES)
+            {
+            try
+                {
+                for(int t = 0; t < tasks.size(); t++)
+                    ((Callable)(tasks.get(t))).call();
+                }
+            catch (Exception e) { throw new RuntimeException(e); }  // our Callables don't throw checked exceptions
+            }
+        else
+            {
+            List futures = sim.engine.ForkJoinStrategy.getSharedPool().invokeAll(tasks);
+            for(int t = 0; t < futures.size(); t++)
+                {
+                try { ((Future)(futures.get(t))).get(); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); throw new RuntimeException(e); }
+                catch (ExecutionException e)
+                    {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new RuntimeException(cause);
+                    }
+                }
+            }
+
+        // gather the answers in query order
+        int[] offsets = new int[numQueries + 1];
+        for(int q = 0; q < numQueries; q++)
+            offsets[q + 1] = offsets[q] + count[q];
+        int total = offsets[numQueries];
+        int[] indices = new int[total];
+        double[] distancesSq = new double[total];
+        for(int q = 0; q < numQueries; q++)
+            {
+            Buffer buffer = buffers[task[q]];
+            System.arraycopy(buffer.indices, begin[q], indices, offsets[q], count[q]);
+            System.arraycopy(buffer.distances, begin[q], distancesSq, offsets[q], count[q]);
+            }
+        return new Neighborhoods(offsets, indices, distancesSq, objects);
+        }
+    }
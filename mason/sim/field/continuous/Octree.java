@@ -0,0 +1,58 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.continuous;
+import sim.util.*;
+
+/**
+   A SpatialIndex3D which divides space into cubes, each of which is divided into eight when it holds more than a
+   few objects, and merged back when its objects leave.  This is the 3D version of QuadTree: see it for when to
+   use it.  To use it, call <tt>field.setSpatialIndex(new Octree(field))</tt>.
+*/
+
+public class Octree extends RegionTree implements SpatialIndex3D
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The default number of objects a leaf holds before it splits. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** Creates an Octree whose initial cube covers 0 to size in each dimension, with the given leaf capacity.
+        The tree grows as needed to hold objects outside this cube. */
+    public Octree(double size, int capacity)
+        {
+        super(3, size, capacity);
+        }
+
+    /** Creates an Octree whose initial cube covers the bounds of the field, with the default leaf capacity. */
+    public Octree(Continuous3D field)
+        {
+        this(Math.max(field.width, Math.max(field.height, field.length)), DEFAULT_CAPACITY);
+        }
+
+    /** Returns the number of objects a leaf holds before it splits. */
+    public int getCapacity() { return capacity; }
+
+    public SpatialIndex3D newIndex() { return new Octree(initialSize, capacity); }
+
+    public void setObjectLocation(Object obj, double x, double y, double z)
+        {
+        point[0] = x;
+        point[1] = y;
+        point[2] = z;
+        set(obj);
+        }
+
+    public void getObjectsWithin(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Bag result)
+        {
+        within(new double[] { minX, minY, minZ }, new double[] { maxX, maxY, maxZ }, result);
+        }
+
+    public void getNearestNeighbors(double x, double y, double z, int k, Bag result)
+        {
+        nearest(new double[] { x, y, z }, k, result);
+        }
+    }
@@ -0,0 +1,158 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.continuous;
+import sim.util.*;
+import ec.util.*;
+
+/**
+   A SpatialIndex2D which divides space into squares, each of which is divided into four when it holds more than a
+   few objects, and merged back when its objects leave.  Unlike a Continuous2D's buckets, which all have the same
+   size, the squares are small where objects are dense and large where they are sparse.  So if your objects gather
+   in a few dense clusters separated by large empty areas, no single discretization suits the whole field, but a
+   QuadTree does.  To use it, call <tt>field.setSpatialIndex(new QuadTree(field))</tt>.
+
+   <p>Each leaf holds up to <i>capacity</i> objects before it splits.  Moving an object within its leaf is cheap;
+   moving it to another leaf costs a removal and an insertion, each O(depth).
+
+   <p>When is it better than buckets?  Run <tt>java sim.field.continuous.QuadTree</tt> to compare the two on uniform and
+   clustered populations.  Roughly: on uniform populations, buckets with a well-chosen discretization are as fast or
+   faster, because finding a bucket is cheaper than descending the tree, and moving objects costs less.  On clustered
+   populations, the buckets in the clusters hold many objects which lie outside the distance asked for, and the
+   QuadTree's distance queries are faster.  The QuadTree's nearest-neighbor queries return exactly the nearest
+   neighbors, where buckets return many more objects, or, in sparse areas, give up and return all of them.
+
+   <p>In toroidal queries, only objects within the bounds of the field are found.
+*/
+
+public class QuadTree extends RegionTree implements SpatialIndex2D
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The default number of objects a leaf holds before it splits. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** Creates a QuadTree whose initial square covers 0 to size in each dimension, with the given leaf capacity.
+        The tree grows as needed to hold objects outside this square. */
+    public QuadTree(double size, int capacity)
+        {
+        super(2, size, capacity);
+        }
+
+    /** Creates a QuadTree whose initial square covers the bounds of the field, with the default leaf capacity. */
+    public QuadTree(Continuous2D field)
+        {
+        this(Math.max(field.width, field.height), DEFAULT_CAPACITY);
+        }
+
+    /** Returns the number of objects a leaf holds before it splits. */
+    public int getCapacity() { return capacity; }
+
+    public SpatialIndex2D newIndex() { return new QuadTree(initialSize, capacity); }
+
+    public void setObjectLocation(Object obj, double x, double y)
+        {
+        point[0] = x;
+        point[1] = y;
+        set(obj);
+        }
+
+    public void getObjectsWithin(double minX, double minY, double maxX, double maxY, Bag result)
+        {
+        within(new double[] { minX, minY }, new double[] { maxX, maxY }, result);
+        }
+
+    public void getNearestNeighbors(double x, double y, int k, Bag result)
+        {
+        nearest(new double[] { x, y }, k, result);
+        }
+
+    /** Compares a QuadTree with buckets on uniform and clustered populations of moving objects. */
+    public static void main(String[] args)
+        {
+        int n = 20000;
+        double size = 1000;
+        double radius = 5;
+        int k = 8;
+        int steps = 3;
+        System.out.println("Moving " + n + " objects " + steps + " times, and for each object, querying the neighbors within " + radius +
+            " and the " + k + " nearest neighbors, in a " + size + " by " + size + " field.  Times in milliseconds, after a warm-up.\n");
+        System.out.println(pad("Population", 12) + pad("Index", 24) + pad("Move", 10) + pad("Within", 10) + pad("Nearest", 10) + pad("Nearest found", 14));
+        for(int pass = 0; pass < 2; pass++)
+            for(int clustered = 0; clustered < 2; clustered++)
+                {
+                for(int index = 0; index < 4; index++)
+                    {
+                    // buckets the size of the query, a quarter of it, or four times it; or a QuadTree
+                    double discretization = (index == 0 ? radius : index == 1 ? radius / 4 : radius * 4);
+                    Continuous2D field = new Continuous2D(discretization, size, size);
+                    if (index == 3) field.setSpatialIndex(new QuadTree(field));
+
+                    MersenneTwisterFast random = new MersenneTwisterFast(1);
+                    Object[] objs = new Object[n];
+                    Double2D[] locs = new Double2D[n];
+                    for(int i = 0; i < n; i++)
+                        {
+                        objs[i] = new Object();
+                        if (clustered == 0) locs[i] = new Double2D(random.nextDouble() * size, random.nextDouble() * size);
+                        else if (i % 100 == 0)  // a few stragglers in the empty space
+                            locs[i] = new Double2D(random.nextDouble() * size, random.nextDouble() * size);
+                        else
+                            {
+                            // twenty clusters, Gaussian, of standard deviation 20
+                            int c = random.nextInt(20);
+                            MersenneTwisterFast r = new MersenneTwisterFast(c);
+                            double cx = r.nextDouble() * size * 0.8 + size * 0.1;
+                            double cy = r.nextDouble() * size * 0.8 + size * 0.1;
+                            locs[i] = new Double2D(cx + random.nextGaussian() * 20, cy + random.nextGaussian() * 20);
+                            }
+                        field.setObjectLocation(objs[i], locs[i]);
+                        }
+
+                    long moveTime = 0;
+                    long withinTime = 0;
+                    long nearestTime = 0;
+                    long found = 0;
+                    Bag result = new Bag();
+                    for(int step = 0; step < steps; step++)
+                        {
+                        long time = System.nanoTime();
+                        for(int i = 0; i < n; i++)
+                            {
+                            locs[i] = new Double2D(locs[i].x + random.nextDouble() - 0.5, locs[i].y + random.nextDouble() - 0.5);
+                            field.setObjectLocation(objs[i], locs[i]);
+                            }
+                        moveTime += System.nanoTime() - time;
+                        time = System.nanoTime();
+                        for(int i = 0; i < n; i++)
+                            result = field.getNeighborsExactlyWithinDistance(locs[i], radius, false, true, true, result);
+                        withinTime += System.nanoTime() - time;
+                        time = System.nanoTime();
+                        for(int i = 0; i < n; i++)
+                            {
+                            result = field.getNearestNeighbors(locs[i], k, false, false, true, result);
+                            found += result.numObjs;
+                            }
+                        nearestTime += System.nanoTime() - time;
+                        }
+                    if (pass == 1)
+                        System.out.println(pad(clustered == 0 ? "uniform" : "clustered", 12) +
+                            pad(index == 3 ? "QuadTree" : "Buckets of " + discretization, 24) +
+                            pad("" + moveTime / 1000000, 10) + pad("" + withinTime / 1000000, 10) +
+                            pad("" + nearestTime / 1000000, 10) + pad("" + found / (steps * n), 14));
+                    }
+                }
+        System.out.println("\nNearest found is the average number of objects returned when asking for the " + k + " nearest neighbors:");
+        System.out.println("buckets return the nearest neighbors and others, and give up and return all the objects if they search too far.");
+        }
+
+    static String pad(String s, int width)
+        {
+        StringBuffer b = new StringBuffer(s);
+        while(b.length() < width) b.append(' ');
+        return b.toString();
+        }
+    }
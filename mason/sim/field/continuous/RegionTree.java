@@ -0,0 +1,441 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.continuous;
+import sim.util.*;
+import java.util.*;
+
+/**
+   The machinery behind QuadTree and Octree: a region tree in any number of dimensions.  Each node is a
+   square (or cube) which is either a leaf holding up to a few objects, or is divided into 2^dimensions equal
+   children.  A leaf which grows too full is split, and a subtree which grows too empty is merged back into a
+   leaf, so the tree follows the density of the objects.  The root grows as needed to enclose objects
+   outside it.  The leaf of each object is kept in a HashMap, so moving an object within its leaf only
+   updates its coordinates.
+
+   <p>Objects with infinite or NaN coordinates are not held in the tree: they are never returned by queries.
+
+   <p>As with a field's buckets, any number of threads may query the tree at once, so long as none is changing it.
+*/
+
+class RegionTree implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Nodes this deep are never split, so that many objects at the same location can't make the tree grow forever. */
+    static final int MAX_DEPTH = 40;
+
+    static class Node implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        Node parent;
+        double[] min;
+        double size;
+        int depth;
+        Node[] children;        // null if we're a leaf
+        int count;              // the number of objects in this subtree
+        Object[] objs;          // if we're a leaf, our objects...
+        double[] coordinates;   // ... and their coordinates, dimensions per object
+
+        Node(Node parent, double[] min, double size, int depth, int dimensions, int capacity)
+            {
+            this.parent = parent;
+            this.min = min;
+            this.size = size;
+            this.depth = depth;
+            objs = new Object[capacity + 1];
+            coordinates = new double[(capacity + 1) * dimensions];
+            }
+        }
+
+    final int dimensions;
+    final int capacity;
+    final double initialSize;
+    Node root;
+    HashMap leaves = new HashMap();  // object -> its leaf
+
+    // the location being set by set(...).  Changes to the tree, like changes to a field, mustn't run in several threads
+    // at once, but queries keep all their state in locals, so any number of threads may query the tree at once.
+    double[] point;
+
+    RegionTree(int dimensions, double size, int capacity)
+        {
+        if (capacity < 1) throw new IllegalArgumentException("Leaf capacity must be at least 1: " + capacity);
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        if (!(size > 0 && size < Double.POSITIVE_INFINITY)) size = 1.0;
+        double s = 1.0;
+        while(s < size) s *= 2;
+        while(s / 2 >= size) s /= 2;
+        this.initialSize = s;
+        point = new double[dimensions];
+        clear();
+        }
+
+    /** Returns the number of objects in the tree. */
+    public int size() { return leaves.size(); }
+
+    public void clear()
+        {
+        root = new Node(null, new double[dimensions], initialSize, 0, dimensions, capacity);
+        leaves = new HashMap();
+        }
+
+    boolean contains(Node node, double[] p)
+        {
+        for(int d = 0; d < dimensions; d++)
+            if (!(p[d] >= node.min[d] && p[d] < node.min[d] + node.size)) return false;
+        return true;
+        }
+
+    int childIndex(Node node, double[] p)
+        {
+        double half = node.size / 2;
+        int c = 0;
+        for(int d = 0; d < dimensions; d++)
+            if (p[d] >= node.min[d] + half) c |= (1 << d);
+        return c;
+        }
+
+    // returns the slot of the object in its leaf
+    static int slot(Node leaf, Object obj)
+        {
+        Object[] objs = leaf.objs;
+        for(int i = 0; i < leaf.count; i++)
+            if (objs[i] == obj) return i;
+        for(int i = 0; i < leaf.count; i++)
+            if (objs[i].equals(obj)) return i;
+        return -1;  // shouldn't happen
+        }
+
+    /** Places the object at the location in point. */
+    void set(Object obj)
+        {
+        for(int d = 0; d < dimensions; d++)
+            if (!(point[d] > Double.NEGATIVE_INFINITY && point[d] < Double.POSITIVE_INFINITY))  // NaN or infinite
+                { remove(obj); return; }
+
+        Node leaf = (Node)(leaves.get(obj));                                // HASH
+        if (leaf != null)
+            {
+            int i = slot(leaf, obj);
+            if (contains(leaf, point))  // still in the same leaf: just move it
+                {
+                System.arraycopy(point, 0, leaf.coordinates, i * dimensions, dimensions);
+                return;
+                }
+            removeFromLeaf(leaf, i);
+            }
+        insert(obj);
+        }
+
+    void insert(Object obj)
+        {
+        while(!contains(root, point)) grow();
+        Node node = root;
+        while(node.children != null)
+            {
+            node.count++;
+            node = node.children[childIndex(node, point)];
+            }
+        leaves.put(obj, node);                                              // HASH
+        addToLeaf(node, obj, point, 0);
+        if (node.count > capacity) split(node);
+        }
+
+    void addToLeaf(Node leaf, Object obj, double[] coordinates, int offset)
+        {
+        if (leaf.count == leaf.objs.length)
+            {
+            Object[] objs = new Object[leaf.objs.length * 2];
+            System.arraycopy(leaf.objs, 0, objs, 0, leaf.count);
+            leaf.objs = objs;
+            double[] c = new double[objs.length * dimensions];
+            System.arraycopy(leaf.coordinates, 0, c, 0, leaf.count * dimensions);
+            leaf.coordinates = c;
+            }
+        leaf.objs[leaf.count] = obj;
+        System.arraycopy(coordinates, offset, leaf.coordinates, leaf.count * dimensions, dimensions);
+        leaf.count++;
+        }
+
+    // doubles the root toward point.  Every node's size is a power of two, and its corner a multiple of half its
+    // size, so that all the boundaries are computed exactly.
+    void grow()
+        {
+        Node old = root;
+        double size = old.size * 2;
+        double[] min = new double[dimensions];
+        int oldIndex = 0;
+        for(int d = 0; d < dimensions; d++)
+            {
+            if (point[d] < old.min[d]) { min[d] = old.min[d] - old.size; oldIndex |= (1 << d); }
+            else min[d] = old.min[d];
+            }
+        Node r = new Node(null, min, size, old.depth - 1, dimensions, capacity);
+        r.children = new Node[1 << dimensions];
+        for(int c = 0; c < r.children.length; c++)
+            {
+            if (c == oldIndex) r.children[c] = old;
+            else r.children[c] = new Node(r, childMin(r, c), old.size, old.depth, dimensions, capacity);
+            }
+        r.objs = null;
+        r.coordinates = null;
+        r.count = old.count;
+        old.parent = r;
+        root = r;
+        }
+
+    double[] childMin(Node node, int c)
+        {
+        double half = node.size / 2;
+        double[] min = new double[dimensions];
+        for(int d = 0; d < dimensions; d++)
+            min[d] = ((c & (1 << d)) != 0 ? node.min[d] + half : node.min[d]);
+        return min;
+        }
+
+    void split(Node leaf)
+        {
+        while(leaf.count > capacity && leaf.depth < MAX_DEPTH)
+            {
+            Object[] objs = leaf.objs;
+            double[] coordinates = leaf.coordinates;
+            int count = leaf.count;
+            leaf.children = new Node[1 << dimensions];
+            for(int c = 0; c < leaf.children.length; c++)
+                leaf.children[c] = new Node(leaf, childMin(leaf, c), leaf.size / 2, leaf.depth + 1, dimensions, capacity);
+            leaf.objs = null;
+            leaf.coordinates = null;
+
+            Node fullest = null;
+            double[] p = new double[dimensions];
+            for(int i = 0; i < count; i++)
+                {
+                System.arraycopy(coordinates, i * dimensions, p, 0, dimensions);
+                Node child = leaf.children[childIndex(leaf, p)];
+                addToLeaf(child, objs[i], coordinates, i * dimensions);
+                leaves.put(objs[i], child);                                 // HASH
+                if (child.count > capacity) fullest = child;
+                }
+            if (fullest == null) break;
+            leaf = fullest;  // everything went into one child, split it too
+            }
+        }
+
+    public void remove(Object obj)
+        {
+        Node leaf = (Node)(leaves.remove(obj));                             // HASH
+        if (leaf != null) removeFromLeaf(leaf, slot(leaf, obj));
+        }
+
+    void removeFromLeaf(Node leaf, int i)
+        {
+        int last = leaf.count - 1;
+        leaf.objs[i] = leaf.objs[last];
+        leaf.objs[last] = null;
+        System.arraycopy(leaf.coordinates, last * dimensions, leaf.coordinates, i * dimensions, dimensions);
+        leaf.count--;
+        for(Node n = leaf.parent; n != null; n = n.parent) n.count--;
+
+        // merge the highest ancestor which has become too empty
+        Node merge = null;
+        for(Node n = leaf.parent; n != null && n.count <= capacity / 2; n = n.parent)
+            merge = n;
+        if (merge != null) merge(merge);
+        }
+
+    void merge(Node node)
+        {
+        Object[] objs = new Object[capacity + 1];
+        double[] coordinates = new double[(capacity + 1) * dimensions];
+        Node[] children = node.children;
+        node.children = null;
+        node.objs = objs;
+        node.coordinates = coordinates;
+        node.count = 0;
+        gather(children, node);
+        }
+
+    void gather(Node[] children, Node into)
+        {
+        for(int c = 0; c < children.length; c++)
+            {
+            Node child = children[c];
+            if (child.children != null) gather(child.children, into);
+            else for(int i = 0; i < child.count; i++)
+                {
+                addToLeaf(into, child.objs[i], child.coordinates, i * dimensions);
+                leaves.put(child.objs[i], into);                            // HASH
+                }
+            }
+        }
+
+    /** Adds to the result all objects within the box from min to max, inclusive. */
+    void within(double[] min, double[] max, Bag result)
+        {
+        within(root, min, max, result);
+        }
+
+    void within(Node node, double[] min, double[] max, Bag result)
+        {
+        if (node.count == 0) return;
+        boolean inside = true;
+        for(int d = 0; d < dimensions; d++)
+            {
+            double lo = node.min[d];
+            double hi = lo + node.size;
+            if (hi < min[d] || lo > max[d]) return;  // no overlap
+            if (lo < min[d] || hi > max[d]) inside = false;
+            }
+        if (inside) { addAll(node, result); return; }
+        if (node.children != null)
+            {
+            for(int c = 0; c < node.children.length; c++)
+                within(node.children[c], min, max, result);
+            return;
+            }
+        double[] coordinates = node.coordinates;
+        for(int i = 0; i < node.count; i++)
+            {
+            int o = i * dimensions;
+            boolean in = true;
+            for(int d = 0; d < dimensions; d++)
+                {
+                double v = coordinates[o + d];
+                if (v < min[d] || v > max[d]) { in = false; break; }
+                }
+            if (in) result.add(node.objs[i]);
+            }
+        }
+
+    void addAll(Node node, Bag result)
+        {
+        if (node.children != null)
+            {
+            for(int c = 0; c < node.children.length; c++)
+                addAll(node.children[c], result);
+            }
+        else for(int i = 0; i < node.count; i++)
+            result.add(node.objs[i]);
+        }
+
+    /** Adds to the result the k objects nearest to the point, nearest first. */
+    void nearest(double[] point, int k, Bag result)
+        {
+        if (k <= 0) return;
+        Heap heap = new Heap(point, k);
+        heap.search(root);
+
+        // drain the heap, farthest first, into the end of the result
+        int n = heap.size;
+        int start = result.numObjs;
+        for(int i = 0; i < n; i++) result.add(null);
+        for(int i = n - 1; i >= 0; i--)
+            {
+            result.objs[start + i] = heap.objs[0];
+            heap.siftDown(heap.objs[i], heap.distances[i], i);
+            }
+        }
+
+    /* The k nearest objects found so far by a search, in a heap with the farthest on top.  Each search makes its
+       own, so that searches may run in several threads at once. */
+    class Heap
+        {
+        double[] point;
+        Object[] objs;
+        double[] distances;
+        int size;
+
+        Heap(double[] point, int k)
+            {
+            this.point = point;
+            objs = new Object[k];
+            distances = new double[k];
+            }
+
+        double distanceSq(Node node)
+            {
+            double dist = 0;
+            for(int d = 0; d < dimensions; d++)
+                {
+                double v = point[d];
+                double lo = node.min[d];
+                double hi = lo + node.size;
+                if (v < lo) dist += (lo - v) * (lo - v);
+                else if (v > hi) dist += (v - hi) * (v - hi);
+                }
+            return dist;
+            }
+
+        void search(Node node)
+            {
+            if (node.count == 0) return;
+            if (size == objs.length && distanceSq(node) > distances[0]) return;
+            if (node.children != null)
+                {
+                // visit the child holding the point first, as it's probably nearest
+                Node[] children = node.children;
+                int first = childIndex(node, point);
+                search(children[first]);
+                for(int c = 0; c < children.length; c++)
+                    if (c != first) search(children[c]);
+                return;
+                }
+            double[] coordinates = node.coordinates;
+            for(int i = 0; i < node.count; i++)
+                {
+                int o = i * dimensions;
+                double dist = 0;
+                for(int d = 0; d < dimensions; d++)
+                    {
+                    double v = coordinates[o + d] - point[d];
+                    dist += v * v;
+                    }
+                offer(node.objs[i], dist);
+                }
+            }
+
+        void offer(Object obj, double distance)
+            {
+            if (size < objs.length)
+                {
+                int i = size++;
+                while(i > 0)
+                    {
+                    int parent = (i - 1) / 2;
+                    if (distances[parent] >= distance) break;
+                    distances[i] = distances[parent];
+                    objs[i] = objs[parent];
+                    i = parent;
+                    }
+                distances[i] = distance;
+                objs[i] = obj;
+                }
+            else if (distance < distances[0])
+                siftDown(obj, distance, size);
+            }
+
+        // places the given element at the top of the heap of the given size and sifts it down
+        void siftDown(Object obj, double distance, int n)
+            {
+            int i = 0;
+            while(true)
+                {
+                int child = 2 * i + 1;
+                if (child >= n) break;
+                if (child + 1 < n && distances[child + 1] > distances[child]) child++;
+                if (distances[child] <= distance) break;
+                distances[i] = distances[child];
+                objs[i] = objs[child];
+                i = child;
+                }
+            distances[i] = distance;
+            objs[i] = obj;
+            }
+        }
+    }
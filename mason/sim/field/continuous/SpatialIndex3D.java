@@ -0,0 +1,39 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.continuous;
+import sim.util.*;
+
+/**
+   A spatial index which a Continuous3D can use to answer neighborhood queries in place of its buckets.
+   See Continuous3D.setSpatialIndex(...).  The Continuous3D keeps the index up to date as objects are
+   added, moved, and removed.  Octree is the standard implementation.
+
+   <p>Like a field's buckets, an index must allow any number of threads to query it at once, so long as no thread is
+   changing it.  See SpatialIndex2D.
+*/
+
+public interface SpatialIndex3D extends java.io.Serializable
+    {
+    /** Places the object at the given location, adding it if it is not in the index yet. */
+    public void setObjectLocation(Object obj, double x, double y, double z);
+
+    /** Removes the object, if it is in the index. */
+    public void remove(Object obj);
+
+    /** Removes all the objects. */
+    public void clear();
+
+    /** Adds to the result all the objects located within the given box, including its edges. */
+    public void getObjectsWithin(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Bag result);
+
+    /** Adds to the result the k objects nearest the given location (or all the objects, if there are fewer
+        than k), nearest first. */
+    public void getNearestNeighbors(double x, double y, double z, int k, Bag result);
+
+    /** Returns a new, empty index of the same kind and with the same settings. */
+    public SpatialIndex3D newIndex();
+    }
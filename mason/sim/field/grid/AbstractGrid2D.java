@@ -240,7 +240,7 @@ public abstract class AbstractGrid2D implements Grid2D
                 
             // next: is ymax - ymin humongous?  If so, no need to continue wrapping around
             if (ymax - ymin >= height)  // too wide, just use whole neighborhood
-                { ymin = 0; ymax = width - 1; }
+                { ymin = 0; ymax = height - 1; }
                 
             for( int x0 = xmin ; x0 <= xmax ; x0++ )
                 {
@@ -700,6 +700,42 @@ public abstract class AbstractGrid2D implements Grid2D
         }
 
 
+    /** Visits the locations which getMooreLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags, though perhaps in a different order. */
+    public void forEachMooreLocation( final int x, final int y, final int dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, false);
+        }
+
+    /** Visits the locations which getVonNeumannLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachVonNeumannLocation( final int x, final int y, final int dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, false);
+        }
+
+    /** Visits the locations which getHexagonalLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachHexagonalLocation( final int x, final int y, final int dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, false);
+        }
+
+    /** Visits the locations which getRadialLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachRadialLocation( final int x, final int y, final double dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, false);
+        }
+
+    /** Visits the locations which getRadialLocations(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachRadialLocation( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, false);
+        }
+
+
     protected void checkBounds(Grid2D other)
         {
         if (getHeight() != other.getHeight() || getWidth() != other.getWidth())
@@ -0,0 +1,104 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.engine.*;
+
+/**
+   A DoubleGrid2D with a second, <i>write</i> grid of the same size, for synchronous updates: read the current values
+   from the BufferedDoubleGrid2D, write the new ones into getWriteGrid(), and then swap() (or step the grid, say with
+   <tt>schedule.addAfter(grid)</tt>) to exchange the two grids' arrays.  A Stencil2D made with
+   <tt>new Stencil2D(grid, grid.getWriteGrid(), ...)</tt> can fill the write grid: call its apply() rather than its
+   step(), which would swap the arrays itself.  See BufferedIntGrid2D for details.
+*/
+
+public class BufferedDoubleGrid2D extends DoubleGrid2D implements Steppable
+    {
+    private static final long serialVersionUID = 1;
+
+    DoubleGrid2D write;  // not initialized here: reshape(...) may set it during the superclass constructor
+
+    public BufferedDoubleGrid2D (int width, int height)
+        {
+        super(width, height);
+        buildWrite();
+        }
+
+    public BufferedDoubleGrid2D (int width, int height, double initialValue)
+        {
+        super(width, height, initialValue);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    public BufferedDoubleGrid2D (DoubleGrid2D values)
+        {
+        super(values);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    public BufferedDoubleGrid2D (double[][] values)
+        {
+        super(values);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    void buildWrite()
+        {
+        if (write == null) write = new DoubleGrid2D(width, height);
+        }
+
+    protected void reshape(int width, int height)
+        {
+        super.reshape(width, height);
+        if (write == null) write = new DoubleGrid2D(width, height);
+        else write.reshape(width, height);
+        }
+
+    // DoubleGrid2D.setTo(double[][]) doesn't call reshape(...)
+    public DoubleGrid2D setTo(double[][] field)
+        {
+        super.setTo(field);
+        if (write != null && (write.getWidth() != width || write.getHeight() != height))
+            write.reshape(width, height);
+        return this;
+        }
+
+    /** Returns the grid itself, which holds the current values. */
+    public DoubleGrid2D getReadGrid() { return this; }
+
+    /* DoubleGrid2D's final setTo(DoubleGrid2D) changes the grid's dimensions without calling reshape(...), so the write
+       grid is brought to the same dimensions whenever it's handed out or swapped. */
+    void fitWrite()
+        {
+        if (write.getWidth() != width || write.getHeight() != height)
+            write.reshape(width, height);
+        }
+
+    /** Returns the grid into which the new values should be written. */
+    public DoubleGrid2D getWriteGrid()
+        {
+        fitWrite();
+        return write;
+        }
+
+    /** Exchanges the arrays of this grid and the write grid. */
+    public void swap()
+        {
+        fitWrite();
+        double[][] temp = field;
+        field = write.field;
+        write.field = temp;
+        }
+
+    /** Calls swap(). */
+    public void step(SimState state)
+        {
+        swap();
+        }
+    }
@@ -0,0 +1,99 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.engine.*;
+
+/**
+   An IntGrid2D with a second, <i>write</i> grid of the same size, for synchronous updates such as cellular automata,
+   where every cell's new value must be computed from the old values of its neighbors.  The BufferedIntGrid2D itself
+   holds the current values: during a step, read from it (as usual) and write the new values into getWriteGrid().
+   Then swap() exchanges the two grids' arrays, which takes no time at all however large the grids are, so that the
+   BufferedIntGrid2D holds the new values and the write grid holds the old ones, ready to be overwritten.  This
+   replaces copying the whole grid into a temporary grid with setTo(...) each step.
+
+   <p>A BufferedIntGrid2D is a Steppable whose step(...) method calls swap(), so the usual thing is to call
+   <tt>schedule.addAfter(grid)</tt> in your start() method: the grids are then swapped once each time the Schedule
+   steps, after everything else scheduled for that time.  Alternatively, call swap() yourself.
+
+   <p>Because nothing writes to the BufferedIntGrid2D during a step, any number of threads (for example the Steppables
+   of a ParallelSequence, or of Schedule's parallel orderings) may read it at once, and may write to the write grid
+   so long as no two write to the same cell.  The swap happens in the Schedule's thread after they have all finished.
+   Don't call swap() while they are running.
+
+   <p>Note that after a swap the write grid holds the values of the <i>previous</i> step, not the current one, so every
+   cell must be written each step.  If your rule only writes the cells which change (as Tutorial 1's CA does), call
+   <tt>getWriteGrid().setTo(grid)</tt> first: the grids are then copied, as before, but at least not reallocated.
+   Changing the dimensions of the BufferedIntGrid2D (with setTo(...)) changes the write grid's too.
+*/
+
+public class BufferedIntGrid2D extends IntGrid2D implements Steppable
+    {
+    private static final long serialVersionUID = 1;
+
+    IntGrid2D write;  // not initialized here: reshape(...) may set it during the superclass constructor
+
+    public BufferedIntGrid2D (int width, int height)
+        {
+        super(width, height);
+        buildWrite();
+        }
+
+    public BufferedIntGrid2D (int width, int height, int initialValue)
+        {
+        super(width, height, initialValue);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    public BufferedIntGrid2D (IntGrid2D values)
+        {
+        super(values);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    public BufferedIntGrid2D (int[][] values)
+        {
+        super(values);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    void buildWrite()
+        {
+        if (write == null) write = new IntGrid2D(width, height);
+        }
+
+    protected void reshape(int width, int height)
+        {
+        super.reshape(width, height);
+        if (write == null) write = new IntGrid2D(width, height);
+        else write.reshape(width, height);
+        }
+
+    /** Returns the grid itself, which holds the current values. */
+    public IntGrid2D getReadGrid() { return this; }
+
+    /** Returns the grid into which the new values should be written. */
+    public IntGrid2D getWriteGrid() { return write; }
+
+    /** Exchanges the arrays of this grid and the write grid. */
+    public void swap()
+        {
+        if (write.getWidth() != width || write.getHeight() != height)
+            throw new IllegalArgumentException("Grids must be the same dimensions.");
+        int[][] temp = field;
+        field = write.field;
+        write.field = temp;
+        }
+
+    /** Calls swap(). */
+    public void step(SimState state)
+        {
+        swap();
+        }
+    }
@@ -0,0 +1,94 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.engine.*;
+
+/**
+   An ObjectGrid2D with a second, <i>write</i> grid of the same size, for synchronous updates: read the current objects
+   from the BufferedObjectGrid2D, put the new ones into getWriteGrid(), and then swap() (or step the grid, say with
+   <tt>schedule.addAfter(grid)</tt>) to exchange the two grids' arrays.  Every cell of the write grid must be set each
+   step, if only to null.  See BufferedIntGrid2D for details.
+*/
+
+public class BufferedObjectGrid2D extends ObjectGrid2D implements Steppable
+    {
+    private static final long serialVersionUID = 1;
+
+    ObjectGrid2D write;  // not initialized here: reshape(...) may set it during the superclass constructor
+
+    public BufferedObjectGrid2D (int width, int height)
+        {
+        super(width, height);
+        buildWrite();
+        }
+
+    public BufferedObjectGrid2D (int width, int height, Object initialValue)
+        {
+        super(width, height, initialValue);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    public BufferedObjectGrid2D (ObjectGrid2D values)
+        {
+        super(values);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    public BufferedObjectGrid2D (Object[][] values)
+        {
+        super(values);
+        buildWrite();
+        write.setTo(this);
+        }
+
+    void buildWrite()
+        {
+        if (write == null) write = new ObjectGrid2D(width, height);
+        }
+
+    protected void reshape(int width, int height)
+        {
+        super.reshape(width, height);
+        if (write == null) write = new ObjectGrid2D(width, height);
+        else write.reshape(width, height);
+        }
+
+    /** Returns the grid itself, which holds the current values. */
+    public ObjectGrid2D getReadGrid() { return this; }
+
+    /* ObjectGrid2D's final setTo(ObjectGrid2D) changes the grid's dimensions without calling reshape(...), so the write
+       grid is brought to the same dimensions whenever it's handed out or swapped. */
+    void fitWrite()
+        {
+        if (write.getWidth() != width || write.getHeight() != height)
+            write.reshape(width, height);
+        }
+
+    /** Returns the grid into which the new values should be written. */
+    public ObjectGrid2D getWriteGrid()
+        {
+        fitWrite();
+        return write;
+        }
+
+    /** Exchanges the arrays of this grid and the write grid. */
+    public void swap()
+        {
+        fitWrite();
+        Object[][] temp = field;
+        field = write.field;
+        write.field = temp;
+        }
+
+    /** Calls swap(). */
+    public void step(SimState state)
+        {
+        swap();
+        }
+    }
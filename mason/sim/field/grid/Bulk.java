@@ -0,0 +1,270 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+
+/**
+   Whole-grid operations (add, multiply, max, mean, and so on) for large IntGrid2D, DoubleGrid2D, IntGrid3D,
+   DoubleGrid3D, FlatIntGrid2D, and FlatDoubleGrid2D grids, divided among the threads of sim.engine.ForkJoinStrategy's
+   shared pool.  Grids smaller than MIN_PARALLEL_CELLS don't come here at all: they're handled by the grids' own loops
+   in the calling thread.
+
+   <p>A grid is divided into blocks of whole columns (or for 3D grids, whole x slices) of about CELLS_PER_BLOCK
+   cells each, and for a flat grid into blocks of exactly CELLS_PER_BLOCK cells.  The blocks depend only on the
+   dimensions of the grid, never on the number of threads, and reductions such as mean() are computed block by block
+   and then combined in block order, so the result of a reduction is the same whether it's computed by one thread
+   or many.  Floating-point sums computed this way may differ in the last bits from the grids' single-threaded loops,
+   which add the cells one by one.
+*/
+
+final class Bulk
+    {
+    /** Grids with fewer cells than this are handled in the calling thread by the grids themselves. */
+    static final long MIN_PARALLEL_CELLS = 1 << 20;
+
+    /** The approximate number of cells in a block. */
+    static final int CELLS_PER_BLOCK = 1 << 16;
+
+    // operations for map(...).  REPLACE replaces a with b.
+    static final int ADD = 0;
+    static final int MULTIPLY = 1;
+    static final int UPPER_BOUND = 2;
+    static final int LOWER_BOUND = 3;
+    static final int FLOOR = 4;
+    static final int CEILING = 5;
+    static final int TRUNCATE = 6;
+    static final int RINT = 7;
+    static final int REPLACE = 8;
+
+    // operations for reduce(...)
+    static final int MAX = 0;
+    static final int MIN = 1;
+    static final int SUM = 2;
+
+    // kinds of work
+    static final int MAP = 0;
+    static final int COMBINE = 1;
+    static final int REDUCE = 2;
+
+    /** Returns true if a grid with the given number of cells should be handed to Bulk. */
+    static boolean large(long cells)
+        {
+        return cells >= MIN_PARALLEL_CELLS;
+        }
+
+    /** Applies op to every cell in the field, which is an int[][], double[][], int[][][], double[][][], int[], or double[]. */
+    static void map(Object field, int op, double a, double b)
+        {
+        if ((op == ADD && a == 0) || (op == MULTIPLY && a == 1)) return;  // as the grids do
+        new Work(MAP, field, null, op, a, b).run();
+        }
+
+    /** Adds (op = ADD) or multiplies (op = MULTIPLY) every cell in the field by the equivalent cell in the other field, which must
+        have the same dimensions. */
+    static void combine(Object field, Object other, int op)
+        {
+        new Work(COMBINE, field, other, op, 0, 0).run();
+        }
+
+    /** Returns the maximum (op = MAX), minimum (op = MIN), or sum (op = SUM) of the cells in the field. */
+    static double reduce(Object field, int op)
+        {
+        Work work = new Work(REDUCE, field, null, op, 0, 0);
+        work.run();
+        double[] partials = work.partials;
+        double result = identity(op);
+        for(int i = 0; i < partials.length; i++)  // in order, for determinism
+            {
+            if (op == MAX) { if (result < partials[i]) result = partials[i]; }
+            else if (op == MIN) { if (result > partials[i]) result = partials[i]; }
+            else result += partials[i];
+            }
+        return result;
+        }
+
+    static double identity(int op)
+        {
+        return (op == MAX ? Double.NEGATIVE_INFINITY : op == MIN ? Double.POSITIVE_INFINITY : 0.0);
+        }
+
+    /** One whole-grid operation, divided into blocks. */
+    static class Work extends sim.engine.ParallelBlocks
+        {
+        final int kind;
+        final Object field;
+        final Object other;
+        final int op;
+        final double a;
+        final double b;
+        double[] partials;          // one per block, for reductions
+
+        // the items are columns, slices, or (for flat grids) cells
+        Work(int kind, Object field, Object other, int op, double a, double b)
+            {
+            super(units(field), Math.max(1, CELLS_PER_BLOCK / Math.max(1, cellsPerUnit(field))));
+            this.kind = kind;
+            this.field = field;
+            this.other = other;
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            if (kind == REDUCE)
+                {
+                partials = new double[blocks];
+                java.util.Arrays.fill(partials, identity(op));
+                }
+            }
+
+        static int units(Object field)
+            {
+            if (field instanceof Object[]) return ((Object[]) field).length;
+            else return java.lang.reflect.Array.getLength(field);
+            }
+
+        static int cellsPerUnit(Object field)
+            {
+            if (!(field instanceof Object[]) || ((Object[]) field).length == 0) return 1;
+            Object f0 = ((Object[]) field)[0];
+            if (f0 instanceof Object[])
+                {
+                Object[] f00 = (Object[]) f0;
+                return f00.length * (f00.length == 0 ? 0 : java.lang.reflect.Array.getLength(f00[0]));
+                }
+            else return java.lang.reflect.Array.getLength(f0);
+            }
+
+        protected void items(final int from, final int to, int blk)
+            {
+            if (field instanceof double[] || field instanceof int[])  // flat
+                column(field, other, from, to, blk);
+            else if (field instanceof double[][] || field instanceof int[][])
+                {
+                Object[] f = (Object[]) field;
+                Object[] o = (Object[]) other;
+                for(int x = from; x < to; x++)
+                    {
+                    Object col = f[x];
+                    column(col, o == null ? null : o[x], 0, java.lang.reflect.Array.getLength(col), blk);
+                    }
+                }
+            else
+                {
+                Object[] f = (Object[]) field;
+                Object[] o = (Object[]) other;
+                for(int x = from; x < to; x++)
+                    {
+                    Object[] fx = (Object[]) f[x];
+                    Object[] ox = (o == null ? null : (Object[]) o[x]);
+                    for(int y = 0; y < fx.length; y++)
+                        {
+                        Object col = fx[y];
+                        column(col, ox == null ? null : ox[y], 0, java.lang.reflect.Array.getLength(col), blk);
+                        }
+                    }
+                }
+            }
+
+        void column(Object col, Object ocol, int start, int end, int blk)
+            {
+            if (kind == MAP)
+                {
+                if (col instanceof double[]) map((double[]) col, start, end, op, a, b);
+                else map((int[]) col, start, end, op, (int) a, (int) b);
+                }
+            else if (kind == COMBINE)
+                {
+                if (col instanceof int[]) combine((int[]) col, (int[]) ocol, start, end, op);
+                else if (ocol instanceof int[]) combine((double[]) col, (int[]) ocol, start, end, op);
+                else combine((double[]) col, (double[]) ocol, start, end, op);
+                }
+            else
+                {
+                if (col instanceof double[]) partials[blk] = reduce((double[]) col, start, end, op, partials[blk]);
+                else partials[blk] = reduce((int[]) col, start, end, op, partials[blk]);
+                }
+            }
+        }
+
+    // The loops below are kept plain so that the JIT compiler can vectorize them.
+
+    static void map(final double[] c, final int start, final int end, final int op, final double a, final double b)
+        {
+        switch(op)
+            {
+            case ADD: for(int i = start; i < end; i++) c[i] += a; break;
+            case MULTIPLY: for(int i = start; i < end; i++) c[i] *= a; break;
+            case UPPER_BOUND: for(int i = start; i < end; i++) if (c[i] > a) c[i] = a; break;
+            case LOWER_BOUND: for(int i = start; i < end; i++) if (c[i] < a) c[i] = a; break;
+            case FLOOR: for(int i = start; i < end; i++) c[i] = /*Strict*/Math.floor(c[i]); break;
+            case CEILING: for(int i = start; i < end; i++) c[i] = /*Strict*/Math.ceil(c[i]); break;
+            case TRUNCATE: for(int i = start; i < end; i++) c[i] = (int) c[i]; break;
+            case RINT: for(int i = start; i < end; i++) c[i] = /*Strict*/Math.rint(c[i]); break;
+            case REPLACE: for(int i = start; i < end; i++) if (c[i] == a) c[i] = b; break;
+            default: throw new IllegalArgumentException("Unknown operation " + op);
+            }
+        }
+
+    static void map(final int[] c, final int start, final int end, final int op, final int a, final int b)
+        {
+        switch(op)
+            {
+            case ADD: for(int i = start; i < end; i++) c[i] += a; break;
+            case MULTIPLY: for(int i = start; i < end; i++) c[i] *= a; break;
+            case UPPER_BOUND: for(int i = start; i < end; i++) if (c[i] > a) c[i] = a; break;
+            case LOWER_BOUND: for(int i = start; i < end; i++) if (c[i] < a) c[i] = a; break;
+            case REPLACE: for(int i = start; i < end; i++) if (c[i] == a) c[i] = b; break;
+            default: throw new IllegalArgumentException("Unknown operation " + op);
+            }
+        }
+
+    static void combine(final double[] c, final double[] o, final int start, final int end, final int op)
+        {
+        if (op == ADD) for(int i = start; i < end; i++) c[i] += o[i];
+        else for(int i = start; i < end; i++) c[i] *= o[i];
+        }
+
+    static void combine(final double[] c, final int[] o, final int start, final int end, final int op)
+        {
+        if (op == ADD) for(int i = start; i < end; i++) c[i] += o[i];
+        else for(int i = start; i < end; i++) c[i] *= o[i];
+        }
+
+    static void combine(final int[] c, final int[] o, final int start, final int end, final int op)
+        {
+        if (op == ADD) for(int i = start; i < end; i++) c[i] += o[i];
+        else for(int i = start; i < end; i++) c[i] *= o[i];
+        }
+
+    static double reduce(final double[] c, final int start, final int end, final int op, double result)
+        {
+        if (op == MAX) { for(int i = start; i < end; i++) if (result < c[i]) result = c[i]; }
+        else if (op == MIN) { for(int i = start; i < end; i++) if (result > c[i]) result = c[i]; }
+        else for(int i = start; i < end; i++) result += c[i];
+        return result;
+        }
+
+    // ints are exact as doubles, and so are their sums up to 2^53
+    static double reduce(final int[] c, final int start, final int end, final int op, double result)
+        {
+        if (op == MAX)
+            {
+            int max = (int) Math.max(result, Integer.MIN_VALUE);
+            for(int i = start; i < end; i++) if (max < c[i]) max = c[i];
+            return Math.max(result, max);
+            }
+        else if (op == MIN)
+            {
+            int min = (int) Math.min(result, Integer.MAX_VALUE);
+            for(int i = start; i < end; i++) if (min > c[i]) min = c[i];
+            return Math.min(result, min);
+            }
+        else
+            {
+            for(int i = start; i < end; i++) result += c[i];
+            return result;
+            }
+        }
+    }
@@ -0,0 +1,204 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+
+/**
+   The storage behind CompactDenseGrid2D and CompactDenseGrid3D: a linked list of objects for each of a fixed number of
+   cells, all kept in three arrays.  head[cell] is the first <i>slot</i> of the cell's list, or -1 if the cell is empty;
+   objects[slot] is the object in a slot and next[slot] the next slot in the same list, or -1.  Slots which are no longer
+   used are chained together through next[] from <i>free</i>, and reused before the arrays grow.  New objects are added
+   to the front of their cell's list.
+*/
+
+final class CellLists implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    static final int INITIAL_SLOTS = 16;
+
+    int[] head;
+    int[] next = new int[INITIAL_SLOTS];
+    Object[] objects = new Object[INITIAL_SLOTS];
+    int free = -1;      // the first unused slot below used, or -1
+    int used = 0;       // slots at or above this have never been used
+    int size = 0;       // the number of objects stored
+
+    CellLists(int cells)
+        {
+        head = new int[cells];
+        java.util.Arrays.fill(head, -1);
+        }
+
+    int allocate()
+        {
+        int slot = free;
+        if (slot >= 0)
+            {
+            free = next[slot];
+            return slot;
+            }
+        if (used == objects.length)
+            {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, objects.length * 2L);
+            if (capacity == objects.length)
+                throw new OutOfMemoryError("Too many objects in a CompactDenseGrid");
+            int[] n = new int[capacity];
+            System.arraycopy(next, 0, n, 0, used);
+            next = n;
+            Object[] o = new Object[capacity];
+            System.arraycopy(objects, 0, o, 0, used);
+            objects = o;
+            }
+        return used++;
+        }
+
+    void release(int slot)
+        {
+        objects[slot] = null;  // let it GC
+        next[slot] = free;
+        free = slot;
+        }
+
+    void add(int cell, Object obj)
+        {
+        int slot = allocate();
+        objects[slot] = obj;
+        next[slot] = head[cell];
+        head[cell] = slot;
+        size++;
+        }
+
+    /** Adds objs[start] ... objs[end-1] in order, so that they appear in the cell in the same order. */
+    void addAll(int cell, Object[] objs, int start, int end)
+        {
+        for(int i = end - 1; i >= start; i--)
+            add(cell, objs[i]);
+        }
+
+    int count(int cell)
+        {
+        int count = 0;
+        for(int s = head[cell]; s >= 0; s = next[s])
+            count++;
+        return count;
+        }
+
+    static boolean matches(Object o, Object obj)
+        {
+        return (o == null ? obj == null : o == obj || o.equals(obj));  // as Bag.remove(...) does
+        }
+
+    /** Removes the first instance of obj, or all of them, from the cell, returning true if any were removed. */
+    boolean remove(int cell, Object obj, boolean all)
+        {
+        boolean removed = false;
+        int prev = -1;
+        int s = head[cell];
+        while(s >= 0)
+            {
+            int n = next[s];
+            if (matches(obj, objects[s]))
+                {
+                if (prev < 0) head[cell] = n;
+                else next[prev] = n;
+                release(s);
+                size--;
+                removed = true;
+                if (!all) break;
+                }
+            else prev = s;
+            s = n;
+            }
+        return removed;
+        }
+
+    /** Appends the objects in the cell to the bag, returning how many there were. */
+    int get(int cell, Bag result)
+        {
+        int count = 0;
+        for(int s = head[cell]; s >= 0; s = next[s])
+            {
+            result.add(objects[s]);
+            count++;
+            }
+        return count;
+        }
+
+    /** Removes all the objects in the cell and returns them in a new Bag, or returns null if there were none. */
+    Bag removeAll(int cell)
+        {
+        if (head[cell] < 0) return null;
+        Bag bag = new Bag();
+        int s = head[cell];
+        head[cell] = -1;
+        while(s >= 0)
+            {
+            int n = next[s];
+            bag.add(objects[s]);
+            release(s);
+            size--;
+            s = n;
+            }
+        return bag;
+        }
+
+    /** Removes every object and returns them in a Bag, cell by cell. */
+    Bag clear()
+        {
+        Bag bag = new Bag(size);
+        for(int cell = 0; cell < head.length; cell++)
+            for(int s = head[cell]; s >= 0; s = next[s])
+                bag.add(objects[s]);
+        java.util.Arrays.fill(head, -1);
+        next = new int[INITIAL_SLOTS];
+        objects = new Object[INITIAL_SLOTS];
+        free = -1;
+        used = 0;
+        size = 0;
+        return bag;
+        }
+
+    static boolean matches(Object obj, Object from, boolean onlyIfSameObject)
+        {
+        return (obj == null && from == null) ||
+            (onlyIfSameObject && obj == from) ||
+            (!onlyIfSameObject && obj != null && obj.equals(from));
+        }
+
+    /** Replaces each object matching from with to, as DenseGrid2D.replaceAll(...) does. */
+    void replaceAll(Object from, Object to, boolean onlyIfSameObject)
+        {
+        for(int cell = 0; cell < head.length; cell++)
+            for(int s = head[cell]; s >= 0; s = next[s])
+                if (matches(objects[s], from, onlyIfSameObject))
+                    objects[s] = to;
+        }
+
+    /** Removes each object matching from, as DenseGrid2D.removeAll(...) does. */
+    void removeAll(Object from, boolean onlyIfSameObject)
+        {
+        for(int cell = 0; cell < head.length; cell++)
+            {
+            int prev = -1;
+            int s = head[cell];
+            while(s >= 0)
+                {
+                int n = next[s];
+                if (matches(objects[s], from, onlyIfSameObject))
+                    {
+                    if (prev < 0) head[cell] = n;
+                    else next[prev] = n;
+                    release(s);
+                    size--;
+                    }
+                else prev = s;
+                s = n;
+                }
+            }
+        }
+    }
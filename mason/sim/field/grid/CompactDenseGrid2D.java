@@ -0,0 +1,450 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+import java.util.*;
+
+/**
+    A DenseGrid2D which doesn't keep a Bag in each occupied cell.  Instead the objects in each cell form a linked list
+    threaded through a few arrays shared by the whole grid: an int per cell pointing to the first object in the cell,
+    and for each object stored, the object and an int pointing to the next object in the same cell.  A cell holding
+    one object thus costs about 12 bytes (with compressed pointers) rather than the hundred or so of a Bag and its
+    array, and the grid is a handful of objects rather than one per column and one per occupied cell, which the
+    garbage collector appreciates.  The grid may hold at most Integer.MAX_VALUE cells.
+
+    <p>CompactDenseGrid2D has the same methods as DenseGrid2D, with a few differences.  Because there are no Bags to
+    hand out, getObjectsAtLocation(...) returns a <i>new</i> Bag of the objects at the location (or null if there are
+    none), which you are free to modify, but which doesn't change when the grid does: if you just need to look at
+    the objects, forEach...Neighbor(...) or numObjectsAtLocation(...) avoid building the Bag.  Objects in a cell
+    are listed most recently added first, rather than in the order they were added.  And there's no <tt>field</tt>
+    to access directly.  Removing an object from a crowded cell means walking down its list, so if you routinely
+    have many objects in each cell, DenseGrid2D may serve you better.
+*/
+
+public class CompactDenseGrid2D extends AbstractGrid2D
+    {
+    private static final long serialVersionUID = 1;
+
+    CellLists cells;
+
+    public CompactDenseGrid2D (int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        cells = new CellLists(FlatGrid.cells(width, height));
+        }
+
+    /** Creates a CompactDenseGrid2D holding the same objects as the given DenseGrid2D, in the same order. */
+    public CompactDenseGrid2D (DenseGrid2D values)
+        {
+        this(values.getWidth(), values.getHeight());
+        for(int x = 0; x < width; x++)
+            for(int y = 0; y < height; y++)
+                {
+                Bag b = values.field[x][y];
+                if (b != null) cells.addAll(x * height + y, b.objs, 0, b.numObjs);
+                }
+        }
+
+    // a flat array won't catch an out-of-bounds y, so we check ourselves
+    final int cell(final int x, final int y)
+        {
+        if (x < 0 || x >= width) throw new ArrayIndexOutOfBoundsException(x);
+        if (y < 0 || y >= height) throw new ArrayIndexOutOfBoundsException(y);
+        return x * height + y;
+        }
+
+    /** Returns the number of objects stored in the grid, including duplicates. */
+    public int size() { return cells.size; }
+
+    /** Returns a new bag containing all the objects at a given location, or null when there are no objects at the location.
+        You are free to modify the bag: it is not part of the grid, and it doesn't change when the grid does. */
+    public Bag getObjectsAtLocation(final int x, final int y)
+        {
+        final int cell = cell(x, y);
+        if (cells.head[cell] < 0) return null;
+        Bag b = new Bag();
+        cells.get(cell, b);
+        return b;
+        }
+
+    /** Returns a new bag containing all the objects at a given location, or null when there are no objects at the location.
+        You are free to modify the bag: it is not part of the grid, and it doesn't change when the grid does. */
+    public Bag getObjectsAtLocation(Int2D location) { return getObjectsAtLocation(location.x, location.y); }
+
+    /** Removes all the objects stored at the given location and returns them as a Bag (which you are free to modify),
+        or returns null if there were none. */
+    public Bag removeObjectsAtLocation(final int x, final int y)
+        {
+        return cells.removeAll(cell(x, y));
+        }
+
+    /** Removes all the objects stored at the given location and returns them as a Bag (which you are free to modify),
+        or returns null if there were none. */
+    public Bag removeObjectsAtLocation(Int2D location) { return removeObjectsAtLocation(location.x, location.y); }
+
+    /** Removes one instance of the object from the given location, returning true if it was there. */
+    public boolean removeObjectAtLocation(final Object obj, final int x, final int y)
+        {
+        return cells.remove(cell(x, y), obj, false);
+        }
+
+    public boolean removeObjectAtLocation(final Object obj, Int2D location) { return removeObjectAtLocation(obj, location.x, location.y); }
+
+    /** Removes every instance of the object from the given location, returning true if it was there. */
+    public boolean removeObjectMultiplyAtLocation(final Object obj, final int x, final int y)
+        {
+        return cells.remove(cell(x, y), obj, true);
+        }
+
+    public boolean removeObjectMultiplyAtLocation(final Object obj, Int2D location) { return removeObjectMultiplyAtLocation(obj, location.x, location.y); }
+
+    /** If the object is not at [fromX, fromY], then it's simply inserted into [toX, toY], and FALSE is returned.
+        Else it is removed ONCE from [fromX, fromY] and inserted into [toX, toY] and TRUE is returned.
+        If the object exists multiply at [fromX, fromY], only one instance of the object is moved.*/
+    public boolean moveObject(final Object obj, final int fromX, final int fromY, final int toX, final int toY)
+        {
+        boolean result = removeObjectAtLocation(obj, fromX, fromY);
+        addObjectToLocation(obj, toX, toY);
+        return result;
+        }
+
+    /** If the object is not at FROM, then it's simply inserted into TO, and FALSE is returned.
+        Else it is removed ONCE from FROM and inserted into TO and TRUE is returned.
+        If the object exists multiply at FROM, only one instance of the object is moved.*/
+    public boolean moveObject(final Object obj, Int2D from, Int2D to) { return moveObject(obj, from.x, from.y, to.x, to.y); }
+
+    public void moveObjects(final int fromX, final int fromY, final int toX, final int toY)
+        {
+        addObjectsToLocation(removeObjectsAtLocation(fromX, fromY), toX, toY);
+        }
+
+    public void moveObjects(Int2D from, Int2D to) { moveObjects(from.x, from.y, to.x, to.y); }
+
+    public int numObjectsAtLocation(final int x, final int y)
+        {
+        return cells.count(cell(x, y));
+        }
+
+    public int numObjectsAtLocation(Int2D location) { return numObjectsAtLocation(location.x, location.y); }
+
+    /** Adds an object to a given location. */
+    public void addObjectToLocation(final Object obj, final int x, final int y)
+        {
+        cells.add(cell(x, y), obj);
+        }
+
+    public void addObjectToLocation(final Object obj, Int2D location) { addObjectToLocation(obj, location.x, location.y); }
+
+    /** Adds objects to a given location. */
+    public void addObjectsToLocation(final Bag objs, final int x, final int y)
+        {
+        if (objs==null) return;
+        cells.addAll(cell(x, y), objs.objs, 0, objs.numObjs);
+        }
+
+    public void addObjectsToLocation(final Bag objs, Int2D location) { addObjectsToLocation( objs, location.x, location.y ); }
+
+    /** Adds objects to a given location. */
+    public void addObjectsToLocation(final Object[] objs, final int x, final int y)
+        {
+        if (objs==null) return;
+        cells.addAll(cell(x, y), objs, 0, objs.length);
+        }
+
+    public void addObjectsToLocation(final Object[] objs, Int2D location) { addObjectsToLocation( objs, location.x, location.y ); }
+
+    /** Adds objects to a given location. */
+    public void addObjectsToLocation(final Collection objs, final int x, final int y)
+        {
+        if (objs==null) return;
+        Object[] o = objs.toArray();
+        cells.addAll(cell(x, y), o, 0, o.length);
+        }
+
+    /** Empties all the locations in the grid, and returns in a Bag all stored objects
+        (including duplicates).  You are free to modify the Bag. */
+    public final Bag clear()
+        {
+        return cells.clear();
+        }
+
+    /**
+     * Replace instances of one value to another.  Equality is measured using equals(...).
+     * null is considered equal to null.  This is equivalent to calling replaceAll(from, to, false)
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(Object from, Object to)
+        {
+        replaceAll(from, to, false);
+        }
+
+    /**
+     * Replace instances of one value to another.  Equality is measured
+     * as follows.  (1) if onlyIfSameObject is true, then objects must be "== from"
+     * to one another to be considered equal.  (2) if onlyIfSameObject is false,
+     * then objects in the field must be "equals(from)".  In either case, null
+     * is considered equal to null.
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(Object from, Object to, boolean onlyIfSameObject)
+        {
+        cells.replaceAll(from, to, onlyIfSameObject);
+        }
+
+    /**
+     * Removes instances of the given value.  Equality is measured using equals(...).
+     * null is considered equal to null.  This is equivalent to calling removeAll(from, false)
+     * @param from any element that matches this value will be removed
+     */
+    public final void removeAll(Object from)
+        {
+        removeAll(from, false);
+        }
+
+    /**
+     * Removes instances of the given value.  Equality is measured
+     * as follows.  (1) if onlyIfSameObject is true, then objects must be "== from"
+     * to one another to be considered equal.  (2) if onlyIfSameObject is false,
+     * then objects in the field must be "equals(from)".  In either case, null
+     * is considered equal to null.
+     * @param from any element that matches this value will be removed
+     */
+    public final void removeAll(Object from, boolean onlyIfSameObject)
+        {
+        cells.removeAll(from, onlyIfSameObject);
+        }
+
+    /** Gathers the objects in the neighborhood which getMooreLocations(...) would gather, as DenseGrid2D.getNeighborsMaxDistance(...) does. */
+    public Bag getNeighborsMaxDistance( final int x, final int y, final int dist, final boolean toroidal, Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getMooreNeighbors(x, y, dist, toroidal ? TOROIDAL : BOUNDED, true, result, xPos, yPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getMooreLocations(...) would gather, as DenseGrid2D.getMooreNeighbors(...) does. */
+    public Bag getMooreNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /** As getMooreNeighbors(...), but also sets xPos and yPos to the location of each object gathered. */
+    public Bag getMooreNeighborsAndLocations(final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    /** Gathers the objects in the neighborhood which getVonNeumannLocations(...) would gather, as DenseGrid2D.getNeighborsHamiltonianDistance(...) does. */
+    public Bag getNeighborsHamiltonianDistance( final int x, final int y, final int dist, final boolean toroidal, Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getVonNeumannNeighbors(x, y, dist, toroidal ? TOROIDAL : BOUNDED, true,result, xPos, yPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getVonNeumannLocations(...) would gather, as DenseGrid2D.getVonNeumannNeighbors(...) does. */
+    public Bag getVonNeumannNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /** As getVonNeumannNeighbors(...), but also sets xPos and yPos to the location of each object gathered. */
+    public Bag getVonNeumannNeighborsAndLocations(final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    /** Gathers the objects in the neighborhood which getHexagonalLocations(...) would gather, as DenseGrid2D.getNeighborsHexagonalDistance(...) does. */
+    public Bag getNeighborsHexagonalDistance( final int x, final int y, final int dist, final boolean toroidal, Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getHexagonalNeighbors(x, y, dist, toroidal ? TOROIDAL : BOUNDED, true, result, xPos, yPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getHexagonalLocations(...) would gather, as DenseGrid2D.getHexagonalNeighbors(...) does. */
+    public Bag getHexagonalNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /** As getHexagonalNeighbors(...), but also sets xPos and yPos to the location of each object gathered. */
+    public Bag getHexagonalNeighborsAndLocations(final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin,  Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    public Bag getRadialNeighborsAndLocations( final int x, final int y, final double dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighborsAndLocations(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getRadialLocations(...) would gather, as DenseGrid2D.getRadialNeighbors(...) does. */
+    public Bag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /** As getRadialNeighbors(...), but also sets xPos and yPos to the location of each object gathered. */
+    public Bag getRadialNeighborsAndLocations( final int x, final int y, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    /* For each <xPos, yPos> location, puts all such objects into the result bag, and modifies the xPos and yPos bags so that
+       each position corresponds to the equivalent object in the result bag.  Returns the result bag.
+       If the provided result bag is null, one will be created and returned. */
+    Bag reduceObjectsAtLocations(final IntBag xPos, final IntBag yPos, Bag result)
+        {
+        if (result==null) result = new Bag();
+        else result.clear();
+
+        // build new bags with <x,y> locations one per each result
+        IntBag newXPos = new IntBag();
+        IntBag newYPos = new IntBag();
+
+        final int len = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        for(int i=0; i < len; i++)
+            {
+            int n = cells.get(cell(xs[i], ys[i]), result);
+            for(int j = 0; j < n; j++)
+                {
+                newXPos.add(xs[i]);
+                newYPos.add(ys[i]);
+                }
+            }
+
+        // dump the new IntBags into the old ones
+        xPos.clear();
+        xPos.addAll(newXPos);
+        yPos.clear();
+        yPos.addAll(newYPos);
+        return result;
+        }
+
+    /* For each <xPos,yPos> location, puts all such objects into the result bag.  Returns the result bag.
+       If the provided result bag is null, one will be created and returned. */
+    Bag getObjectsAtLocations(final IntBag xPos, final IntBag yPos, Bag result)
+        {
+        if (result==null) result = new Bag();
+        else result.clear();
+
+        final int len = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        for(int i=0; i < len; i++)
+            cells.get(cell(xs[i], ys[i]), result);
+        return result;
+        }
+
+    public Bag getMooreNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getMooreNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public Bag getVonNeumannNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public Bag getHexagonalNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getHexagonalNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin)
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Visits each location which getMooreNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags.  Don't add, move, or remove objects while visiting. */
+    public void forEachMooreNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachVonNeumannNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getHexagonalNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachHexagonalNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would consider,
+        and each object there, without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, true);
+        }
+    }
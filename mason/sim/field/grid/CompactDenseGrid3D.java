@@ -0,0 +1,410 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+import java.util.*;
+
+/**
+    The 3D version of CompactDenseGrid2D: a DenseGrid3D which keeps the objects in each cell in a linked list threaded
+    through a few arrays shared by the whole grid, rather than in a Bag per occupied cell.  The grid may hold at most
+    Integer.MAX_VALUE cells.  As in CompactDenseGrid2D, getObjectsAtLocation(...) returns a <i>new</i> Bag (or null if
+    the location is empty), objects in a cell are listed most recently added first, and there's no <tt>field</tt>.
+    See CompactDenseGrid2D for details.
+*/
+
+public class CompactDenseGrid3D extends AbstractGrid3D
+    {
+    private static final long serialVersionUID = 1;
+
+    CellLists cells;
+
+    public CompactDenseGrid3D (int width, int height, int length)
+        {
+        reshape(width, height, length);
+        }
+
+    /** Creates a CompactDenseGrid3D holding the same objects as the given DenseGrid3D, in the same order. */
+    public CompactDenseGrid3D (DenseGrid3D values)
+        {
+        this(values.getWidth(), values.getHeight(), values.getLength());
+        for(int x = 0; x < width; x++)
+            for(int y = 0; y < height; y++)
+                for(int z = 0; z < length; z++)
+                    {
+                    Bag b = values.field[x][y][z];
+                    if (b != null) cells.addAll((x * height + y) * length + z, b.objs, 0, b.numObjs);
+                    }
+        }
+
+    /** Replaces the existing storage with new, empty storage of the given width, height, and length. */
+    protected void reshape(int width, int height, int length)
+        {
+        long n = (long) width * height * length;
+        if (width < 0 || height < 0 || length < 0 || n > Integer.MAX_VALUE)
+            throw new RuntimeException("CompactDenseGrid3D may hold no more than Integer.MAX_VALUE cells, not " + width + " x " + height + " x " + length);
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        cells = new CellLists((int) n);
+        }
+
+    // a flat array won't catch an out-of-bounds y or z, so we check ourselves
+    final int cell(final int x, final int y, final int z)
+        {
+        if (x < 0 || x >= width) throw new ArrayIndexOutOfBoundsException(x);
+        if (y < 0 || y >= height) throw new ArrayIndexOutOfBoundsException(y);
+        if (z < 0 || z >= length) throw new ArrayIndexOutOfBoundsException(z);
+        return (x * height + y) * length + z;
+        }
+
+    /** Returns the number of objects stored in the grid, including duplicates. */
+    public int size() { return cells.size; }
+
+    /** Returns a new bag containing all the objects at a given location, or null when there are no objects at the location.
+        You are free to modify the bag: it is not part of the grid, and it doesn't change when the grid does. */
+    public Bag getObjectsAtLocation(final int x, final int y, final int z)
+        {
+        final int cell = cell(x, y, z);
+        if (cells.head[cell] < 0) return null;
+        Bag b = new Bag();
+        cells.get(cell, b);
+        return b;
+        }
+
+    /** Replaces the objects at the given location with those in the bag, or empties the location if the bag is null.
+        The bag itself is not kept. */
+    public void setObjectsAtLocation(final int x, final int y, final int z, final Bag bag)
+        {
+        final int cell = cell(x, y, z);
+        cells.removeAll(cell);
+        if (bag != null) cells.addAll(cell, bag.objs, 0, bag.numObjs);
+        }
+
+    /** Returns a new bag containing all the objects at a given location, or null when there are no objects at the location.
+        You are free to modify the bag: it is not part of the grid, and it doesn't change when the grid does. */
+    public Bag getObjectsAtLocation(Int3D location) { return getObjectsAtLocation(location.x, location.y, location.z); }
+
+    /** Removes all the objects stored at the given location and returns them as a Bag (which you are free to modify),
+        or returns null if there were none. */
+    public Bag removeObjectsAtLocation(final int x, final int y, final int z)
+        {
+        return cells.removeAll(cell(x, y, z));
+        }
+
+    /** Removes all the objects stored at the given location and returns them as a Bag (which you are free to modify),
+        or returns null if there were none. */
+    public Bag removeObjectsAtLocation(Int3D location) { return removeObjectsAtLocation(location.x, location.y, location.z); }
+
+    /** Removes one instance of the object from the given location, returning true if it was there. */
+    public boolean removeObjectAtLocation(final Object obj, final int x, final int y, final int z)
+        {
+        return cells.remove(cell(x, y, z), obj, false);
+        }
+
+    public boolean removeObjectAtLocation(final Object obj, Int3D location) { return removeObjectAtLocation(obj, location.x, location.y, location.z); }
+
+    /** Removes every instance of the object from the given location, returning true if it was there. */
+    public boolean removeObjectMultiplyAtLocation(final Object obj, final int x, final int y, final int z)
+        {
+        return cells.remove(cell(x, y, z), obj, true);
+        }
+
+    public boolean removeObjectMultiplyAtLocation(final Object obj, Int3D location) { return removeObjectMultiplyAtLocation(obj, location.x, location.y, location.z); }
+
+    /** If the object is not at [fromX, fromY, fromZ], then it's simply inserted into [toX, toY, toZ], and FALSE is returned.
+        Else it is removed ONCE from [fromX, fromY, fromZ] and inserted into [toX, toY, toZ] and TRUE is returned.
+        If the object exists multiply at [fromX, fromY, fromZ], only one instance of the object is moved.*/
+    public boolean moveObject(final Object obj, final int fromX, final int fromY, final int fromZ, final int toX, final int toY, final int toZ)
+        {
+        boolean result = removeObjectAtLocation(obj, fromX, fromY, fromZ);
+        addObjectToLocation(obj, toX, toY, toZ);
+        return result;
+        }
+
+    /** If the object is not at FROM, then it's simply inserted into TO, and FALSE is returned.
+        Else it is removed ONCE from FROM and inserted into TO and TRUE is returned.
+        If the object exists multiply at FROM, only one instance of the object is moved.*/
+    public boolean moveObject(final Object obj, Int3D from, Int3D to) { return moveObject(obj, from.x, from.y, from.z, to.x, to.y, to.z); }
+
+    public void moveObjects(final int fromX, final int fromY, final int fromZ, final int toX, final int toY, final int toZ)
+        {
+        addObjectsToLocation(removeObjectsAtLocation(fromX, fromY, fromZ), toX, toY, toZ);
+        }
+
+    public void moveObjects(Int3D from, Int3D to) { moveObjects(from.x, from.y, from.z, to.x, to.y, to.z); }
+
+    public int numObjectsAtLocation(final int x, final int y, final int z)
+        {
+        return cells.count(cell(x, y, z));
+        }
+
+    public int numObjectsAtLocation(Int3D location) { return numObjectsAtLocation(location.x, location.y, location.z); }
+
+    /** Adds an object to a given location. */
+    public void addObjectToLocation(final Object obj, final int x, final int y, final int z)
+        {
+        cells.add(cell(x, y, z), obj);
+        }
+
+    public void addObjectToLocation(final Object obj, Int3D location) { addObjectToLocation(obj, location.x, location.y, location.z); }
+
+    /** Adds objects to a given location. */
+    public void addObjectsToLocation(final Bag objs, final int x, final int y, final int z)
+        {
+        if (objs==null) return;
+        cells.addAll(cell(x, y, z), objs.objs, 0, objs.numObjs);
+        }
+
+    public void addObjectsToLocation(final Bag objs, Int3D location) { addObjectsToLocation( objs, location.x, location.y, location.z); }
+
+    /** Adds objects to a given location. */
+    public void addObjectsToLocation(final Object[] objs, final int x, final int y, final int z)
+        {
+        if (objs==null) return;
+        cells.addAll(cell(x, y, z), objs, 0, objs.length);
+        }
+
+    public void addObjectsToLocation(final Object[] objs, Int3D location) { addObjectsToLocation( objs, location.x, location.y, location.z); }
+
+    /** Adds objects to a given location. */
+    public void addObjectsToLocation(final Collection objs, final int x, final int y, final int z)
+        {
+        if (objs==null) return;
+        Object[] o = objs.toArray();
+        cells.addAll(cell(x, y, z), o, 0, o.length);
+        }
+
+    /** Empties all the locations in the grid, and returns in a Bag all stored objects
+        (including duplicates).  You are free to modify the Bag. */
+    public final Bag clear()
+        {
+        return cells.clear();
+        }
+
+    /**
+     * Removes instances of the given value.  Equality is measured using equals(...).
+     * null is considered equal to null.  This is equivalent to calling removeAll(from, false)
+     * @param from any element that matches this value will be removed
+     */
+    public final void removeAll(Object from)
+        {
+        removeAll(from, false);
+        }
+
+    /**
+     * Removes instances of the given value.  Equality is measured
+     * as follows.  (1) if onlyIfSameObject is true, then objects must be "== from"
+     * to one another to be considered equal.  (2) if onlyIfSameObject is false,
+     * then objects in the field must be "equals(from)".  In either case, null
+     * is considered equal to null.
+     * @param from any element that matches this value will be removed
+     */
+    public final void removeAll(Object from, boolean onlyIfSameObject)
+        {
+        cells.removeAll(from, onlyIfSameObject);
+        }
+
+    /**
+     * Replace instances of one value to another.  Equality is measured using equals(...).
+     * null is considered equal to null.  This is equivalent to calling replaceAll(from, to, false)
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(Object from, Object to)
+        {
+        replaceAll(from, to, false);
+        }
+
+    /**
+     * Replace instances of one value to another.  Equality is measured
+     * as follows.  (1) if onlyIfSameObject is true, then objects must be "== from"
+     * to one another to be considered equal.  (2) if onlyIfSameObject is false,
+     * then objects in the field must be "equals(from)".  In either case, null
+     * is considered equal to null.
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(Object from, Object to, boolean onlyIfSameObject)
+        {
+        cells.replaceAll(from, to, onlyIfSameObject);
+        }
+
+    /** Gathers the objects in the neighborhood which getMooreLocations(...) would gather, as DenseGrid3D.getNeighborsMaxDistance(...) does. */
+    public Bag getNeighborsMaxDistance( final int x, final int y, final int z, final int dist, final boolean toroidal, Bag result, IntBag xPos, IntBag yPos, IntBag zPos )
+        {
+        return getMooreNeighbors(x, y, z, dist, toroidal ? TOROIDAL : BOUNDED, true, result, xPos, yPos, zPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getMooreLocations(...) would gather, as DenseGrid3D.getMooreNeighbors(...) does. */
+    public Bag getMooreNeighbors( final int x, final int y, final int z, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos, IntBag zPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if( zPos == null )
+            zPos = new IntBag();
+
+        getMooreLocations( x, y, z, dist, mode, includeOrigin, xPos, yPos, zPos );
+        return getObjectsAtLocations(xPos,yPos,zPos, result);
+        }
+
+    /** As getMooreNeighbors(...), but also sets xPos, yPos, and zPos to the location of each object gathered. */
+    public Bag getMooreNeighborsAndLocations(final int x, final int y, int z, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos, IntBag zPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if( zPos == null )
+            zPos = new IntBag();
+
+        getMooreLocations( x, y, z, dist, mode, includeOrigin, xPos, yPos, zPos);
+        return reduceObjectsAtLocations( xPos,  yPos,  zPos, result);
+        }
+
+    /** Gathers the objects in the neighborhood which getVonNeumannLocations(...) would gather, as DenseGrid3D.getNeighborsHamiltonianDistance(...) does. */
+    public void getNeighborsHamiltonianDistance( final int x, final int y, final int z, final int dist, final boolean toroidal, Bag result, IntBag xPos, IntBag yPos, IntBag zPos)
+        {
+        getVonNeumannNeighbors(x, y, z, dist, toroidal ? TOROIDAL : BOUNDED, true,result, xPos, yPos, zPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getVonNeumannLocations(...) would gather, as DenseGrid3D.getVonNeumannNeighbors(...) does. */
+    public Bag getVonNeumannNeighbors( final int x, final int y, int z, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos, IntBag zPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if( zPos == null )
+            zPos = new IntBag();
+
+        getVonNeumannLocations( x, y, z, dist, mode, includeOrigin, xPos, yPos, zPos );
+        return getObjectsAtLocations(xPos,yPos,zPos,result);
+        }
+
+    /** As getVonNeumannNeighbors(...), but also sets xPos, yPos, and zPos to the location of each object gathered. */
+    public Bag getVonNeumannNeighborsAndLocations(final int x, final int y, final int z, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos, IntBag zPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if( zPos == null )
+            zPos = new IntBag();
+
+        getVonNeumannLocations( x, y, z, dist, mode, includeOrigin, xPos, yPos, zPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  zPos, result);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, final int z, final double dist, int mode, boolean includeOrigin,  Bag result, IntBag xPos, IntBag yPos, IntBag zPos )
+        {
+        return getRadialNeighbors(x, y, z, dist, mode, includeOrigin, Grid3D.ANY, true, result, xPos, yPos, zPos);
+        }
+
+    public Bag getRadialNeighborsAndLocations( final int x, final int y, final int z, final double dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos, IntBag zPos )
+        {
+        return getRadialNeighborsAndLocations(x, y, z, dist, mode, includeOrigin, Grid3D.ANY, true, result, xPos, yPos, zPos);
+        }
+
+    /** Gathers the objects in the neighborhood which getRadialLocations(...) would gather, as DenseGrid3D.getRadialNeighbors(...) does. */
+    public Bag getRadialNeighbors( final int x, final int y, int z, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  Bag result, IntBag xPos, IntBag yPos, IntBag zPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if( zPos == null )
+            zPos = new IntBag();
+
+        getRadialLocations( x, y, z, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos, zPos );
+        return getObjectsAtLocations(xPos,yPos,zPos,result);
+        }
+
+    /** As getRadialNeighbors(...), but also sets xPos, yPos, and zPos to the location of each object gathered. */
+    public Bag getRadialNeighborsAndLocations( final int x, final int y, int z, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  Bag result, IntBag xPos, IntBag yPos, IntBag zPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if( zPos == null )
+            zPos = new IntBag();
+
+        getRadialLocations( x, y, z, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos, zPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  zPos, result);
+        }
+
+    /* For each <xPos, yPos, zPos> location, puts all such objects into the result bag, and modifies the xPos, yPos, and zPos
+       bags so that each position corresponds to the equivalent object in the result bag.  Returns the result bag.
+       If the provided result bag is null, one will be created and returned. */
+    Bag reduceObjectsAtLocations(final IntBag xPos, final IntBag yPos, final IntBag zPos, Bag result)
+        {
+        if (result==null) result = new Bag();
+        else result.clear();
+
+        // build new bags with <x,y,z> locations one per each result
+        IntBag newXPos = new IntBag();
+        IntBag newYPos = new IntBag();
+        IntBag newZPos = new IntBag();
+
+        final int len = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final int[] zs = zPos.objs;
+        for(int i=0; i < len; i++)
+            {
+            int n = cells.get(cell(xs[i], ys[i], zs[i]), result);
+            for(int j = 0; j < n; j++)
+                {
+                newXPos.add(xs[i]);
+                newYPos.add(ys[i]);
+                newZPos.add(zs[i]);
+                }
+            }
+
+        // dump the new IntBags into the old ones
+        xPos.clear();
+        xPos.addAll(newXPos);
+        yPos.clear();
+        yPos.addAll(newYPos);
+        zPos.clear();
+        zPos.addAll(newZPos);
+        return result;
+        }
+
+    /* For each <xPos,yPos,zPos> location, puts all such objects into the result bag.  Returns the result bag.
+       If the provided result bag is null, one will be created and returned. */
+    Bag getObjectsAtLocations(final IntBag xPos, final IntBag yPos, final IntBag zPos, Bag result)
+        {
+        if (result==null) result = new Bag();
+        else result.clear();
+
+        final int len = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final int[] zs = zPos.objs;
+        for(int i=0; i < len; i++)
+            cells.get(cell(xs[i], ys[i], zs[i]), result);
+        return result;
+        }
+
+    public Bag getMooreNeighbors( int x, int y, int z, int dist, int mode, boolean includeOrigin )
+        {
+        return getMooreNeighbors(x, y, z, dist, mode, includeOrigin, null, null, null, null);
+        }
+
+    public Bag getVonNeumannNeighbors( int x, int y, int z, int dist, int mode, boolean includeOrigin )
+        {
+        return getVonNeumannNeighbors(x, y, z, dist, mode, includeOrigin, null, null, null, null);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, int z, final double dist, int mode, boolean includeOrigin)
+        {
+        return getRadialNeighbors(x, y, z, dist, mode, includeOrigin, null, null, null, null);
+        }
+    }
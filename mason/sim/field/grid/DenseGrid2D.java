@@ -917,6 +917,41 @@ public class DenseGrid2D extends AbstractGrid2D
         return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
     }
 
+    /** Visits each location which getMooreNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags.  Don't add, move, or remove objects while visiting. */
+    public void forEachMooreNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+    {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, true);
+    }
+
+    /** Visits each location which getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachVonNeumannNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+    {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, true);
+    }
+
+    /** Visits each location which getHexagonalNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachHexagonalNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+    {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, true);
+    }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+    {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, true);
+    }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would consider,
+        and each object there, without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, ObjectNeighborVisitor2D visitor )
+    {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, true);
+    }
+
 
 
 
@@ -199,6 +199,8 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     /** Returns the maximum value stored in the grid */
     public final double max()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            return Bulk.reduce(field, Bulk.MAX);
             double max = Double.NEGATIVE_INFINITY;
             if (isDistributed())
             {
@@ -229,6 +231,8 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     /** Returns the minimum value stored in the grid */
     public final double min()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            return Bulk.reduce(field, Bulk.MIN);
             double min = Double.POSITIVE_INFINITY;
             if (isDistributed())
                 {
@@ -259,6 +263,8 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     /** Returns the mean value stored in the grid */
     public final double mean()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            return Bulk.reduce(field, Bulk.SUM) / ((double) width * height);
             long count = 0;
             double mean = 0;
             if (isDistributed())
@@ -293,6 +299,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D upperBound(final double toNoMoreThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.UPPER_BOUND, toNoMoreThanThisMuch, 0);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -324,6 +335,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D lowerBound(final double toNoLowerThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.LOWER_BOUND, toNoLowerThanThisMuch, 0);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -355,6 +371,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D add(final double withThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.ADD, withThisMuch, 0);
+            return this;
+            }
 
             if (isDistributed())
             {
@@ -386,6 +407,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     public final DoubleGrid2D add(final IntGrid2D withThis)
         {
             checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -419,6 +445,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     public final DoubleGrid2D add(final DoubleGrid2D withThis)
         {
             checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -451,6 +482,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D multiply(final double byThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.MULTIPLY, byThisMuch, 0);
+            return this;
+            }
             if (byThisMuch==1.0) return this;
             if (isDistributed())
             {
@@ -483,6 +519,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     public final DoubleGrid2D multiply(final IntGrid2D withThis)
         {
             checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -517,6 +558,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     public final DoubleGrid2D multiply(final DoubleGrid2D withThis)
         {
             checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -550,6 +596,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
 
     public final DoubleGrid2D floor()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.FLOOR, 0, 0);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -577,6 +628,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D ceiling()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.CEILING, 0, 0);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -605,6 +661,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D  truncate()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.TRUNCATE, 0, 0);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -638,6 +699,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
     */
     public final DoubleGrid2D  rint()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.RINT, 0, 0);
+            return this;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -668,6 +734,11 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
 
     public final void replaceAll(double from, double to)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.REPLACE, from, to);
+            return;
+            }
             if (isDistributed())
             {
                 int w = getWidth();
@@ -1240,6 +1311,41 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
         return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
         }
 
+    /** Visits each location which getMooreNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags.  Don't change the grid while visiting. */
+    public void forEachMooreNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, DoubleNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachVonNeumannNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, DoubleNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getHexagonalNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachHexagonalNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, DoubleNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, DoubleNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would consider,
+        and the value there, without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, DoubleNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, true);
+        }
+
 
 
     }
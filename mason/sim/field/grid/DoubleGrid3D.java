@@ -116,6 +116,8 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     /** Returns the maximum value stored in the grid */
     public final double max()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            return Bulk.reduce(field, Bulk.MAX);
         double max = Double.NEGATIVE_INFINITY;
         if (isDistributed())
     		{
@@ -156,6 +158,8 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     /** Returns the minimum value stored in the grid */
     public final double min()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            return Bulk.reduce(field, Bulk.MIN);
         double min = Double.POSITIVE_INFINITY;
         if (isDistributed())
     		{
@@ -195,6 +199,8 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     /** Returns the mean value stored in the grid */
     public final double mean()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            return Bulk.reduce(field, Bulk.SUM) / ((double) width * height * length);
     	long count = 0;
         double mean = 0;
         if (isDistributed())
@@ -372,6 +378,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D upperBound(double toNoMoreThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.UPPER_BOUND, toNoMoreThanThisMuch, 0);
+            return this;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
@@ -412,6 +423,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D lowerBound(double toNoLowerThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.LOWER_BOUND, toNoLowerThanThisMuch, 0);
+            return this;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
@@ -452,6 +468,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D add(double withThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.ADD, withThisMuch, 0);
+            return this;
+            }
         if (withThisMuch==0.0) return this;
         if (isDistributed())
 	    	{
@@ -492,6 +513,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     public final DoubleGrid3D add(IntGrid3D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
         if (isDistributed())
 	    	{
 	    	int w = getWidth();
@@ -537,6 +563,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     public final DoubleGrid3D add(DoubleGrid3D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
         if (isDistributed())
 	    	{
 	    	int w = getWidth();
@@ -581,6 +612,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D multiply(double byThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.MULTIPLY, byThisMuch, 0);
+            return this;
+            }
         if (byThisMuch==1.0) return this;
         if (isDistributed())
 	    	{
@@ -621,6 +657,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     public final DoubleGrid3D multiply(IntGrid3D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
         if (isDistributed())
 	    	{
 	    	int w = getWidth();
@@ -665,6 +706,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     public final DoubleGrid3D multiply(DoubleGrid3D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
         if (isDistributed())
 	    	{
 	    	int w = getWidth();
@@ -708,6 +754,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D floor()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.FLOOR, 0, 0);
+            return this;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
@@ -744,6 +795,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D ceiling()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.CEILING, 0, 0);
+            return this;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
@@ -780,6 +836,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D truncate()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.TRUNCATE, 0, 0);
+            return this;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
@@ -822,6 +883,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
     */
     public final DoubleGrid3D  rint()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.RINT, 0, 0);
+            return this;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
@@ -863,6 +929,11 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
 
     public final void replaceAll(double from, double to)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.REPLACE, from, to);
+            return;
+            }
     	if (isDistributed())
 			{
 			int w = getWidth();
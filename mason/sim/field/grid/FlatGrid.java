@@ -0,0 +1,27 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+
+/**
+   Helpers for the grids which keep their cells in a single one-dimensional array, column by column:
+   FlatIntGrid2D, FlatDoubleGrid2D, and CompactDenseGrid2D.
+*/
+
+final class FlatGrid
+    {
+    private FlatGrid() { }
+
+    /** Returns width * height, the number of cells in a flat grid, or throws a RuntimeException if the
+        dimensions are negative or there would be more than Integer.MAX_VALUE cells. */
+    static int cells(int width, int height)
+        {
+        long cells = (long) width * height;
+        if (width < 0 || height < 0 || cells > Integer.MAX_VALUE)
+            throw new RuntimeException("Flat grids may hold no more than Integer.MAX_VALUE cells, not " + width + " x " + height);
+        return (int) cells;
+        }
+    }
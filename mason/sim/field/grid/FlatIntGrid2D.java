@@ -0,0 +1,416 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+
+/**
+    A 2D grid of ints stored in a single one-dimensional array, rather than in an array of arrays as IntGrid2D
+    does.  The value at &lt;x, y&gt; is <tt>field[x * height + y]</tt>.  See FlatDoubleGrid2D for the rationale.
+
+    <p>FlatIntGrid2D has much the same methods as IntGrid2D, but not getField(): the array is the public
+    <tt>field</tt> variable, and toArray2D() returns a <i>copy</i> of the grid as an int[][].  Portrayals which
+    expect an IntGrid2D can display <tt>new IntGrid2D(grid.toArray2D())</tt>, or an IntGrid2D kept up to date with
+    setTo(...).
+*/
+
+public /*strictfp*/ class FlatIntGrid2D extends AbstractGrid2D
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The grid, column by column: the value at &lt;x, y&gt; is field[x * height + y]. */
+    public int[] field;
+
+    /** Returns a new copy of the grid as an array of arrays, indexed [x][y].  This takes O(width * height) time. */
+    public int[][] toArray2D()
+        {
+        int[][] f = new int[width][height];
+        for(int x = 0; x < width; x++)
+            System.arraycopy(field, x * height, f[x], 0, height);
+        return f;
+        }
+
+    public FlatIntGrid2D (int width, int height)
+        {
+        reshape(width, height);
+        }
+
+    public FlatIntGrid2D (int width, int height, int initialValue)
+        {
+        this(width,height);
+        setTo(initialValue);
+        }
+
+    protected void reshape(int width, int height)
+        {
+        field = new int[FlatGrid.cells(width, height)];
+        this.width = width;
+        this.height = height;
+        }
+
+    public FlatIntGrid2D (FlatIntGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public FlatIntGrid2D (IntGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public FlatIntGrid2D(int[][] values)
+        {
+        setTo(values);
+        }
+
+    /** Sets location (x,y) to val */
+    public final void set(final int x, final int y, final int val)
+        {
+        field[x * height + y] = val;
+        }
+
+    /** Returns the element at location (x,y) */
+    public final int get(final int x, final int y)
+        {
+        return field[x * height + y];
+        }
+
+    /** Sets all the locations in the grid the provided element */
+    public final FlatIntGrid2D setTo(final int thisMuch)
+        {
+        java.util.Arrays.fill(field, thisMuch);
+        return this;
+        }
+
+    /** Sets the grid to a copy of the provided array, which must be rectangular. */
+    public FlatIntGrid2D setTo(int[][] field)
+        {
+        if (field == null)
+            throw new RuntimeException("FlatIntGrid2D set to null field.");
+        int w = field.length;
+        int h = 0;
+        if (w != 0) h = field[0].length;
+        for(int i = 0; i < w; i++)
+            if (field[i].length != h) // uh oh
+                throw new RuntimeException("FlatIntGrid2D initialized with a non-rectangular field.");
+
+        if (this.field == null || width != w || height != h) reshape(w, h);
+        for(int x = 0; x < w; x++)
+            System.arraycopy(field[x], 0, this.field, x * h, h);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatIntGrid2D setTo(final IntGrid2D values)
+        {
+        return setTo(values.field);
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatIntGrid2D setTo(final FlatIntGrid2D values)
+        {
+        if (field == null || width != values.width || height != values.height)
+            reshape(values.width, values.height);
+        System.arraycopy(values.field, 0, field, 0, field.length);
+        return this;
+        }
+
+    /** Flattens the grid to a one-dimensional array, storing the elements column by column, as IntGrid2D.toArray() does.
+        This is a copy of the field. */
+    public final int[] toArray()
+        {
+        return (int[]) field.clone();
+        }
+
+    /** Returns the maximum value stored in the grid */
+    public final int max()
+        {
+        if (Bulk.large(field.length))
+            return (int) Bulk.reduce(field, Bulk.MAX);
+        int max = Integer.MIN_VALUE;
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            if (max < field[i]) max = field[i];
+        return max;
+        }
+
+    /** Returns the minimum value stored in the grid */
+    public final int min()
+        {
+        if (Bulk.large(field.length))
+            return (int) Bulk.reduce(field, Bulk.MIN);
+        int min = Integer.MAX_VALUE;
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            if (min > field[i]) min = field[i];
+        return min;
+        }
+
+    /** Returns the mean value stored in the grid */
+    public final double mean()
+        {
+        if (Bulk.large(field.length))
+            return Bulk.reduce(field, Bulk.SUM) / field.length;
+        double mean = 0;
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            mean += field[i];
+        return (field.length == 0 ? 0 : mean / field.length);
+        }
+
+    /** Thresholds the grid so that values greater to <i>toNoMoreThanThisMuch</i> are changed to <i>toNoMoreThanThisMuch</i>.
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D upperBound(final int toNoMoreThanThisMuch)
+        {
+        if (Bulk.large(field.length))
+            {
+            Bulk.map(field, Bulk.UPPER_BOUND, toNoMoreThanThisMuch, 0);
+            return this;
+            }
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            if (field[i] > toNoMoreThanThisMuch)
+                field[i] = toNoMoreThanThisMuch;
+        return this;
+        }
+
+    /** Thresholds the grid so that values smaller than <i>toNoLowerThanThisMuch</i> are changed to <i>toNoLowerThanThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D lowerBound(final int toNoLowerThanThisMuch)
+        {
+        if (Bulk.large(field.length))
+            {
+            Bulk.map(field, Bulk.LOWER_BOUND, toNoLowerThanThisMuch, 0);
+            return this;
+            }
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            if (field[i] < toNoLowerThanThisMuch)
+                field[i] = toNoLowerThanThisMuch;
+        return this;
+        }
+
+    /** Sets each value in the grid to that value added to <i>withThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D add(final int withThisMuch)
+        {
+        if (Bulk.large(field.length))
+            {
+            Bulk.map(field, Bulk.ADD, withThisMuch, 0);
+            return this;
+            }
+        if (withThisMuch == 0) return this;
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            field[i] += withThisMuch;
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to that value added to the value at the equivalent location in the provided grid.
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D add(final FlatIntGrid2D withThis)
+        {
+        checkBounds(withThis);
+        if (Bulk.large(field.length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
+        final int[] field = this.field;
+        final int[] otherField = withThis.field;
+        for(int i = 0; i < field.length; i++)
+            field[i] += otherField[i];
+        return this;
+        }
+
+    /** Sets each value in the grid to that value multiplied <i>byThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D multiply(final int byThisMuch)
+        {
+        if (Bulk.large(field.length))
+            {
+            Bulk.map(field, Bulk.MULTIPLY, byThisMuch, 0);
+            return this;
+            }
+        if (byThisMuch == 1) return this;
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            field[i] *= byThisMuch;
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to that value multiplied by to the value at the equivalent location in the provided grid.
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D multiply(final FlatIntGrid2D withThis)
+        {
+        checkBounds(withThis);
+        if (Bulk.large(field.length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
+        final int[] field = this.field;
+        final int[] otherField = withThis.field;
+        for(int i = 0; i < field.length; i++)
+            field[i] *= otherField[i];
+        return this;
+        }
+
+    /**
+     * Replace instances of one value to another.
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(int from, int to)
+        {
+        if (Bulk.large(field.length))
+            {
+            Bulk.map(field, Bulk.REPLACE, from, to);
+            return;
+            }
+        final int[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            if (field[i] == from)
+                field[i] = to;
+        }
+
+
+    /** Gathers the values in the neighborhood which getMooreLocations(...) would gather, as IntGrid2D.getMooreNeighbors(...) does. */
+    public IntBag getMooreNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /** Gathers the values in the neighborhood which getVonNeumannLocations(...) would gather, as IntGrid2D.getVonNeumannNeighbors(...) does. */
+    public IntBag getVonNeumannNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /** Gathers the values in the neighborhood which getHexagonalLocations(...) would gather, as IntGrid2D.getHexagonalNeighbors(...) does. */
+    public IntBag getHexagonalNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    public IntBag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    /** Gathers the values in the neighborhood which getRadialLocations(...) would gather, as IntGrid2D.getRadialNeighbors(...) does. */
+    public IntBag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /* For each <xPos,yPos> location, puts all such values into the result IntBag.  Returns the result IntBag.
+       If the provided result IntBag is null, one will be created and returned. */
+    IntBag getObjectsAtLocations(final IntBag xPos, final IntBag yPos, IntBag result)
+        {
+        if (result==null) result = new IntBag();
+        else result.clear();
+
+        final int height = this.height;
+        for( int i = 0 ; i < xPos.numObjs ; i++ )
+            {
+            // a flat array won't catch an out-of-bounds y (in BOUNDED mode), so we check ourselves
+            final int y = yPos.objs[i];
+            if (y < 0 || y >= height) throw new ArrayIndexOutOfBoundsException(y);
+            result.add( field[xPos.objs[i] * height + y] );
+            }
+        return result;
+        }
+
+    public IntBag getMooreNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getMooreNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public IntBag getVonNeumannNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public IntBag getHexagonalNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getHexagonalNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public IntBag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin)
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Visits each location which getMooreNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags.  Don't change the grid while visiting. */
+    public void forEachMooreNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachVonNeumannNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getHexagonalNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachHexagonalNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would consider,
+        and the value there, without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, true);
+        }
+    }
@@ -217,6 +217,8 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
     /** Returns the maximum value stored in the grid */
     public final int max()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            return (int) Bulk.reduce(field, Bulk.MAX);
         int max = Integer.MIN_VALUE;
         if (isDistributed())
             {
@@ -252,6 +254,8 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
     /** Returns the minimum value stored in the grid */
     public final int min()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            return (int) Bulk.reduce(field, Bulk.MIN);
         int min = Integer.MAX_VALUE;
 
         if (isDistributed())
@@ -288,6 +292,8 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
     /** Returns the mean value stored in the grid */
     public final double mean()
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            return Bulk.reduce(field, Bulk.SUM) / ((double) width * height);
         long count = 0;
         double mean = 0;
 
@@ -327,6 +333,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
     */
     public final IntGrid2D upperBound(int toNoMoreThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.UPPER_BOUND, toNoMoreThanThisMuch, 0);
+            return this;
+            }
         if (isDistributed())
             {
             int w = getWidth();
@@ -364,6 +375,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
 
     public final IntGrid2D lowerBound(int toNoLowerThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.LOWER_BOUND, toNoLowerThanThisMuch, 0);
+            return this;
+            }
         if (isDistributed())
             {
             int w = getWidth();
@@ -401,6 +417,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
 
     public final IntGrid2D add(int withThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.ADD, withThisMuch, 0);
+            return this;
+            }
         if (withThisMuch==0.0) return this;
 
         if (isDistributed())
@@ -439,6 +460,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
     public final IntGrid2D add(IntGrid2D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
 
         if (isDistributed())
             {
@@ -478,6 +504,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
 
     public final IntGrid2D multiply(int byThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.MULTIPLY, byThisMuch, 0);
+            return this;
+            }
         if (byThisMuch==1.0) return this;
 
         if (isDistributed())
@@ -516,6 +547,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
     public final IntGrid2D multiply(IntGrid2D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
 
         if (isDistributed())
             {
@@ -557,6 +593,11 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
 
     public final void replaceAll(int from, int to)
         {
+        if (!isDistributed() && Bulk.large((long) width * height))
+            {
+            Bulk.map(field, Bulk.REPLACE, from, to);
+            return;
+            }
         if (isDistributed())
             {
             int w = getWidth();
@@ -933,6 +974,41 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
         return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
         }
 
+    /** Visits each location which getMooreNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags.  Don't change the grid while visiting. */
+    public void forEachMooreNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachVonNeumannNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getHexagonalNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachHexagonalNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and the value there,
+        without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would consider,
+        and the value there, without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, IntNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, true);
+        }
+
 
 
     }
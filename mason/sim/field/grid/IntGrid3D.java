@@ -113,6 +113,8 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     /** Returns the maximum value stored in the grid */
     public final int max()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            return (int) Bulk.reduce(field, Bulk.MAX);
         int max = Integer.MIN_VALUE;
         if (isDistributed())
         	{
@@ -153,6 +155,8 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     /** Returns the minimum value stored in the grid */
     public final int min()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            return (int) Bulk.reduce(field, Bulk.MIN);
         int min = Integer.MAX_VALUE;
         if (isDistributed())
         	{
@@ -192,6 +196,8 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     /** Returns the mean value stored in the grid */
     public final double mean()
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            return Bulk.reduce(field, Bulk.SUM) / ((double) width * height * length);
         long count = 0;
         double mean = 0;
         if (isDistributed())
@@ -366,6 +372,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     */
     public final IntGrid3D upperBound(int toNoMoreThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.UPPER_BOUND, toNoMoreThanThisMuch, 0);
+            return this;
+            }
     	if (isDistributed())
     		{
     		int w = getWidth();
@@ -407,6 +418,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
 
     public final IntGrid3D lowerBound(int toNoLowerThanThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.LOWER_BOUND, toNoLowerThanThisMuch, 0);
+            return this;
+            }
     	if (isDistributed())
     		{
     		int w = getWidth();
@@ -447,6 +463,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     */
     public final IntGrid3D add(int withThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.ADD, withThisMuch, 0);
+            return this;
+            }
         if (withThisMuch==0.0) return this;
         if (isDistributed())
         	{
@@ -487,6 +508,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     public final IntGrid3D add(IntGrid3D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.ADD);
+            return this;
+            }
         if (isDistributed())
         	{
         	int w = getWidth();
@@ -531,6 +557,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     */
     public final IntGrid3D multiply(int byThisMuch)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.MULTIPLY, byThisMuch, 0);
+            return this;
+            }
         if (byThisMuch==1.0) return this;
         
         if (isDistributed())
@@ -572,6 +603,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
     public final IntGrid3D multiply(IntGrid3D withThis)
         {
         checkBounds(withThis);
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.combine(field, withThis.field, Bulk.MULTIPLY);
+            return this;
+            }
         if (isDistributed())
         	{
         	int w = getWidth();
@@ -620,6 +656,11 @@ public /*strictfp*/ class IntGrid3D extends AbstractGrid3D
 
     public final void replaceAll(int from, int to)
         {
+        if (!isDistributed() && Bulk.large((long) width * height * length))
+            {
+            Bulk.map(field, Bulk.REPLACE, from, to);
+            return;
+            }
     	if (isDistributed())
     		{
     		int w = getWidth();
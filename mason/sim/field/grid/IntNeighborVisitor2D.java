@@ -0,0 +1,18 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+
+/**
+   Visits the values in an IntGrid2D's neighborhood.  Pass one to IntGrid2D.forEachMooreNeighbor(...) and its
+   siblings to visit each location in a neighborhood, and the value there, without filling an IntBag and more IntBags.
+*/
+
+public interface IntNeighborVisitor2D
+    {
+    /** Called once for each location visited, with the value there. */
+    public void visit(int x, int y, int value);
+    }
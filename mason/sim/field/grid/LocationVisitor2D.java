@@ -0,0 +1,18 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+
+/**
+   Visits locations in a 2D grid.  Pass one to AbstractGrid2D.forEachMooreLocation(...) and its siblings, or SparseGrid2D's, to
+   visit each location in a neighborhood without filling IntBags.
+*/
+
+public interface LocationVisitor2D
+    {
+    /** Called once for each location visited. */
+    public void visit(int x, int y);
+    }
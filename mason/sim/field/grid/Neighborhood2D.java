@@ -0,0 +1,447 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+
+/**
+   Walks the Moore, von Neumann, hexagonal, and radial neighborhoods of 2D grids, handing each location (or the value
+   or objects there) to a visitor rather than adding it to IntBags.  Used by the forEach...Location(...) and
+   forEach...Neighbor(...) methods of the 2D grids.  The neighborhoods are the same as those gathered by the
+   corresponding get...Locations(...) methods, though the locations may be visited in a different order.
+
+   <p>Nothing is allocated, except in toroidal von Neumann and hexagonal neighborhoods so large that they wrap around
+   onto themselves: these are gathered with get...Locations(...) first, to remove the duplicates.
+*/
+
+final class Neighborhood2D
+    {
+    private Neighborhood2D() { }
+
+    // passed as the y to skip in column(...) when no location is to be skipped
+    static final int NONE = Integer.MIN_VALUE;
+
+    /* Hands the locations <x, ymin> through <x, ymax>, or what's there, to the visitor, skipping the location <x, skip>.
+       If toroidal, the y values are wrapped around the height first.  Doing a whole column at a time lets us look up the
+       kind of grid and its column of values just once. */
+    static void column(Grid2D grid, Object visitor, boolean values, int x, int ymin, int ymax, int height, boolean toroidal, int skip)
+        {
+        // the column may lie outside the grid if it's empty, so don't look it up
+        if (ymin > ymax || (ymin == ymax && ymin == skip)) return;
+        if (!values)
+            {
+            LocationVisitor2D v = (LocationVisitor2D)visitor;
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y != skip) v.visit(x, y);
+                }
+            }
+        else if (grid instanceof DoubleGrid2D)
+            {
+            DoubleNeighborVisitor2D v = (DoubleNeighborVisitor2D)visitor;
+            double[] col = ((DoubleGrid2D)grid).field[x];
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y != skip) v.visit(x, y, col[y]);
+                }
+            }
+        else if (grid instanceof IntGrid2D)
+            {
+            IntNeighborVisitor2D v = (IntNeighborVisitor2D)visitor;
+            int[] col = ((IntGrid2D)grid).field[x];
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y != skip) v.visit(x, y, col[y]);
+                }
+            }
+        else if (grid instanceof FlatDoubleGrid2D)
+            {
+            DoubleNeighborVisitor2D v = (DoubleNeighborVisitor2D)visitor;
+            double[] field = ((FlatDoubleGrid2D)grid).field;
+            int base = x * height;
+            // a flat array won't catch an out-of-bounds y (in BOUNDED mode), so we check ourselves
+            if (x < 0 || base >= field.length) throw new ArrayIndexOutOfBoundsException(x);
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y == skip) continue;
+                if (y < 0 || y >= height) throw new ArrayIndexOutOfBoundsException(y);
+                v.visit(x, y, field[base + y]);
+                }
+            }
+        else if (grid instanceof FlatIntGrid2D)
+            {
+            IntNeighborVisitor2D v = (IntNeighborVisitor2D)visitor;
+            int[] field = ((FlatIntGrid2D)grid).field;
+            int base = x * height;
+            // a flat array won't catch an out-of-bounds y (in BOUNDED mode), so we check ourselves
+            if (x < 0 || base >= field.length) throw new ArrayIndexOutOfBoundsException(x);
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y == skip) continue;
+                if (y < 0 || y >= height) throw new ArrayIndexOutOfBoundsException(y);
+                v.visit(x, y, field[base + y]);
+                }
+            }
+        else if (grid instanceof ObjectGrid2D)
+            {
+            ObjectNeighborVisitor2D v = (ObjectNeighborVisitor2D)visitor;
+            Object[] col = ((ObjectGrid2D)grid).field[x];
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y != skip && col[y] != null) v.visit(x, y, col[y]);
+                }
+            }
+        else if (grid instanceof CompactDenseGrid2D)
+            {
+            ObjectNeighborVisitor2D v = (ObjectNeighborVisitor2D)visitor;
+            CompactDenseGrid2D dense = (CompactDenseGrid2D)grid;
+            int[] head = dense.cells.head;
+            int[] next = dense.cells.next;
+            Object[] objects = dense.cells.objects;
+            int base = x * height;
+            // a flat array won't catch an out-of-bounds y (in BOUNDED mode), so we check ourselves
+            if (x < 0 || x >= dense.getWidth()) throw new ArrayIndexOutOfBoundsException(x);
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y == skip) continue;
+                if (y < 0 || y >= height) throw new ArrayIndexOutOfBoundsException(y);
+                for(int s = head[base + y]; s >= 0; s = next[s])
+                    v.visit(x, y, objects[s]);
+                }
+            }
+        else
+            {
+            ObjectNeighborVisitor2D v = (ObjectNeighborVisitor2D)visitor;
+            Bag[] col = (grid instanceof DenseGrid2D ? ((DenseGrid2D)grid).field[x] : null);
+            SparseGrid2D sparse = (col == null ? (SparseGrid2D)grid : null);
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y = (toroidal ? wrap(y0, height) : y0);
+                if (y == skip) continue;
+                Bag objs = (col != null ? col[y] : sparse.getRawObjectsAtLocation(x, y));
+                if (objs != null)
+                    {
+                    int n = objs.numObjs;
+                    Object[] o = objs.objs;
+                    for(int i = 0; i < n; i++)
+                        v.visit(x, y, o[i]);
+                    }
+                }
+            }
+        }
+
+    // hands the location, or what's there, to the visitor
+    static void visit(Grid2D grid, Object visitor, boolean values, int x, int y)
+        {
+        column(grid, visitor, values, x, y, y, grid.getHeight(), false, NONE);
+        }
+
+    static int wrap(int x, int width)
+        {
+        if (x >= 0 && x < width) return x;
+        x = x % width;
+        if (x < 0) x = x + width;
+        return x;
+        }
+
+    static void check(Grid2D grid, int x, int y, int dist, int mode, Object visitor)
+        {
+        if (mode != Grid2D.BOUNDED && mode != Grid2D.UNBOUNDED && mode != Grid2D.TOROIDAL)
+            throw new RuntimeException("Mode must be either Grid2D.BOUNDED, Grid2D.UNBOUNDED, or Grid2D.TOROIDAL");
+        if (dist < 0)
+            throw new RuntimeException( "Distance must be positive" );
+        if (visitor == null)
+            throw new RuntimeException( "visitor should not be null" );
+        if ((x < 0 || x >= grid.getWidth() || y < 0 || y >= grid.getHeight()) && mode != Grid2D.BOUNDED)
+            throw new RuntimeException( "Invalid initial position" );
+        }
+
+    // visits locations gathered the slow way, for neighborhoods which wrap onto themselves
+    static void visitAll(Grid2D grid, Object visitor, boolean values, IntBag xPos, IntBag yPos)
+        {
+        for(int i = 0; i < xPos.numObjs; i++)
+            visit(grid, visitor, values, xPos.objs[i], yPos.objs[i]);
+        }
+
+    static void moore(Grid2D grid, int x, int y, int dist, int mode, boolean includeOrigin, Object visitor, boolean values)
+        {
+        check(grid, x, y, dist, mode, visitor);
+        final int width = grid.getWidth();
+        final int height = grid.getHeight();
+        final boolean bounded = (mode == Grid2D.BOUNDED);
+
+        if (mode == Grid2D.TOROIDAL)
+            {
+            int xmin = x - dist;
+            int xmax = x + dist;
+            if (xmax - xmin >= width)  // too wide, just use whole neighborhood
+                { xmin = 0; xmax = width - 1; }
+            int ymin = y - dist;
+            int ymax = y + dist;
+            if (ymax - ymin >= height)  // too high, just use whole neighborhood
+                { ymin = 0; ymax = height - 1; }
+            for(int x0 = xmin; x0 <= xmax; x0++)
+                {
+                final int x_0 = wrap(x0, width);
+                column(grid, visitor, values, x_0, ymin, ymax, height, true, (includeOrigin || x_0 != x ? NONE : y));
+                }
+            }
+        else
+            {
+            final int xmin = ((x - dist >= 0) || !bounded ? x - dist : 0);
+            final int xmax = ((x + dist <= width - 1) || !bounded ? x + dist : width - 1);
+            final int ymin = ((y - dist >= 0) || !bounded ? y - dist : 0);
+            final int ymax = ((y + dist <= height - 1) || !bounded ? y + dist : height - 1);
+            for(int x0 = xmin; x0 <= xmax; x0++)
+                column(grid, visitor, values, x0, ymin, ymax, height, false, (includeOrigin || x0 != x ? NONE : y));
+            }
+        }
+
+    static void vonNeumann(Grid2D grid, int x, int y, int dist, int mode, boolean includeOrigin, Object visitor, boolean values)
+        {
+        check(grid, x, y, dist, mode, visitor);
+        final int width = grid.getWidth();
+        final int height = grid.getHeight();
+        final boolean bounded = (mode == Grid2D.BOUNDED);
+
+        if (mode == Grid2D.TOROIDAL)
+            {
+            if (dist * 2 >= width || dist * 2 >= height)  // too big, will have to remove duplicates
+                {
+                IntBag xPos = new IntBag();
+                IntBag yPos = new IntBag();
+                grid.getVonNeumannLocations(x, y, dist, mode, includeOrigin, xPos, yPos);
+                visitAll(grid, visitor, values, xPos, yPos);
+                return;
+                }
+            for(int x0 = x - dist; x0 <= x + dist; x0++)
+                {
+                final int x_0 = wrap(x0, width);
+                final int d = dist - (x0 - x >= 0 ? x0 - x : x - x0);
+                column(grid, visitor, values, x_0, y - d, y + d, height, true, (includeOrigin || x_0 != x ? NONE : y));
+                }
+            }
+        else
+            {
+            final int xmax = ((x + dist <= width - 1) || !bounded ? x + dist : width - 1);
+            final int xmin = ((x - dist >= 0) || !bounded ? x - dist : 0);
+            for(int x0 = xmin; x0 <= xmax; x0++)
+                {
+                final int d = dist - (x0 - x >= 0 ? x0 - x : x - x0);
+                final int ymax = ((y + d <= height - 1) || !bounded ? y + d : height - 1);
+                final int ymin = ((y - d >= 0) || !bounded ? y - d : 0);
+                column(grid, visitor, values, x0, ymin, ymax, height, false, (includeOrigin || x0 != x ? NONE : y));
+                }
+            }
+        }
+
+    // the hexagonal layout: see AbstractGrid2D.ulx(...) and friends
+    static int dly(int x, int y) { return ((x & 1) == 0 ? y : y + 1); }
+    static int uly(int x, int y) { return ((x & 1) == 0 ? y - 1 : y); }
+
+    static void hexagonal(Grid2D grid, int x, int y, int dist, int mode, boolean includeOrigin, Object visitor, boolean values)
+        {
+        check(grid, x, y, dist, mode, visitor);
+        final int width = grid.getWidth();
+        final int height = grid.getHeight();
+        final boolean bounded = (mode == Grid2D.BOUNDED);
+
+        if (mode == Grid2D.TOROIDAL)
+            {
+            if (height % 2 == 1)
+                throw new RuntimeException( "toroidal hexagonal environment should have even heights" );
+            if (dist * 2 >= width || dist * 2 >= height)  // too big, will have to remove duplicates
+                {
+                IntBag xPos = new IntBag();
+                IntBag yPos = new IntBag();
+                grid.getHexagonalLocations(x, y, dist, mode, includeOrigin, xPos, yPos);
+                visitAll(grid, visitor, values, xPos, yPos);
+                return;
+                }
+            // the center column, then the columns to the left, then to the right
+            for(int side = 0; side < 3; side++)
+                {
+                int x0 = x;
+                int ymin = y - dist;
+                int ymax = y + dist;
+                for(int i = (side == 0 ? 0 : 1); i <= (side == 0 ? 0 : dist); i++)
+                    {
+                    if (side != 0)
+                        {
+                        ymin = dly(x0, ymin);
+                        ymax = uly(x0, ymax);
+                        x0 = (side == 1 ? x0 - 1 : x0 + 1);
+                        }
+                    final int x_0 = wrap(x0, width);
+                    column(grid, visitor, values, x_0, ymin, ymax, height, true, (includeOrigin || x_0 != x ? NONE : y));
+                    }
+                }
+            }
+        else
+            {
+            for(int side = 0; side < 3; side++)
+                {
+                int x0 = x;
+                int ymin = y - dist;
+                int ymax = y + dist;
+                for(int i = (side == 0 ? 0 : 1); i <= (side == 0 ? 0 : dist); i++)
+                    {
+                    if (side != 0)
+                        {
+                        ymin = dly(x0, ymin);
+                        ymax = uly(x0, ymax);
+                        x0 = (side == 1 ? x0 - 1 : x0 + 1);
+                        }
+                    if (side == 1 && x0 < 0) continue;
+                    if (side == 2 && x0 >= width) continue;
+                    final int ylBound = ((ymin >= 0 || !bounded) ? ymin : 0);
+                    final int yuBound = ((ymax < height || !bounded) ? ymax : height - 1);
+                    column(grid, visitor, values, x0, ylBound, yuBound, height, false, (includeOrigin || x0 != x ? NONE : y));
+                    }
+                }
+            }
+        }
+
+    // returns true if the location <xp, yp> lies outside the given distance of <x, y>, by the measurement rule
+    static boolean outside(int x, int y, int xp, int yp, double dist, double distsq, int measurementRule, boolean closed)
+        {
+        if (measurementRule == Grid2D.ANY)
+            return AbstractGrid2D.removeForAny(x, y, xp, yp, dist, closed);
+        else if (measurementRule == Grid2D.ALL)
+            {
+            // only the farthest corner need be checked
+            if (x < xp)
+                {
+                if (y < yp) return !AbstractGrid2D.within(x, y, xp + 0.5, yp + 0.5, distsq, closed);
+                else return !AbstractGrid2D.within(x, y, xp + 0.5, yp - 0.5, distsq, closed);
+                }
+            else
+                {
+                if (y < yp) return !AbstractGrid2D.within(x, y, xp - 0.5, yp + 0.5, distsq, closed);
+                else return !AbstractGrid2D.within(x, y, xp - 0.5, yp - 0.5, distsq, closed);
+                }
+            }
+        else return !AbstractGrid2D.within(x, y, xp, yp, distsq, closed);  // CENTER
+        }
+
+    static void radial(Grid2D grid, int x, int y, double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, Object visitor, boolean values)
+        {
+        if (dist < 0)
+            throw new RuntimeException( "Distance must be positive" );
+        if (measurementRule != Grid2D.ANY && measurementRule != Grid2D.ALL && measurementRule != Grid2D.CENTER)
+            throw new RuntimeException(" Measurement rule must be one of ANY, ALL, or CENTER" );
+
+        // the rectangle, as in getMooreLocations(...), but unbounded if we're toroidal
+        final boolean toroidal = (mode == Grid2D.TOROIDAL);
+        final int boxMode = (toroidal ? Grid2D.UNBOUNDED : mode);
+        final int d = (int) Math.ceil(dist + 0.5);
+        check(grid, x, y, d, boxMode, visitor);
+        final int width = grid.getWidth();
+        final int height = grid.getHeight();
+        final boolean bounded = (boxMode == Grid2D.BOUNDED);
+        final int xmin = ((x - d >= 0) || !bounded ? x - d : 0);
+        final int xmax = ((x + d <= width - 1) || !bounded ? x + d : width - 1);
+        final int ymin = ((y - d >= 0) || !bounded ? y - d : 0);
+        final int ymax = ((y + d <= height - 1) || !bounded ? y + d : height - 1);
+        final double distsq = dist * dist;
+
+        for(int x0 = xmin; x0 <= xmax; x0++)
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                if (!includeOrigin && x0 == x && y0 == y) continue;
+                if (outside(x, y, x0, y0, dist, distsq, measurementRule, closed)) continue;
+                if (toroidal) visit(grid, visitor, values, wrap(x0, width), wrap(y0, height));
+                else visit(grid, visitor, values, x0, y0);
+                }
+        }
+    
+    /** Compares the forEach...Neighbor(...) methods with the get...Neighbors(...) methods, summing the toroidal
+        Moore neighborhood of every cell of a DoubleGrid2D (as HeatBugs does), and counting the objects in the
+        Moore neighborhood of every cell of a SparseGrid2D (as Schelling does). */
+    public static void main(String[] args)
+        {
+        final int size = 200;
+        final int passes = 20;
+        DoubleGrid2D grid = new DoubleGrid2D(size, size);
+        SparseGrid2D sparse = new SparseGrid2D(size, size);
+        ec.util.MersenneTwisterFast random = new ec.util.MersenneTwisterFast(1);
+        for(int x = 0; x < size; x++)
+            for(int y = 0; y < size; y++)
+                {
+                grid.field[x][y] = random.nextDouble();
+                if (random.nextBoolean()) sparse.setObjectLocation(new Object(), x, y);
+                }
+
+        class Sum implements DoubleNeighborVisitor2D, ObjectNeighborVisitor2D
+            {
+            double sum;
+            public void visit(int x, int y, double value) { sum += value; }
+            public void visit(int x, int y, Object obj) { sum++; }
+            }
+        Sum sum = new Sum();
+        DoubleBag result = new DoubleBag();
+        Bag objs = new Bag();
+        IntBag xPos = new IntBag();
+        IntBag yPos = new IntBag();
+
+        System.out.println("Visiting the Moore neighborhood (distance 1, toroidal) of each of " + size + " x " + size + " cells " +
+            passes + " times.  Times in milliseconds, after a warm-up.\n");
+        for(int round = 0; round < 2; round++)
+            {
+            long bagTime = 0, visitTime = 0, sparseBagTime = 0, sparseVisitTime = 0;
+            double total = 0;
+            for(int pass = 0; pass < passes; pass++)
+                {
+                long time = System.nanoTime();
+                for(int x = 0; x < size; x++)
+                    for(int y = 0; y < size; y++)
+                        {
+                        grid.getMooreNeighbors(x, y, 1, Grid2D.TOROIDAL, true, result, xPos, yPos);
+                        double s = 0;
+                        for(int i = 0; i < result.numObjs; i++) s += result.objs[i];
+                        total += s;
+                        }
+                bagTime += System.nanoTime() - time;
+                time = System.nanoTime();
+                for(int x = 0; x < size; x++)
+                    for(int y = 0; y < size; y++)
+                        {
+                        sum.sum = 0;
+                        grid.forEachMooreNeighbor(x, y, 1, Grid2D.TOROIDAL, true, sum);
+                        total -= sum.sum;
+                        }
+                visitTime += System.nanoTime() - time;
+                time = System.nanoTime();
+                for(int x = 0; x < size; x++)
+                    for(int y = 0; y < size; y++)
+                        total += sparse.getMooreNeighbors(x, y, 1, Grid2D.TOROIDAL, false, objs, xPos, yPos).numObjs;
+                sparseBagTime += System.nanoTime() - time;
+                time = System.nanoTime();
+                for(int x = 0; x < size; x++)
+                    for(int y = 0; y < size; y++)
+                        {
+                        sum.sum = 0;
+                        sparse.forEachMooreNeighbor(x, y, 1, Grid2D.TOROIDAL, false, sum);
+                        total -= sum.sum;
+                        }
+                sparseVisitTime += System.nanoTime() - time;
+                }
+            if (round == 1)
+                {
+                System.out.println("DoubleGrid2D   getMooreNeighbors " + bagTime / 1000000 + "\tforEachMooreNeighbor " + visitTime / 1000000);
+                System.out.println("SparseGrid2D   getMooreNeighbors " + sparseBagTime / 1000000 + "\tforEachMooreNeighbor " + sparseVisitTime / 1000000);
+                System.out.println("(difference in totals, should be about 0: " + total + ")");
+                }
+            }
+        }
+    }
@@ -0,0 +1,20 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+
+/**
+   Visits the objects in a 2D grid's neighborhood.  Pass one to forEachMooreNeighbor(...) and its siblings in
+   ObjectGrid2D, DenseGrid2D, and SparseGrid2D to visit each object in a neighborhood, and its location, without
+   filling a Bag and IntBags.  Locations holding no objects are skipped; locations holding several are visited
+   once per object.
+*/
+
+public interface ObjectNeighborVisitor2D
+    {
+    /** Called once for each object visited, with its location. */
+    public void visit(int x, int y, Object obj);
+    }
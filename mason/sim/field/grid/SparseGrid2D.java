@@ -50,6 +50,15 @@ public class SparseGrid2D extends SparseField implements Grid2D, SparseField2D
     {
     private static final long serialVersionUID = 1;
 
+    /** Returns an OpenHashMap, for locationAndIndexHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new OpenHashMap(other); }
+    /** Returns an OpenHashMap, for locationAndIndexHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new OpenHashMap(size); }
+    /** Returns an Int2DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new Int2DMap(other); }
+    /** Returns an Int2DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new Int2DMap(size); }
+
     protected int width;
     protected int height;
     
@@ -232,6 +241,13 @@ public class SparseGrid2D extends SparseField implements Grid2D, SparseField2D
         return getObjectsAtLocation(new Int2D(x,y));
         }
 
+    // returns the objects at <x, y>, or null, without making an Int2D if objectHash is an Int2DMap
+    final Bag getRawObjectsAtLocation(final int x, final int y)
+        {
+        if (objectHash instanceof Int2DMap) return (Bag)(((Int2DMap)objectHash).get(x, y));
+        return getRawObjectsAtLocation(new Int2D(x,y));
+        }
+
     /** Returns the object location as a Double2D, or as null if there is no such object. */
     public Double2D getObjectLocationAsDouble2D(Object obj)
         {
@@ -323,7 +339,7 @@ public class SparseGrid2D extends SparseField implements Grid2D, SparseField2D
                 
             // next: is ymax - ymin humongous?  If so, no need to continue wrapping around
             if (ymax - ymin >= height)  // too wide, just use whole neighborhood
-                { ymin = 0; ymax = width - 1; }
+                { ymin = 0; ymax = height - 1; }
                 
             for( int x0 = xmin ; x0 <= xmax ; x0++ )
                 {
@@ -1387,6 +1403,76 @@ public class SparseGrid2D extends SparseField implements Grid2D, SparseField2D
         return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
         }
 
+    /** Visits the locations which getMooreLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags, though perhaps in a different order. */
+    public void forEachMooreLocation( final int x, final int y, final int dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, false);
+        }
+
+    /** Visits the locations which getVonNeumannLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachVonNeumannLocation( final int x, final int y, final int dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, false);
+        }
+
+    /** Visits the locations which getHexagonalLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachHexagonalLocation( final int x, final int y, final int dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, false);
+        }
+
+    /** Visits the locations which getRadialLocations(x, y, dist, mode, includeOrigin, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachRadialLocation( final int x, final int y, final double dist, int mode, boolean includeOrigin, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, false);
+        }
+
+    /** Visits the locations which getRadialLocations(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would gather,
+        without gathering them into IntBags. */
+    public void forEachRadialLocation( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, LocationVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, false);
+        }
+
+    /** Visits each location which getMooreNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags.  Don't add, move, or remove objects while visiting. */
+    public void forEachMooreNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.moore(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachVonNeumannNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.vonNeumann(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getHexagonalNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachHexagonalNeighbor( final int x, final int y, final int dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.hexagonal(this, x, y, dist, mode, includeOrigin, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, ...) would consider, and each object there,
+        without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, Grid2D.ANY, true, visitor, true);
+        }
+
+    /** Visits each location which getRadialNeighbors(x, y, dist, mode, includeOrigin, measurementRule, closed, ...) would consider,
+        and each object there, without gathering them into Bags. */
+    public void forEachRadialNeighbor( final int x, final int y, final double dist, int mode, boolean includeOrigin, int measurementRule, boolean closed, ObjectNeighborVisitor2D visitor )
+        {
+        Neighborhood2D.radial(this, x, y, dist, mode, includeOrigin, measurementRule, closed, visitor, true);
+        }
+
 
 
 
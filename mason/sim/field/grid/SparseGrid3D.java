@@ -50,6 +50,15 @@ public class SparseGrid3D extends SparseField implements Grid3D, SparseField3D
     {
     private static final long serialVersionUID = 1;
 
+    /** Returns an OpenHashMap, for locationAndIndexHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new OpenHashMap(other); }
+    /** Returns an OpenHashMap, for locationAndIndexHash, unless buildMap(...) is overridden. */
+    protected Map buildObjectMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new OpenHashMap(size); }
+    /** Returns an Int3DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(Map other) { return isBuildMapOverridden() ? buildMap(other) : new Int3DMap(other); }
+    /** Returns an Int3DMap, for objectHash, unless buildMap(...) is overridden. */
+    protected Map buildLocationMap(int size) { return isBuildMapOverridden() ? buildMap(size) : new Int3DMap(size); }
+
     protected int width;
     protected int height;
     protected int length;
@@ -0,0 +1,286 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.engine.*;
+
+/**
+   Computes each cell of a destination DoubleGrid2D from the neighborhood of the same cell in a source DoubleGrid2D,
+   as diffusion, evaporation, blurring, and cellular-automaton-like rules do.  The new value of a cell is either a weighted
+   sum of the cells around it, given by a square array of <i>weights</i>, or whatever a StencilFunction computes from them.
+   Weights are indexed as weights[dx + r][dy + r], where r is the <i>radius</i> of the stencil: so a 3x3 array of weights
+   has a radius of 1.
+
+   <p>The source and destination are two separate grids of the same size, and as a Steppable the stencil computes the
+   destination from the source, then swaps the two grids' arrays, so that afterwards the source holds the new values and
+   the destination holds the old ones.  This is what HeatBugs' Diffuser does by hand.  In fact
+   <tt>new Stencil2D(valgrid, valgrid2, Stencil2D.diffusion(diffusionRate, evaporationRate), Grid2D.TOROIDAL)</tt>
+   does the same as HeatBugs' Diffuser, though the sums may differ in their last bits.
+
+   <p>Edges are TOROIDAL (neighbors wrap around) or BOUNDED (neighbors outside the grid have the <i>outside value</i>,
+   which is 0 by default).  Grids of MIN_PARALLEL_CELLS cells or more are divided into tiles of whole columns which are
+   computed by the threads of sim.engine.ForkJoinStrategy's shared pool.  Each cell depends only on the source, so the
+   result is the same however many threads there are.
+*/
+
+public class Stencil2D implements Steppable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Grids with fewer cells than this are computed in the calling thread. */
+    public static final int MIN_PARALLEL_CELLS = 1 << 16;
+
+    /** The approximate number of cells in a tile. */
+    static final int CELLS_PER_TILE = 1 << 14;
+
+    DoubleGrid2D source;
+    DoubleGrid2D destination;
+    double[][] weights;
+    StencilFunction function;
+    int radius;
+    int mode;
+    double outsideValue = 0;
+
+    /** Creates a stencil which sets each cell in the destination to the weighted sum of the cells around it in the source.
+        The weights must be a square array with an odd number of rows.  The mode must be Grid2D.TOROIDAL or Grid2D.BOUNDED. */
+    public Stencil2D(DoubleGrid2D source, DoubleGrid2D destination, double[][] weights, int mode)
+        {
+        this(source, destination, weights, null, radius(weights), mode);
+        }
+
+    /** Creates a stencil which sets each cell in the destination to the value the function computes from the cells within
+        the given radius of it in the source.  The mode must be Grid2D.TOROIDAL or Grid2D.BOUNDED. */
+    public Stencil2D(DoubleGrid2D source, DoubleGrid2D destination, StencilFunction function, int radius, int mode)
+        {
+        this(source, destination, null, function, radius, mode);
+        if (function == null)
+            throw new IllegalArgumentException("Stencil2D needs a function.");
+        }
+
+    Stencil2D(DoubleGrid2D source, DoubleGrid2D destination, double[][] weights, StencilFunction function, int radius, int mode)
+        {
+        if (source == destination)
+            throw new IllegalArgumentException("The source and destination of a Stencil2D must be different grids.");
+        if (source.getWidth() != destination.getWidth() || source.getHeight() != destination.getHeight())
+            throw new IllegalArgumentException("Grids must be the same dimensions.");
+        if (radius < 0)
+            throw new IllegalArgumentException("Stencil radius must be >= 0: " + radius);
+        if (mode != Grid2D.TOROIDAL && mode != Grid2D.BOUNDED)
+            throw new IllegalArgumentException("Mode must be either Grid2D.BOUNDED or Grid2D.TOROIDAL");
+        this.source = source;
+        this.destination = destination;
+        this.weights = weights;
+        this.function = function;
+        this.radius = radius;
+        this.mode = mode;
+        }
+
+    static int radius(double[][] weights)
+        {
+        if (weights == null)
+            throw new IllegalArgumentException("Stencil2D needs weights.");
+        int n = weights.length;
+        if (n % 2 == 0)
+            throw new IllegalArgumentException("Stencil weights must have an odd number of rows, not " + n);
+        for(int i = 0; i < n; i++)
+            if (weights[i].length != n)
+                throw new IllegalArgumentException("Stencil weights must be square.");
+        return n / 2;
+        }
+
+    /** Returns 3x3 weights which set each cell to <tt>evaporationRate * (cell + diffusionRate * (average - cell))</tt>,
+        where <i>average</i> is the mean of the cell and its eight neighbors, as HeatBugs' Diffuser does. */
+    public static double[][] diffusion(double diffusionRate, double evaporationRate)
+        {
+        double neighbor = evaporationRate * diffusionRate / 9.0;
+        double[][] weights = new double[3][3];
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 3; j++)
+                weights[i][j] = neighbor;
+        weights[1][1] = evaporationRate * (1.0 - diffusionRate) + neighbor;
+        return weights;
+        }
+
+    public DoubleGrid2D getSource() { return source; }
+    public DoubleGrid2D getDestination() { return destination; }
+    public int getRadius() { return radius; }
+    public int getMode() { return mode; }
+
+    /** Returns the value of locations outside a BOUNDED grid. */
+    public double getOutsideValue() { return outsideValue; }
+
+    /** Sets the value of locations outside a BOUNDED grid. */
+    public void setOutsideValue(double val) { outsideValue = val; }
+
+    /** Computes the destination from the source, then swaps the arrays of the two grids. */
+    public void step(SimState state)
+        {
+        apply();
+        swap();
+        }
+
+    /** Swaps the arrays of the source and destination grids. */
+    public void swap()
+        {
+        double[][] temp = source.field;
+        source.field = destination.field;
+        destination.field = temp;
+        }
+
+    /** Computes every cell of the destination from the source, without swapping them. */
+    public void apply()
+        {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        if (source.field == destination.field)
+            throw new IllegalArgumentException("The source and destination of a Stencil2D must have different arrays.");
+        if (destination.getWidth() != width || destination.getHeight() != height)
+            throw new IllegalArgumentException("Grids must be the same dimensions.");
+
+        if ((long) width * height < MIN_PARALLEL_CELLS)
+            columns(0, width);
+        else
+            {
+            final int columnsPerTile = Math.max(1, CELLS_PER_TILE / Math.max(1, height));
+            new ParallelBlocks(width, columnsPerTile)
+                {
+                protected void items(int from, int to, int blk)
+                    {
+                    columns(from, to);
+                    }
+                }.run();
+            }
+        }
+
+    static int wrap(int x, int width)
+        {
+        if (x >= 0 && x < width) return x;
+        if (x < 0 && x >= -width) return x + width;
+        if (x >= width && x < width * 2) return x - width;
+        x = x % width;  // a radius bigger than the grid
+        return (x < 0 ? x + width : x);
+        }
+
+    /* Returns the weighted sum of col[y] through col[y + w.length - 1], wrapping around or using the outside value
+       beyond the ends of the column, or of the outside value alone if col is null. */
+    static double term(double[] w, double[] col, int y, double outside, boolean toroidal, int height)
+        {
+        double t = 0;
+        for(int j = 0, yy = y; j < w.length; j++, yy++)
+            {
+            double v = (col == null ? outside : toroidal ? col[wrap(yy, height)] : (yy < 0 || yy >= height ? outside : col[yy]));
+            if (j == 0) t = w[j] * v;
+            else t += w[j] * v;
+            }
+        return t;
+        }
+
+    /* Computes the destination columns from through to-1. */
+    void columns(final int from, final int to)
+        {
+        final double[][] src = source.field;
+        final double[][] dst = destination.field;
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int r = radius;
+        final int n = 2 * r + 1;
+        final boolean toroidal = (mode == Grid2D.TOROIDAL);
+        final double outside = outsideValue;
+        final double[][] weights = this.weights;
+        final StencilFunction function = this.function;
+        final double[][] cols = new double[n][];
+        final double[] neighborhood = (function == null ? null : new double[n * n]);
+
+        for(int x = from; x < to; x++)
+            {
+            for(int i = 0; i < n; i++)
+                {
+                int xx = x - r + i;
+                if (toroidal) cols[i] = src[wrap(xx, width)];
+                else cols[i] = (xx < 0 || xx >= width ? null : src[xx]);
+                }
+            final double[] put = dst[x];
+
+            if (function == null)
+                {
+                // The interior of the column is summed one column of weights at a time, so that the loops are simple
+                // and fast, and the edges are summed cell by cell in the same order, so that they give the same answers.
+                final int lo = Math.min(r, height);
+                final int hi = Math.max(lo, height - r);
+                if (n == 3 && cols[0] != null && cols[2] != null)  // the common 3x3 case, in a single pass
+                    {
+                    final double[] c0 = cols[0], c1 = cols[1], c2 = cols[2];
+                    final double w00 = weights[0][0], w01 = weights[0][1], w02 = weights[0][2];
+                    final double w10 = weights[1][0], w11 = weights[1][1], w12 = weights[1][2];
+                    final double w20 = weights[2][0], w21 = weights[2][1], w22 = weights[2][2];
+                    for(int y = lo; y < hi; y++)
+                        put[y] = 0.0 + (w00 * c0[y - 1] + w01 * c0[y] + w02 * c0[y + 1])
+                            + (w10 * c1[y - 1] + w11 * c1[y] + w12 * c1[y + 1])
+                            + (w20 * c2[y - 1] + w21 * c2[y] + w22 * c2[y + 1]);
+                    }
+                else
+                    {
+                    for(int y = lo; y < hi; y++)
+                        put[y] = 0;
+                    for(int i = 0; i < n; i++)
+                        {
+                        final double[] col = cols[i];
+                        final double[] w = weights[i];
+                        if (col == null)
+                            {
+                            final double t = term(w, null, 0, outside, false, height);
+                            for(int y = lo; y < hi; y++)
+                                put[y] += t;
+                            }
+                        else if (n == 3)
+                            {
+                            final double w0 = w[0], w1 = w[1], w2 = w[2];
+                            for(int y = lo; y < hi; y++)
+                                put[y] += w0 * col[y - 1] + w1 * col[y] + w2 * col[y + 1];
+                            }
+                        else
+                            {
+                            for(int y = lo; y < hi; y++)
+                                {
+                                double t = w[0] * col[y - r];
+                                for(int j = 1; j < n; j++)
+                                    t += w[j] * col[y - r + j];
+                                put[y] += t;
+                                }
+                            }
+                        }
+                    }
+                for(int y = 0; y < height; y++)
+                    {
+                    if (y >= lo && y < hi) continue;  // the interior is done
+                    double sum = 0;
+                    for(int i = 0; i < n; i++)
+                        sum += term(weights[i], cols[i], y - r, outside, toroidal, height);
+                    put[y] = sum;
+                    }
+                }
+            else for(int y = 0; y < height; y++)
+                {
+                final boolean inside = (y >= r && y < height - r);
+                int k = 0;
+                for(int i = 0; i < n; i++)
+                    {
+                    final double[] col = cols[i];
+                    if (col == null)
+                        for(int j = 0; j < n; j++)
+                            neighborhood[k++] = outside;
+                    else if (inside)
+                        for(int j = 0, yy = y - r; j < n; j++, yy++)
+                            neighborhood[k++] = col[yy];
+                    else
+                        for(int j = 0, yy = y - r; j < n; j++, yy++)
+                            neighborhood[k++] = (toroidal ? col[wrap(yy, height)] : (yy < 0 || yy >= height ? outside : col[yy]));
+                    }
+                put[y] = function.compute(neighborhood);
+                }
+            }
+        }
+    }
@@ -0,0 +1,251 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.engine.*;
+
+/**
+   The 3D version of Stencil2D: computes each cell of a destination DoubleGrid3D from the neighborhood of the same cell
+   in a source DoubleGrid3D.  Weights are a cubic array indexed as weights[dx + r][dy + r][dz + r].  Grids of
+   MIN_PARALLEL_CELLS cells or more are divided into tiles of whole x slices.  See Stencil2D for details.
+*/
+
+public class Stencil3D implements Steppable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Grids with fewer cells than this are computed in the calling thread. */
+    public static final int MIN_PARALLEL_CELLS = 1 << 16;
+
+    /** The approximate number of cells in a tile. */
+    static final int CELLS_PER_TILE = 1 << 14;
+
+    DoubleGrid3D source;
+    DoubleGrid3D destination;
+    double[][][] weights;
+    StencilFunction function;
+    int radius;
+    int mode;
+    double outsideValue = 0;
+
+    /** Creates a stencil which sets each cell in the destination to the weighted sum of the cells around it in the source.
+        The weights must be a cubic array with an odd number of elements on a side.  The mode must be Grid3D.TOROIDAL or Grid3D.BOUNDED. */
+    public Stencil3D(DoubleGrid3D source, DoubleGrid3D destination, double[][][] weights, int mode)
+        {
+        this(source, destination, weights, null, radius(weights), mode);
+        }
+
+    /** Creates a stencil which sets each cell in the destination to the value the function computes from the cells within
+        the given radius of it in the source.  The mode must be Grid3D.TOROIDAL or Grid3D.BOUNDED. */
+    public Stencil3D(DoubleGrid3D source, DoubleGrid3D destination, StencilFunction function, int radius, int mode)
+        {
+        this(source, destination, null, function, radius, mode);
+        if (function == null)
+            throw new IllegalArgumentException("Stencil3D needs a function.");
+        }
+
+    Stencil3D(DoubleGrid3D source, DoubleGrid3D destination, double[][][] weights, StencilFunction function, int radius, int mode)
+        {
+        if (source == destination)
+            throw new IllegalArgumentException("The source and destination of a Stencil3D must be different grids.");
+        if (source.getWidth() != destination.getWidth() || source.getHeight() != destination.getHeight() ||
+            source.getLength() != destination.getLength())
+            throw new IllegalArgumentException("Grids must be the same dimensions.");
+        if (radius < 0)
+            throw new IllegalArgumentException("Stencil radius must be >= 0: " + radius);
+        if (mode != Grid3D.TOROIDAL && mode != Grid3D.BOUNDED)
+            throw new IllegalArgumentException("Mode must be either Grid3D.BOUNDED or Grid3D.TOROIDAL");
+        this.source = source;
+        this.destination = destination;
+        this.weights = weights;
+        this.function = function;
+        this.radius = radius;
+        this.mode = mode;
+        }
+
+    static int radius(double[][][] weights)
+        {
+        if (weights == null)
+            throw new IllegalArgumentException("Stencil3D needs weights.");
+        int n = weights.length;
+        if (n % 2 == 0)
+            throw new IllegalArgumentException("Stencil weights must have an odd number of elements on a side, not " + n);
+        for(int i = 0; i < n; i++)
+            {
+            if (weights[i].length != n)
+                throw new IllegalArgumentException("Stencil weights must be cubic.");
+            for(int j = 0; j < n; j++)
+                if (weights[i][j].length != n)
+                    throw new IllegalArgumentException("Stencil weights must be cubic.");
+            }
+        return n / 2;
+        }
+
+    /** Returns 3x3x3 weights which set each cell to <tt>evaporationRate * (cell + diffusionRate * (average - cell))</tt>,
+        where <i>average</i> is the mean of the cell and its 26 neighbors. */
+    public static double[][][] diffusion(double diffusionRate, double evaporationRate)
+        {
+        double neighbor = evaporationRate * diffusionRate / 27.0;
+        double[][][] weights = new double[3][3][3];
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 3; j++)
+                for(int k = 0; k < 3; k++)
+                    weights[i][j][k] = neighbor;
+        weights[1][1][1] = evaporationRate * (1.0 - diffusionRate) + neighbor;
+        return weights;
+        }
+
+    public DoubleGrid3D getSource() { return source; }
+    public DoubleGrid3D getDestination() { return destination; }
+    public int getRadius() { return radius; }
+    public int getMode() { return mode; }
+
+    /** Returns the value of locations outside a BOUNDED grid. */
+    public double getOutsideValue() { return outsideValue; }
+
+    /** Sets the value of locations outside a BOUNDED grid. */
+    public void setOutsideValue(double val) { outsideValue = val; }
+
+    /** Computes the destination from the source, then swaps the arrays of the two grids. */
+    public void step(SimState state)
+        {
+        apply();
+        swap();
+        }
+
+    /** Swaps the arrays of the source and destination grids. */
+    public void swap()
+        {
+        double[][][] temp = source.field;
+        source.field = destination.field;
+        destination.field = temp;
+        }
+
+    /** Computes every cell of the destination from the source, without swapping them. */
+    public void apply()
+        {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int length = source.getLength();
+        if (source.field == destination.field)
+            throw new IllegalArgumentException("The source and destination of a Stencil3D must have different arrays.");
+        if (destination.getWidth() != width || destination.getHeight() != height || destination.getLength() != length)
+            throw new IllegalArgumentException("Grids must be the same dimensions.");
+
+        if ((long) width * height * length < MIN_PARALLEL_CELLS)
+            slices(0, width);
+        else
+            {
+            final int slicesPerTile = (int) Math.max(1, CELLS_PER_TILE / Math.max(1, (long) height * length));
+            new ParallelBlocks(width, slicesPerTile)
+                {
+                protected void items(int from, int to, int blk)
+                    {
+                    slices(from, to);
+                    }
+                }.run();
+            }
+        }
+
+    /* Computes the destination x slices from through to-1. */
+    void slices(final int from, final int to)
+        {
+        final double[][][] src = source.field;
+        final double[][][] dst = destination.field;
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int length = source.getLength();
+        final int r = radius;
+        final int n = 2 * r + 1;
+        final boolean toroidal = (mode == Grid3D.TOROIDAL);
+        final double outside = outsideValue;
+        final double[][][] weights = this.weights;
+        final StencilFunction function = this.function;
+        final double[][] cols = new double[n * n][];
+        final double[] neighborhood = (function == null ? null : new double[n * n * n]);
+
+        for(int x = from; x < to; x++)
+            for(int y = 0; y < height; y++)
+                {
+                for(int i = 0; i < n; i++)
+                    {
+                    int xx = x - r + i;
+                    double[][] slice = (toroidal ? src[Stencil2D.wrap(xx, width)] : (xx < 0 || xx >= width ? null : src[xx]));
+                    for(int j = 0; j < n; j++)
+                        {
+                        int yy = y - r + j;
+                        if (slice == null) cols[i * n + j] = null;
+                        else if (toroidal) cols[i * n + j] = slice[Stencil2D.wrap(yy, height)];
+                        else cols[i * n + j] = (yy < 0 || yy >= height ? null : slice[yy]);
+                        }
+                    }
+                final double[] put = dst[x][y];
+
+                if (function == null)
+                    {
+                    // summed as in Stencil2D: the interior one column of weights at a time, and the edges cell by cell
+                    final int lo = Math.min(r, length);
+                    final int hi = Math.max(lo, length - r);
+                    for(int z = lo; z < hi; z++)
+                        put[z] = 0;
+                    for(int c = 0; c < n * n; c++)
+                        {
+                        final double[] col = cols[c];
+                        final double[] w = weights[c / n][c % n];
+                        if (col == null)
+                            {
+                            final double t = Stencil2D.term(w, null, 0, outside, false, length);
+                            for(int z = lo; z < hi; z++)
+                                put[z] += t;
+                            }
+                        else if (n == 3)
+                            {
+                            final double w0 = w[0], w1 = w[1], w2 = w[2];
+                            for(int z = lo; z < hi; z++)
+                                put[z] += w0 * col[z - 1] + w1 * col[z] + w2 * col[z + 1];
+                            }
+                        else
+                            {
+                            for(int z = lo; z < hi; z++)
+                                {
+                                double t = w[0] * col[z - r];
+                                for(int k = 1; k < n; k++)
+                                    t += w[k] * col[z - r + k];
+                                put[z] += t;
+                                }
+                            }
+                        }
+                    for(int z = 0; z < length; z++)
+                        {
+                        if (z >= lo && z < hi) continue;  // the interior is done
+                        double sum = 0;
+                        for(int c = 0; c < n * n; c++)
+                            sum += Stencil2D.term(weights[c / n][c % n], cols[c], z - r, outside, toroidal, length);
+                        put[z] = sum;
+                        }
+                    }
+                else for(int z = 0; z < length; z++)
+                    {
+                    final boolean inside = (z >= r && z < length - r);
+                    int m = 0;
+                    for(int c = 0; c < n * n; c++)
+                        {
+                        final double[] col = cols[c];
+                        if (col == null)
+                            for(int k = 0; k < n; k++)
+                                neighborhood[m++] = outside;
+                        else if (inside)
+                            for(int k = 0, zz = z - r; k < n; k++, zz++)
+                                neighborhood[m++] = col[zz];
+                        else
+                            for(int k = 0, zz = z - r; k < n; k++, zz++)
+                                neighborhood[m++] = (toroidal ? col[Stencil2D.wrap(zz, length)] : (zz < 0 || zz >= length ? outside : col[zz]));
+                        }
+                    put[z] = function.compute(neighborhood);
+                    }
+                }
+        }
+    }
@@ -0,0 +1,25 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+
+/**
+   Computes the new value of a cell from the values in its neighborhood, for Stencil2D and Stencil3D.
+
+   <p>For a Stencil2D of radius <i>r</i>, the neighborhood holds (2r+1)<sup>2</sup> values, and the value
+   at offset &lt;dx, dy&gt; from the cell is <tt>neighborhood[(dx + r) * (2r+1) + (dy + r)]</tt>.  For a Stencil3D
+   the neighborhood holds (2r+1)<sup>3</sup> values, and the value at offset &lt;dx, dy, dz&gt; is
+   <tt>neighborhood[((dx + r) * (2r+1) + (dy + r)) * (2r+1) + (dz + r)]</tt>.  Either way the cell itself is
+   at <tt>neighborhood[neighborhood.length / 2]</tt>.  Locations outside a bounded grid hold the stencil's outside value.
+
+   <p>The stencil may call compute(...) from several threads at once, so it should not modify any state of its own.
+   It must not hold onto the neighborhood array, which is reused.
+*/
+
+public interface StencilFunction extends java.io.Serializable
+    {
+    public double compute(double[] neighborhood);
+    }
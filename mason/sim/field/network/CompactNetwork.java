@@ -0,0 +1,518 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network;
+import sim.util.*;
+import java.util.*;
+
+/**
+   A read-only graph stored in <i>compressed sparse row</i> form: a few int and double arrays rather than a Bag of Edges
+   for each node and a HashMap of nodes.  A Network takes about 90 bytes for each edge (plus its info object) and
+   scatters its edges all over the heap; a directed, weighted CompactNetwork takes 24 bytes for each edge (16 without
+   weights, and 8 more to keep the Edges), and walking a node's neighbors walks straight down an array.  Use one for models which spend their time traversing a graph (contagion, diffusion,
+   shortest paths, centrality) rather than changing it.
+
+   <p>Nodes are numbered 0 through getNumNodes() - 1.  A CompactNetwork made from a Network numbers the nodes in the
+   order of its allNodes bag, and getNode(...) and getNodeIndex(...) convert between numbers and node objects.  A
+   CompactNetwork made from an edge list has only the numbers: its "node objects" are Integers.
+
+   <p>Each edge is stored as an <i>arc</i> from one node to another: one arc for each edge of a directed graph, and
+   two (one in each direction) for each edge of an undirected graph, so that an undirected edge is found from either
+   of its nodes, as in a Network.  The outgoing arcs of node <i>u</i> are numbered outOffsets[u] through
+   outOffsets[u+1] - 1, and arc <i>k</i> goes to node outTargets[k] with weight outWeights[k].  To visit the neighbors
+   of a node:
+
+   <pre><tt>
+   for(int k = net.outOffsets[u]; k &lt; net.outOffsets[u + 1]; k++)
+       {
+       int v = net.outTargets[k];
+       double weight = net.getOutWeight(k);
+       ...
+       }
+   </tt></pre>
+
+   <p>The incoming arcs are stored the same way in inOffsets, inSources, and inWeights.  In an undirected graph these are
+   the very same arrays as the outgoing ones.  If every edge has a weight of 1.0, outWeights and inWeights are null,
+   which getOutWeight(...) and getInWeight(...) take care of.  Do not modify any of these arrays.
+
+   <p>A CompactNetwork made from a Network keeps the Network's Edge objects (unless you ask it not to) in outEdges and
+   inEdges, arc for arc, so that getEdgesOut(...) and getEdgesIn(...) can return Bags of the original Edges, as a
+   Network's methods of the same names do, for code written for Networks.  Otherwise those methods return new,
+   unowned Edges whose info is the edge's weight.  Either way the Bags are new and yours to modify.  The weight of an
+   edge is taken from its Edge's getWeight() when the CompactNetwork is made: later changes to the Edge's info aren't
+   seen.
+
+   <p>A CompactNetwork can't be changed, but you can make a new one with edges added or removed in a batch with
+   addEdges(...) and removeEdges(...), which take O(nodes + edges) time, or make a Network from it with toNetwork().
+*/
+
+public class CompactNetwork implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    boolean directed;
+    int numNodes;
+    int numEdges;
+
+    /** The node objects, indexed by node number, or null if the nodes are just numbers. */
+    Object[] nodes;
+    transient Map nodeIndices;  // built when first needed
+
+    /** The outgoing arcs of node u are outOffsets[u] ... outOffsets[u+1] - 1.  Has getNumNodes() + 1 elements. */
+    public int[] outOffsets;
+    /** The node to which each outgoing arc goes. */
+    public int[] outTargets;
+    /** The weight of each outgoing arc, or null if all the weights are 1.0. */
+    public double[] outWeights;
+    /** The Edge of each outgoing arc, or null if Edges aren't kept. */
+    public Edge[] outEdges;
+
+    /** The incoming arcs of node v are inOffsets[v] ... inOffsets[v+1] - 1.  The same as outOffsets if undirected. */
+    public int[] inOffsets;
+    /** The node from which each incoming arc comes.  The same as outTargets if undirected. */
+    public int[] inSources;
+    /** The weight of each incoming arc, or null if all the weights are 1.0.  The same as outWeights if undirected. */
+    public double[] inWeights;
+    /** The Edge of each incoming arc, or null if Edges aren't kept.  The same as outEdges if undirected. */
+    public Edge[] inEdges;
+
+    /** Makes a CompactNetwork of the same graph as the given Network, keeping its Edges. */
+    public CompactNetwork(Network network)
+        {
+        this(network, true);
+        }
+
+    /** Makes a CompactNetwork of the same graph as the given Network, keeping its Edges if keepEdges is true.  Not keeping
+        them saves memory (and lets them be garbage collected if the Network is thrown away), but getEdgesOut(...) and getEdgesIn(...)
+        must then make new Edges. */
+    public CompactNetwork(Network network, boolean keepEdges)
+        {
+        Bag allNodes = network.allNodes;
+        int n = allNodes.numObjs;
+        boolean directed = network.isDirected();
+
+        // count the edges, each just once
+        int m = 0;
+        for(int u = 0; u < n; u++)
+            {
+            Object node = allNodes.objs[u];
+            Bag out = network.getEdgesOut(node);
+            for(int i = 0; i < out.numObjs; i++)
+                if (directed || isFirst((Edge)(out.objs[i]), node, i))
+                    m++;
+            }
+
+        int[] from = new int[m];
+        int[] to = new int[m];
+        double[] weights = new double[m];
+        Edge[] edges = (keepEdges ? new Edge[m] : null);
+        boolean weighted = false;
+        int e = 0;
+        for(int u = 0; u < n; u++)
+            {
+            Object node = allNodes.objs[u];
+            Bag out = network.getEdgesOut(node);
+            for(int i = 0; i < out.numObjs; i++)
+                {
+                Edge edge = (Edge)(out.objs[i]);
+                if (!directed && !isFirst(edge, node, i)) continue;
+                from[e] = u;
+                to[e] = network.getNodeIndex(edge.getOtherNode(node));
+                weights[e] = edge.getWeight();
+                if (weights[e] != 1.0) weighted = true;
+                if (keepEdges) edges[e] = edge;
+                e++;
+                }
+            }
+
+        nodes = new Object[n];
+        System.arraycopy(allNodes.objs, 0, nodes, 0, n);
+        build(n, from, to, (weighted ? weights : null), edges, m, directed);
+        }
+
+    /* In an undirected Network each edge is in the bags of both of its nodes (twice in the bag of a self-loop): returns true
+       only for the occurrence of the edge at its 'from' node and index, so that it's counted once. */
+    static boolean isFirst(Edge edge, Object node, int index)
+        {
+        return edge.from.equals(node) && edge.indexFrom == index;
+        }
+
+    /** Makes a CompactNetwork with the given number of nodes from a list of edges: the first numEdges elements of from
+        and to are the nodes of each edge, and of weights (which may be null, meaning all 1.0) their weights.  The arcs
+        of each node are in the order of the edges in the list.  Throws an IllegalArgumentException if a node is out of range. */
+    public CompactNetwork(int numNodes, int[] from, int[] to, double[] weights, int numEdges, boolean directed)
+        {
+        if (numNodes < 0 || numEdges < 0 || numEdges > from.length || numEdges > to.length ||
+            (weights != null && numEdges > weights.length))
+            throw new IllegalArgumentException("Invalid number of nodes (" + numNodes + ") or edges (" + numEdges + ")");
+        for(int e = 0; e < numEdges; e++)
+            if (from[e] < 0 || from[e] >= numNodes || to[e] < 0 || to[e] >= numNodes)
+                throw new IllegalArgumentException("Edge " + e + " (" + from[e] + " -> " + to[e] + ") has a node out of range 0 ... " + (numNodes - 1));
+        build(numNodes, from, to, weights, null, numEdges, directed);
+        }
+
+    CompactNetwork() { }
+
+    /* Lays out the arcs by counting sort. */
+    void build(int n, int[] from, int[] to, double[] weights, Edge[] edges, int m, boolean directed)
+        {
+        this.numNodes = n;
+        this.numEdges = m;
+        this.directed = directed;
+        long arcs = (directed ? (long) m : 2L * m);
+        if (arcs > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("A CompactNetwork may hold no more than " + (Integer.MAX_VALUE - 8) + " arcs, not " + arcs);
+
+        outOffsets = new int[n + 1];
+        for(int e = 0; e < m; e++)
+            {
+            outOffsets[from[e] + 1]++;
+            if (!directed) outOffsets[to[e] + 1]++;
+            }
+        for(int u = 0; u < n; u++)
+            outOffsets[u + 1] += outOffsets[u];
+
+        outTargets = new int[(int) arcs];
+        outWeights = (weights == null ? null : new double[(int) arcs]);
+        outEdges = (edges == null ? null : new Edge[(int) arcs]);
+        int[] pos = new int[n];
+        System.arraycopy(outOffsets, 0, pos, 0, n);
+        for(int e = 0; e < m; e++)
+            {
+            int k = pos[from[e]]++;
+            outTargets[k] = to[e];
+            if (weights != null) outWeights[k] = weights[e];
+            if (edges != null) outEdges[k] = edges[e];
+            if (!directed)
+                {
+                k = pos[to[e]]++;
+                outTargets[k] = from[e];
+                if (weights != null) outWeights[k] = weights[e];
+                if (edges != null) outEdges[k] = edges[e];
+                }
+            }
+
+        if (!directed)
+            {
+            inOffsets = outOffsets;
+            inSources = outTargets;
+            inWeights = outWeights;
+            inEdges = outEdges;
+            return;
+            }
+
+        inOffsets = new int[n + 1];
+        for(int e = 0; e < m; e++)
+            inOffsets[to[e] + 1]++;
+        for(int v = 0; v < n; v++)
+            inOffsets[v + 1] += inOffsets[v];
+        inSources = new int[m];
+        inWeights = (weights == null ? null : new double[m]);
+        inEdges = (edges == null ? null : new Edge[m]);
+        System.arraycopy(inOffsets, 0, pos, 0, n);
+        for(int e = 0; e < m; e++)
+            {
+            int k = pos[to[e]]++;
+            inSources[k] = from[e];
+            if (weights != null) inWeights[k] = weights[e];
+            if (edges != null) inEdges[k] = edges[e];
+            }
+        }
+
+    /* Lays out the arcs of edges already grouped by their from nodes, as read from a file: the edges of node u go to
+       targets[offsets[u]] ... targets[offsets[u+1] - 1].  The arcs are as build(...) would lay out the same edges in
+       that order, but no from array is needed, and a directed graph uses the given arrays as its outgoing arcs. */
+    void buildGrouped(int n, int[] offsets, int[] targets, double[] weights, boolean directed)
+        {
+        int m = offsets[n];
+        this.numNodes = n;
+        this.numEdges = m;
+        this.directed = directed;
+        int[] pos = new int[n];
+
+        if (directed)
+            {
+            outOffsets = offsets;
+            outTargets = targets;
+            outWeights = weights;
+            inOffsets = new int[n + 1];
+            for(int e = 0; e < m; e++)
+                inOffsets[targets[e] + 1]++;
+            for(int v = 0; v < n; v++)
+                inOffsets[v + 1] += inOffsets[v];
+            inSources = new int[m];
+            inWeights = (weights == null ? null : new double[m]);
+            System.arraycopy(inOffsets, 0, pos, 0, n);
+            for(int u = 0; u < n; u++)
+                for(int e = offsets[u]; e < offsets[u + 1]; e++)
+                    {
+                    int k = pos[targets[e]]++;
+                    inSources[k] = u;
+                    if (weights != null) inWeights[k] = weights[e];
+                    }
+            return;
+            }
+
+        if (2L * m > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("A CompactNetwork may hold no more than " + (Integer.MAX_VALUE - 8) + " arcs, not " + (2L * m));
+        outOffsets = new int[n + 1];
+        for(int u = 0; u < n; u++)
+            for(int e = offsets[u]; e < offsets[u + 1]; e++)
+                {
+                outOffsets[u + 1]++;
+                outOffsets[targets[e] + 1]++;
+                }
+        for(int u = 0; u < n; u++)
+            outOffsets[u + 1] += outOffsets[u];
+        outTargets = new int[2 * m];
+        outWeights = (weights == null ? null : new double[2 * m]);
+        System.arraycopy(outOffsets, 0, pos, 0, n);
+        for(int u = 0; u < n; u++)
+            for(int e = offsets[u]; e < offsets[u + 1]; e++)
+                {
+                int v = targets[e];
+                int k = pos[u]++;
+                outTargets[k] = v;
+                if (weights != null) outWeights[k] = weights[e];
+                k = pos[v]++;
+                outTargets[k] = u;
+                if (weights != null) outWeights[k] = weights[e];
+                }
+        inOffsets = outOffsets;
+        inSources = outTargets;
+        inWeights = outWeights;
+        }
+
+    public boolean isDirected() { return directed; }
+
+    /** Returns the number of nodes. */
+    public int getNumNodes() { return numNodes; }
+
+    /** Returns the number of edges.  In an undirected graph this is half the number of arcs. */
+    public int getNumEdges() { return numEdges; }
+
+    public int getOutDegree(int node) { return outOffsets[node + 1] - outOffsets[node]; }
+
+    public int getInDegree(int node) { return inOffsets[node + 1] - inOffsets[node]; }
+
+    /** Returns the weight of outgoing arc k. */
+    public double getOutWeight(int k) { return (outWeights == null ? 1.0 : outWeights[k]); }
+
+    /** Returns the weight of incoming arc k. */
+    public double getInWeight(int k) { return (inWeights == null ? 1.0 : inWeights[k]); }
+
+    /** Returns the node object with the given number: an Integer if the CompactNetwork was made from an edge list. */
+    public Object getNode(int index)
+        {
+        if (index < 0 || index >= numNodes)
+            throw new IndexOutOfBoundsException("No node " + index);
+        return (nodes == null ? Integer.valueOf(index) : nodes[index]);
+        }
+
+    /** Returns the number of the given node object, or -1 if it's not in the graph.  Nodes added by addEdges(...) to a
+        CompactNetwork with node objects have null objects, and can't be found this way. */
+    public int getNodeIndex(Object node)
+        {
+        if (nodes == null)
+            {
+            if (!(node instanceof Integer)) return -1;
+            int index = ((Integer) node).intValue();
+            return (index >= 0 && index < numNodes ? index : -1);
+            }
+        if (nodeIndices == null)
+            {
+            Map map = new OpenHashMap(numNodes);
+            for(int u = 0; u < numNodes; u++)
+                if (nodes[u] != null)  // nodes added by addEdges(...) have no objects
+                    map.put(nodes[u], Integer.valueOf(u));
+            nodeIndices = map;
+            }
+        Integer index = (Integer)(nodeIndices.get(node));
+        return (index == null ? -1 : index.intValue());
+        }
+
+    /** Returns a new Bag of the Edges leaving a node, as Network.getEdgesOut(...) does (see the class notes). */
+    public Bag getEdgesOut(Object node)
+        {
+        int u = getNodeIndex(node);
+        if (u < 0) return new Bag();
+        return edges(u, outOffsets, outTargets, outWeights, outEdges, true);
+        }
+
+    /** Returns a new Bag of the Edges entering a node, as Network.getEdgesIn(...) does (see the class notes). */
+    public Bag getEdgesIn(Object node)
+        {
+        int v = getNodeIndex(node);
+        if (v < 0) return new Bag();
+        return edges(v, inOffsets, inSources, inWeights, inEdges, false);
+        }
+
+    Bag edges(int node, int[] offsets, int[] others, double[] weights, Edge[] edges, boolean out)
+        {
+        int start = offsets[node];
+        int end = offsets[node + 1];
+        Bag bag = new Bag(end - start);
+        Object me = getNode(node);
+        for(int k = start; k < end; k++)
+            {
+            if (edges != null && edges[k] != null)  // edges added with addEdges(...) have no Edge
+                bag.add(edges[k]);
+            else
+                {
+                Object other = getNode(others[k]);
+                Object info = (weights == null ? null : new Double(weights[k]));
+                bag.add(out ? new Edge(me, other, info) : new Edge(other, me, info));
+                }
+            }
+        return bag;
+        }
+
+    /* The edges as a list, each once: the edges of a directed graph in the order of their outgoing arcs, and those of
+       an undirected graph at the smaller-numbered node (or at every other arc of a self-loop). */
+    static class EdgeList
+        {
+        int[] from;
+        int[] to;
+        double[] weights;
+        Edge[] edges;
+        int size;
+        }
+
+    EdgeList getEdgeList(int extra)
+        {
+        EdgeList list = new EdgeList();
+        int capacity = numEdges + extra;
+        list.from = new int[capacity];
+        list.to = new int[capacity];
+        list.weights = (outWeights == null ? null : new double[capacity]);
+        list.edges = (outEdges == null ? null : new Edge[capacity]);
+        int e = 0;
+        for(int u = 0; u < numNodes; u++)
+            {
+            boolean skipLoop = false;
+            for(int k = outOffsets[u]; k < outOffsets[u + 1]; k++)
+                {
+                int v = outTargets[k];
+                if (!directed)
+                    {
+                    if (v < u) continue;
+                    if (v == u) { skipLoop = !skipLoop; if (!skipLoop) continue; }  // the two arcs of a self-loop
+                    }
+                list.from[e] = u;
+                list.to[e] = v;
+                if (list.weights != null) list.weights[e] = outWeights[k];
+                if (list.edges != null) list.edges[e] = outEdges[k];
+                e++;
+                }
+            }
+        list.size = e;
+        return list;
+        }
+
+    CompactNetwork rebuild(EdgeList list, int numNodes)
+        {
+        CompactNetwork net = new CompactNetwork();
+        if (nodes != null)
+            {
+            net.nodes = new Object[numNodes];
+            System.arraycopy(nodes, 0, net.nodes, 0, Math.min(numNodes, this.numNodes));
+            }
+        net.build(numNodes, list.from, list.to, list.weights, list.edges, list.size, directed);
+        return net;
+        }
+
+    /** Returns a new CompactNetwork with the given edges added: the first count elements of from and to are the nodes
+        of each new edge, and of weights (which may be null, meaning all 1.0) their weights.  Node numbers of
+        getNumNodes() or more add new nodes, whose node objects, if this CompactNetwork has node objects, are null.
+        The new edges have no Edge objects. */
+    public CompactNetwork addEdges(int[] from, int[] to, double[] weights, int count)
+        {
+        int n = numNodes;
+        for(int i = 0; i < count; i++)
+            {
+            if (from[i] < 0 || to[i] < 0)
+                throw new IllegalArgumentException("Edge " + i + " (" + from[i] + " -> " + to[i] + ") has a negative node");
+            n = Math.max(n, Math.max(from[i], to[i]) + 1);
+            }
+        EdgeList list = getEdgeList(count);
+        if (list.weights == null && weights != null)
+            for(int i = 0; i < count; i++)
+                if (weights[i] != 1.0)
+                    {
+                    list.weights = new double[list.from.length];
+                    Arrays.fill(list.weights, 0, list.size, 1.0);
+                    break;
+                    }
+        for(int i = 0; i < count; i++)
+            {
+            int e = list.size++;
+            list.from[e] = from[i];
+            list.to[e] = to[i];
+            if (list.weights != null) list.weights[e] = (weights == null ? 1.0 : weights[i]);
+            }
+        return rebuild(list, n);
+        }
+
+    /** Returns a new CompactNetwork with the given edges removed: for each of the first count elements of from and to,
+        one edge from from[i] to to[i] (or in an undirected graph, between them) is removed, if there is one. */
+    public CompactNetwork removeEdges(int[] from, int[] to, int count)
+        {
+        // sort the edges to remove by key, and remove each edge whose key is found and not used up
+        long[] keys = new long[count];
+        for(int i = 0; i < count; i++)
+            keys[i] = key(from[i], to[i]);
+        Arrays.sort(keys);
+        boolean[] used = new boolean[count];
+
+        EdgeList list = getEdgeList(0);
+        int e = 0;
+        for(int i = 0; i < list.size; i++)
+            {
+            long key = key(list.from[i], list.to[i]);
+            int j = Arrays.binarySearch(keys, key);
+            if (j >= 0)
+                {
+                while(j > 0 && keys[j - 1] == key) j--;
+                while(j < count && keys[j] == key && used[j]) j++;
+                if (j < count && keys[j] == key) { used[j] = true; continue; }
+                }
+            list.from[e] = list.from[i];
+            list.to[e] = list.to[i];
+            if (list.weights != null) list.weights[e] = list.weights[i];
+            if (list.edges != null) list.edges[e] = list.edges[i];
+            e++;
+            }
+        list.size = e;
+        return rebuild(list, numNodes);
+        }
+
+    long key(int from, int to)
+        {
+        if (!directed && from > to) { int temp = from; from = to; to = temp; }
+        return ((long) from << 32) | (to & 0xFFFFFFFFL);
+        }
+
+    /** Makes a Network of the graph.  Nodes are the node objects (Integers if there are none, or if they're null); edges
+        are the kept Edges' info objects, or else the weights as Doubles (or null if all weights are 1.0). */
+    public Network toNetwork()
+        {
+        Network network = new Network(directed);
+        Object[] objs = new Object[numNodes];
+        for(int u = 0; u < numNodes; u++)
+            {
+            objs[u] = (nodes == null || nodes[u] == null ? Integer.valueOf(u) : nodes[u]);
+            network.addNode(objs[u]);
+            }
+        EdgeList list = getEdgeList(0);
+        for(int e = 0; e < list.size; e++)
+            {
+            Object info = (list.edges != null && list.edges[e] != null ? list.edges[e].info :
+                list.weights == null ? null : new Double(list.weights[e]));
+            network.addEdge(objs[list.from[e]], objs[list.to[e]], info);
+            }
+        return network;
+        }
+    }
@@ -0,0 +1,667 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network;
+import sim.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+   Utility methods for saving graphs to, and loading them from, edge list files: a compact binary format of MASON's
+   own, and the plain text edge lists in which most published network datasets come.  Serializing a Network writes
+   every Bag, Edge, and hash table entry; a binary edge list writes one to three bytes for each edge of a sparse graph
+   (plus eight for its weight, if it has one), and loads straight into a CompactNetwork's arrays.
+
+   <p>An edge list holds only the graph's structure: its nodes are numbered, and its edges have at most a weight.
+   Writing a Network numbers its nodes by their order in the allNodes bag and stores each Edge's getWeight().  The node
+   objects and the edges' info objects aren't written: save them some other way if you need them, and pass the nodes
+   to readNetwork(file, nodes).  Otherwise the nodes of a Network read from an edge list are Integers, and its edges'
+   info objects are the weights as Doubles, or null if the graph is unweighted.
+
+   <p><b>The binary format.</b>  Files are read through memory-mapped I/O, a large window of the file at a time.
+   Numbers are written as <i>varints</i>: seven bits to a byte, least significant first, with the high bit set on
+   every byte but the last.  Each node's edges are written together, and the node at the other end of each edge is
+   written as its difference from the one before (or, for the first, from the node itself), so that nearby
+   neighbors take a byte.  Differences are <i>zigzag</i> encoded (0, -1, 1, -2, ... as 0, 1, 2, 3, ...) so that they
+   may be negative, which keeps the edges in the order in which they were written.
+
+   <pre>
+   magic      4 bytes: 'M' 'N' 'E' 'L'
+   version    1 byte: 1
+   flags      1 byte: 1 if directed, plus 2 if weighted
+   nodes      varint
+   edges      varint
+   for each node u from 0 to nodes - 1:
+       count      varint: the number of edges written at u
+       for each of them:
+           node       zigzag varint: the node at the other end, minus the previous one (or minus u)
+           weight     8 bytes, a big-endian IEEE 754 double, if weighted
+   </pre>
+
+   <p>The edges of a directed graph are written at the nodes they leave.  The edges of an undirected graph are each
+   written once: a Network's at its from() node, and a CompactNetwork's at the lower-numbered of its nodes.  Reading
+   the file back gives the same nodes, in the same order, with the edges leaving each node (or for an undirected
+   Network, written at each node) in the same order.
+
+   <p><b>The text format.</b>  Each line holds an edge: the numbers of its two nodes, then optionally its weight,
+   separated by spaces, tabs, or commas.  Anything after the weight is ignored, as is anything after the nodes which
+   isn't a number.  Blank lines, and lines beginning with # or %, are skipped.  Node numbers may be any non-negative
+   ints, and needn't start at 0 or be contiguous: a CompactNetwork read from text has as many nodes as the largest
+   number plus one, numbered as in the file, some of which may have no edges, and a Network read from text has an
+   Integer node for each number which appears in the file.  This accepts, among others, the edge lists of SNAP and
+   KONECT, and those written by NetworkX's write_edgelist(..., data=False) or data=['weight'].
+*/
+
+public class EdgeListFile
+    {
+    static final int MAGIC = 0x4D4E454C;  // "MNEL"
+    static final int VERSION = 1;
+    static final int DIRECTED = 1;
+    static final int WEIGHTED = 2;
+
+    /** The size of the window of a file which is mapped into memory at a time. */
+    static final int WINDOW = 1 << 26;
+
+
+    //// Writing
+
+    /** Writes the Network to the stream in binary, without closing the stream. */
+    public static void write(Network network, OutputStream stream) throws IOException
+        {
+        Bag allNodes = network.allNodes;
+        int n = allNodes.numObjs;
+        int m = 0;
+        boolean weighted = false;
+        for(int u = 0; u < n; u++)
+            {
+            Object node = allNodes.objs[u];
+            Bag out = network.getEdgesOut(node);
+            for(int i = 0; i < out.numObjs; i++)
+                {
+                Edge edge = (Edge)(out.objs[i]);
+                if (network.isDirected() || CompactNetwork.isFirst(edge, node, i))
+                    {
+                    m++;
+                    if (edge.getWeight() != 1.0) weighted = true;
+                    }
+                }
+            }
+
+        Output output = new Output(stream);
+        writeHeader(output, network.isDirected(), weighted, n, m);
+        for(int u = 0; u < n; u++)
+            {
+            output.writeVarint(writeEdges(network, u, null, false));
+            writeEdges(network, u, output, weighted);
+            }
+        output.flush();
+        stream.flush();
+        }
+
+    /** Writes the Network to the file in binary. */
+    public static void write(Network network, File file) throws IOException
+        {
+        OutputStream stream = new FileOutputStream(file);
+        try { write(network, stream); }
+        finally { stream.close(); }
+        }
+
+    /** Writes the CompactNetwork to the stream in binary, without closing the stream. */
+    public static void write(CompactNetwork network, OutputStream stream) throws IOException
+        {
+        Output output = new Output(stream);
+        writeHeader(output, network.directed, network.outWeights != null, network.numNodes, network.numEdges);
+        for(int u = 0; u < network.numNodes; u++)
+            {
+            output.writeVarint(writeArcs(network, u, null));
+            writeArcs(network, u, output);
+            }
+        output.flush();
+        stream.flush();
+        }
+
+    /** Writes the CompactNetwork to the file in binary. */
+    public static void write(CompactNetwork network, File file) throws IOException
+        {
+        OutputStream stream = new FileOutputStream(file);
+        try { write(network, stream); }
+        finally { stream.close(); }
+        }
+
+    static void writeHeader(Output output, boolean directed, boolean weighted, int numNodes, int numEdges) throws IOException
+        {
+        output.writeByte(MAGIC >>> 24);
+        output.writeByte(MAGIC >>> 16);
+        output.writeByte(MAGIC >>> 8);
+        output.writeByte(MAGIC);
+        output.writeByte(VERSION);
+        output.writeByte((directed ? DIRECTED : 0) | (weighted ? WEIGHTED : 0));
+        output.writeVarint(numNodes);
+        output.writeVarint(numEdges);
+        }
+
+    /* Writes, or if output is null just counts, the edges written at the u'th node of a Network. */
+    static int writeEdges(Network network, int u, Output output, boolean weighted) throws IOException
+        {
+        Object node = network.allNodes.objs[u];
+        Bag out = network.getEdgesOut(node);
+        int count = 0;
+        int previous = u;
+        for(int i = 0; i < out.numObjs; i++)
+            {
+            Edge edge = (Edge)(out.objs[i]);
+            if (!network.isDirected() && !CompactNetwork.isFirst(edge, node, i)) continue;
+            count++;
+            if (output != null)
+                {
+                int v = network.getNodeIndex(edge.getOtherNode(node));
+                output.writeVarint(zigzag(v - previous));
+                previous = v;
+                if (weighted) output.writeDouble(edge.getWeight());
+                }
+            }
+        return count;
+        }
+
+    /* Writes, or if output is null just counts, the edges written at node u of a CompactNetwork: all its outgoing arcs
+       if it's directed, and otherwise its arcs to higher-numbered nodes and one of each pair of arcs of a self-loop. */
+    static int writeArcs(CompactNetwork network, int u, Output output) throws IOException
+        {
+        int count = 0;
+        int previous = u;
+        boolean skipLoop = false;
+        for(int k = network.outOffsets[u]; k < network.outOffsets[u + 1]; k++)
+            {
+            int v = network.outTargets[k];
+            if (!network.directed)
+                {
+                if (v < u) continue;
+                if (v == u) { skipLoop = !skipLoop; if (!skipLoop) continue; }
+                }
+            count++;
+            if (output != null)
+                {
+                output.writeVarint(zigzag(v - previous));
+                previous = v;
+                if (network.outWeights != null) output.writeDouble(network.outWeights[k]);
+                }
+            }
+        return count;
+        }
+
+    static int zigzag(int value) { return (value << 1) ^ (value >> 31); }
+
+    static int unzigzag(int value) { return (value >>> 1) ^ -(value & 1); }
+
+
+    //// Reading the binary format
+
+    /** Reads a CompactNetwork from a binary edge list file, mapping the file into memory.  Its nodes are numbered as in
+        the file, and are Integers.  */
+    public static CompactNetwork readCompactNetwork(File file) throws IOException
+        {
+        Input input = new Input(file);
+        try { return readCompactNetwork(input); }
+        finally { input.close(); }
+        }
+
+    /** Reads a CompactNetwork from a binary edge list in the stream, leaving the stream open. */
+    public static CompactNetwork readCompactNetwork(InputStream stream) throws IOException
+        {
+        return readCompactNetwork(new Input(stream));
+        }
+
+    static CompactNetwork readCompactNetwork(Input input) throws IOException
+        {
+        input.readHeader();
+        int n = input.numNodes;
+        int m = input.numEdges;
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        double[] weights = (input.weighted ? new double[m] : null);
+        int e = 0;
+        for(int u = 0; u < n; u++)
+            {
+            int count = input.readCount(u, m - e);
+            int previous = u;
+            for(int i = 0; i < count; i++)
+                {
+                int v = input.readNode(previous);
+                targets[e] = v;
+                if (weights != null) weights[e] = input.readDouble();
+                previous = v;
+                e++;
+                }
+            offsets[u + 1] = e;
+            }
+        input.checkEdges(e);
+
+        CompactNetwork network = new CompactNetwork();
+        network.buildGrouped(n, offsets, targets, weights, input.directed);
+        return network;
+        }
+
+    /** Reads a Network from a binary edge list file, mapping the file into memory.  Its nodes are Integers. */
+    public static Network readNetwork(File file) throws IOException
+        {
+        return readNetwork(file, null);
+        }
+
+    /** Reads a Network from a binary edge list file, mapping the file into memory.  Its nodes are taken from the
+        given array, in order, which must have at least as many elements as there are nodes in the file.  If the array
+        is null, or any of its elements is, Integers are used instead. */
+    public static Network readNetwork(File file, Object[] nodes) throws IOException
+        {
+        Input input = new Input(file);
+        try { return readNetwork(input, nodes); }
+        finally { input.close(); }
+        }
+
+    /** Reads a Network from a binary edge list in the stream, leaving the stream open.  Its nodes are taken from the
+        given array as in readNetwork(file, nodes). */
+    public static Network readNetwork(InputStream stream, Object[] nodes) throws IOException
+        {
+        return readNetwork(new Input(stream), nodes);
+        }
+
+    static Network readNetwork(Input input, Object[] nodes) throws IOException
+        {
+        input.readHeader();
+        int n = input.numNodes;
+        int m = input.numEdges;
+        if (nodes != null && nodes.length < n)
+            throw new IllegalArgumentException("The edge list has " + n + " nodes, but only " + nodes.length + " were given");
+
+        Network network = new Network(input.directed);
+        Object[] objs = new Object[n];
+        for(int u = 0; u < n; u++)
+            {
+            objs[u] = (nodes == null || nodes[u] == null ? Integer.valueOf(u) : nodes[u]);
+            network.addNode(objs[u]);
+            }
+        int e = 0;
+        for(int u = 0; u < n; u++)
+            {
+            int count = input.readCount(u, m - e);
+            int previous = u;
+            for(int i = 0; i < count; i++)
+                {
+                int v = input.readNode(previous);
+                Object info = (input.weighted ? new Double(input.readDouble()) : null);
+                network.addEdge(objs[u], objs[v], info);
+                previous = v;
+                e++;
+                }
+            }
+        input.checkEdges(e);
+        return network;
+        }
+
+
+    //// Reading the text format
+
+    /** Reads a CompactNetwork from a text edge list file, mapping the file into memory.  Its nodes are numbered as in
+        the file, and are Integers. */
+    public static CompactNetwork readTextCompactNetwork(File file, boolean directed) throws IOException
+        {
+        Input input = new Input(file);
+        try { return readTextCompactNetwork(input, directed); }
+        finally { input.close(); }
+        }
+
+    /** Reads a CompactNetwork from a text edge list in the stream, leaving the stream open. */
+    public static CompactNetwork readTextCompactNetwork(InputStream stream, boolean directed) throws IOException
+        {
+        return readTextCompactNetwork(new Input(stream), directed);
+        }
+
+    static CompactNetwork readTextCompactNetwork(Input input, boolean directed) throws IOException
+        {
+        EdgeArrays edges = readText(input);
+        CompactNetwork network = new CompactNetwork();
+        network.build(edges.numNodes, edges.from, edges.to, edges.weights, null, edges.size, directed);
+        return network;
+        }
+
+    /** Reads a Network from a text edge list file, mapping the file into memory.  Its nodes are Integers, added in the
+        order in which they first appear. */
+    public static Network readTextNetwork(File file, boolean directed) throws IOException
+        {
+        Input input = new Input(file);
+        try { return readTextNetwork(input, directed); }
+        finally { input.close(); }
+        }
+
+    /** Reads a Network from a text edge list in the stream, leaving the stream open. */
+    public static Network readTextNetwork(InputStream stream, boolean directed) throws IOException
+        {
+        return readTextNetwork(new Input(stream), directed);
+        }
+
+    static Network readTextNetwork(Input input, boolean directed) throws IOException
+        {
+        EdgeArrays edges = readText(input);
+        Network network = new Network(directed);
+        for(int e = 0; e < edges.size; e++)
+            network.addEdge(Integer.valueOf(edges.from[e]), Integer.valueOf(edges.to[e]),
+                (edges.weights == null ? null : new Double(edges.weights[e])));
+        return network;
+        }
+
+    static EdgeArrays readText(Input input) throws IOException
+        {
+        EdgeArrays edges = new EdgeArrays();
+        TextReader reader = new TextReader(input);
+        while(reader.c != -1)
+            {
+            reader.skipBlanks();
+            if (!reader.atEndOfLine() && reader.c != '#' && reader.c != '%')
+                {
+                int from = reader.readNode();
+                reader.skipBlanks();
+                int to = reader.readNode();
+                reader.skipBlanks();
+                double weight = 1.0;
+                if (reader.atNumber())
+                    {
+                    String token = reader.readToken();
+                    try { weight = Double.parseDouble(token); }
+                    catch (NumberFormatException e) { throw reader.error("a weight", token); }
+                    }
+                edges.add(from, to, weight);
+                }
+            reader.skipLine();
+            }
+        return edges;
+        }
+
+    /* A growing list of edges read from text. */
+    static class EdgeArrays
+        {
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        double[] weights = null;  // until an edge has a weight other than 1.0
+        int size;
+        int numNodes;
+
+        void add(int f, int t, double weight)
+            {
+            if (size == from.length)
+                {
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * size);
+                if (capacity == size)
+                    throw new IllegalArgumentException("Too many edges");
+                from = grow(from, capacity);
+                to = grow(to, capacity);
+                if (weights != null)
+                    {
+                    double[] newWeights = new double[capacity];
+                    System.arraycopy(weights, 0, newWeights, 0, size);
+                    weights = newWeights;
+                    }
+                }
+            if (weight != 1.0 && weights == null)
+                {
+                weights = new double[from.length];
+                java.util.Arrays.fill(weights, 0, size, 1.0);
+                }
+            from[size] = f;
+            to[size] = t;
+            if (weights != null) weights[size] = weight;
+            size++;
+            numNodes = Math.max(numNodes, Math.max(f, t) + 1);
+            }
+
+        static int[] grow(int[] array, int capacity)
+            {
+            int[] newArray = new int[capacity];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
+            }
+        }
+
+    /* Reads a text edge list a character at a time. */
+    static class TextReader
+        {
+        Input input;
+        int c;  // the current character, or -1 at the end
+        int line = 1;
+
+        TextReader(Input input) throws IOException
+            {
+            this.input = input;
+            c = input.read();
+            }
+
+        void next() throws IOException { c = input.read(); }
+
+        boolean atBlank() { return c == ' ' || c == '\t' || c == ','; }
+
+        boolean atEndOfLine() { return c == '\n' || c == '\r' || c == -1; }
+
+        boolean atNumber() { return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.'; }
+
+        void skipBlanks() throws IOException
+            {
+            while(atBlank()) next();
+            }
+
+        void skipLine() throws IOException
+            {
+            while(!atEndOfLine()) next();
+            if (c == '\r') next();
+            if (c == '\n') next();
+            line++;
+            }
+
+        int readNode() throws IOException
+            {
+            if (c < '0' || c > '9')
+                throw error("a node number", (atEndOfLine() ? "the end of the line" : "'" + (char) c + "'"));
+            long value = 0;
+            while(c >= '0' && c <= '9')
+                {
+                value = value * 10 + (c - '0');
+                if (value >= Integer.MAX_VALUE)
+                    throw error("a node number", "one larger than " + (Integer.MAX_VALUE - 1));
+                next();
+                }
+            if (!atBlank() && !atEndOfLine())
+                throw error("a node number", "'" + (char) c + "' in it");
+            return (int) value;
+            }
+
+        String readToken() throws IOException
+            {
+            StringBuilder token = new StringBuilder();
+            while(!atBlank() && !atEndOfLine())
+                {
+                token.append((char) c);
+                next();
+                }
+            return token.toString();
+            }
+
+        IOException error(String expected, String found)
+            {
+            return new IOException("Line " + line + " of the edge list: expected " + expected + " but found " + found);
+            }
+        }
+
+
+    //// Buffers
+
+    /* Writes bytes and varints to a stream through a buffer. */
+    static class Output
+        {
+        OutputStream stream;
+        byte[] buffer = new byte[1 << 16];
+        int pos;
+
+        Output(OutputStream stream) { this.stream = stream; }
+
+        void flush() throws IOException
+            {
+            stream.write(buffer, 0, pos);
+            pos = 0;
+            }
+
+        void writeByte(int b) throws IOException
+            {
+            if (pos == buffer.length) flush();
+            buffer[pos++] = (byte) b;
+            }
+
+        void writeVarint(int value) throws IOException
+            {
+            if (pos + 5 > buffer.length) flush();
+            while((value & ~0x7F) != 0)
+                {
+                buffer[pos++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+                }
+            buffer[pos++] = (byte) value;
+            }
+
+        void writeDouble(double value) throws IOException
+            {
+            if (pos + 8 > buffer.length) flush();
+            long bits = Double.doubleToRawLongBits(value);
+            for(int shift = 56; shift >= 0; shift -= 8)
+                buffer[pos++] = (byte)(bits >>> shift);
+            }
+        }
+
+    /* Reads bytes from a file, mapping a window of it into memory at a time, or from a stream through a buffer. */
+    static class Input
+        {
+        FileChannel channel;            // if reading a file
+        long size;                      // of the file
+        long position;                  // in the file of the end of the window
+        ReadableByteChannel stream;     // if reading a stream
+        ByteBuffer buffer;
+
+        // from the header
+        boolean directed;
+        boolean weighted;
+        int numNodes;
+        int numEdges;
+
+        Input(File file) throws IOException
+            {
+            channel = new RandomAccessFile(file, "r").getChannel();  // closing the channel closes the file
+            size = channel.size();
+            buffer = ByteBuffer.allocate(0);
+            }
+
+        Input(InputStream stream)
+            {
+            this.stream = Channels.newChannel(stream);
+            buffer = ByteBuffer.allocate(1 << 16);
+            buffer.limit(0);
+            }
+
+        void close() throws IOException
+            {
+            if (channel != null) channel.close();
+            }
+
+        boolean fill() throws IOException
+            {
+            if (channel != null)
+                {
+                if (position >= size) return false;
+                long length = Math.min(WINDOW, size - position);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+                return true;
+                }
+            buffer.clear();
+            int read = 0;
+            while(read == 0)
+                read = stream.read(buffer);
+            buffer.flip();
+            return read > 0;
+            }
+
+        /** Returns the next byte, or -1 at the end. */
+        int read() throws IOException
+            {
+            if (!buffer.hasRemaining() && !fill()) return -1;
+            return buffer.get() & 0xFF;
+            }
+
+        int readByte() throws IOException
+            {
+            int b = read();
+            if (b < 0) throw new EOFException("The edge list ends early");
+            return b;
+            }
+
+        int readVarint() throws IOException
+            {
+            int value = 0;
+            for(int shift = 0; shift < 32; shift += 7)
+                {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+                }
+            throw new IOException("The edge list has a malformed number");
+            }
+
+        double readDouble() throws IOException
+            {
+            long bits = 0;
+            for(int i = 0; i < 8; i++)
+                bits = (bits << 8) | readByte();
+            return Double.longBitsToDouble(bits);
+            }
+
+        void readHeader() throws IOException
+            {
+            int magic = 0;
+            for(int i = 0; i < 4; i++)
+                magic = (magic << 8) | readByte();
+            if (magic != MAGIC)
+                throw new IOException("Not a binary edge list");
+            int version = readByte();
+            if (version != VERSION)
+                throw new IOException("Binary edge list version " + version + " is not supported");
+            int flags = readByte();
+            directed = ((flags & DIRECTED) != 0);
+            weighted = ((flags & WEIGHTED) != 0);
+            numNodes = readVarint();
+            numEdges = readVarint();
+            if (numNodes < 0 || numNodes == Integer.MAX_VALUE || numEdges < 0)
+                throw new IOException("The edge list has an invalid number of nodes (" + numNodes + ") or edges (" + numEdges + ")");
+            }
+
+        /* Reads the number of edges of node u, of which there can be no more than the number left. */
+        int readCount(int u, int left) throws IOException
+            {
+            int count = readVarint();
+            if (count < 0 || count > left)
+                throw new IOException("Node " + u + " has more edges (" + count + ") than the edge list has left (" + left + ")");
+            return count;
+            }
+
+        int readNode(int previous) throws IOException
+            {
+            long v = (long) previous + unzigzag(readVarint());
+            if (v < 0 || v >= numNodes)
+                throw new IOException("The edge list has an edge to node " + v + ", out of range 0 ... " + (numNodes - 1));
+            return (int) v;
+            }
+
+        void checkEdges(int read) throws IOException
+            {
+            if (read != numEdges)
+                throw new IOException("The edge list has " + read + " edges, not the " + numEdges + " it says it has");
+            }
+        }
+    }
@@ -41,7 +41,12 @@ import java.util.*;
     and changes just the <b>contents</b> of the edge info objects and the node object contents, you might consider first 
     getting an adjacency list for the Network with getAdjacencyList(...), or an adjacency matrix with getAdjacencyMatrix(...)
     or getMultigraphAdjacencyMatrix(...).  But remember that as soon as the topology changes (adding/deleting a node or edge),
-    the adjacency list is invalid, and you need to request another one.
+    the adjacency list is invalid, and you need to request another one.  For large graphs, a CompactNetwork made from
+    the Network holds the same graph in a few primitive arrays, which take much less memory and are much faster to traverse.
+    
+    <p>To keep something up to date as the topology changes, rather than recomputing it, register a NetworkListener with
+    addListener(...).  It is told of each node and edge added or removed.  sim.field.network.analytics.IncrementalStatistics
+    uses this to keep degree, triad, and component statistics.
     
     <p><b>Computational Complexity.</b>  Adding a node or an edge is O(1).  Removing an edge is O(1).  Removing a node is O(m), where
     m is the total number of edges in and out of the node.  Removing all nodes is O(1) and fast.  Getting the in-edges or out-edges for a node
@@ -109,8 +114,8 @@ public class Network implements java.io.Serializable
     /** Resets the network, clearing it of nodes and edges. */
     public void reset(boolean directed)
         {
-        clear();
         this.directed = directed;
+        clear();
         }
                         
     /** Hashes Network.IndexOutIn structures by Node.  These structures
@@ -125,6 +130,59 @@ public class Network implements java.io.Serializable
     // returned instead of null for those methods which require a guarantee that the returned Bag should never be touched.
     final Bag emptyBag = new Bag();
 
+    // the NetworkListeners, or null if there are none
+    Bag listeners = null;
+
+    /** Adds a NetworkListener, to be told of every later change to the network's topology. */
+    public void addListener(NetworkListener listener)
+        {
+        if (listeners == null) listeners = new Bag();
+        listeners.add(listener);
+        }
+
+    /** Removes a NetworkListener. */
+    public void removeListener(NetworkListener listener)
+        {
+        if (listeners == null) return;
+        listeners.remove(listener);
+        if (listeners.numObjs == 0) listeners = null;
+        }
+
+    void fireNodeAdded(Object node)
+        {
+        if (listeners != null)
+            for(int i = 0; i < listeners.numObjs; i++)
+                ((NetworkListener)(listeners.objs[i])).nodeAdded(this, node);
+        }
+
+    void fireNodeRemoved(Object node)
+        {
+        if (listeners != null)
+            for(int i = 0; i < listeners.numObjs; i++)
+                ((NetworkListener)(listeners.objs[i])).nodeRemoved(this, node);
+        }
+
+    void fireEdgeAdded(Edge edge)
+        {
+        if (listeners != null)
+            for(int i = 0; i < listeners.numObjs; i++)
+                ((NetworkListener)(listeners.objs[i])).edgeAdded(this, edge);
+        }
+
+    void fireEdgeRemoved(Edge edge)
+        {
+        if (listeners != null)
+            for(int i = 0; i < listeners.numObjs; i++)
+                ((NetworkListener)(listeners.objs[i])).edgeRemoved(this, edge);
+        }
+
+    void fireChanged()
+        {
+        if (listeners != null)
+            for(int i = 0; i < listeners.numObjs; i++)
+                ((NetworkListener)(listeners.objs[i])).networkChanged(this);
+        }
+
     /** Creates and returns an adjacency list.  If you're doing lots of operations (especially network traversals)
         which won't effect the topology of the network, an adjacency list structure might be more efficient for you to access rather than lots of
         calls to getEdgesIn() and getEdgesOut() etc.  Building the list is an O(#edges) operation.
@@ -371,6 +429,7 @@ public class Network implements java.io.Serializable
         allNodes.add( node );
         IndexOutIn ioih = new IndexOutIn( allNodes.numObjs-1, null, null );
         indexOutInHash.put( node, ioih );
+        fireNodeAdded(node);
         }
 
     /** Add an edge, storing info as the edge's associated information object. 
@@ -438,6 +497,8 @@ public class Network implements java.io.Serializable
             }
         inNode.in.add( edge );
         edge.indexTo = inNode.in.numObjs-1;
+
+        fireEdgeAdded(edge);
         }
 
     /** Removes the given edge, then changes its from, to, and info values to the provided ones,
@@ -522,6 +583,9 @@ public class Network implements java.io.Serializable
                 else throw new InternalError("This shouldn't ever happen: #2");
                 }
             }
+
+        fireEdgeRemoved(edge);
+
         // return the edge
         return edge;
         }
@@ -540,6 +604,7 @@ public class Network implements java.io.Serializable
             if (ioi.out != null)
                 ioi.out.clear();
             }
+        fireChanged();
         }
 
     /** Removes a node, deleting all incoming and outgoing edges from the Field as well.  Returns the node,
@@ -573,6 +638,8 @@ public class Network implements java.io.Serializable
         // finally, delete the ioi
         indexOutInHash.remove(node);
 
+        fireNodeRemoved(node);
+
         // return the node
         return node;
         }
@@ -584,6 +651,7 @@ public class Network implements java.io.Serializable
         indexOutInHash = buildMap(ANY_SIZE);
         Bag retval = allNodes;
         allNodes = new Bag();
+        fireChanged();
         return retval;
         }
     
@@ -695,6 +763,7 @@ public class Network implements java.io.Serializable
                     e.indexTo = tmpI;
                     }
             }
+        fireChanged();
         }
     
     
@@ -0,0 +1,30 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network;
+
+/**
+   An object told by a Network of each change to its topology, so that it can keep something up to date (such as
+   the statistics of sim.field.network.analytics.IncrementalStatistics) rather than recomputing it from scratch.
+   Register one with Network.addListener(...).
+
+   <p>nodeAdded(...) is called after a node has been added, and so before edgeAdded(...) for an edge whose nodes
+   were added along with it; edgeRemoved(...) is called after an edge has been removed, and so, for each of a node's
+   edges, before nodeRemoved(...) when the node is removed.  updateEdge(...) removes and then adds the edge.  Changes
+   which affect the whole network at once (clear(), reset(...), removeAllEdges(), and reverseAllEdges()) call
+   networkChanged(...) instead, after which the listener should start over from the network as it stands.
+
+   <p>A listener is stored in the Network, and so serialized along with it.
+*/
+
+public interface NetworkListener extends java.io.Serializable
+    {
+    public void nodeAdded(Network network, Object node);
+    public void nodeRemoved(Network network, Object node);
+    public void edgeAdded(Network network, Edge edge);
+    public void edgeRemoved(Network network, Edge edge);
+    public void networkChanged(Network network);
+    }
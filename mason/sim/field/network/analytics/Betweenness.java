@@ -0,0 +1,173 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.engine.*;
+import sim.field.network.*;
+
+/**
+   Betweenness centrality by Brandes' algorithm: a breadth-first search from each source node counts the shortest paths
+   to every other node, and a pass back through the nodes in reverse order of distance adds up each node's share of
+   them.  Paths are counted in hops (edge weights are ignored) and follow edges from their from nodes to their to
+   nodes.  The searches from different sources are independent, so they are done in parallel, a few at a time (one
+   for each thread), each with its own arrays; a node's centrality is then the sum of its shares from each source,
+   added up in order of source, so it comes out exactly the same however many threads do the work.
+
+   <p>The results are as in Brandes' paper, and as the socialnets contribution's
+   sim.field.network.stats.actorcentrality.BetweennessCentrality: in an undirected graph each path is found from both
+   of its ends, so the totals are halved.  They are not normalized.
+
+   <p>Brandes' algorithm takes O(nodes * edges) time, too long for large networks.  centrality(network, sources)
+   searches from only the given sources (say, a random sample) and scales the results up by nodes / sources, which
+   estimates the true centralities.
+*/
+
+public class Betweenness
+    {
+    /** Returns the betweenness centrality of each node of the network. */
+    public static double[] centrality(CompactNetwork network)
+        {
+        int n = network.getNumNodes();
+        int[] sources = new int[n];
+        for(int s = 0; s < n; s++)
+            sources[s] = s;
+        return centrality(network, sources);
+        }
+
+    /** Returns the betweenness centrality of each node of the network, indexed in the order of the network's allNodes bag. */
+    public static double[] centrality(Network network)
+        {
+        return centrality(new CompactNetwork(network, false));
+        }
+
+    /** Returns an estimate of the betweenness centrality of each node of the network, from searches from the given
+        source nodes only, scaled up by the number of nodes over the number of sources.  If the sources are all the
+        nodes, this is the exact centrality. */
+    public static double[] centrality(final CompactNetwork network, final int[] sources)
+        {
+        final int n = network.getNumNodes();
+        for(int i = 0; i < sources.length; i++)
+            if (sources[i] < 0 || sources[i] >= n)
+                throw new IllegalArgumentException("No node " + sources[i]);
+        final double[] centrality = new double[n];
+        if (n == 0 || sources.length == 0) return centrality;
+
+        final int slots = Math.min(ParallelBlocks.threads(), sources.length);
+        final Search[] searches = new Search[slots];
+        for(int i = 0; i < slots; i++)
+            searches[i] = new Search(n);
+
+        for(int first = 0; first < sources.length; first += slots)
+            {
+            final int start = first;
+            final int count = Math.min(slots, sources.length - first);
+            new ParallelBlocks(count, 1)
+                {
+                protected void items(int from, int to, int blk)
+                    {
+                    searches[blk].search(network, sources[start + blk]);
+                    }
+                }.run();
+
+            // add the shares in order of source
+            new ParallelBlocks(n, 4096)
+                {
+                protected void items(int from, int to, int blk)
+                    {
+                    for(int i = 0; i < count; i++)
+                        {
+                        double[] share = searches[i].delta;
+                        for(int v = from; v < to; v++)
+                            centrality[v] += share[v];
+                        }
+                    }
+                }.run();
+            for(int i = 0; i < count; i++)
+                searches[i].clear();
+            }
+
+        double scale = (network.isDirected() ? 1.0 : 0.5) * n / sources.length;
+        if (scale != 1.0)
+            for(int v = 0; v < n; v++)
+                centrality[v] *= scale;
+        return centrality;
+        }
+
+    /** The arrays for one search at a time.  Between searches, only the entries of the nodes it reached need clearing. */
+    static class Search
+        {
+        int[] dist;
+        double[] sigma;
+        double[] delta;
+        int[] order;
+        int reached;
+
+        Search(int n)
+            {
+            dist = new int[n];
+            java.util.Arrays.fill(dist, -1);
+            sigma = new double[n];
+            delta = new double[n];
+            order = new int[n];
+            }
+
+        /** Leaves in delta each node's share of the shortest paths from the source (zero for the source itself). */
+        void search(CompactNetwork network, int source)
+            {
+            int[] offsets = network.outOffsets;
+            int[] targets = network.outTargets;
+
+            // breadth-first search, with order as its queue
+            dist[source] = 0;
+            sigma[source] = 1;
+            order[0] = source;
+            reached = 1;
+            for(int head = 0; head < reached; head++)
+                {
+                int u = order[head];
+                int du = dist[u] + 1;
+                for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                    {
+                    int v = targets[k];
+                    if (dist[v] == -1)
+                        {
+                        dist[v] = du;
+                        order[reached++] = v;
+                        }
+                    if (dist[v] == du)
+                        sigma[v] += sigma[u];
+                    }
+                }
+
+            // back through the nodes, farthest first, summing each node's dependency on its successors
+            for(int i = reached - 1; i > 0; i--)
+                {
+                int u = order[i];
+                int du = dist[u] + 1;
+                double d = 0;
+                for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                    {
+                    int v = targets[k];
+                    if (dist[v] == du)
+                        d += (1 + delta[v]) / sigma[v];
+                    }
+                delta[u] = sigma[u] * d;
+                }
+            }
+
+        void clear()
+            {
+            for(int i = 0; i < reached; i++)
+                {
+                int v = order[i];
+                dist[v] = -1;
+                sigma[v] = 0;
+                delta[v] = 0;
+                }
+            reached = 0;
+            }
+        }
+    }
@@ -0,0 +1,117 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.engine.*;
+import sim.field.network.*;
+import sim.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+   Hop distances from a node, by a level-synchronous breadth-first search: all the nodes of one level (the
+   <i>frontier</i>) are expanded at once, in parallel when there are enough of them, to find the nodes of the next.
+   Edges are followed from their from nodes to their to nodes (in either direction in an undirected graph), and their
+   weights are ignored: see ShortestPaths for weighted distances.
+
+   <p>The distances are the same however many threads do the work.  The methods which take a Network make a
+   CompactNetwork from it first (without its Edges) and return arrays indexed in the order of the Network's allNodes
+   bag; if you will search the same graph more than once, make the CompactNetwork yourself.
+*/
+
+public class BreadthFirstSearch
+    {
+    /** Frontiers with fewer nodes than this are expanded in the calling thread. */
+    public static final int MIN_PARALLEL_FRONTIER = 1024;
+    static final int NODES_PER_BLOCK = 256;
+
+    /** Returns the number of hops from the source to each node of the network, or -1 for nodes which can't be reached. */
+    public static int[] distances(CompactNetwork network, int source)
+        {
+        int n = network.getNumNodes();
+        if (source < 0 || source >= n)
+            throw new IllegalArgumentException("No node " + source);
+
+        final int[] offsets = network.outOffsets;
+        final int[] targets = network.outTargets;
+        final AtomicIntegerArray dist = new AtomicIntegerArray(n);
+        for(int v = 0; v < n; v++)
+            dist.set(v, -1);
+        dist.set(source, 0);
+
+        IntBag frontier = new IntBag();
+        frontier.add(source);
+        int level = 0;
+        while(frontier.numObjs > 0)
+            {
+            level++;
+            final int lvl = level;
+            final int[] f = frontier.objs;
+            IntBag next = new IntBag();
+            if (frontier.numObjs < MIN_PARALLEL_FRONTIER)
+                {
+                for(int i = 0; i < frontier.numObjs; i++)
+                    {
+                    int u = f[i];
+                    for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                        {
+                        int v = targets[k];
+                        if (dist.get(v) == -1)
+                            {
+                            dist.set(v, lvl);
+                            next.add(v);
+                            }
+                        }
+                    }
+                }
+            else
+                {
+                final IntBag[] found = new IntBag[(frontier.numObjs + NODES_PER_BLOCK - 1) / NODES_PER_BLOCK];
+                new ParallelBlocks(frontier.numObjs, NODES_PER_BLOCK)
+                    {
+                    protected void items(int from, int to, int blk)
+                        {
+                        IntBag mine = new IntBag();
+                        for(int i = from; i < to; i++)
+                            {
+                            int u = f[i];
+                            for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                                {
+                                int v = targets[k];
+                                if (dist.get(v) == -1 && dist.compareAndSet(v, -1, lvl))
+                                    mine.add(v);
+                                }
+                            }
+                        found[blk] = mine;
+                        }
+                    }.run();
+                for(int b = 0; b < found.length; b++)
+                    next.addAll(found[b]);
+                }
+            frontier = next;
+            }
+
+        int[] result = new int[n];
+        for(int v = 0; v < n; v++)
+            result[v] = dist.get(v);
+        return result;
+        }
+
+    /** Returns the number of hops from the source to each node of the network, indexed in the order of the network's allNodes bag,
+        or -1 for nodes which can't be reached. */
+    public static int[] distances(Network network, Object source)
+        {
+        CompactNetwork net = new CompactNetwork(network, false);
+        return distances(net, index(net, source));
+        }
+
+    static int index(CompactNetwork network, Object node)
+        {
+        int index = network.getNodeIndex(node);
+        if (index < 0)
+            throw new IllegalArgumentException("Node " + node + " is not in the network");
+        return index;
+        }
+    }
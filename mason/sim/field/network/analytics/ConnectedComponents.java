@@ -0,0 +1,104 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.engine.*;
+import sim.field.network.*;
+import java.util.concurrent.atomic.*;
+
+/**
+   Connected components, by a concurrent union-find: every edge joins the sets of its two nodes, with the edges divided
+   among threads which link the sets' roots with compare-and-set, and which halve the paths they follow.  A root is
+   always linked under a root with a lower number, so every component ends up labelled by the lowest-numbered node in
+   it, however many threads do the work.  The direction of edges is ignored: in a directed graph these are the
+   <i>weakly</i> connected components.
+*/
+
+public class ConnectedComponents
+    {
+    /** Networks with fewer nodes than this are handled in the calling thread. */
+    public static final int MIN_PARALLEL_NODES = 4096;
+    static final int NODES_PER_BLOCK = 1024;
+
+    /** Returns, for each node of the network, the lowest-numbered node in its component. */
+    public static int[] components(CompactNetwork network)
+        {
+        int n = network.getNumNodes();
+        final int[] offsets = network.outOffsets;
+        final int[] targets = network.outTargets;
+        final AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for(int v = 0; v < n; v++)
+            parent.set(v, v);
+
+        // each edge is found as an outgoing arc of one of its nodes, so the outgoing arcs suffice even when directed
+        // a small network is a single block, which run() joins in the calling thread
+        new ParallelBlocks(n, n < MIN_PARALLEL_NODES ? Math.max(1, n) : NODES_PER_BLOCK)
+            {
+            protected void items(int from, int to, int blk)
+                {
+                for(int u = from; u < to; u++)
+                    for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                        union(parent, u, targets[k]);
+                }
+            }.run();
+
+        int[] labels = new int[n];
+        for(int v = 0; v < n; v++)
+            labels[v] = find(parent, v);
+        return labels;
+        }
+
+    /** Returns, for each node of the network, the index in the network's allNodes bag of the first node of its component. */
+    public static int[] components(Network network)
+        {
+        return components(new CompactNetwork(network, false));
+        }
+
+    /** Returns the number of components given labels from components(...). */
+    public static int numComponents(int[] labels)
+        {
+        int count = 0;
+        for(int v = 0; v < labels.length; v++)
+            if (labels[v] == v) count++;
+        return count;
+        }
+
+    /** Returns, for each node, the number of nodes in its component, given labels from components(...). */
+    public static int[] componentSizes(int[] labels)
+        {
+        int[] count = new int[labels.length];
+        for(int v = 0; v < labels.length; v++)
+            count[labels[v]]++;
+        int[] sizes = new int[labels.length];
+        for(int v = 0; v < labels.length; v++)
+            sizes[v] = count[labels[v]];
+        return sizes;
+        }
+
+    static int find(AtomicIntegerArray parent, int v)
+        {
+        while(true)
+            {
+            int p = parent.get(v);
+            if (p == v) return v;
+            int gp = parent.get(p);
+            if (gp != p) parent.compareAndSet(v, p, gp);  // path halving
+            v = gp;
+            }
+        }
+
+    static void union(AtomicIntegerArray parent, int a, int b)
+        {
+        while(true)
+            {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) return;
+            if (a < b) { int t = a; a = b; b = t; }
+            if (parent.compareAndSet(a, a, b)) return;  // a was still a root
+            }
+        }
+    }
@@ -0,0 +1,22 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+
+/**
+   An estimate of the remaining distance from a node to a destination, which guides a Router's A* search.  The estimate
+   must never be more than the true distance (the straight-line distance between the nodes' locations is the usual
+   choice, if no edge is shorter than the straight line between its nodes), or the Router may return routes which
+   aren't the shortest.  Routers may call estimate(...) from several threads at once.  A Heuristic is serialized
+   along with its Router, so it must be serializable too.
+*/
+
+public interface Heuristic extends java.io.Serializable
+    {
+    /** Returns an estimate, no more than the true distance, of the distance from the node to the destination.
+        Both are node numbers in the Router's CompactNetwork. */
+    public double estimate(int node, int destination);
+    }
@@ -0,0 +1,583 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.field.network.*;
+import sim.util.*;
+import java.util.*;
+
+/**
+   Statistics of a Network kept up to date as the network changes, so that a model which rewires a few edges each
+   step can chart them every step without recomputing them from scratch (as the socialnets contribution's
+   DegreeStatistics and DyadTriadStatistics do).  An IncrementalStatistics computes everything once when it is made,
+   then registers itself as a NetworkListener of the network and updates the statistics on each addNode(...),
+   addEdge(...), removeEdge(...), and removeNode(...).  Changes to the whole network at once (clear(), reset(...),
+   removeAllEdges(), reverseAllEdges()) make it start over.  Call detach() to stop it listening.
+
+   <p><b>What is kept.</b>
+   <ul>
+   <li>The number of nodes and edges, each node's in- and out-degree, and histograms of the degrees.  Degrees are
+   counted as the sizes of Network.getEdgesIn(...) and getEdgesOut(...): every edge counts, including parallel edges
+   and self-loops, and in an undirected network the two are the same (a self-loop counting twice).
+   <li>The dyad census (the number of pairs of nodes joined by edges in both directions, in one direction only, or
+   not at all) and the triad census (the number of triples of nodes of each of the 16 MAN classes, numbered as in
+   socialnets' DyadTriadStatistics).  These ignore self-loops and parallel edges.  In an undirected network every edge
+   is mutual, so only classes 003, 102, 201, and 300 occur.
+   <li>The number of triangles and of connected triples, and the transitivity (3 * triangles / connected triples),
+   ignoring the direction of edges.
+   <li>The connected components (weakly connected, in a directed network), by union-find.
+   </ul>
+
+   <p><b>Cost.</b>  Adding a node costs O(1).  Adding or removing an edge costs O(1) if there's already another
+   edge in the same direction between its nodes, and otherwise O(<i>d</i>) hash lookups, where <i>d</i> is the
+   number of neighbors of its two nodes: that's the number of triads whose class it might change.  Removing a node
+   costs its edges' removals.  Reading any statistic costs O(1), except that removing the last edge between two nodes
+   may split a component, which union-find can't undo: the components are then recomputed, in O(nodes + edges) time,
+   when they're next asked for.
+
+   <p>IncrementalStatistics is not thread-safe, any more than Network is.  The triad census and the dyad counts are
+   longs, as there are O(nodes<sup>3</sup>) triads.
+*/
+
+public class IncrementalStatistics implements NetworkListener
+    {
+    private static final long serialVersionUID = 1;
+
+    public static final int TRIAD_003 = 0;
+    public static final int TRIAD_012 = 1;
+    public static final int TRIAD_102 = 2;
+    public static final int TRIAD_021D = 3;
+    public static final int TRIAD_021U = 4;
+    public static final int TRIAD_021C = 5;
+    public static final int TRIAD_111D = 6;
+    public static final int TRIAD_111U = 7;
+    public static final int TRIAD_030T = 8;
+    public static final int TRIAD_030C = 9;
+    public static final int TRIAD_201 = 10;
+    public static final int TRIAD_120D = 11;
+    public static final int TRIAD_120U = 12;
+    public static final int TRIAD_120C = 13;
+    public static final int TRIAD_210 = 14;
+    public static final int TRIAD_300 = 15;
+
+    public static final String[] MAN_TRIAD_CLASSES =
+        {
+        "003", "012", "102", "021D", "021U", "021C",
+        "111D", "111U", "030T", "030C", "201", "120D",
+        "120U", "120C", "210", "300"
+        };
+
+    /* The class of a triad (a, b, c) given the code A->B: 1, B->A: 2, A->C: 4, C->A: 8, B->C: 16, C->B: 32
+       (Batagelj and Mrvar's table, as in NetworkX). */
+    static final byte[] TRIAD_CLASS =
+        {
+        0, 1, 1, 2, 1, 3, 5, 7, 1, 5, 4, 6, 2, 7, 6, 10,
+        1, 5, 3, 7, 4, 8, 8, 12, 5, 9, 8, 13, 6, 13, 11, 14,
+        1, 4, 5, 6, 5, 8, 9, 13, 3, 8, 8, 11, 7, 12, 13, 14,
+        2, 6, 7, 10, 6, 11, 13, 14, 7, 13, 12, 14, 10, 14, 14, 15
+        };
+
+    Network network;
+    boolean directed;
+
+    // Each node has an id, an index into the arrays below.  Ids of removed nodes are reused.
+    Map ids;
+    Object[] nodes;         // null for unused ids
+    int numIds;             // ids ever used
+    IntBag free;
+
+    IntCounts[] out;        // out[u] counts the edges from u to each other node (not to itself)
+    IntCounts[] in;         // in[v] counts the edges to v from each other node.  The same as out if undirected.
+    int[] outDegree;        // the size of getEdgesOut(node)
+    int[] inDegree;         // the size of getEdgesIn(node).  Unused if undirected.
+    int[] neighbors;        // the number of other nodes joined to the node in either direction
+
+    int numNodes;
+    int numEdges;
+    int[] outHistogram;
+    int[] inHistogram;
+    int maxOutDegree;
+    int maxInDegree;
+
+    long mutual;
+    long asymmetric;
+    long[] census;
+    long triples;
+
+    int[] parent;
+    int[] size;
+    int numComponents;
+    int largestComponent;
+    boolean componentsDirty;
+
+    /** Computes the statistics of the network and starts keeping them up to date. */
+    public IncrementalStatistics(Network network)
+        {
+        this.network = network;
+        rebuild();
+        network.addListener(this);
+        }
+
+    /** Stops keeping the statistics up to date.  They keep the values they have. */
+    public void detach()
+        {
+        network.removeListener(this);
+        }
+
+    public Network getNetwork() { return network; }
+
+    void rebuild()
+        {
+        directed = network.isDirected();
+        Bag all = network.allNodes;
+        int capacity = Math.max(16, all.numObjs);
+        ids = new OpenHashMap(capacity);
+        nodes = new Object[capacity];
+        numIds = 0;
+        free = new IntBag();
+        out = new IntCounts[capacity];
+        in = new IntCounts[capacity];
+        outDegree = new int[capacity];
+        inDegree = new int[capacity];
+        neighbors = new int[capacity];
+        parent = new int[capacity];
+        size = new int[capacity];
+        numNodes = 0;
+        numEdges = 0;
+        outHistogram = new int[4];
+        inHistogram = new int[4];
+        maxOutDegree = 0;
+        maxInDegree = 0;
+        mutual = 0;
+        asymmetric = 0;
+        census = new long[16];
+        triples = 0;
+        numComponents = 0;
+        largestComponent = 0;
+        componentsDirty = false;
+
+        for(int i = 0; i < all.numObjs; i++)
+            nodeAdded(network, all.objs[i]);
+        for(int i = 0; i < all.numObjs; i++)
+            {
+            Object node = all.objs[i];
+            Bag edges = network.getEdgesOut(node);
+            for(int j = 0; j < edges.numObjs; j++)
+                {
+                Edge edge = (Edge)(edges.objs[j]);
+                // in an undirected network, count each edge once, at its from node (and a self-loop once, not twice)
+                if (directed || (edge.from().equals(node) && edge.indexFrom() == j))
+                    edgeAdded(network, edge);
+                }
+            }
+        }
+
+    int id(Object node)
+        {
+        Integer id = (Integer)(ids.get(node));
+        if (id == null)
+            throw new IllegalArgumentException("Node " + node + " is not in the network");
+        return id.intValue();
+        }
+
+    void grow()
+        {
+        int capacity = nodes.length * 2;
+        Object[] newNodes = new Object[capacity];
+        System.arraycopy(nodes, 0, newNodes, 0, nodes.length);
+        nodes = newNodes;
+        IntCounts[] newOut = new IntCounts[capacity];
+        System.arraycopy(out, 0, newOut, 0, out.length);
+        out = newOut;
+        IntCounts[] newIn = new IntCounts[capacity];
+        System.arraycopy(in, 0, newIn, 0, in.length);
+        in = newIn;
+        outDegree = grow(outDegree, capacity);
+        inDegree = grow(inDegree, capacity);
+        neighbors = grow(neighbors, capacity);
+        parent = grow(parent, capacity);
+        size = grow(size, capacity);
+        }
+
+    static int[] grow(int[] array, int capacity)
+        {
+        int[] newArray = new int[capacity];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+        }
+
+    /** Adds delta to the count of nodes with the given degree, returning the histogram (enlarged if need be). */
+    static int[] count(int[] histogram, int degree, int delta)
+        {
+        if (degree >= histogram.length)
+            histogram = grow(histogram, Math.max(degree + 1, histogram.length * 2));
+        histogram[degree] += delta;
+        return histogram;
+        }
+
+    void changeOutDegree(int id, int delta)
+        {
+        int degree = outDegree[id];
+        outHistogram[degree]--;
+        degree += delta;
+        outDegree[id] = degree;
+        outHistogram = count(outHistogram, degree, 1);
+        if (degree > maxOutDegree) maxOutDegree = degree;
+        while(maxOutDegree > 0 && outHistogram[maxOutDegree] == 0) maxOutDegree--;
+        }
+
+    void changeInDegree(int id, int delta)
+        {
+        int degree = inDegree[id];
+        inHistogram[degree]--;
+        degree += delta;
+        inDegree[id] = degree;
+        inHistogram = count(inHistogram, degree, 1);
+        if (degree > maxInDegree) maxInDegree = degree;
+        while(maxInDegree > 0 && inHistogram[maxInDegree] == 0) maxInDegree--;
+        }
+
+
+    //// NetworkListener
+
+    public void nodeAdded(Network network, Object node)
+        {
+        int id;
+        if (free.numObjs > 0) id = free.pop();
+        else
+            {
+            if (numIds == nodes.length) grow();
+            id = numIds++;
+            }
+        nodes[id] = node;
+        ids.put(node, Integer.valueOf(id));
+        out[id] = new IntCounts();
+        in[id] = (directed ? new IntCounts() : out[id]);
+        outDegree[id] = 0;
+        inDegree[id] = 0;
+        neighbors[id] = 0;
+        parent[id] = id;
+        size[id] = 1;
+
+        // the node makes a triad with each pair of other nodes, of the class of that pair's dyad
+        long pairs = (long) numNodes * (numNodes - 1) / 2;
+        census[TRIAD_003] += pairs - mutual - asymmetric;
+        census[TRIAD_012] += asymmetric;
+        census[TRIAD_102] += mutual;
+
+        numNodes++;
+        outHistogram = count(outHistogram, 0, 1);
+        if (directed) inHistogram = count(inHistogram, 0, 1);
+        numComponents++;
+        if (largestComponent == 0) largestComponent = 1;
+        }
+
+    public void nodeRemoved(Network network, Object node)
+        {
+        // its edges have all been removed by now
+        int id = id(node);
+        ids.remove(node);
+        nodes[id] = null;
+        out[id] = null;
+        in[id] = null;
+        free.push(id);
+
+        numNodes--;
+        long pairs = (long) numNodes * (numNodes - 1) / 2;
+        census[TRIAD_003] -= pairs - mutual - asymmetric;
+        census[TRIAD_012] -= asymmetric;
+        census[TRIAD_102] -= mutual;
+
+        outHistogram[0]--;
+        if (directed) inHistogram[0]--;
+        if (!componentsDirty)
+            {
+            // an isolated node which hasn't lost an edge since the components were computed is in a component of its own
+            numComponents--;
+            if (numNodes == 0) largestComponent = 0;
+            }
+        }
+
+    public void edgeAdded(Network network, Edge edge)
+        {
+        int u = id(edge.from());
+        int v = id(edge.to());
+        numEdges++;
+        changeOutDegree(u, 1);
+        if (directed) changeInDegree(v, 1);
+        else changeOutDegree(v, 1);
+        if (u == v) return;
+
+        if (directed)
+            {
+            in[v].add(u, 1);
+            if (out[u].add(v, 1) == 1)
+                {
+                boolean back = (out[v].get(u) > 0);
+                changeDyad(u, v, false, back, true, back);
+                }
+            }
+        else
+            {
+            out[v].add(u, 1);
+            if (out[u].add(v, 1) == 1)
+                changeDyad(u, v, false, false, true, true);
+            }
+        if (!componentsDirty) union(u, v);
+        }
+
+    public void edgeRemoved(Network network, Edge edge)
+        {
+        int u = id(edge.from());
+        int v = id(edge.to());
+        numEdges--;
+        changeOutDegree(u, -1);
+        if (directed) changeInDegree(v, -1);
+        else changeOutDegree(v, -1);
+        if (u == v) return;
+
+        if (directed)
+            {
+            in[v].add(u, -1);
+            if (out[u].add(v, -1) == 0)
+                {
+                boolean back = (out[v].get(u) > 0);
+                changeDyad(u, v, true, back, false, back);
+                if (!back) componentsDirty = true;
+                }
+            }
+        else
+            {
+            out[v].add(u, -1);
+            if (out[u].add(v, -1) == 0)
+                {
+                changeDyad(u, v, true, true, false, false);
+                componentsDirty = true;
+                }
+            }
+        }
+
+    public void networkChanged(Network network)
+        {
+        rebuild();
+        }
+
+
+    //// Dyads and triads
+
+    static int dyad(boolean uv, boolean vu) { return (uv ? (vu ? TRIAD_102 : TRIAD_012) : (vu ? TRIAD_012 : TRIAD_003)); }
+
+    /* Updates the dyad counts, the connected triples, and the class of every triad including u and v, when the edges
+       between u and v go from uvBefore and vuBefore to uvAfter and vuAfter.  The triads (u, v, w) for which w is joined
+       to neither u nor v are all of the same class as the dyad (u, v), so only those with w joined to one or the other
+       need be visited. */
+    void changeDyad(int u, int v, boolean uvBefore, boolean vuBefore, boolean uvAfter, boolean vuAfter)
+        {
+        int before = dyad(uvBefore, vuBefore);
+        int after = dyad(uvAfter, vuAfter);
+        if (before == TRIAD_012) asymmetric--;
+        else if (before == TRIAD_102) mutual--;
+        if (after == TRIAD_012) asymmetric++;
+        else if (after == TRIAD_102) mutual++;
+
+        if (before == TRIAD_003)  // u and v are now joined
+            {
+            triples += neighbors[u] + neighbors[v];
+            neighbors[u]++;
+            neighbors[v]++;
+            }
+        else if (after == TRIAD_003)  // u and v are no longer joined
+            {
+            neighbors[u]--;
+            neighbors[v]--;
+            triples -= neighbors[u] + neighbors[v];
+            }
+
+        int codeBefore = (uvBefore ? 1 : 0) | (vuBefore ? 2 : 0);
+        int codeAfter = (uvAfter ? 1 : 0) | (vuAfter ? 2 : 0);
+        int visited;
+        if (directed)
+            visited = triads(out[u], null, null, null, u, v, codeBefore, codeAfter) +
+                triads(in[u], out[u], null, null, u, v, codeBefore, codeAfter) +
+                triads(out[v], out[u], in[u], null, u, v, codeBefore, codeAfter) +
+                triads(in[v], out[u], in[u], out[v], u, v, codeBefore, codeAfter);
+        else
+            visited = triads(out[u], null, null, null, u, v, codeBefore, codeAfter) +
+                triads(out[v], out[u], null, null, u, v, codeBefore, codeAfter);
+        long rest = numNodes - 2 - visited;
+        census[before] -= rest;
+        census[after] += rest;
+        }
+
+    /* Moves the triads (u, v, w), for each w in the given set but not in any of the skip sets, from their classes with
+       the given code for u and v before to their classes with the code after.  Returns how many there were. */
+    int triads(IntCounts set, IntCounts skip1, IntCounts skip2, IntCounts skip3, int u, int v, int codeBefore, int codeAfter)
+        {
+        IntCounts outU = out[u];
+        IntCounts inU = in[u];
+        IntCounts outV = out[v];
+        IntCounts inV = in[v];
+        int[] keys = set.keys;
+        int visited = 0;
+        for(int i = 0; i < keys.length; i++)
+            {
+            int w = keys[i];
+            if (w == IntCounts.EMPTY || w == v || w == u) continue;
+            if ((skip1 != null && skip1.get(w) > 0) || (skip2 != null && skip2.get(w) > 0) || (skip3 != null && skip3.get(w) > 0))
+                continue;
+            int code = (outU.get(w) > 0 ? 4 : 0) | (inU.get(w) > 0 ? 8 : 0) | (outV.get(w) > 0 ? 16 : 0) | (inV.get(w) > 0 ? 32 : 0);
+            census[TRIAD_CLASS[code | codeBefore]]--;
+            census[TRIAD_CLASS[code | codeAfter]]++;
+            visited++;
+            }
+        return visited;
+        }
+
+
+    //// Components
+
+    int find(int x)
+        {
+        while(parent[x] != x)
+            {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+            }
+        return x;
+        }
+
+    void union(int a, int b)
+        {
+        a = find(a);
+        b = find(b);
+        if (a == b) return;
+        if (size[a] < size[b]) { int t = a; a = b; b = t; }
+        parent[b] = a;
+        size[a] += size[b];
+        numComponents--;
+        if (size[a] > largestComponent) largestComponent = size[a];
+        }
+
+    void updateComponents()
+        {
+        if (!componentsDirty) return;
+        numComponents = numNodes;
+        largestComponent = (numNodes > 0 ? 1 : 0);
+        for(int id = 0; id < numIds; id++)
+            if (nodes[id] != null)
+                {
+                parent[id] = id;
+                size[id] = 1;
+                }
+        for(int id = 0; id < numIds; id++)
+            if (nodes[id] != null)
+                {
+                int[] keys = out[id].keys;
+                for(int i = 0; i < keys.length; i++)
+                    if (keys[i] != IntCounts.EMPTY)
+                        union(id, keys[i]);
+                }
+        componentsDirty = false;
+        }
+
+
+    //// Statistics
+
+    public int getNumNodes() { return numNodes; }
+    public int getNumEdges() { return numEdges; }
+
+    /** Returns the number of edges leaving the node (in an undirected network, its degree). */
+    public int getOutDegree(Object node) { return outDegree[id(node)]; }
+
+    /** Returns the number of edges entering the node (in an undirected network, its degree). */
+    public int getInDegree(Object node) { return (directed ? inDegree : outDegree)[id(node)]; }
+
+    /** Returns the number of nodes with the given out-degree. */
+    public int getNumNodesWithOutDegree(int degree) { return (degree >= 0 && degree < outHistogram.length ? outHistogram[degree] : 0); }
+
+    /** Returns the number of nodes with the given in-degree. */
+    public int getNumNodesWithInDegree(int degree)
+        {
+        int[] histogram = (directed ? inHistogram : outHistogram);
+        return (degree >= 0 && degree < histogram.length ? histogram[degree] : 0);
+        }
+
+    public int getMaxOutDegree() { return maxOutDegree; }
+    public int getMaxInDegree() { return (directed ? maxInDegree : maxOutDegree); }
+
+    /** Returns the mean out-degree (which is also the mean in-degree), or 0 if there are no nodes. */
+    public double getMeanDegree() { return (numNodes == 0 ? 0 : (directed ? numEdges : 2.0 * numEdges) / numNodes); }
+
+    /** Returns a new array holding, for each out-degree from 0 to getMaxOutDegree(), the number of nodes with that out-degree. */
+    public int[] getOutDegreeHistogram()
+        {
+        int[] histogram = new int[maxOutDegree + 1];
+        System.arraycopy(outHistogram, 0, histogram, 0, histogram.length);
+        return histogram;
+        }
+
+    /** Returns a new array holding, for each in-degree from 0 to getMaxInDegree(), the number of nodes with that in-degree. */
+    public int[] getInDegreeHistogram()
+        {
+        if (!directed) return getOutDegreeHistogram();
+        int[] histogram = new int[maxInDegree + 1];
+        System.arraycopy(inHistogram, 0, histogram, 0, histogram.length);
+        return histogram;
+        }
+
+    /** Returns the number of pairs of nodes joined by edges in both directions (in an undirected network, joined at all). */
+    public long getNumMutualDyads() { return mutual; }
+
+    /** Returns the number of pairs of nodes joined by edges in one direction only. */
+    public long getNumAsymmetricDyads() { return asymmetric; }
+
+    /** Returns the number of pairs of nodes not joined by any edge. */
+    public long getNumNullDyads() { return (long) numNodes * (numNodes - 1) / 2 - mutual - asymmetric; }
+
+    /** Returns the number of triads of the given MAN class, TRIAD_003 through TRIAD_300. */
+    public long getTriadCount(int triadClass) { return census[triadClass]; }
+
+    /** Returns a new array holding the triad census, indexed by TRIAD_003 through TRIAD_300. */
+    public long[] getTriadCensus() { return (long[])(census.clone()); }
+
+    /** Returns the number of triangles, ignoring the direction of edges. */
+    public long getNumTriangles()
+        {
+        return census[TRIAD_030T] + census[TRIAD_030C] + census[TRIAD_120D] + census[TRIAD_120U] +
+            census[TRIAD_120C] + census[TRIAD_210] + census[TRIAD_300];
+        }
+
+    /** Returns the number of connected triples (paths of two edges, counted once for each middle node and pair of
+        its neighbors), ignoring the direction of edges. */
+    public long getNumConnectedTriples() { return triples; }
+
+    /** Returns the transitivity, or global clustering coefficient: 3 * triangles / connected triples, or 0 if there
+        are no connected triples. */
+    public double getTransitivity() { return (triples == 0 ? 0 : 3.0 * getNumTriangles() / triples); }
+
+    /** Returns the number of connected components. */
+    public int getNumComponents() { updateComponents(); return numComponents; }
+
+    /** Returns the number of nodes in the largest connected component. */
+    public int getLargestComponentSize() { updateComponents(); return largestComponent; }
+
+    /** Returns the number of nodes in the node's connected component. */
+    public int getComponentSize(Object node)
+        {
+        int id = id(node);
+        updateComponents();
+        return size[find(id)];
+        }
+
+    /** Returns true if the two nodes are in the same connected component. */
+    public boolean inSameComponent(Object node1, Object node2)
+        {
+        int id1 = id(node1);
+        int id2 = id(node2);
+        updateComponents();
+        return find(id1) == find(id2);
+        }
+    }
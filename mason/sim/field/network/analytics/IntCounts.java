@@ -0,0 +1,109 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+
+/**
+   A small map from non-negative ints to positive counts, by open addressing with linear probing, without boxing.
+   Keys whose count falls to zero are removed.  To visit the keys, scan keys[] for entries which aren't EMPTY.
+*/
+
+final class IntCounts implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    static final int EMPTY = -1;
+
+    int[] keys;
+    int[] counts;
+    int size;
+
+    IntCounts()
+        {
+        keys = new int[4];
+        java.util.Arrays.fill(keys, EMPTY);
+        counts = new int[4];
+        }
+
+    static int hash(int key)
+        {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+        }
+
+    int slot(int key)
+        {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+        }
+
+    /** Returns the count of the key, or 0. */
+    int get(int key)
+        {
+        int i = slot(key);
+        return (keys[i] == EMPTY ? 0 : counts[i]);
+        }
+
+    /** Adds delta (which may be negative) to the count of the key and returns the new count.
+        The count must not fall below zero. */
+    int add(int key, int delta)
+        {
+        int i = slot(key);
+        if (keys[i] == EMPTY)
+            {
+            if (delta == 0) return 0;
+            keys[i] = key;
+            counts[i] = delta;
+            if (++size * 2 > keys.length) grow();
+            return delta;
+            }
+        int count = (counts[i] += delta);
+        if (count == 0) removeAt(i);
+        return count;
+        }
+
+    void grow()
+        {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        java.util.Arrays.fill(keys, EMPTY);
+        counts = new int[oldKeys.length * 2];
+        for(int j = 0; j < oldKeys.length; j++)
+            if (oldKeys[j] != EMPTY)
+                {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+                }
+        }
+
+    // Removes the entry at slot i, moving later entries of the same run back so that none is cut off from its home slot
+    void removeAt(int i)
+        {
+        int mask = keys.length - 1;
+        int j = i;
+        while(true)
+            {
+            j = (j + 1) & mask;
+            if (keys[j] == EMPTY) break;
+            int home = hash(keys[j]) & mask;
+            boolean between = (i <= j ? (i < home && home <= j) : (i < home || home <= j));
+            if (!between)
+                {
+                keys[i] = keys[j];
+                counts[i] = counts[j];
+                i = j;
+                }
+            }
+        keys[i] = EMPTY;
+        counts[i] = 0;
+        size--;
+        }
+    }
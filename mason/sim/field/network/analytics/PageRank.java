@@ -0,0 +1,141 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.engine.*;
+import sim.field.network.*;
+
+/**
+   PageRank, by power iteration.  Each iteration, every node passes on the fraction <i>damping</i> of its rank to the
+   nodes its edges go to, in proportion to the edges' weights (or equally, if weights are ignored), and the rest of
+   the total rank is spread evenly over all the nodes, as is the rank of nodes with no outgoing edges.  Each node
+   gathers its new rank from its incoming arcs, so the nodes can be done in parallel without any two threads writing
+   to the same place; sums over all the nodes are made block by block and added in block order, so the ranks come out
+   the same however many threads do the work.  The ranks add up to 1.
+*/
+
+public class PageRank
+    {
+    /** The usual damping factor. */
+    public static final double DEFAULT_DAMPING = 0.85;
+    /** The default tolerance. */
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    /** The default maximum number of iterations. */
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    static final int NODES_PER_BLOCK = 4096;
+
+    /** Returns the PageRank of each node of the network, ignoring edge weights, with the default damping, tolerance, and iterations. */
+    public static double[] pageRank(CompactNetwork network)
+        {
+        return pageRank(network, DEFAULT_DAMPING, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS, false);
+        }
+
+    /** Returns the PageRank of each node of the network, indexed in the order of the network's allNodes bag, ignoring
+        edge weights, with the default damping, tolerance, and iterations. */
+    public static double[] pageRank(Network network)
+        {
+        return pageRank(new CompactNetwork(network, false));
+        }
+
+    /** Returns the PageRank of each node of the network.  Iteration stops when the ranks change by less than the tolerance
+        in total (the sum of the absolute changes), or after maxIterations iterations.  If weighted, edges pass on rank in
+        proportion to their weights, which must not be negative. */
+    public static double[] pageRank(CompactNetwork network, final double damping, double tolerance, int maxIterations, boolean weighted)
+        {
+        if (!(damping >= 0 && damping <= 1))
+            throw new IllegalArgumentException("Damping must be between 0 and 1: " + damping);
+        final int n = network.getNumNodes();
+        if (n == 0) return new double[0];
+
+        final int[] outOffsets = network.outOffsets;
+        final int[] inOffsets = network.inOffsets;
+        final int[] inSources = network.inSources;
+        final double[] inWeights = (weighted ? network.inWeights : null);
+
+        // the total weight leaving each node
+        final double[] outTotal = new double[n];
+        double[] outWeights = (weighted ? network.outWeights : null);
+        for(int u = 0; u < n; u++)
+            {
+            if (outWeights == null) outTotal[u] = outOffsets[u + 1] - outOffsets[u];
+            else
+                {
+                double sum = 0;
+                for(int k = outOffsets[u]; k < outOffsets[u + 1]; k++)
+                    {
+                    if (!(outWeights[k] >= 0))
+                        throw new IllegalArgumentException("Edge weights may not be negative or NaN: " + outWeights[k]);
+                    sum += outWeights[k];
+                    }
+                outTotal[u] = sum;
+                }
+            }
+
+        final double[][] rank = new double[][] { new double[n], new double[n] };
+        java.util.Arrays.fill(rank[0], 1.0 / n);
+        final double[] share = new double[n];  // rank / outTotal, or 0 for dangling nodes
+        final int blocks = (n + NODES_PER_BLOCK - 1) / NODES_PER_BLOCK;
+        final double[] partial = new double[blocks];
+
+        int current = 0;
+        for(int iteration = 0; iteration < maxIterations; iteration++)
+            {
+            final double[] oldRank = rank[current];
+            final double[] newRank = rank[1 - current];
+
+            // compute each node's share and the total rank of the dangling nodes
+            new ParallelBlocks(n, NODES_PER_BLOCK)
+                {
+                protected void items(int from, int to, int blk)
+                    {
+                    double dangling = 0;
+                    for(int u = from; u < to; u++)
+                        {
+                        if (outTotal[u] > 0) share[u] = oldRank[u] / outTotal[u];
+                        else { share[u] = 0; dangling += oldRank[u]; }
+                        }
+                    partial[blk] = dangling;
+                    }
+                }.run();
+            final double base = ((1 - damping) + damping * sum(partial)) / n;
+
+            // gather the new ranks, and the change
+            new ParallelBlocks(n, NODES_PER_BLOCK)
+                {
+                protected void items(int from, int to, int blk)
+                    {
+                    double change = 0;
+                    for(int v = from; v < to; v++)
+                        {
+                        double sum = 0;
+                        if (inWeights == null)
+                            for(int k = inOffsets[v]; k < inOffsets[v + 1]; k++)
+                                sum += share[inSources[k]];
+                        else
+                            for(int k = inOffsets[v]; k < inOffsets[v + 1]; k++)
+                                sum += share[inSources[k]] * inWeights[k];
+                        double r = base + damping * sum;
+                        change += Math.abs(r - oldRank[v]);
+                        newRank[v] = r;
+                        }
+                    partial[blk] = change;
+                    }
+                }.run();
+
+            current = 1 - current;
+            if (sum(partial) < tolerance) break;
+            }
+        return rank[current];
+        }
+
+    static double sum(double[] values)
+        {
+        double sum = 0;
+        for(int i = 0; i < values.length; i++)
+            sum += values[i];
+        return sum;
+        }
+    }
@@ -0,0 +1,451 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.field.network.*;
+import sim.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+   Shortest routes between pairs of nodes of a CompactNetwork, by A* search, for models in which many agents plan
+   routes over the same (unchanging) network.  A Router is made once for the network and shared by all the agents,
+   which may call route(...) from several threads at once.
+
+   <p>A search takes a set of search arrays, indexed by node number, from a pool kept by the Router, and puts it back
+   when done, so there are only ever as many sets as there have been searches at the same time, however many threads
+   (or virtual threads) ask for routes.  The arrays are reused for every later search: the open set is a binary heap of node numbers with each node's position in it, and whether
+   a node has been reached or closed is recorded by stamping it with the number of the current search, so nothing
+   need be allocated or cleared between searches.  A search allocates only the route it returns.
+
+   <p>The search is guided by an optional Heuristic (say, the straight-line distance to the destination) and by
+   optional <i>landmarks</i>.  setLandmarks(...) picks some nodes spread around the network and computes the distance
+   from each of them to every node and back, which takes a while and a fair amount of memory (8 or 16 bytes for
+   each node and landmark) but then gives, by the triangle inequality, a lower bound on the distance between any two
+   nodes (the "ALT" technique).  This often narrows the search a great deal more than straight-line distance does,
+   particularly on road networks.  The two are combined by taking the larger.
+
+   <p>The Router can also remember the last several routes it has found, with setCacheSize(...), and return them again
+   without searching when asked for the same origin and destination.
+
+   <p>Routes are returned as arrays of the network's <i>outgoing arc</i> numbers (see CompactNetwork), in order from
+   the origin: arc k leads to node getNetwork().outTargets[k].  Routes may be shared with other callers (by the cache),
+   so don't modify them.  Edge weights must not be negative.  If the network is changed (that is, replaced with a
+   new CompactNetwork), make a new Router.
+*/
+
+public class Router implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    static final int[] NO_ROUTE = new int[0];  // cached when there is no route
+
+    CompactNetwork network;
+    Heuristic heuristic;
+    int[] landmarks = new int[0];
+    double[][] fromLandmarks = new double[0][];    // fromLandmarks[i][v] is the distance from landmarks[i] to v
+    double[][] toLandmarks = new double[0][];      // toLandmarks[i][v] is the distance from v to landmarks[i]
+    int cacheSize = 0;
+    transient LinkedHashMap cache;
+    transient ConcurrentLinkedQueue searches;  // the pool of Searches not in use
+
+    /** Makes a Router for the given network. */
+    public Router(CompactNetwork network)
+        {
+        double[] weights = network.outWeights;
+        if (weights != null)
+            for(int k = 0; k < weights.length; k++)
+                if (!(weights[k] >= 0))
+                    throw new IllegalArgumentException("Edge weights may not be negative or NaN: " + weights[k]);
+        this.network = network;
+        searches = new ConcurrentLinkedQueue();
+        }
+
+    /** Makes a Router for a CompactNetwork made from the given network (keeping its Edges). */
+    public Router(Network network)
+        {
+        this(new CompactNetwork(network));
+        }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException
+        {
+        in.defaultReadObject();
+        searches = new ConcurrentLinkedQueue();
+        setCacheSize(cacheSize);
+        }
+
+    public CompactNetwork getNetwork() { return network; }
+
+    /** Sets the Heuristic, or null for none, and clears the cache.  Don't do this while other threads are routing. */
+    public void setHeuristic(Heuristic heuristic) { this.heuristic = heuristic; clearCache(); }
+    public Heuristic getHeuristic() { return heuristic; }
+
+    /** Picks the given number of landmarks (or fewer, if the network is small) and computes their distances to and from
+        every node, then clears the cache.  The first landmark is the node farthest from node 0, and each
+        later one the node farthest from all the landmarks so far (nodes which can't reach or be reached from any of them
+        coming first).  Zero removes the landmarks.  Don't do this while other threads are routing. */
+    public void setLandmarks(int count)
+        {
+        if (count < 0)
+            throw new IllegalArgumentException("Negative number of landmarks: " + count);
+        int n = network.getNumNodes();
+        count = Math.min(count, n);
+        int[] marks = new int[count];
+        double[][] from = new double[count][];
+        double[][] to = new double[count][];
+
+        Search search = new Search(n);
+        double[] nearest = new double[n];
+        int found = 0;
+        if (count > 0)
+            {
+            Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+            int next = farthest(search.distances(0, network.outOffsets, network.outTargets, network.outWeights), null);
+            while(found < count)
+                {
+                marks[found] = next;
+                from[found] = search.distances(next, network.outOffsets, network.outTargets, network.outWeights);
+                to[found] = (network.isDirected() ?
+                    search.distances(next, network.inOffsets, network.inSources, network.inWeights) : from[found]);
+                for(int v = 0; v < n; v++)
+                    nearest[v] = Math.min(nearest[v], Math.min(from[found][v], to[found][v]));
+                found++;
+                next = farthest(nearest, nearest);
+                if (nearest[next] == 0) break;  // every node is a landmark, or no farther than one
+                }
+            }
+
+        landmarks = new int[found];
+        System.arraycopy(marks, 0, landmarks, 0, found);
+        fromLandmarks = new double[found][];
+        System.arraycopy(from, 0, fromLandmarks, 0, found);
+        toLandmarks = new double[found][];
+        System.arraycopy(to, 0, toLandmarks, 0, found);
+        clearCache();
+        }
+
+    /* Returns the node with the greatest distance, counting infinite distances as greater than all others (if nearest is
+       non-null) or as less (if it is null, so that we pick the farthest reachable node). */
+    static int farthest(double[] distances, double[] nearest)
+        {
+        int best = 0;
+        double bestDistance = -1;
+        for(int v = 0; v < distances.length; v++)
+            {
+            double d = distances[v];
+            if (d == Double.POSITIVE_INFINITY && nearest == null) continue;
+            if (d > bestDistance) { best = v; bestDistance = d; }
+            }
+        return best;
+        }
+
+    /** Returns the landmarks' node numbers. */
+    public int[] getLandmarks() { return (int[])(landmarks.clone()); }
+
+    /** Sets the number of routes to remember, discarding the least recently used ones beyond that.  The default is 0,
+        which remembers none. */
+    public void setCacheSize(int size)
+        {
+        if (size < 0)
+            throw new IllegalArgumentException("Negative cache size: " + size);
+        synchronized(this)
+            {
+            cacheSize = size;
+            final int max = size;
+            LinkedHashMap old = cache;
+            cache = (size == 0 ? null : new LinkedHashMap(16, 0.75f, true)
+                {
+                protected boolean removeEldestEntry(Map.Entry eldest) { return size() > max; }
+                });
+            if (old != null && cache != null)
+                cache.putAll(old);
+            }
+        }
+
+    public int getCacheSize() { return cacheSize; }
+
+    /** Forgets all the remembered routes. */
+    public synchronized void clearCache()
+        {
+        if (cache != null) cache.clear();
+        }
+
+    synchronized int[] cached(Long key)
+        {
+        return (cache == null ? null : (int[])(cache.get(key)));
+        }
+
+    synchronized void cache(Long key, int[] route)
+        {
+        if (cache != null) cache.put(key, route);
+        }
+
+    /** Returns a shortest route from the origin to the destination, as an array of outgoing arc numbers, or null if there
+        is none.  The route from a node to itself is empty.  Don't modify the array. */
+    public int[] route(int origin, int destination)
+        {
+        int n = network.getNumNodes();
+        if (origin < 0 || origin >= n)
+            throw new IllegalArgumentException("No node " + origin);
+        if (destination < 0 || destination >= n)
+            throw new IllegalArgumentException("No node " + destination);
+        if (origin == destination) return new int[0];
+
+        Long key = null;
+        if (cacheSize > 0)
+            {
+            key = Long.valueOf(((long) origin << 32) | destination);
+            int[] route = cached(key);
+            if (route != null) return (route == NO_ROUTE ? null : route);
+            }
+
+        Search search = (Search)(searches.poll());
+        if (search == null) search = new Search(n);
+        int[] route;
+        try { route = search.route(this, origin, destination); }
+        finally { searches.offer(search); }
+
+        if (key != null) cache(key, route == null ? NO_ROUTE : route);
+        return route;
+        }
+
+    /** Returns a shortest route from the origin to the destination, as a new Bag of Edges in order from the origin, or
+        null if there is none.  The Edges are the original Network's, if the CompactNetwork kept them, and otherwise
+        new Edges whose info is the edge's weight.  In an undirected network an Edge may be traversed from its to node
+        to its from node. */
+    public Bag route(Object origin, Object destination)
+        {
+        int node = BreadthFirstSearch.index(network, origin);
+        int[] arcs = route(node, BreadthFirstSearch.index(network, destination));
+        if (arcs == null) return null;
+        Bag edges = new Bag(arcs.length);
+        for(int i = 0; i < arcs.length; i++)
+            {
+            int k = arcs[i];
+            int next = network.outTargets[k];
+            if (network.outEdges != null && network.outEdges[k] != null)
+                edges.add(network.outEdges[k]);
+            else
+                edges.add(new Edge(network.getNode(node), network.getNode(next),
+                        network.outWeights == null ? null : new Double(network.outWeights[k])));
+            node = next;
+            }
+        return edges;
+        }
+
+    /** Returns the total weight of the arcs of a route. */
+    public double getLength(int[] route)
+        {
+        double length = 0;
+        for(int i = 0; i < route.length; i++)
+            length += network.getOutWeight(route[i]);
+        return length;
+        }
+
+    /** Returns a lower bound on the distance from the node to the destination, from the landmarks and the Heuristic. */
+    double bound(int node, int destination)
+        {
+        double bound = (heuristic == null ? 0 : heuristic.estimate(node, destination));
+        for(int i = 0; i < landmarks.length; i++)
+            {
+            double[] from = fromLandmarks[i];
+            double[] to = toLandmarks[i];
+            // d(L, dest) <= d(L, node) + d(node, dest), and d(node, L) <= d(node, dest) + d(dest, L)
+            if (from[node] < Double.POSITIVE_INFINITY && from[destination] < Double.POSITIVE_INFINITY)
+                bound = Math.max(bound, from[destination] - from[node]);
+            if (to[node] < Double.POSITIVE_INFINITY && to[destination] < Double.POSITIVE_INFINITY)
+                bound = Math.max(bound, to[node] - to[destination]);
+            }
+        return bound;
+        }
+
+    /** The arrays for one search at a time.  A node's entries are valid only if its stamp is the current search's. */
+    static class Search
+        {
+        int search = 0;
+        int[] reached;      // the search in which the node was reached
+        boolean[] closed;
+        double[] g;         // distance from the origin
+        double[] h;         // lower bound on the distance to the destination
+        int[] parentArc;    // the arc by which the node was reached
+        int[] parent;       // the node from which it was reached
+        int[] heap;         // the open set, as a binary heap on g + h
+        int[] position;     // each open node's position in the heap
+        int size;
+
+        Search(int n)
+            {
+            reached = new int[n];
+            closed = new boolean[n];
+            g = new double[n];
+            h = new double[n];
+            parentArc = new int[n];
+            parent = new int[n];
+            heap = new int[n];
+            position = new int[n];
+            }
+
+        void begin()
+            {
+            if (search == Integer.MAX_VALUE)
+                {
+                Arrays.fill(reached, 0);
+                search = 0;
+                }
+            search++;
+            size = 0;
+            }
+
+        int[] route(Router router, int origin, int destination)
+            {
+            CompactNetwork network = router.network;
+            int[] offsets = network.outOffsets;
+            int[] targets = network.outTargets;
+            double[] weights = network.outWeights;
+
+            begin();
+            reach(origin, 0, -1, -1, router.bound(origin, destination));
+            while(size > 0)
+                {
+                int u = pop();
+                if (u == destination)
+                    {
+                    int length = 0;
+                    for(int v = destination; v != origin; v = parent[v])
+                        length++;
+                    int[] route = new int[length];
+                    for(int v = destination; v != origin; v = parent[v])
+                        route[--length] = parentArc[v];
+                    return route;
+                    }
+                double gu = g[u];
+                for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                    {
+                    int v = targets[k];
+                    double gv = gu + (weights == null ? 1.0 : weights[k]);
+                    if (reached[v] != search)
+                        {
+                        double hv = router.bound(v, destination);
+                        if (hv < Double.POSITIVE_INFINITY)
+                            reach(v, gv, k, u, hv);
+                        }
+                    else if (gv < g[v])
+                        {
+                        g[v] = gv;
+                        parentArc[v] = k;
+                        parent[v] = u;
+                        if (closed[v])  // only if the Heuristic is inconsistent
+                            {
+                            closed[v] = false;
+                            push(v);
+                            }
+                        else up(position[v]);
+                        }
+                    }
+                }
+            return null;
+            }
+
+        /** Returns the distances from the source to every node, following the given arcs (Dijkstra's algorithm). */
+        double[] distances(int source, int[] offsets, int[] others, double[] weights)
+            {
+            int n = reached.length;
+            double[] distances = new double[n];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            begin();
+            reach(source, 0, -1, -1, 0);
+            while(size > 0)
+                {
+                int u = pop();
+                double gu = g[u];
+                distances[u] = gu;
+                for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                    {
+                    int v = others[k];
+                    double gv = gu + (weights == null ? 1.0 : weights[k]);
+                    if (reached[v] != search) reach(v, gv, k, u, 0);
+                    else if (!closed[v] && gv < g[v])
+                        {
+                        g[v] = gv;
+                        up(position[v]);
+                        }
+                    }
+                }
+            return distances;
+            }
+
+        void reach(int v, double gv, int arc, int from, double hv)
+            {
+            reached[v] = search;
+            closed[v] = false;
+            g[v] = gv;
+            h[v] = hv;
+            parentArc[v] = arc;
+            parent[v] = from;
+            push(v);
+            }
+
+        void push(int v)
+            {
+            heap[size] = v;
+            position[v] = size;
+            up(size++);
+            }
+
+        int pop()
+            {
+            int top = heap[0];
+            closed[top] = true;
+            size--;
+            if (size > 0)
+                {
+                heap[0] = heap[size];
+                position[heap[0]] = 0;
+                down(0);
+                }
+            return top;
+            }
+
+        boolean less(int a, int b)
+            {
+            double fa = g[a] + h[a];
+            double fb = g[b] + h[b];
+            return fa < fb || (fa == fb && h[a] < h[b]);  // break ties toward the destination
+            }
+
+        void up(int i)
+            {
+            int v = heap[i];
+            while(i > 0)
+                {
+                int p = (i - 1) >> 1;
+                if (!less(v, heap[p])) break;
+                heap[i] = heap[p];
+                position[heap[i]] = i;
+                i = p;
+                }
+            heap[i] = v;
+            position[v] = i;
+            }
+
+        void down(int i)
+            {
+            int v = heap[i];
+            while(true)
+                {
+                int c = 2 * i + 1;
+                if (c >= size) break;
+                if (c + 1 < size && less(heap[c + 1], heap[c])) c++;
+                if (!less(heap[c], v)) break;
+                heap[i] = heap[c];
+                position[heap[i]] = i;
+                i = c;
+                }
+            heap[i] = v;
+            position[v] = i;
+            }
+        }
+    }
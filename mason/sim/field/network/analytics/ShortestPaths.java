@@ -0,0 +1,197 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.analytics;
+import sim.engine.*;
+import sim.field.network.*;
+import sim.util.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+   Weighted distances from a node, by <i>delta-stepping</i>, a parallel relative of Dijkstra's algorithm.  Tentative
+   distances are kept in buckets of width <i>delta</i>.  The nodes of the lowest bucket are settled together: their
+   <i>light</i> edges (weight no more than delta), which may put nodes back into the same bucket, are relaxed
+   repeatedly until the bucket stays empty, and then their <i>heavy</i> edges once.  Each round of relaxations is
+   done in parallel when there are enough nodes in it.  A small delta does much the same work as Dijkstra's algorithm
+   but in more, smaller rounds; a large one does fewer, larger rounds but relaxes some edges more than once.  The
+   default is the mean edge weight.
+
+   <p>Edge weights are taken from the CompactNetwork (that is, from each Edge's getWeight() when it was made), must
+   not be negative, and are followed from their from nodes to their to nodes (in either direction in an undirected
+   graph).  The distances are exactly those Dijkstra's algorithm would find, however many threads do the work.
+*/
+
+public class ShortestPaths
+    {
+    /** Rounds with fewer nodes than this are relaxed in the calling thread. */
+    public static final int MIN_PARALLEL_NODES = 1024;
+    static final int NODES_PER_BLOCK = 256;
+
+    /** Returns the distance from the source to each node of the network, or Double.POSITIVE_INFINITY for nodes which
+        can't be reached, using the mean edge weight as delta. */
+    public static double[] distances(CompactNetwork network, int source)
+        {
+        return distances(network, source, defaultDelta(network));
+        }
+
+    /** Returns the distance from the source to each node of the network, indexed in the order of the network's allNodes bag,
+        or Double.POSITIVE_INFINITY for nodes which can't be reached. */
+    public static double[] distances(Network network, Object source)
+        {
+        CompactNetwork net = new CompactNetwork(network, false);
+        return distances(net, BreadthFirstSearch.index(net, source));
+        }
+
+    /** Returns the mean weight of the network's edges, or 1.0 if there are none or they are all zero. */
+    public static double defaultDelta(CompactNetwork network)
+        {
+        double[] weights = network.outWeights;
+        if (weights == null || weights.length == 0) return 1.0;
+        int arcs = network.outOffsets[network.getNumNodes()];
+        double sum = 0;
+        for(int k = 0; k < arcs; k++)
+            sum += weights[k];
+        double delta = sum / arcs;
+        return (delta > 0 && delta < Double.POSITIVE_INFINITY ? delta : 1.0);
+        }
+
+    /** Returns the distance from the source to each node of the network, or Double.POSITIVE_INFINITY for nodes which
+        can't be reached, using buckets of the given width. */
+    public static double[] distances(CompactNetwork network, int source, double delta)
+        {
+        final int n = network.getNumNodes();
+        if (source < 0 || source >= n)
+            throw new IllegalArgumentException("No node " + source);
+        if (!(delta > 0) || delta == Double.POSITIVE_INFINITY)
+            throw new IllegalArgumentException("Delta must be positive and finite: " + delta);
+        double[] weights = network.outWeights;
+        if (weights != null)
+            {
+            int arcs = network.outOffsets[n];
+            for(int k = 0; k < arcs; k++)
+                if (!(weights[k] >= 0))
+                    throw new IllegalArgumentException("Edge weights may not be negative or NaN: " + weights[k]);
+            }
+
+        AtomicLongArray dist = new AtomicLongArray(n);
+        long infinity = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        for(int v = 0; v < n; v++)
+            dist.set(v, infinity);
+        dist.set(source, Double.doubleToRawLongBits(0.0));
+
+        // bucketOf[v] is the bucket v is waiting in, or -1.  A node moved to a lower bucket is left behind in its old
+        // one as well, and skipped there because its bucketOf no longer matches.
+        long[] bucketOf = new long[n];
+        Arrays.fill(bucketOf, -1);
+        TreeMap buckets = new TreeMap();
+        IntBag start = new IntBag();
+        start.add(source);
+        insert(start, dist, bucketOf, buckets, delta);
+
+        boolean[] settled = new boolean[n];
+        while(!buckets.isEmpty())
+            {
+            Long key = (Long)(buckets.firstKey());
+            long b = key.longValue();
+            IntBag settledNow = new IntBag();
+            IntBag bucket;
+            while((bucket = (IntBag)(buckets.remove(key))) != null)
+                {
+                IntBag frontier = new IntBag();
+                for(int i = 0; i < bucket.numObjs; i++)
+                    {
+                    int v = bucket.objs[i];
+                    if (bucketOf[v] == b)
+                        {
+                        bucketOf[v] = -1;
+                        frontier.add(v);
+                        if (!settled[v]) { settled[v] = true; settledNow.add(v); }
+                        }
+                    }
+                insert(relax(network, frontier, dist, delta, true), dist, bucketOf, buckets, delta);
+                }
+            insert(relax(network, settledNow, dist, delta, false), dist, bucketOf, buckets, delta);
+            }
+
+        double[] result = new double[n];
+        for(int v = 0; v < n; v++)
+            result[v] = Double.longBitsToDouble(dist.get(v));
+        return result;
+        }
+
+    /** Puts each of the nodes into the bucket for its current distance, unless it's already there. */
+    static void insert(IntBag nodes, AtomicLongArray dist, long[] bucketOf, TreeMap buckets, double delta)
+        {
+        for(int i = 0; i < nodes.numObjs; i++)
+            {
+            int v = nodes.objs[i];
+            long b = (long)(Double.longBitsToDouble(dist.get(v)) / delta);
+            if (bucketOf[v] == b) continue;
+            bucketOf[v] = b;
+            Long key = Long.valueOf(b);
+            IntBag bucket = (IntBag)(buckets.get(key));
+            if (bucket == null) { bucket = new IntBag(); buckets.put(key, bucket); }
+            bucket.add(v);
+            }
+        }
+
+    /** Relaxes the light (or heavy) edges of the given nodes, returning the nodes whose distances went down, perhaps more than once. */
+    static IntBag relax(CompactNetwork network, IntBag nodes, final AtomicLongArray dist, final double delta, final boolean light)
+        {
+        final int[] offsets = network.outOffsets;
+        final int[] targets = network.outTargets;
+        final double[] weights = network.outWeights;
+        final int[] f = nodes.objs;
+        if (nodes.numObjs < MIN_PARALLEL_NODES)
+            {
+            IntBag improved = new IntBag();
+            relax(f, 0, nodes.numObjs, offsets, targets, weights, dist, delta, light, improved);
+            return improved;
+            }
+        final IntBag[] found = new IntBag[(nodes.numObjs + NODES_PER_BLOCK - 1) / NODES_PER_BLOCK];
+        new ParallelBlocks(nodes.numObjs, NODES_PER_BLOCK)
+            {
+            protected void items(int from, int to, int blk)
+                {
+                IntBag mine = new IntBag();
+                relax(f, from, to, offsets, targets, weights, dist, delta, light, mine);
+                found[blk] = mine;
+                }
+            }.run();
+        IntBag improved = new IntBag();
+        for(int b = 0; b < found.length; b++)
+            improved.addAll(found[b]);
+        return improved;
+        }
+
+    static void relax(int[] f, int from, int to, int[] offsets, int[] targets, double[] weights,
+        AtomicLongArray dist, double delta, boolean light, IntBag improved)
+        {
+        for(int i = from; i < to; i++)
+            {
+            int u = f[i];
+            double du = Double.longBitsToDouble(dist.get(u));
+            for(int k = offsets[u]; k < offsets[u + 1]; k++)
+                {
+                double w = (weights == null ? 1.0 : weights[k]);
+                if ((w <= delta) != light) continue;
+                int v = targets[k];
+                double d = du + w;
+                while(true)
+                    {
+                    long current = dist.get(v);
+                    if (Double.longBitsToDouble(current) <= d) break;
+                    if (dist.compareAndSet(v, current, Double.doubleToRawLongBits(d)))
+                        {
+                        improved.add(v);
+                        break;
+                        }
+                    }
+                }
+            }
+        }
+    }
@@ -0,0 +1,154 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.util.*;
+
+/**
+   The common parts of OpenHashMap, Int2DMap, and Int3DMap: hash tables which store their entries directly in
+   arrays (<i>open addressing</i> with linear probing), rather than in a separate entry object per key as
+   java.util.HashMap does.  They take much less memory, and adding, looking up, and removing keys allocates
+   nothing except when the table grows.  A table doubles in size when it becomes more than 3/4 full, but it never
+   shrinks, not even on clear(): a map which has once held many entries keeps its large table.  To free the memory,
+   replace the map with a new one.
+
+   <p>Iterators over these maps, and over their key sets, value sets, and entry sets, do not support remove().
+*/
+
+abstract class AbstractOpenMap extends AbstractMap implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    static final int MIN_CAPACITY = 16;
+
+    transient int size;
+    transient int mask;  // the capacity of the table, minus 1
+
+    /** Returns the capacity to use for holding the given number of entries. */
+    static int capacityFor(int size)
+        {
+        int capacity = MIN_CAPACITY;
+        while(capacity * 3L / 4 < size) capacity <<= 1;
+        return capacity;
+        }
+
+    public int size() { return size; }
+
+    /** Returns true if the slot holds an entry. */
+    abstract boolean occupied(int slot);
+    /** Returns the key in the slot. */
+    abstract Object keyAt(int slot);
+    /** Returns the value in the slot. */
+    abstract Object valueAt(int slot);
+    /** Sets the value in the slot, returning the old value. */
+    abstract Object setValueAt(int slot, Object value);
+    /** Returns the slot in which the key in the given slot would ideally be. */
+    abstract int home(int slot);
+    /** Moves the entry in one slot to another, emptying the first. */
+    abstract void move(int from, int to);
+    /** Empties the slot. */
+    abstract void empty(int slot);
+
+    /** Removes the entry in the given slot, shifting back any entries after it which would otherwise be lost. */
+    void delete(int slot)
+        {
+        int i = slot;
+        int j = slot;
+        while(true)
+            {
+            j = (j + 1) & mask;
+            if (!occupied(j)) break;
+            int k = home(j);
+            // move the entry at j back to i unless its home lies cyclically in (i, j]
+            boolean stays = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+            if (!stays)
+                {
+                move(j, i);
+                i = j;
+                }
+            }
+        empty(i);
+        size--;
+        }
+
+    public Set entrySet()
+        {
+        return new AbstractSet()
+            {
+            public int size() { return size; }
+            public void clear() { AbstractOpenMap.this.clear(); }
+            public Iterator iterator()
+                {
+                return new Iterator()
+                    {
+                    int next = advance(0);
+                    int advance(int slot)
+                        {
+                        while(slot <= mask && !occupied(slot)) slot++;
+                        return slot;
+                        }
+                    public boolean hasNext() { return next <= mask; }
+                    public Object next()
+                        {
+                        if (next > mask) throw new NoSuchElementException();
+                        final int slot = next;
+                        next = advance(next + 1);
+                        final Object key = keyAt(slot);
+                        return new Map.Entry()
+                            {
+                            public Object getKey() { return key; }
+                            public Object getValue() { return valueAt(slot); }
+                            public Object setValue(Object value) { return setValueAt(slot, value); }
+                            public boolean equals(Object obj)
+                                {
+                                if (!(obj instanceof Map.Entry)) return false;
+                                Map.Entry e = (Map.Entry) obj;
+                                Object value = getValue();
+                                return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+                                }
+                            public int hashCode()
+                                {
+                                Object value = getValue();
+                                return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+                                }
+                            public String toString() { return key + "=" + getValue(); }
+                            };
+                        }
+                    public void remove() { throw new UnsupportedOperationException("remove() not supported by " + AbstractOpenMap.this.getClass().getName()); }
+                    };
+                }
+            };
+        }
+
+    // the tables are written as the size followed by the keys and values, and rebuilt when read, since
+    // the keys' hash codes may differ in the new JVM
+    private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException
+        {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for(int slot = 0; slot <= mask; slot++)
+            if (occupied(slot))
+                {
+                out.writeObject(keyAt(slot));
+                out.writeObject(valueAt(slot));
+                }
+        }
+
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException
+        {
+        in.defaultReadObject();
+        int n = in.readInt();
+        allocate(capacityFor(n));
+        for(int i = 0; i < n; i++)
+            {
+            Object key = in.readObject();
+            put(key, in.readObject());
+            }
+        }
+
+    /** Replaces the table with an empty one of the given capacity (a power of two). */
+    abstract void allocate(int capacity);
+    }
@@ -253,15 +253,18 @@ public class Heap implements java.io.Serializable
     */
     public Heap merge(Heap other) 
         {
-        int n = this.numElem + other.numElem;
+        // go through the accessors for the other heap: it may be a subclass which stores its keys differently
+        Comparable[] otherKeys = other.getKeys();
+        Object[] otherObjects = other.getObjects();
+        int n = this.numElem + otherKeys.length;
         Comparable[] combinedKeys = new Comparable[n];
         Object[] combinedObjects = new Object[n];
         
         System.arraycopy(keys, 0, combinedKeys, 0, this.numElem);
-        System.arraycopy(other.keys, 0, combinedKeys, this.numElem, other.numElem);
+        System.arraycopy(otherKeys, 0, combinedKeys, this.numElem, otherKeys.length);
 
         System.arraycopy(objects, 0, combinedObjects, 0, this.numElem);
-        System.arraycopy(other.objects, 0, combinedObjects, this.numElem, other.numElem);
+        System.arraycopy(otherObjects, 0, combinedObjects, this.numElem, otherObjects.length);
 
         return new Heap(combinedKeys, combinedObjects);
         }
@@ -0,0 +1,212 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.util.*;
+
+/**
+   A Map whose keys are Int2Ds, and which stores each key packed into a long, directly in an array, rather than
+   keeping the Int2D itself and an entry object per key as java.util.HashMap does.  It takes much less memory
+   than a HashMap, and putting, getting, and removing keys allocates nothing except when the table grows.
+
+   <p>You may put, get, and remove with MutableInt2D keys as well as Int2D keys: only the coordinates are stored, so
+   changing a MutableInt2D afterwards does not disturb the map.  Getting or removing other kinds of keys finds
+   nothing; putting them throws an IllegalArgumentException.  Keys returned by the map's iterators are new Int2Ds.
+   Its iterators do not support remove().  SparseGrid2D and Continuous2D use Int2DMaps to map their locations to
+   the objects there.
+*/
+
+public class Int2DMap extends AbstractOpenMap
+    {
+    private static final long serialVersionUID = 1;
+
+    // stands in for a null value, since a null in the values array marks an empty slot
+    static final Object NULL = new Object();
+
+    transient long[] keys;
+    transient Object[] values;
+
+    /** Creates an empty Int2DMap. */
+    public Int2DMap()
+        {
+        this(0);
+        }
+
+    /** Creates an empty Int2DMap which can hold the given number of entries before it grows. */
+    public Int2DMap(int size)
+        {
+        allocate(capacityFor(size));
+        }
+
+    /** Creates an Int2DMap holding the entries of the given Map, whose keys must be Int2Ds or MutableInt2Ds. */
+    public Int2DMap(Map other)
+        {
+        this(other.size());
+        putAll(other);
+        }
+
+    void allocate(int capacity)
+        {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+        }
+
+    static long pack(int x, int y)
+        {
+        return (((long) x) << 32) | (y & 0xFFFFFFFFL);
+        }
+
+    static int slot(long key, int mask)
+        {
+        key *= 0x9E3779B97F4A7C15L;
+        return ((int)(key ^ (key >>> 32))) & mask;
+        }
+
+    int find(long key)
+        {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        for(int i = slot(key, mask); ; i = (i + 1) & mask)
+            {
+            if (values[i] == null) return -1;
+            if (keys[i] == key) return i;
+            }
+        }
+
+    int find(Object key)
+        {
+        if (key instanceof Int2D)
+            {
+            Int2D k = (Int2D) key;
+            return find(pack(k.x, k.y));
+            }
+        else if (key instanceof MutableInt2D)
+            {
+            MutableInt2D k = (MutableInt2D) key;
+            return find(pack(k.x, k.y));
+            }
+        else return -1;
+        }
+
+    /** Returns the value stored at the location &lt;x, y&gt;, or null if there is none. */
+    public Object get(int x, int y)
+        {
+        int i = find(pack(x, y));
+        return (i < 0 ? null : unmask(values[i]));
+        }
+
+    public Object get(Object key)
+        {
+        int i = find(key);
+        return (i < 0 ? null : unmask(values[i]));
+        }
+
+    public boolean containsKey(Object key)
+        {
+        return find(key) >= 0;
+        }
+
+    static Object unmask(Object value) { return (value == NULL ? null : value); }
+
+    /** Stores the value at the location &lt;x, y&gt;, returning the value previously there, if any. */
+    public Object put(int x, int y, Object value)
+        {
+        long key = pack(x, y);
+        if (value == null) value = NULL;
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int i = slot(key, mask);
+        while(values[i] != null)
+            {
+            if (keys[i] == key)
+                {
+                Object old = values[i];
+                values[i] = value;
+                return unmask(old);
+                }
+            i = (i + 1) & mask;
+            }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) * 3L / 4) grow();
+        return null;
+        }
+
+    public Object put(Object key, Object value)
+        {
+        if (key instanceof Int2D)
+            {
+            Int2D k = (Int2D) key;
+            return put(k.x, k.y, value);
+            }
+        else if (key instanceof MutableInt2D)
+            {
+            MutableInt2D k = (MutableInt2D) key;
+            return put(k.x, k.y, value);
+            }
+        else throw new IllegalArgumentException("Int2DMap keys must be Int2Ds or MutableInt2Ds, not " + key);
+        }
+
+    public Object remove(Object key)
+        {
+        int i = find(key);
+        if (i < 0) return null;
+        Object old = values[i];
+        delete(i);
+        return unmask(old);
+        }
+
+    public void clear()
+        {
+        Arrays.fill(values, null);
+        size = 0;
+        }
+
+    void grow()
+        {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldSize = size;
+        allocate(oldKeys.length * 2);
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        for(int j = 0; j < oldKeys.length; j++)
+            if (oldValues[j] != null)
+                {
+                int i = slot(oldKeys[j], mask);
+                while(values[i] != null) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                }
+        size = oldSize;
+        }
+
+    boolean occupied(int slot) { return values[slot] != null; }
+    Object keyAt(int slot) { return new Int2D((int)(keys[slot] >> 32), (int) keys[slot]); }
+    Object valueAt(int slot) { return unmask(values[slot]); }
+    Object setValueAt(int slot, Object value)
+        {
+        Object old = values[slot];
+        values[slot] = (value == null ? NULL : value);
+        return unmask(old);
+        }
+    int home(int slot) { return slot(keys[slot], mask); }
+    void move(int from, int to)
+        {
+        keys[to] = keys[from];
+        values[to] = values[from];
+        values[from] = null;
+        }
+    void empty(int slot)
+        {
+        values[slot] = null;
+        }
+    }
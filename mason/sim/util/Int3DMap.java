@@ -0,0 +1,208 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.util.*;
+
+/**
+   A Map whose keys are Int3Ds, and which stores each key's coordinates directly in an array, rather than
+   keeping the Int3D itself and an entry object per key as java.util.HashMap does.  This is the 3D version of
+   Int2DMap: see it for details.  You may use MutableInt3D keys as well as Int3D keys.  SparseGrid3D and
+   Continuous3D use Int3DMaps to map their locations to the objects there.
+*/
+
+public class Int3DMap extends AbstractOpenMap
+    {
+    private static final long serialVersionUID = 1;
+
+    transient int[] keys;  // x, y, and z of each slot in turn
+    transient Object[] values;
+
+    /** Creates an empty Int3DMap. */
+    public Int3DMap()
+        {
+        this(0);
+        }
+
+    /** Creates an empty Int3DMap which can hold the given number of entries before it grows. */
+    public Int3DMap(int size)
+        {
+        allocate(capacityFor(size));
+        }
+
+    /** Creates an Int3DMap holding the entries of the given Map, whose keys must be Int3Ds or MutableInt3Ds. */
+    public Int3DMap(Map other)
+        {
+        this(other.size());
+        putAll(other);
+        }
+
+    void allocate(int capacity)
+        {
+        keys = new int[capacity * 3];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+        }
+
+    static int slot(int x, int y, int z, int mask)
+        {
+        long key = ((((long) x) << 32) | (y & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L + z * 0xC2B2AE3D27D4EB4FL;
+        key *= 0x9E3779B97F4A7C15L;
+        return ((int)(key ^ (key >>> 32))) & mask;
+        }
+
+    int find(int x, int y, int z)
+        {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        for(int i = slot(x, y, z, mask); ; i = (i + 1) & mask)
+            {
+            if (values[i] == null) return -1;
+            int j = i * 3;
+            if (keys[j] == x && keys[j + 1] == y && keys[j + 2] == z) return i;
+            }
+        }
+
+    int find(Object key)
+        {
+        if (key instanceof Int3D)
+            {
+            Int3D k = (Int3D) key;
+            return find(k.x, k.y, k.z);
+            }
+        else if (key instanceof MutableInt3D)
+            {
+            MutableInt3D k = (MutableInt3D) key;
+            return find(k.x, k.y, k.z);
+            }
+        else return -1;
+        }
+
+    /** Returns the value stored at the location &lt;x, y, z&gt;, or null if there is none. */
+    public Object get(int x, int y, int z)
+        {
+        int i = find(x, y, z);
+        return (i < 0 ? null : Int2DMap.unmask(values[i]));
+        }
+
+    public Object get(Object key)
+        {
+        int i = find(key);
+        return (i < 0 ? null : Int2DMap.unmask(values[i]));
+        }
+
+    public boolean containsKey(Object key)
+        {
+        return find(key) >= 0;
+        }
+
+    /** Stores the value at the location &lt;x, y, z&gt;, returning the value previously there, if any. */
+    public Object put(int x, int y, int z, Object value)
+        {
+        if (value == null) value = Int2DMap.NULL;
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int i = slot(x, y, z, mask);
+        while(values[i] != null)
+            {
+            int j = i * 3;
+            if (keys[j] == x && keys[j + 1] == y && keys[j + 2] == z)
+                {
+                Object old = values[i];
+                values[i] = value;
+                return Int2DMap.unmask(old);
+                }
+            i = (i + 1) & mask;
+            }
+        keys[i * 3] = x;
+        keys[i * 3 + 1] = y;
+        keys[i * 3 + 2] = z;
+        values[i] = value;
+        if (++size > (mask + 1) * 3L / 4) grow();
+        return null;
+        }
+
+    public Object put(Object key, Object value)
+        {
+        if (key instanceof Int3D)
+            {
+            Int3D k = (Int3D) key;
+            return put(k.x, k.y, k.z, value);
+            }
+        else if (key instanceof MutableInt3D)
+            {
+            MutableInt3D k = (MutableInt3D) key;
+            return put(k.x, k.y, k.z, value);
+            }
+        else throw new IllegalArgumentException("Int3DMap keys must be Int3Ds or MutableInt3Ds, not " + key);
+        }
+
+    public Object remove(Object key)
+        {
+        int i = find(key);
+        if (i < 0) return null;
+        Object old = values[i];
+        delete(i);
+        return Int2DMap.unmask(old);
+        }
+
+    public void clear()
+        {
+        Arrays.fill(values, null);
+        size = 0;
+        }
+
+    void grow()
+        {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldSize = size;
+        allocate(oldValues.length * 2);
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        for(int j = 0; j < oldValues.length; j++)
+            if (oldValues[j] != null)
+                {
+                int x = oldKeys[j * 3];
+                int y = oldKeys[j * 3 + 1];
+                int z = oldKeys[j * 3 + 2];
+                int i = slot(x, y, z, mask);
+                while(values[i] != null) i = (i + 1) & mask;
+                keys[i * 3] = x;
+                keys[i * 3 + 1] = y;
+                keys[i * 3 + 2] = z;
+                values[i] = oldValues[j];
+                }
+        size = oldSize;
+        }
+
+    boolean occupied(int slot) { return values[slot] != null; }
+    Object keyAt(int slot) { return new Int3D(keys[slot * 3], keys[slot * 3 + 1], keys[slot * 3 + 2]); }
+    Object valueAt(int slot) { return Int2DMap.unmask(values[slot]); }
+    Object setValueAt(int slot, Object value)
+        {
+        Object old = values[slot];
+        values[slot] = (value == null ? Int2DMap.NULL : value);
+        return Int2DMap.unmask(old);
+        }
+    int home(int slot) { return slot(keys[slot * 3], keys[slot * 3 + 1], keys[slot * 3 + 2], mask); }
+    void move(int from, int to)
+        {
+        keys[to * 3] = keys[from * 3];
+        keys[to * 3 + 1] = keys[from * 3 + 1];
+        keys[to * 3 + 2] = keys[from * 3 + 2];
+        values[to] = values[from];
+        values[from] = null;
+        }
+    void empty(int slot)
+        {
+        values[slot] = null;
+        }
+    }
@@ -0,0 +1,160 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.util.*;
+
+/**
+   A Map, like java.util.HashMap, but which stores its keys and values directly in two arrays rather than
+   allocating an entry object per key.  It takes roughly half the memory of a HashMap, and putting, getting,
+   and removing keys allocates nothing except when the table grows.  Keys are compared first with == and then
+   with equals(), so it works best with keys which, like most agents, don't override equals() and hashCode().
+
+   <p>OpenHashMap does not permit null keys.  Its iterators do not support remove().  SparseField subclasses use
+   OpenHashMaps to map their objects to their locations.
+*/
+
+public class OpenHashMap extends AbstractOpenMap
+    {
+    private static final long serialVersionUID = 1;
+
+    transient Object[] keys;
+    transient Object[] values;
+
+    /** Creates an empty OpenHashMap. */
+    public OpenHashMap()
+        {
+        this(0);
+        }
+
+    /** Creates an empty OpenHashMap which can hold the given number of entries before it grows. */
+    public OpenHashMap(int size)
+        {
+        allocate(capacityFor(size));
+        }
+
+    /** Creates an OpenHashMap holding the entries of the given Map. */
+    public OpenHashMap(Map other)
+        {
+        this(other.size());
+        putAll(other);
+        }
+
+    void allocate(int capacity)
+        {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+        }
+
+    static int slot(Object key, int mask)
+        {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+        }
+
+    int find(Object key)
+        {
+        if (key == null) return -1;
+        Object[] keys = this.keys;
+        int mask = this.mask;
+        for(int i = slot(key, mask); ; i = (i + 1) & mask)
+            {
+            Object k = keys[i];
+            if (k == null) return -1;
+            if (k == key || k.equals(key)) return i;
+            }
+        }
+
+    public Object get(Object key)
+        {
+        int i = find(key);
+        return (i < 0 ? null : values[i]);
+        }
+
+    public boolean containsKey(Object key)
+        {
+        return find(key) >= 0;
+        }
+
+    public Object put(Object key, Object value)
+        {
+        if (key == null) throw new NullPointerException("OpenHashMap does not permit null keys");
+        Object[] keys = this.keys;
+        int mask = this.mask;
+        int i = slot(key, mask);
+        while(true)
+            {
+            Object k = keys[i];
+            if (k == null) break;
+            if (k == key || k.equals(key))
+                {
+                Object old = values[i];
+                values[i] = value;
+                return old;
+                }
+            i = (i + 1) & mask;
+            }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) * 3L / 4) grow();
+        return null;
+        }
+
+    public Object remove(Object key)
+        {
+        int i = find(key);
+        if (i < 0) return null;
+        Object old = values[i];
+        delete(i);
+        return old;
+        }
+
+    public void clear()
+        {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+        }
+
+    void grow()
+        {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldSize = size;
+        allocate(oldKeys.length * 2);
+        Object[] keys = this.keys;
+        int mask = this.mask;
+        for(int j = 0; j < oldKeys.length; j++)
+            if (oldKeys[j] != null)
+                {
+                int i = slot(oldKeys[j], mask);
+                while(keys[i] != null) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                }
+        size = oldSize;
+        }
+
+    boolean occupied(int slot) { return keys[slot] != null; }
+    Object keyAt(int slot) { return keys[slot]; }
+    Object valueAt(int slot) { return values[slot]; }
+    Object setValueAt(int slot, Object value) { Object old = values[slot]; values[slot] = value; return old; }
+    int home(int slot) { return slot(keys[slot], mask); }
+    void move(int from, int to)
+        {
+        keys[to] = keys[from];
+        values[to] = values[from];
+        keys[from] = null;
+        values[from] = null;
+        }
+    void empty(int slot)
+        {
+        keys[slot] = null;
+        values[slot] = null;
+        }
+    }